@@ -1,14 +1,18 @@
 package com.duosecurity.controller;
 
 
+import com.duosecurity.CircuitBreaker;
 import com.duosecurity.Client;
+import com.duosecurity.FailMode;
+import com.duosecurity.SignedStateCodec;
 import com.duosecurity.exception.DuoException;
 import com.duosecurity.model.Token;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -35,7 +39,7 @@ public class LoginController {
   @Value("${duo.failmode}")
   private String failmode;
 
-  private Map<String, String> stateMap;
+  private SignedStateCodec stateCodec;
 
   private Client duoClient;
 
@@ -46,8 +50,22 @@ public class LoginController {
    */
   @PostConstruct
   public void initializeDuoClient() throws DuoException {
-    stateMap = new HashMap<>();
-    duoClient = new Client.Builder(clientId, clientSecret, apiHost, redirectUri).build();
+    // The state carries the username, signed with a key derived from the client secret, so
+    // any node can handle the callback.  It expires if the user does not come back from Duo
+    // within 15 minutes
+    stateCodec = new SignedStateCodec(clientSecret.getBytes(StandardCharsets.UTF_8), 15,
+            TimeUnit.MINUTES);
+    duoClient = new Client.Builder(clientId, clientSecret, apiHost, redirectUri)
+            .setHealthCheckCache(30, 120, TimeUnit.SECONDS)
+            // Stop calling Duo for a while when it fails, so logins are not held up by timeouts
+            .setCircuitBreaker(new CircuitBreaker.Builder().build())
+            .setFailMode(FailMode.valueOf(failmode.toUpperCase()))
+            // Let a double-submitted callback share the exchange already running for its code.
+            // No response is kept afterwards, so a replayed signed state still fails at Duo
+            .setExchangeCoalescing()
+            .build();
+    // Wait for the first health check so the first login has a status to read
+    duoClient.refreshHealthStatus().join();
 
     /* Example of setting optional fields
     duoClient = new Client.Builder(clientId, clientSecret, apiHost, redirectUri)
@@ -58,6 +76,14 @@ public class LoginController {
     */
   }
 
+  /**
+   * Stop the background health check and release the Duo Client's connections.
+   */
+  @PreDestroy
+  public void closeDuoClient() {
+    duoClient.close();
+  }
+
   @RequestMapping(value = "/", method = RequestMethod.GET)
   public String index() {
     return "index";
@@ -81,13 +107,12 @@ public class LoginController {
       return model;
     }
 
-    // Step 2: Call Duo health check
-    try {
-      duoClient.healthCheck();
-    } catch (DuoException exception) {
-      // If the health check failed AND the integration is configured to fail open then render
+    // Step 2: Check Duo's health, as last reported by the background health check and the
+    // circuit breaker, without contacting Duo
+    if (!duoClient.isDuoAvailable()) {
+      // If Duo is unavailable AND the integration is configured to fail open then render
       // the welcome page.  If the integarion is configured to fail closed return an error
-      if ("OPEN".equalsIgnoreCase(failmode)) {
+      if (duoClient.getFailMode() == FailMode.OPEN) {
         ModelAndView model = new ModelAndView("/welcome");
         model.addObject("token", "Login Successful, but 2FA Not Performed."
                 + "Confirm application.properties values are correct and that Duo is reachable");
@@ -100,10 +125,8 @@ public class LoginController {
       }
     }
 
-    // Step 3: Generate and save a state variable
-    String state = duoClient.generateState();
-    // Store the state to remember the session and username
-    stateMap.put(state, username);
+    // Step 3: Generate a state variable that remembers the username
+    String state = stateCodec.encode(username);
 
     // Step 4: Create the authUrl and redirect to it
     String authUrl = duoClient.createAuthUrl(username, state);
@@ -123,15 +146,16 @@ public class LoginController {
   @RequestMapping(value = "/duo-callback", method = RequestMethod.GET)
   public ModelAndView duoCallback(@RequestParam("duo_code") String duoCode,
                                   @RequestParam("state") String state) throws DuoException {
-    // Step 5: Validate state returned from Duo is the same as the one saved previously.
-    // If it isn't return an error
-    if (!stateMap.containsKey(state)) {
+    // Step 5: Validate the state returned from Duo was created by this application and has
+    // not expired, and read the username from it.  If it isn't return an error
+    String username;
+    try {
+      username = stateCodec.decode(state).getUsername();
+    } catch (DuoException e) {
       ModelAndView model = new ModelAndView("/index");
       model.addObject("message", "Session Expired");
       return model;
     }
-    // Remove state from the list of valid sessions
-    String username = stateMap.remove(state);
 
     // Step 6: Exchange the auth duoCode for a Token object
     Token token = duoClient.exchangeAuthorizationCodeFor2FAResult(duoCode, username);
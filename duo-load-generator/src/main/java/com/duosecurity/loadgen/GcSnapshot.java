@@ -0,0 +1,52 @@
+package com.duosecurity.loadgen;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The garbage collector counters of the JVM at one point in time.  They cover the whole
+ * process, including the mock server.
+ */
+final class GcSnapshot {
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final long collections;
+
+  private final long collectionMillis;
+
+  private GcSnapshot(long collections, long collectionMillis) {
+    this.collections = collections;
+    this.collectionMillis = collectionMillis;
+  }
+
+  static GcSnapshot take() {
+    long collections = 0;
+    long collectionMillis = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      collections += Math.max(collector.getCollectionCount(), 0);
+      collectionMillis += Math.max(collector.getCollectionTime(), 0);
+    }
+    return new GcSnapshot(collections, collectionMillis);
+  }
+
+  /**
+   * The bytes allocated so far by the calling thread, or -1 if the JVM cannot tell.
+   */
+  static long threadAllocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) THREADS)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  long collectionsSince(GcSnapshot earlier) {
+    return collections - earlier.collections;
+  }
+
+  long collectionMillisSince(GcSnapshot earlier) {
+    return collectionMillis - earlier.collectionMillis;
+  }
+}
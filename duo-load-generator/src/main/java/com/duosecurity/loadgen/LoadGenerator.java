@@ -0,0 +1,251 @@
+package com.duosecurity.loadgen;
+
+import com.duosecurity.Client;
+import com.duosecurity.InMemoryStateStore;
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.mock.MockDuoServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how many complete Universal Prompt logins per second one node can sustain, by
+ * driving a {@link Client} against a {@link MockDuoServer} in the same JVM.  In a closed loop,
+ * a fixed number of workers each start a new login as soon as the previous one ends, which
+ * finds the maximum throughput.  In an open loop, logins arrive at a fixed rate whatever the
+ * response time, as real users do, and latency is measured from when each login was due, so
+ * time spent queued for a worker is included rather than hidden.  Results can be saved as JSON
+ * and two runs compared, for example the same settings against two SDK builds, by putting the
+ * other SDK jar first on the classpath:
+ * {@code java -cp other-sdk.jar:load-generator.jar com.duosecurity.loadgen.LoadGenerator}.
+ * Both builds must have every SDK API the load generator and the mock server use, among
+ * them the closeable Client with its shared transport, streaming token verifier, state prefetch
+ * and trust manager options, api hosts with a port, {@link com.duosecurity.StateStore} and
+ * {@link com.duosecurity.metrics.LatencyHistogram}.  Release 1.2.0 and earlier builds lack them
+ * and fail to start, so they cannot be compared this way.
+ */
+public final class LoadGenerator {
+
+  private static final String CLIENT_ID = "DIXXXXXXXXXXXXXXXXXX";
+
+  private static final String CLIENT_SECRET = "abcdefghijklmnopqrstuvwxyzabcdefghijklmn";
+
+  private static final String REDIRECT_URI = "https://example.com/duo-callback";
+
+  private LoadGenerator() {
+  }
+
+  /**
+   * Runs the load generator, or compares two saved runs.
+   *
+   * @param args See {@link LoadSettings#USAGE}
+   *
+   * @throws Exception If the run cannot be set up or the results cannot be written
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+      System.out.println(LoadSettings.USAGE);
+      return;
+    }
+    if (args.length > 0 && "compare".equals(args[0])) {
+      if (args.length != 3) {
+        exitWithUsage("compare needs two result files");
+      }
+      RunResult.compare(RunResult.read(new File(args[1])), RunResult.read(new File(args[2])),
+          System.out);
+      return;
+    }
+    LoadSettings settings = null;
+    try {
+      settings = LoadSettings.parse(args);
+    } catch (IllegalArgumentException e) {
+      exitWithUsage(e.getMessage());
+    }
+    RunResult result = run(settings, System.out);
+    result.print(System.out);
+    if (settings.output != null) {
+      result.write(new File(settings.output));
+    }
+  }
+
+  /**
+   * Starts a mock server, warms up, then measures for the configured duration.
+   */
+  static RunResult run(LoadSettings settings, PrintStream log)
+      throws IOException, DuoException, InterruptedException {
+    try (MockDuoServer server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET)
+            .setLatency(settings.duoLatency)
+            .setErrors(settings.duoErrors())
+            .setPayload(settings.payload)
+            .start();
+         Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(),
+            REDIRECT_URI)
+            .setCACerts(server.getCaCerts())
+            .setTrustManager(server.getTrustManager())
+            .setUseStreamingTokenVerifier(settings.streamingVerifier)
+            .setUseSharedTransport(settings.sharedTransport)
+            .setStatePrefetch(settings.statePrefetch)
+            .build()) {
+      LoginFlow flow = new LoginFlow(client, server,
+          new InMemoryStateStore<>(15, TimeUnit.MINUTES, 1000000));
+      RunCounters counters = new RunCounters();
+      if (settings.warmupSeconds > 0) {
+        log.printf("warming up for %d s%n", settings.warmupSeconds);
+        drive(settings, flow, counters, TimeUnit.SECONDS.toNanos(settings.warmupSeconds));
+        flow.reset();
+        counters.reset();
+      }
+      log.printf("measuring for %d s%n", settings.durationSeconds);
+      GcSnapshot gcBefore = GcSnapshot.take();
+      long start = System.nanoTime();
+      drive(settings, flow, counters, TimeUnit.SECONDS.toNanos(settings.durationSeconds));
+      long elapsed = System.nanoTime() - start;
+      return RunResult.of(settings.label, settings.describe(), flow, counters, elapsed,
+          gcBefore, GcSnapshot.take());
+    }
+  }
+
+  private static void drive(LoadSettings settings, LoginFlow flow, RunCounters counters,
+                            long durationNanos) throws InterruptedException {
+    Usernames usernames = new Usernames(settings.users);
+    if (settings.isOpenLoop()) {
+      openLoop(settings, new Login(flow, counters, usernames), counters, durationNanos);
+    } else {
+      closedLoop(settings, new Login(flow, counters, usernames), durationNanos);
+    }
+  }
+
+  private static void closedLoop(LoadSettings settings, Login login, long durationNanos)
+      throws InterruptedException {
+    long end = System.nanoTime() + durationNanos;
+    Thread[] workers = new Thread[settings.concurrency];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread(new ClosedLoopWorker(login, end, settings.thinkTimeMillis),
+          "duo-load-" + i);
+      workers[i].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+  }
+
+  private static void openLoop(LoadSettings settings, Login login, RunCounters counters,
+                               long durationNanos) throws InterruptedException {
+    ThreadPoolExecutor workers = new ThreadPoolExecutor(settings.concurrency,
+        settings.concurrency, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    double meanIntervalNanos = 1e9 / settings.rate;
+    long start = System.nanoTime();
+    long end = start + durationNanos;
+    double due = start;
+    while (due < end) {
+      long wait = (long) due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      workers.execute(new Arrival(login, (long) due));
+      due += settings.poisson
+          ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanIntervalNanos
+          : meanIntervalNanos;
+    }
+    workers.shutdown();
+    // Logins still queued after another full duration could not be served at this rate;
+    // they are dropped, and the ones in flight are left to finish
+    if (!workers.awaitTermination(durationNanos, TimeUnit.NANOSECONDS)) {
+      counters.missed.add(workers.getQueue().drainTo(new ArrayList<>()));
+      workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  private static void exitWithUsage(String message) {
+    System.err.println(message);
+    System.err.println(LoadSettings.USAGE);
+    System.exit(2);
+  }
+
+  /**
+   * Cycles through the configured number of distinct usernames.
+   */
+  private static final class Usernames {
+    private final int count;
+    private final AtomicLong next = new AtomicLong();
+
+    Usernames(int count) {
+      this.count = count;
+    }
+
+    String next() {
+      return "user" + (next.getAndIncrement() % count);
+    }
+  }
+
+  /**
+   * One login, counted and with the allocation of the worker thread measured.
+   */
+  private static final class Login {
+    private final LoginFlow flow;
+    private final RunCounters counters;
+    private final Usernames usernames;
+
+    Login(LoginFlow flow, RunCounters counters, Usernames usernames) {
+      this.flow = flow;
+      this.counters = counters;
+      this.usernames = usernames;
+    }
+
+    void run(long dueNanos) {
+      long allocatedBefore = GcSnapshot.threadAllocatedBytes();
+      try {
+        flow.login(usernames.next(), dueNanos);
+        counters.completed.increment();
+      } catch (DuoException | IOException | RuntimeException e) {
+        counters.recordFailure(e);
+      } finally {
+        counters.recordAllocation(allocatedBefore, GcSnapshot.threadAllocatedBytes());
+      }
+    }
+  }
+
+  private static final class ClosedLoopWorker implements Runnable {
+    private final Login login;
+    private final long end;
+    private final long thinkTimeMillis;
+
+    ClosedLoopWorker(Login login, long end, long thinkTimeMillis) {
+      this.login = login;
+      this.end = end;
+      this.thinkTimeMillis = thinkTimeMillis;
+    }
+
+    @Override
+    public void run() {
+      while (System.nanoTime() - end < 0) {
+        login.run(System.nanoTime());
+        if (thinkTimeMillis > 0) {
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(thinkTimeMillis));
+        }
+      }
+    }
+  }
+
+  private static final class Arrival implements Runnable {
+    private final Login login;
+    private final long dueNanos;
+
+    Arrival(Login login, long dueNanos) {
+      this.login = login;
+      this.dueNanos = dueNanos;
+    }
+
+    @Override
+    public void run() {
+      login.run(dueNanos);
+    }
+  }
+}
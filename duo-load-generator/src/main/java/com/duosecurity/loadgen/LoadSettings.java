@@ -0,0 +1,189 @@
+package com.duosecurity.loadgen;
+
+import com.duosecurity.mock.ErrorProfile;
+import com.duosecurity.mock.LatencyProfile;
+import com.duosecurity.mock.PayloadProfile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The options of one load generator run, parsed from the command line.
+ */
+final class LoadSettings {
+
+  static final String USAGE = String.join("\n",
+      "Usage: java -jar load-generator.jar [options]",
+      "       java -jar load-generator.jar compare <baseline.json> <candidate.json>",
+      "",
+      "  --mode closed|open          closed: each worker starts its next login when the last",
+      "                              one ends; open: logins arrive at --rate whether or not",
+      "                              earlier ones have finished (default closed)",
+      "  --concurrency <n>           worker threads (default 16)",
+      "  --rate <n>                  open loop arrivals per second (default 100)",
+      "  --arrivals constant|poisson open loop arrival spacing (default poisson)",
+      "  --think-time <ms>           closed loop pause between a worker's logins (default 0)",
+      "  --warmup <s>                seconds to run before measuring (default 10)",
+      "  --duration <s>              seconds to measure (default 30)",
+      "  --users <n>                 distinct usernames to log in (default 1000)",
+      "  --duo-latency <ms>[:<ms>]   mock Duo delay: fixed, or log-normal median:p99",
+      "  --duo-errors <rate>         share of mock Duo responses that are 503s (default 0)",
+      "  --payload minimal|full      id_token auth_context (default full)",
+      "  --streaming-verifier        Client.Builder.setUseStreamingTokenVerifier(true)",
+      "  --shared-transport          Client.Builder.setUseSharedTransport(true)",
+      "  --state-prefetch <n>        Client.Builder.setStatePrefetch(n)",
+      "  --label <name>              name of this run in reports (default run)",
+      "  --output <file>             also write the results as JSON, for compare");
+
+  String mode = "closed";
+  int concurrency = 16;
+  double rate = 100;
+  boolean poisson = true;
+  long thinkTimeMillis;
+  int warmupSeconds = 10;
+  int durationSeconds = 30;
+  int users = 1000;
+  LatencyProfile duoLatency = LatencyProfile.none();
+  String duoLatencyDescription = "none";
+  double duoErrorRate;
+  PayloadProfile payload = PayloadProfile.full();
+  boolean streamingVerifier;
+  boolean sharedTransport;
+  int statePrefetch;
+  String label = "run";
+  String output;
+
+  boolean isOpenLoop() {
+    return "open".equals(mode);
+  }
+
+  ErrorProfile duoErrors() {
+    return duoErrorRate > 0 ? ErrorProfile.serverErrors(duoErrorRate) : ErrorProfile.none();
+  }
+
+  /**
+   * Parses the command line options.
+   *
+   * @throws IllegalArgumentException For unknown options or invalid values
+   */
+  static LoadSettings parse(String[] args) {
+    LoadSettings settings = new LoadSettings();
+    for (int i = 0; i < args.length; i++) {
+      String option = args[i];
+      switch (option) {
+        case "--streaming-verifier":
+          settings.streamingVerifier = true;
+          continue;
+        case "--shared-transport":
+          settings.sharedTransport = true;
+          continue;
+        default:
+          break;
+      }
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + option);
+      }
+      settings.set(option, args[++i]);
+    }
+    if (settings.concurrency <= 0 || settings.rate <= 0 || settings.durationSeconds <= 0
+        || settings.warmupSeconds < 0 || settings.users <= 0) {
+      throw new IllegalArgumentException("Counts, rates and durations must be positive");
+    }
+    return settings;
+  }
+
+  private void set(String option, String value) {
+    switch (option) {
+      case "--mode":
+        mode = oneOf(option, value, "closed", "open");
+        break;
+      case "--concurrency":
+        concurrency = Integer.parseInt(value);
+        break;
+      case "--rate":
+        rate = Double.parseDouble(value);
+        break;
+      case "--arrivals":
+        poisson = "poisson".equals(oneOf(option, value, "constant", "poisson"));
+        break;
+      case "--think-time":
+        thinkTimeMillis = Long.parseLong(value);
+        break;
+      case "--warmup":
+        warmupSeconds = Integer.parseInt(value);
+        break;
+      case "--duration":
+        durationSeconds = Integer.parseInt(value);
+        break;
+      case "--users":
+        users = Integer.parseInt(value);
+        break;
+      case "--duo-latency":
+        setDuoLatency(value);
+        break;
+      case "--duo-errors":
+        duoErrorRate = Double.parseDouble(value);
+        break;
+      case "--payload":
+        payload = "minimal".equals(oneOf(option, value, "minimal", "full"))
+            ? PayloadProfile.minimal() : PayloadProfile.full();
+        break;
+      case "--state-prefetch":
+        statePrefetch = Integer.parseInt(value);
+        break;
+      case "--label":
+        label = value;
+        break;
+      case "--output":
+        output = value;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown option " + option);
+    }
+  }
+
+  private void setDuoLatency(String value) {
+    int colon = value.indexOf(':');
+    if (colon < 0) {
+      duoLatency = LatencyProfile.fixed(Long.parseLong(value), TimeUnit.MILLISECONDS);
+    } else {
+      duoLatency = LatencyProfile.logNormal(Long.parseLong(value.substring(0, colon)),
+          Long.parseLong(value.substring(colon + 1)), TimeUnit.MILLISECONDS);
+    }
+    duoLatencyDescription = duoLatency.toString();
+  }
+
+  private static String oneOf(String option, String value, String... allowed) {
+    for (String candidate : allowed) {
+      if (candidate.equals(value)) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+  }
+
+  /**
+   * The settings, as recorded with the results.
+   */
+  Map<String, Object> describe() {
+    Map<String, Object> description = new LinkedHashMap<>();
+    description.put("mode", mode);
+    description.put("concurrency", concurrency);
+    if (isOpenLoop()) {
+      description.put("rate", rate);
+      description.put("arrivals", poisson ? "poisson" : "constant");
+    } else {
+      description.put("thinkTimeMillis", thinkTimeMillis);
+    }
+    description.put("warmupSeconds", warmupSeconds);
+    description.put("durationSeconds", durationSeconds);
+    description.put("users", users);
+    description.put("duoLatency", duoLatencyDescription);
+    description.put("duoErrorRate", duoErrorRate);
+    description.put("payload", payload.toString());
+    description.put("streamingVerifier", streamingVerifier);
+    description.put("sharedTransport", sharedTransport);
+    description.put("statePrefetch", statePrefetch);
+    return description;
+  }
+}
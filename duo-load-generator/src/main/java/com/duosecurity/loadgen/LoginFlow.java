@@ -0,0 +1,91 @@
+package com.duosecurity.loadgen;
+
+import com.duosecurity.Client;
+import com.duosecurity.StateStore;
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.metrics.LatencyHistogram;
+import com.duosecurity.mock.MockDuoServer;
+import com.duosecurity.model.Token;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+
+/**
+ * Runs complete logins the way an integration such as duo-example does, recording how long
+ * each {@link Phase} takes.
+ */
+final class LoginFlow {
+
+  private final Client client;
+
+  private final MockDuoServer server;
+
+  private final OkHttpClient browser;
+
+  private final StateStore<String> pendingLogins;
+
+  private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+
+  LoginFlow(Client client, MockDuoServer server, StateStore<String> pendingLogins) {
+    this.client = client;
+    this.server = server;
+    this.browser = server.newBrowser();
+    this.pendingLogins = pendingLogins;
+    for (Phase phase : Phase.values()) {
+      histograms.put(phase, new LatencyHistogram());
+    }
+  }
+
+  /**
+   * Logs one user in.
+   *
+   * @param username  The user to log in
+   * @param dueNanos  When the login was due to start, by System.nanoTime; in an open loop this
+   *                  is earlier than now if the login had to wait for a free worker
+   */
+  void login(String username, long dueNanos) throws DuoException, IOException {
+    long start = System.nanoTime();
+    String state = client.generateState();
+    long stateGenerated = record(Phase.GENERATE_STATE, start);
+
+    String authUrl = client.createAuthUrl(username, state);
+    pendingLogins.put(state, username);
+    long authUrlCreated = record(Phase.CREATE_AUTH_URL, stateGenerated);
+
+    String callback = server.completePrompt(browser, authUrl);
+    long promptCompleted = record(Phase.PROMPT, authUrlCreated);
+
+    HttpUrl callbackUrl = HttpUrl.get(callback);
+    String returnedUsername = pendingLogins.consume(callbackUrl.queryParameter("state"));
+    String duoCode = callbackUrl.queryParameter("duo_code");
+    if (returnedUsername == null || duoCode == null) {
+      throw new DuoException("The callback did not match a pending login");
+    }
+    long callbackHandled = record(Phase.CALLBACK, promptCompleted);
+
+    Token token = client.exchangeAuthorizationCodeFor2FAResult(duoCode, returnedUsername);
+    if (!username.equals(token.getPreferred_username())) {
+      throw new DuoException("The token is for another user");
+    }
+    record(Phase.EXCHANGE, callbackHandled);
+    record(Phase.LOGIN, dueNanos);
+  }
+
+  LatencyHistogram getHistogram(Phase phase) {
+    return histograms.get(phase);
+  }
+
+  void reset() {
+    for (LatencyHistogram histogram : histograms.values()) {
+      histogram.reset();
+    }
+  }
+
+  private long record(Phase phase, long since) {
+    long now = System.nanoTime();
+    histograms.get(phase).record(now - since);
+    return now;
+  }
+}
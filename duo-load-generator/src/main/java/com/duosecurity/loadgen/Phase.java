@@ -0,0 +1,19 @@
+package com.duosecurity.loadgen;
+
+/**
+ * The steps of one complete Universal Prompt login, timed separately.
+ */
+enum Phase {
+  /** Client.generateState. */
+  GENERATE_STATE,
+  /** Client.createAuthUrl. */
+  CREATE_AUTH_URL,
+  /** The browser following the auth URL until Duo redirects back. */
+  PROMPT,
+  /** Parsing the callback and looking up the pending login by state. */
+  CALLBACK,
+  /** Client.exchangeAuthorizationCodeFor2FAResult. */
+  EXCHANGE,
+  /** The whole login, from when it was due to start. */
+  LOGIN
+}
@@ -0,0 +1,61 @@
+package com.duosecurity.loadgen;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Login outcomes and client side allocation, counted by every worker.
+ */
+final class RunCounters {
+
+  private static final int MAXIMUM_FAILURE_KINDS = 20;
+
+  final LongAdder completed = new LongAdder();
+
+  final LongAdder failed = new LongAdder();
+
+  final LongAdder missed = new LongAdder();
+
+  final LongAdder allocatedBytes = new LongAdder();
+
+  final LongAdder allocationSamples = new LongAdder();
+
+  private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+  void recordFailure(Exception e) {
+    failed.increment();
+    String kind = e.getClass().getSimpleName() + ": " + e.getMessage();
+    LongAdder count = failures.get(kind);
+    if (count == null && failures.size() < MAXIMUM_FAILURE_KINDS) {
+      count = failures.computeIfAbsent(kind, k -> new LongAdder());
+    }
+    if (count != null) {
+      count.increment();
+    }
+  }
+
+  void recordAllocation(long before, long after) {
+    if (before >= 0 && after >= before) {
+      allocatedBytes.add(after - before);
+      allocationSamples.increment();
+    }
+  }
+
+  Map<String, Long> failureSummary() {
+    Map<String, Long> summary = new TreeMap<>();
+    failures.forEach((kind, count) -> summary.put(kind, count.sum()));
+    return summary;
+  }
+
+  void reset() {
+    completed.reset();
+    failed.reset();
+    missed.reset();
+    allocatedBytes.reset();
+    allocationSamples.reset();
+    failures.clear();
+  }
+}
@@ -0,0 +1,168 @@
+package com.duosecurity.loadgen;
+
+import com.duosecurity.Client;
+import com.duosecurity.metrics.LatencyHistogram;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.security.CodeSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The measurements of one run, which can be printed, saved as JSON and compared with the
+ * results of another run, typically of another SDK build.
+ */
+final class RunResult {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .enable(SerializationFeature.INDENT_OUTPUT);
+
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private final Map<String, Object> values;
+
+  private RunResult(Map<String, Object> values) {
+    this.values = values;
+  }
+
+  /**
+   * Collects the results of a finished run.
+   */
+  static RunResult of(String label, Map<String, Object> settings, LoginFlow flow,
+                      RunCounters counters, long elapsedNanos, GcSnapshot gcBefore,
+                      GcSnapshot gcAfter) {
+    Map<String, Object> values = new LinkedHashMap<>();
+    values.put("label", label);
+    values.put("sdk", sdkLocation());
+    values.put("java", System.getProperty("java.vendor") + " "
+        + System.getProperty("java.version"));
+    values.put("settings", settings);
+    double seconds = elapsedNanos / 1e9;
+    long logins = counters.completed.sum();
+    values.put("logins", logins);
+    values.put("failed", counters.failed.sum());
+    values.put("missed", counters.missed.sum());
+    values.put("elapsedSeconds", seconds);
+    values.put("throughput", logins / seconds);
+
+    Map<String, Object> phases = new LinkedHashMap<>();
+    for (Phase phase : Phase.values()) {
+      LatencyHistogram histogram = flow.getHistogram(phase);
+      Map<String, Object> summary = new LinkedHashMap<>();
+      summary.put("count", histogram.getCount());
+      summary.put("mean", histogram.getMean() / NANOS_PER_MILLI);
+      for (int i = 0; i < PERCENTILES.length; i++) {
+        summary.put(PERCENTILE_NAMES[i],
+            histogram.getValueAtPercentile(PERCENTILES[i]) / NANOS_PER_MILLI);
+      }
+      summary.put("max", histogram.getMax() / NANOS_PER_MILLI);
+      phases.put(phase.name(), summary);
+    }
+    values.put("phasesMillis", phases);
+
+    Map<String, Object> gc = new LinkedHashMap<>();
+    gc.put("collections", gcAfter.collectionsSince(gcBefore));
+    gc.put("collectionMillis", gcAfter.collectionMillisSince(gcBefore));
+    long measured = counters.allocationSamples.sum();
+    gc.put("allocatedBytesPerLogin",
+        measured > 0 ? counters.allocatedBytes.sum() / measured : -1);
+    values.put("gc", gc);
+    values.put("failures", counters.failureSummary());
+    return new RunResult(values);
+  }
+
+  static RunResult read(File file) throws IOException {
+    @SuppressWarnings("unchecked")
+    Map<String, Object> values = MAPPER.readValue(file, Map.class);
+    return new RunResult(values);
+  }
+
+  void write(File file) throws IOException {
+    MAPPER.writeValue(file, values);
+  }
+
+  double number(String... path) {
+    Object value = values;
+    for (String key : path) {
+      value = value instanceof Map ? ((Map<?, ?>) value).get(key) : null;
+    }
+    return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+  }
+
+  /**
+   * Prints the results as a table.
+   */
+  void print(PrintStream out) {
+    out.printf("%s  (sdk %s, java %s)%n", values.get("label"), values.get("sdk"),
+        values.get("java"));
+    out.printf("settings %s%n", values.get("settings"));
+    out.printf("logins %.0f in %.1f s: %.1f/s, failed %.0f, missed %.0f%n",
+        number("logins"), number("elapsedSeconds"), number("throughput"), number("failed"),
+        number("missed"));
+    out.printf("%-16s %9s %9s %9s %9s %9s %9s %9s   (ms)%n", "phase", "count", "mean",
+        "p50", "p90", "p99", "p99.9", "max");
+    for (Phase phase : Phase.values()) {
+      out.printf("%-16s %9.0f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", phase,
+          phase(phase, "count"), phase(phase, "mean"), phase(phase, "p50"),
+          phase(phase, "p90"), phase(phase, "p99"), phase(phase, "p99.9"),
+          phase(phase, "max"));
+    }
+    out.printf("gc %.0f collections, %.0f ms; %.0f bytes allocated per login by the client "
+        + "thread%n", number("gc", "collections"), number("gc", "collectionMillis"),
+        number("gc", "allocatedBytesPerLogin"));
+    Object failures = values.get("failures");
+    if (failures instanceof Map && !((Map<?, ?>) failures).isEmpty()) {
+      out.printf("failures %s%n", failures);
+    }
+  }
+
+  /**
+   * Prints the headline numbers of two runs side by side, with the relative change.
+   */
+  static void compare(RunResult baseline, RunResult candidate, PrintStream out) {
+    out.printf("%-28s %14s %14s %9s%n", "", baseline.values.get("label"),
+        candidate.values.get("label"), "change");
+    compareLine(out, "throughput (/s)", baseline.number("throughput"),
+        candidate.number("throughput"));
+    compareLine(out, "failed", baseline.number("failed"), candidate.number("failed"));
+    for (Phase phase : Phase.values()) {
+      for (String percentile : new String[] {"p50", "p99", "p99.9"}) {
+        compareLine(out, phase + " " + percentile + " (ms)", baseline.phase(phase, percentile),
+            candidate.phase(phase, percentile));
+      }
+    }
+    compareLine(out, "gc collections", baseline.number("gc", "collections"),
+        candidate.number("gc", "collections"));
+    compareLine(out, "gc time (ms)", baseline.number("gc", "collectionMillis"),
+        candidate.number("gc", "collectionMillis"));
+    compareLine(out, "allocated per login (B)", baseline.number("gc", "allocatedBytesPerLogin"),
+        candidate.number("gc", "allocatedBytesPerLogin"));
+  }
+
+  private double phase(Phase phase, String key) {
+    return number("phasesMillis", phase.name(), key);
+  }
+
+  private static void compareLine(PrintStream out, String name, double baseline,
+                                  double candidate) {
+    String change = baseline != 0 && !Double.isNaN(baseline) && !Double.isNaN(candidate)
+        ? String.format("%+8.1f%%", (candidate - baseline) / baseline * 100) : "";
+    out.printf("%-28s %14.3f %14.3f %9s%n", name, baseline, candidate, change);
+  }
+
+  /**
+   * Where the SDK classes were loaded from, to tell builds apart.
+   */
+  private static String sdkLocation() {
+    CodeSource source = Client.class.getProtectionDomain().getCodeSource();
+    return source != null && source.getLocation() != null
+        ? source.getLocation().toString() : "unknown";
+  }
+}
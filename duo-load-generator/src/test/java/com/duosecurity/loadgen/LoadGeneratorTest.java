@@ -0,0 +1,36 @@
+package com.duosecurity.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @Test
+    void closed_loop_run_logs_in_and_compares() throws Exception {
+        LoadSettings settings = LoadSettings.parse(new String[] {
+            "--concurrency", "2", "--warmup", "0", "--duration", "1", "--users", "10"});
+        PrintStream log = new PrintStream(new ByteArrayOutputStream());
+
+        RunResult result = LoadGenerator.run(settings, log);
+
+        assertTrue(result.number("logins") > 0);
+        assertEquals(0, result.number("failed"));
+        assertEquals(result.number("logins"), result.number("phasesMillis", "LOGIN", "count"));
+
+        File file = File.createTempFile("load-generator", ".json");
+        try {
+            result.write(file);
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            RunResult.compare(result, RunResult.read(file), new PrintStream(report));
+            assertTrue(report.toString().contains("LOGIN"));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.duosecurity.mock;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often the mock server fails a request instead of answering it normally.  Server errors
+ * are answered with a 503 and a Duo style error body.  Disconnects close the connection without
+ * sending a response, as a reset or a crashed load balancer would.  Injected failures are
+ * decided before the request is validated.
+ */
+public final class ErrorProfile {
+
+  private static final ErrorProfile NONE = new ErrorProfile(0, 0);
+
+  private final double serverErrorRate;
+
+  private final double disconnectRate;
+
+  private ErrorProfile(double serverErrorRate, double disconnectRate) {
+    this.serverErrorRate = serverErrorRate;
+    this.disconnectRate = disconnectRate;
+  }
+
+  /**
+   * Never inject failures.
+   *
+   * @return the profile
+   */
+  public static ErrorProfile none() {
+    return NONE;
+  }
+
+  /**
+   * Answer the given fraction of requests with a 503.
+   *
+   * @param rate Between 0 and 1
+   *
+   * @return the profile
+   */
+  public static ErrorProfile serverErrors(double rate) {
+    return new ErrorProfile(checkRate(rate), 0);
+  }
+
+  /**
+   * A copy of this profile that also drops the given fraction of connections.
+   *
+   * @param rate Between 0 and 1; together with the server error rate at most 1
+   *
+   * @return the profile
+   */
+  public ErrorProfile withDisconnects(double rate) {
+    if (serverErrorRate + checkRate(rate) > 1) {
+      throw new IllegalArgumentException("The error rates cannot add up to more than 1");
+    }
+    return new ErrorProfile(serverErrorRate, rate);
+  }
+
+  Fault nextFault() {
+    if (serverErrorRate == 0 && disconnectRate == 0) {
+      return Fault.NONE;
+    }
+    double draw = ThreadLocalRandom.current().nextDouble();
+    if (draw < disconnectRate) {
+      return Fault.DISCONNECT;
+    }
+    return draw < disconnectRate + serverErrorRate ? Fault.SERVER_ERROR : Fault.NONE;
+  }
+
+  @Override
+  public String toString() {
+    return "ErrorProfile(serverErrors " + serverErrorRate + ", disconnects " + disconnectRate
+        + ")";
+  }
+
+  private static double checkRate(double rate) {
+    if (!(rate >= 0 && rate <= 1)) {
+      throw new IllegalArgumentException("Rates must be between 0 and 1");
+    }
+    return rate;
+  }
+
+  enum Fault {
+    NONE, SERVER_ERROR, DISCONNECT
+  }
+}
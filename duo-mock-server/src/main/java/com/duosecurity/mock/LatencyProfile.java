@@ -0,0 +1,118 @@
+package com.duosecurity.mock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the mock server waits before answering a request, to stand in for the network and
+ * Duo's own processing time.
+ */
+public final class LatencyProfile {
+
+  // The 99th percentile of the standard normal distribution
+  private static final double Z_99 = 2.326348;
+
+  private static final LatencyProfile NONE = new LatencyProfile(Shape.FIXED, 0, 0, "none");
+
+  private final Shape shape;
+
+  private final double first;
+
+  private final double second;
+
+  private final String description;
+
+  private LatencyProfile(Shape shape, double first, double second, String description) {
+    this.shape = shape;
+    this.first = first;
+    this.second = second;
+    this.description = description;
+  }
+
+  /**
+   * Answer immediately.
+   *
+   * @return the profile
+   */
+  public static LatencyProfile none() {
+    return NONE;
+  }
+
+  /**
+   * Wait the same time before every response.
+   *
+   * @param delay The delay
+   * @param unit  The unit of delay
+   *
+   * @return the profile
+   */
+  public static LatencyProfile fixed(long delay, TimeUnit unit) {
+    checkNotNegative(delay);
+    return new LatencyProfile(Shape.FIXED, unit.toNanos(delay), 0,
+        "fixed(" + delay + " " + unit + ")");
+  }
+
+  /**
+   * Wait a uniformly distributed time between min and max.
+   *
+   * @param min  The shortest delay
+   * @param max  The longest delay
+   * @param unit The unit of min and max
+   *
+   * @return the profile
+   */
+  public static LatencyProfile uniform(long min, long max, TimeUnit unit) {
+    checkNotNegative(min);
+    if (max < min) {
+      throw new IllegalArgumentException("max must not be less than min");
+    }
+    return new LatencyProfile(Shape.UNIFORM, unit.toNanos(min), unit.toNanos(max),
+        "uniform(" + min + ".." + max + " " + unit + ")");
+  }
+
+  /**
+   * Wait a log-normally distributed time, which has the long tail seen from real services.
+   *
+   * @param median The median delay
+   * @param p99    The 99th percentile delay
+   * @param unit   The unit of median and p99
+   *
+   * @return the profile
+   */
+  public static LatencyProfile logNormal(long median, long p99, TimeUnit unit) {
+    if (median <= 0 || p99 < median) {
+      throw new IllegalArgumentException("median must be positive and p99 at least the median");
+    }
+    double mu = Math.log(unit.toNanos(median));
+    double sigma = (Math.log(unit.toNanos(p99)) - mu) / Z_99;
+    return new LatencyProfile(Shape.LOG_NORMAL, mu, sigma,
+        "logNormal(median " + median + ", p99 " + p99 + " " + unit + ")");
+  }
+
+  long nextDelayNanos() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    switch (shape) {
+      case UNIFORM:
+        return (long) (first + random.nextDouble() * (second - first));
+      case LOG_NORMAL:
+        return (long) Math.exp(first + second * random.nextGaussian());
+      default:
+        return (long) first;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+
+  private static void checkNotNegative(long delay) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Delays cannot be negative");
+    }
+  }
+
+  private enum Shape {
+    FIXED, UNIFORM, LOG_NORMAL
+  }
+}
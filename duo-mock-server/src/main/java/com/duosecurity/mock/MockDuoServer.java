@@ -0,0 +1,742 @@
+package com.duosecurity.mock;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.duosecurity.InMemoryStateStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.X509TrustManager;
+import okhttp3.CertificatePinner;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+/**
+ * An in-process stand-in for the Duo OAuth endpoints used by the SDK, for load and latency
+ * testing without calling Duo.  It answers /oauth/v1/health_check by validating the client
+ * assertion and reporting Duo as healthy.  It answers /oauth/v1/authorize by validating the
+ * request JWT and completing the prompt at once, redirecting to the redirect_uri with a
+ * duo_code.  It answers /oauth/v1/token by validating the client assertion, consuming the code
+ * and issuing an HS512 id_token signed with the client secret.  The server listens on localhost
+ * over TLS, with a certificate issued by a CA generated when it starts.  Point a Client at it
+ * with {@link #getApiHost()}, pin {@link #getCaCerts()} and trust {@link #getTrustManager()}.
+ */
+public final class MockDuoServer implements Closeable {
+
+  private static final String CLIENT_ASSERTION_TYPE
+      = "urn:ietf:params:oauth:client-assertion-type:jwt-bearer";
+
+  private static final int CODE_TIME_TO_LIVE_SECONDS = 300;
+
+  private static final int ID_TOKEN_TIME_TO_LIVE_SECONDS = 3600;
+
+  private static final int MAXIMUM_PENDING = 1000000;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static {
+    // Without TCP_NODELAY, responses on kept-alive connections wait on the client's delayed
+    // ACK, adding tens of milliseconds to every request.  Read once, when the JDK's HTTP
+    // server is first used, so an explicit setting on the command line still wins.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  /**
+   * The endpoints the mock server implements.
+   */
+  public enum Endpoint {
+    HEALTH_CHECK("/oauth/v1/health_check"),
+    AUTHORIZE("/oauth/v1/authorize"),
+    TOKEN("/oauth/v1/token");
+
+    private final String path;
+
+    Endpoint(String path) {
+      this.path = path;
+    }
+
+    public String getPath() {
+      return path;
+    }
+  }
+
+  private final String clientId;
+
+  private final Algorithm algorithm;
+
+  private final Map<Endpoint, LatencyProfile> latency;
+
+  private final Map<Endpoint, ErrorProfile> errors;
+
+  private final PayloadProfile payload;
+
+  private final HttpsServer server;
+
+  private final ExecutorService executor;
+
+  private final String apiHost;
+
+  private final X509Certificate caCertificate;
+
+  private final String caCertPin;
+
+  private final X509TrustManager trustManager;
+
+  private final JWTVerifier healthCheckAssertions;
+
+  private final JWTVerifier tokenAssertions;
+
+  private final JWTVerifier authorizeRequests;
+
+  private final InMemoryStateStore<Boolean> usedAssertionIds;
+
+  private final InMemoryStateStore<PendingAuth> pendingCodes;
+
+  private final Map<Endpoint, Counters> counters = new EnumMap<>(Endpoint.class);
+
+  private MockDuoServer(Builder builder) throws IOException {
+    this.clientId = builder.clientId;
+    this.algorithm = Algorithm.HMAC512(builder.clientSecret);
+    this.latency = new EnumMap<>(builder.latency);
+    this.errors = new EnumMap<>(builder.errors);
+    this.payload = builder.payload;
+    for (Endpoint endpoint : Endpoint.values()) {
+      counters.put(endpoint, new Counters());
+    }
+
+    HeldCertificate ca = new HeldCertificate.Builder()
+        .certificateAuthority(0)
+        .commonName("Duo Mock Server CA")
+        .build();
+    HeldCertificate serverCertificate = new HeldCertificate.Builder()
+        .commonName("localhost")
+        .addSubjectAlternativeName("localhost")
+        .signedBy(ca)
+        .build();
+    final HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+        .heldCertificate(serverCertificate, ca.certificate())
+        .build();
+    this.caCertificate = ca.certificate();
+    this.trustManager = new HandshakeCertificates.Builder()
+        .addTrustedCertificate(caCertificate)
+        .build()
+        .trustManager();
+    this.caCertPin = CertificatePinner.pin(ca.certificate());
+
+    this.server = HttpsServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), builder.backlog);
+    this.server.setHttpsConfigurator(new HttpsConfigurator(serverCertificates.sslContext()));
+    this.apiHost = "localhost:" + server.getAddress().getPort();
+
+    this.healthCheckAssertions = assertionVerifier(Endpoint.HEALTH_CHECK);
+    this.tokenAssertions = assertionVerifier(Endpoint.TOKEN);
+    this.authorizeRequests = JWT.require(algorithm)
+        .withClaim("client_id", clientId)
+        .withClaim("response_type", "code")
+        .withClaim("scope", "openid")
+        .build();
+    this.usedAssertionIds = new InMemoryStateStore<>(1, TimeUnit.HOURS, MAXIMUM_PENDING);
+    this.pendingCodes = new InMemoryStateStore<>(CODE_TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS,
+        MAXIMUM_PENDING);
+
+    this.executor = Executors.newCachedThreadPool(new WorkerFactory());
+    this.server.setExecutor(executor);
+    this.server.createContext(Endpoint.HEALTH_CHECK.path, handler(Endpoint.HEALTH_CHECK));
+    this.server.createContext(Endpoint.AUTHORIZE.path, handler(Endpoint.AUTHORIZE));
+    this.server.createContext(Endpoint.TOKEN.path, handler(Endpoint.TOKEN));
+    this.server.start();
+  }
+
+  /**
+   * Starts configuring a mock server for one Duo application.
+   *
+   * @param clientId     The client id the SDK will use
+   * @param clientSecret The client secret the SDK will use
+   *
+   * @return the Builder
+   */
+  public static Builder builder(String clientId, String clientSecret) {
+    return new Builder(clientId, clientSecret);
+  }
+
+  /**
+   * The value to pass as the Client's apiHost.
+   *
+   * @return localhost and the port the server is listening on
+   */
+  public String getApiHost() {
+    return apiHost;
+  }
+
+  /**
+   * The pin of the CA that issued the server certificate, for {@code Client.Builder.setCACerts}.
+   *
+   * @return the CA Certificates to pin
+   */
+  public String[] getCaCerts() {
+    return new String[] {caCertPin};
+  }
+
+  /**
+   * A trust manager that trusts the CA that issued the server certificate, for
+   * {@code Client.Builder.setTrustManager}.
+   *
+   * @return the trust manager
+   */
+  public X509TrustManager getTrustManager() {
+    return trustManager;
+  }
+
+  /**
+   * Does what the user's browser does with the URL from {@code Client.createAuthUrl}: asks the
+   * server to authorize it and returns the callback URL Duo redirects back to, with the state
+   * and duo_code.
+   *
+   * @param httpClient A client that trusts {@link #getTrustManager()} and does not follow
+   *                   redirects, see {@link #newBrowser()}
+   * @param authUrl    The URL returned by createAuthUrl
+   *
+   * @return the callback URL
+   *
+   * @throws IOException If the request fails or is not redirected
+   */
+  public String completePrompt(OkHttpClient httpClient, String authUrl) throws IOException {
+    try (Response response = httpClient.newCall(new Request.Builder().url(authUrl).build())
+        .execute()) {
+      String location = response.header("Location");
+      if (response.code() != 302 || location == null) {
+        throw new IOException("The prompt was not completed: " + response.code() + " "
+            + (response.body() != null ? response.body().string() : ""));
+      }
+      return location;
+    }
+  }
+
+  /**
+   * A client that acts as the user's browser for {@link #completePrompt}.
+   *
+   * @return an OkHttpClient that trusts this server and does not follow redirects
+   */
+  public OkHttpClient newBrowser() {
+    HandshakeCertificates trusted = new HandshakeCertificates.Builder()
+        .addTrustedCertificate(caCertificate)
+        .build();
+    return new OkHttpClient.Builder()
+        .sslSocketFactory(trusted.sslSocketFactory(), trusted.trustManager())
+        .followRedirects(false)
+        .build();
+  }
+
+  /**
+   * The number of requests received by the endpoint.
+   *
+   * @param endpoint The endpoint
+   *
+   * @return the request count since the server started
+   */
+  public long getRequestCount(Endpoint endpoint) {
+    return counters.get(endpoint).requests.sum();
+  }
+
+  /**
+   * The number of requests the endpoint rejected as invalid, such as a bad client assertion
+   * or an unknown code.
+   *
+   * @param endpoint The endpoint
+   *
+   * @return the rejected count since the server started
+   */
+  public long getRejectedCount(Endpoint endpoint) {
+    return counters.get(endpoint).rejected.sum();
+  }
+
+  /**
+   * The number of requests failed by the {@link ErrorProfile}.
+   *
+   * @param endpoint The endpoint
+   *
+   * @return the injected failure count since the server started
+   */
+  public long getInjectedFailureCount(Endpoint endpoint) {
+    return counters.get(endpoint).injected.sum();
+  }
+
+  /**
+   * Stops the server, closing open connections.
+   */
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private JWTVerifier assertionVerifier(Endpoint endpoint) {
+    return JWT.require(algorithm)
+        .withIssuer(clientId)
+        .withSubject(clientId)
+        .withAudience("https://" + apiHost + endpoint.path)
+        .withClaimPresence("exp")
+        .withClaimPresence("jti")
+        .build();
+  }
+
+  private HttpHandler handler(Endpoint endpoint) {
+    return exchange -> {
+      Counters counter = counters.get(endpoint);
+      counter.requests.increment();
+      try {
+        long delay = latency.get(endpoint).nextDelayNanos();
+        if (delay > 0) {
+          TimeUnit.NANOSECONDS.sleep(delay);
+        }
+        switch (errors.get(endpoint).nextFault()) {
+          case DISCONNECT:
+            counter.injected.increment();
+            return;
+          case SERVER_ERROR:
+            counter.injected.increment();
+            Reply.error(endpoint, 503, "service_unavailable", "Injected failure").send(exchange);
+            return;
+          default:
+            break;
+        }
+        Reply reply = handle(endpoint, exchange);
+        if (reply.status >= 400) {
+          counter.rejected.increment();
+        }
+        reply.send(exchange);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        exchange.close();
+      }
+    };
+  }
+
+  private Reply handle(Endpoint endpoint, HttpExchange exchange) throws IOException {
+    switch (endpoint) {
+      case HEALTH_CHECK:
+        return healthCheck(exchange);
+      case AUTHORIZE:
+        return authorize(exchange);
+      default:
+        return token(exchange);
+    }
+  }
+
+  private Reply healthCheck(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      return Reply.error(Endpoint.HEALTH_CHECK, 405, "invalid_request", "Use POST");
+    }
+    Map<String, String> form = parseForm(readBody(exchange));
+    if (!clientId.equals(form.get("client_id"))
+        || !validAssertion(healthCheckAssertions, form.get("client_assertion"))) {
+      return Reply.error(Endpoint.HEALTH_CHECK, 400, "invalid_client",
+          "The client assertion is invalid");
+    }
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("timestamp", epochSeconds());
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("stat", "OK");
+    body.put("response", response);
+    return Reply.json(200, body);
+  }
+
+  private Reply authorize(HttpExchange exchange) {
+    Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+    String redirectUri = query.get("redirect_uri");
+    DecodedJWT request;
+    try {
+      request = query.containsKey("request") ? authorizeRequests.verify(query.get("request"))
+          : null;
+    } catch (JWTVerificationException e) {
+      request = null;
+    }
+    if (request == null) {
+      return Reply.error(Endpoint.AUTHORIZE, 400, "invalid_request", "The request is invalid");
+    }
+    String state = request.getClaim("state").asString();
+    String username = request.getClaim("duo_uname").asString();
+    if (!clientId.equals(query.get("client_id")) || redirectUri == null
+        || !redirectUri.equals(request.getClaim("redirect_uri").asString())
+        || state == null || username == null) {
+      return Reply.error(Endpoint.AUTHORIZE, 400, "invalid_request", "The request is invalid");
+    }
+    String code = randomHex(32);
+    pendingCodes.put(code, new PendingAuth(username, redirectUri,
+        request.getClaim("nonce").asString()));
+    Boolean useDuoCode = request.getClaim("use_duo_code_attribute").asBoolean();
+    String location = redirectUri + (redirectUri.indexOf('?') < 0 ? '?' : '&')
+        + (Boolean.TRUE.equals(useDuoCode) ? "duo_code=" : "code=") + code
+        + "&state=" + encode(state);
+    return Reply.redirect(location);
+  }
+
+  private Reply token(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      return Reply.error(Endpoint.TOKEN, 405, "invalid_request", "Use POST");
+    }
+    Map<String, String> form = parseForm(readBody(exchange));
+    if (!"authorization_code".equals(form.get("grant_type"))) {
+      return Reply.error(Endpoint.TOKEN, 400, "unsupported_grant_type",
+          "The grant type must be authorization_code");
+    }
+    if (!CLIENT_ASSERTION_TYPE.equals(form.get("client_assertion_type"))
+        || !validAssertion(tokenAssertions, form.get("client_assertion"))) {
+      return Reply.error(Endpoint.TOKEN, 400, "invalid_client",
+          "The client assertion is invalid");
+    }
+    String code = form.get("code");
+    PendingAuth pending = code != null ? pendingCodes.consume(code) : null;
+    if (pending == null || !pending.redirectUri.equals(form.get("redirect_uri"))) {
+      return Reply.error(Endpoint.TOKEN, 400, "invalid_grant",
+          "The code is invalid, expired or already used");
+    }
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("access_token", randomHex(32));
+    body.put("id_token", idToken(pending));
+    body.put("expires_in", ID_TOKEN_TIME_TO_LIVE_SECONDS);
+    body.put("token_type", "Bearer");
+    return Reply.json(200, body);
+  }
+
+  private String idToken(PendingAuth pending) {
+    long now = System.currentTimeMillis();
+    JWTCreator.Builder builder = JWT.create()
+        .withIssuer("https://" + apiHost + Endpoint.TOKEN.path)
+        .withAudience(clientId)
+        .withSubject(pending.username)
+        .withIssuedAt(new Date(now))
+        .withExpiresAt(new Date(now + TimeUnit.SECONDS.toMillis(ID_TOKEN_TIME_TO_LIVE_SECONDS)))
+        .withClaim("auth_time", now / 1000)
+        .withClaim("preferred_username", pending.username)
+        .withClaim("auth_result", payload.authResult())
+        .withClaim("auth_context", payload.authContext(clientId, pending.username,
+            randomHex(32), epochSeconds()));
+    if (pending.nonce != null) {
+      builder.withClaim("nonce", pending.nonce);
+    }
+    String padding = payload.padding();
+    if (padding != null) {
+      builder.withClaim("padding", padding);
+    }
+    return builder.sign(algorithm);
+  }
+
+  private boolean validAssertion(JWTVerifier verifier, String assertion) {
+    if (assertion == null) {
+      return false;
+    }
+    try {
+      DecodedJWT decoded = verifier.verify(assertion);
+      // Like Duo, refuse an assertion that has been used before
+      return usedAssertionIds.put(decoded.getId(), Boolean.TRUE);
+    } catch (JWTVerificationException e) {
+      return false;
+    }
+  }
+
+  private static int epochSeconds() {
+    return (int) (System.currentTimeMillis() / 1000);
+  }
+
+  /**
+   * Codes and transaction ids only need to be unique here, not unpredictable.
+   */
+  private static String randomHex(int length) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    StringBuilder hex = new StringBuilder(length);
+    while (hex.length() < length) {
+      hex.append(Long.toHexString(random.nextLong() | Long.MIN_VALUE));
+    }
+    return hex.substring(0, length);
+  }
+
+  private static byte[] readBody(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    try (InputStream in = exchange.getRequestBody()) {
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        body.write(buffer, 0, read);
+      }
+    }
+    return body.toByteArray();
+  }
+
+  private static Map<String, String> parseForm(byte[] body) throws UnsupportedEncodingException {
+    return parseForm(new String(body, "UTF-8"));
+  }
+
+  private static Map<String, String> parseForm(String form) {
+    Map<String, String> fields = new HashMap<>();
+    if (form == null || form.isEmpty()) {
+      return fields;
+    }
+    for (String field : form.split("&")) {
+      int equals = field.indexOf('=');
+      if (equals > 0) {
+        fields.put(decode(field.substring(0, equals)), decode(field.substring(equals + 1)));
+      }
+    }
+    return fields;
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, "UTF-8");
+    } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+      return value;
+    }
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Configures and starts a {@link MockDuoServer}.
+   */
+  public static final class Builder {
+    private final String clientId;
+    private final String clientSecret;
+    private final Map<Endpoint, LatencyProfile> latency = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, ErrorProfile> errors = new EnumMap<>(Endpoint.class);
+    private PayloadProfile payload = PayloadProfile.full();
+    private int port;
+    private int backlog = 1024;
+
+    private Builder(String clientId, String clientSecret) {
+      this.clientId = clientId;
+      this.clientSecret = clientSecret;
+      setLatency(LatencyProfile.none());
+      setErrors(ErrorProfile.none());
+    }
+
+    /**
+     * Optionally listen on a fixed port.  Defaults to a free port chosen when the server
+     * starts.
+     *
+     * @param port The port
+     *
+     * @return the Builder
+     */
+    public Builder setPort(int port) {
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * Optionally set how many connections may wait to be accepted.  Defaults to 1024.
+     *
+     * @param backlog The accept backlog
+     *
+     * @return the Builder
+     */
+    public Builder setBacklog(int backlog) {
+      this.backlog = backlog;
+      return this;
+    }
+
+    /**
+     * Optionally delay the responses of every endpoint.  Defaults to no delay.
+     *
+     * @param profile The latency profile
+     *
+     * @return the Builder
+     */
+    public Builder setLatency(LatencyProfile profile) {
+      for (Endpoint endpoint : Endpoint.values()) {
+        latency.put(endpoint, profile);
+      }
+      return this;
+    }
+
+    /**
+     * Optionally delay the responses of one endpoint.
+     *
+     * @param endpoint The endpoint
+     * @param profile  The latency profile
+     *
+     * @return the Builder
+     */
+    public Builder setLatency(Endpoint endpoint, LatencyProfile profile) {
+      latency.put(endpoint, profile);
+      return this;
+    }
+
+    /**
+     * Optionally fail a share of the requests to every endpoint.  Defaults to no failures.
+     *
+     * @param profile The error profile
+     *
+     * @return the Builder
+     */
+    public Builder setErrors(ErrorProfile profile) {
+      for (Endpoint endpoint : Endpoint.values()) {
+        errors.put(endpoint, profile);
+      }
+      return this;
+    }
+
+    /**
+     * Optionally fail a share of the requests to one endpoint.
+     *
+     * @param endpoint The endpoint
+     * @param profile  The error profile
+     *
+     * @return the Builder
+     */
+    public Builder setErrors(Endpoint endpoint, ErrorProfile profile) {
+      errors.put(endpoint, profile);
+      return this;
+    }
+
+    /**
+     * Optionally choose what the issued id_tokens contain.  Defaults to
+     * {@link PayloadProfile#full()}.
+     *
+     * @param payload The payload profile
+     *
+     * @return the Builder
+     */
+    public Builder setPayload(PayloadProfile payload) {
+      this.payload = payload;
+      return this;
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @return the running {@link MockDuoServer}; close it to stop it
+     *
+     * @throws IOException If the port cannot be bound
+     */
+    public MockDuoServer start() throws IOException {
+      return new MockDuoServer(this);
+    }
+  }
+
+  private static final class PendingAuth {
+    private final String username;
+    private final String redirectUri;
+    private final String nonce;
+
+    PendingAuth(String username, String redirectUri, String nonce) {
+      this.username = username;
+      this.redirectUri = redirectUri;
+      this.nonce = nonce;
+    }
+  }
+
+  private static final class Counters {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder injected = new LongAdder();
+  }
+
+  private static final class Reply {
+    private final int status;
+    private final byte[] body;
+    private final String location;
+
+    private Reply(int status, byte[] body, String location) {
+      this.status = status;
+      this.body = body;
+      this.location = location;
+    }
+
+    static Reply json(int status, Map<String, Object> body) throws IOException {
+      return new Reply(status, MAPPER.writeValueAsBytes(body), null);
+    }
+
+    static Reply redirect(String location) {
+      return new Reply(302, null, location);
+    }
+
+    /**
+     * An error in the format of the endpoint: health_check answers like the Duo Auth API,
+     * the OAuth endpoints like RFC 6749.
+     */
+    static Reply error(Endpoint endpoint, int status, String error, String description) {
+      Map<String, Object> body = new LinkedHashMap<>();
+      if (endpoint == Endpoint.HEALTH_CHECK) {
+        body.put("stat", "FAIL");
+        body.put("code", status * 100 + 2);
+        body.put("timestamp", epochSeconds());
+        body.put("message", error);
+        body.put("message_detail", description);
+      } else {
+        body.put("error", error);
+        body.put("error_description", description);
+      }
+      try {
+        return new Reply(status, MAPPER.writeValueAsBytes(body), null);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    void send(HttpExchange exchange) throws IOException {
+      if (location != null) {
+        exchange.getResponseHeaders().set("Location", location);
+        exchange.sendResponseHeaders(status, -1);
+        exchange.getResponseBody().close();
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  private static final class WorkerFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "duo-mock-server-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.duosecurity.mock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What the mock server puts in the id_tokens it issues.  The minimal profile has only the claims
+ * Duo always sends, with a short auth_context, while the full profile populates every
+ * auth_context field, including both device locations.  Either can be padded with an extra claim
+ * to measure how the size of the token affects verification.
+ */
+public final class PayloadProfile {
+
+  private static final PayloadProfile MINIMAL = new PayloadProfile(false, 0);
+
+  private static final PayloadProfile FULL = new PayloadProfile(true, 0);
+
+  private final boolean full;
+
+  private final int paddingBytes;
+
+  private PayloadProfile(boolean full, int paddingBytes) {
+    this.full = full;
+    this.paddingBytes = paddingBytes;
+  }
+
+  /**
+   * A short auth_context, as returned for a bypass user.
+   *
+   * @return the profile
+   */
+  public static PayloadProfile minimal() {
+    return MINIMAL;
+  }
+
+  /**
+   * Every auth_context field populated, as returned for a Duo Push approval.
+   *
+   * @return the profile
+   */
+  public static PayloadProfile full() {
+    return FULL;
+  }
+
+  /**
+   * A copy of this profile that adds a padding claim of the given length to each id_token.
+   *
+   * @param bytes The number of padding characters
+   *
+   * @return the profile
+   */
+  public PayloadProfile withPadding(int bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("The padding cannot be negative");
+    }
+    return new PayloadProfile(full, bytes);
+  }
+
+  String padding() {
+    if (paddingBytes == 0) {
+      return null;
+    }
+    char[] padding = new char[paddingBytes];
+    Arrays.fill(padding, 'x');
+    return new String(padding);
+  }
+
+  Map<String, Object> authResult() {
+    Map<String, Object> authResult = new HashMap<>();
+    authResult.put("status_msg", "Login Successful");
+    authResult.put("status", "allow");
+    authResult.put("result", "allow");
+    return authResult;
+  }
+
+  Map<String, Object> authContext(String clientId, String username, String txid,
+                                  int timestamp) {
+    Map<String, Object> authContext = new HashMap<>();
+    authContext.put("result", "success");
+    authContext.put("timestamp", timestamp);
+    authContext.put("txid", txid);
+    authContext.put("event_type", "authentication");
+    if (!full) {
+      authContext.put("reason", "bypass_user");
+      authContext.put("factor", "not_available");
+      return authContext;
+    }
+    authContext.put("reason", "user_approved");
+    authContext.put("factor", "duo_push");
+    authContext.put("auth_device", device("192.0.2.1", "name", "My Phone",
+        location("Ann Arbor", "Michigan", "US")));
+    authContext.put("access_device", device("198.51.100.7",
+        "hostname", "workstation-0042.corp.example.com", location("Detroit", "Michigan", "US")));
+    Map<String, Object> application = new HashMap<>();
+    application.put("key", clientId);
+    application.put("name", "Mock Web SSO");
+    authContext.put("application", application);
+    Map<String, Object> user = new HashMap<>();
+    user.put("key", "DUXXXXXXXXXXXXXXXXXX");
+    user.put("name", username);
+    authContext.put("user", user);
+    return authContext;
+  }
+
+  @Override
+  public String toString() {
+    return (full ? "full" : "minimal") + (paddingBytes > 0 ? "+" + paddingBytes + "B" : "");
+  }
+
+  private static Map<String, Object> device(String ip, String nameKey, String name,
+                                            Map<String, Object> location) {
+    Map<String, Object> device = new HashMap<>();
+    device.put("ip", ip);
+    device.put(nameKey, name);
+    device.put("location", location);
+    return device;
+  }
+
+  private static Map<String, Object> location(String city, String state, String country) {
+    Map<String, Object> location = new HashMap<>();
+    location.put("city", city);
+    location.put("state", state);
+    location.put("country", country);
+    return location;
+  }
+}
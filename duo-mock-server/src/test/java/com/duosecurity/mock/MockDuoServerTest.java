@@ -0,0 +1,448 @@
+package com.duosecurity.mock;
+
+import com.duosecurity.Client;
+import com.duosecurity.DuoMetrics;
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.metrics.EndpointSnapshot;
+import com.duosecurity.metrics.NetworkMetrics;
+import com.duosecurity.model.HealthCheckResponse;
+import com.duosecurity.model.Token;
+import com.duosecurity.service.DuoConnectionSettings;
+import com.duosecurity.service.JdkHttpEngine;
+import com.duosecurity.service.TransportSnapshot;
+import com.duosecurity.service.VirtualThreads;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MockDuoServerTest {
+
+    private static final String CLIENT_ID = "DIXXXXXXXXXXXXXXXXXX";
+    private static final String CLIENT_SECRET = "abcdefghijklmnopqrstuvwxyzabcdefghijklmn";
+    private static final String REDIRECT_URI = "https://example.com/duo-callback";
+    private static final String USERNAME = "user";
+
+    private MockDuoServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private Client client(String clientSecret, String[] caCerts) throws DuoException {
+        return new Client.Builder(CLIENT_ID, clientSecret, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(caCerts)
+                .setTrustManager(server.getTrustManager())
+                .build();
+    }
+
+    private Client client() throws DuoException {
+        return client(CLIENT_SECRET, server.getCaCerts());
+    }
+
+    private String login(Client client, OkHttpClient browser) throws Exception {
+        String state = client.generateState();
+        String callback = server.completePrompt(browser, client.createAuthUrl(USERNAME, state));
+        HttpUrl url = HttpUrl.get(callback);
+        assertEquals(state, url.queryParameter("state"));
+        return url.queryParameter("duo_code");
+    }
+
+    @Test
+    void full_login_flow() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        try (Client client = client()) {
+            HealthCheckResponse health = client.healthCheck();
+            assertTrue(health.wasSuccess());
+
+            String duoCode = login(client, server.newBrowser());
+            Token token = client.exchangeAuthorizationCodeFor2FAResult(duoCode, USERNAME);
+
+            assertEquals(USERNAME, token.getPreferred_username());
+            assertEquals("allow", token.getAuth_result().getStatus());
+            assertEquals("duo_push", token.getAuth_context().getFactor());
+            assertEquals("Detroit", token.getAuth_context().getAccess_device().getLocation().getCity());
+        }
+        assertEquals(1, server.getRequestCount(MockDuoServer.Endpoint.TOKEN));
+        assertEquals(0, server.getRejectedCount(MockDuoServer.Endpoint.TOKEN));
+    }
+
+    @Test
+    void streaming_verifier_accepts_padded_minimal_payload() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET)
+                .setPayload(PayloadProfile.minimal().withPadding(16384))
+                .start();
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(server.getCaCerts())
+                .setTrustManager(server.getTrustManager())
+                .setUseStreamingTokenVerifier(true)
+                .build()) {
+            String duoCode = login(client, server.newBrowser());
+            Token token = client.exchangeAuthorizationCodeFor2FAResult(duoCode, USERNAME);
+
+            assertEquals(USERNAME, token.getPreferred_username());
+            assertEquals("bypass_user", token.getAuth_context().getReason());
+        }
+    }
+
+    @Test
+    void code_can_only_be_exchanged_once() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        try (Client client = client()) {
+            String duoCode = login(client, server.newBrowser());
+            client.exchangeAuthorizationCodeFor2FAResult(duoCode, USERNAME);
+
+            DuoException e = assertThrows(DuoException.class,
+                    () -> client.exchangeAuthorizationCodeFor2FAResult(duoCode, USERNAME));
+            assertTrue(e.getMessage().contains("invalid_grant"));
+        }
+        assertEquals(1, server.getRejectedCount(MockDuoServer.Endpoint.TOKEN));
+    }
+
+    @Test
+    void wrong_client_secret_is_rejected() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        try (Client client = client("zyxwvutsrqponmlkjihgfedcbazyxwvutsrqponm", server.getCaCerts())) {
+            DuoException e = assertThrows(DuoException.class, client::healthCheck);
+            assertTrue(e.getMessage().contains("invalid_client"));
+        }
+        assertEquals(1, server.getRejectedCount(MockDuoServer.Endpoint.HEALTH_CHECK));
+    }
+
+    @Test
+    void connection_fails_when_pin_does_not_match() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        String[] otherPin = {"sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA="};
+        try (Client client = client(CLIENT_SECRET, otherPin)) {
+            assertThrows(DuoException.class, client::healthCheck);
+        }
+        assertEquals(0, server.getRequestCount(MockDuoServer.Endpoint.HEALTH_CHECK));
+    }
+
+    @Test
+    void injected_server_errors() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET)
+                .setErrors(MockDuoServer.Endpoint.HEALTH_CHECK, ErrorProfile.serverErrors(1))
+                .start();
+        try (Client client = client()) {
+            assertThrows(DuoException.class, client::healthCheck);
+            String duoCode = login(client, server.newBrowser());
+            assertNotNull(client.exchangeAuthorizationCodeFor2FAResult(duoCode, USERNAME));
+        }
+        assertEquals(1, server.getInjectedFailureCount(MockDuoServer.Endpoint.HEALTH_CHECK));
+        assertEquals(0, server.getInjectedFailureCount(MockDuoServer.Endpoint.TOKEN));
+    }
+
+    @Test
+    void injected_disconnects() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET)
+                .setErrors(ErrorProfile.none().withDisconnects(1))
+                .start();
+        try (Client client = client()) {
+            assertThrows(DuoException.class, client::healthCheck);
+        }
+        assertTrue(server.getInjectedFailureCount(MockDuoServer.Endpoint.HEALTH_CHECK) >= 1);
+    }
+
+    @Test
+    void latency_profile_delays_responses() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET)
+                .setLatency(LatencyProfile.fixed(200, TimeUnit.MILLISECONDS))
+                .start();
+        try (Client client = client()) {
+            client.healthCheck();
+            long start = System.nanoTime();
+            client.healthCheck();
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        }
+    }
+
+    @Test
+    void deadline_and_read_timeout_bound_slow_responses() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET)
+                .setLatency(MockDuoServer.Endpoint.HEALTH_CHECK, LatencyProfile.fixed(2, TimeUnit.SECONDS))
+                .start();
+        try (Client client = client()) {
+            long start = System.nanoTime();
+            assertThrows(DuoException.class, () -> client.healthCheck(300, TimeUnit.MILLISECONDS));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+            OkHttpClient browser = server.newBrowser();
+            Token token = client.exchangeAuthorizationCodeFor2FAResult(login(client, browser), USERNAME,
+                    5, TimeUnit.SECONDS);
+            assertEquals(USERNAME, token.getPreferred_username());
+        }
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(server.getCaCerts())
+                .setTrustManager(server.getTrustManager())
+                .setTimeouts(5000, 300, 5000, TimeUnit.MILLISECONDS)
+                .build()) {
+            long start = System.nanoTime();
+            assertThrows(DuoException.class, client::healthCheck);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    @Test
+    void metrics_time_network_phases_and_connection_reuse() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET)
+                .setLatency(MockDuoServer.Endpoint.HEALTH_CHECK, LatencyProfile.fixed(50, TimeUnit.MILLISECONDS))
+                .start();
+        DuoMetrics metrics = new DuoMetrics();
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(server.getCaCerts())
+                .setTrustManager(server.getTrustManager())
+                .setMetrics(metrics)
+                .build()) {
+            client.healthCheck();
+            client.healthCheck();
+            client.exchangeAuthorizationCodeFor2FAResult(login(client, server.newBrowser()), USERNAME);
+        }
+
+        EndpointSnapshot healthCheck = metrics.snapshot().getEndpoints().get("/oauth/v1/health_check");
+        assertEquals(1, healthCheck.getNewConnectionCount());
+        assertEquals(1, healthCheck.getPooledConnectionCount());
+        assertEquals(0, healthCheck.getFailureCount());
+        assertEquals(1, healthCheck.getLatency(NetworkMetrics.Phase.DNS).getCount());
+        assertEquals(1, healthCheck.getLatency(NetworkMetrics.Phase.CONNECT).getCount());
+        assertEquals(1, healthCheck.getLatency(NetworkMetrics.Phase.TLS).getCount());
+        assertEquals(2, healthCheck.getLatency(NetworkMetrics.Phase.CALL).getCount());
+        assertTrue(healthCheck.getLatency(NetworkMetrics.Phase.TIME_TO_FIRST_BYTE).getValueAtPercentile(0)
+                >= TimeUnit.MILLISECONDS.toNanos(50));
+        EndpointSnapshot token = metrics.snapshot().getEndpoints().get("/oauth/v1/token");
+        assertEquals(1, token.getPooledConnectionCount());
+        assertEquals(1, token.getLatency(NetworkMetrics.Phase.TIME_TO_FIRST_BYTE).getCount());
+    }
+
+    @Test
+    void flight_recorder_events_cover_the_login() throws Exception {
+        // the events are in META-INF/versions/11, which only a multi-release jar on Java 11+ uses
+        assumeTrue(Client.class.getProtectionDomain().getCodeSource().getLocation().getPath().endsWith(".jar"));
+        assumeTrue(!System.getProperty("java.specification.version").startsWith("1."));
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        Path file = Files.createTempFile("duo", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] {"HealthCheck", "CreateAuthUrl", "TokenExchange", "JwtSigning",
+                    "IdTokenValidation"}) {
+                recording.enable("com.duosecurity." + name).withThreshold(java.time.Duration.ZERO);
+            }
+            recording.start();
+            try (Client client = client()) {
+                client.healthCheck();
+                client.exchangeAuthorizationCodeFor2FAResult(login(client, server.newBrowser()), USERNAME);
+                assertThrows(DuoException.class, () -> client.exchangeAuthorizationCodeFor2FAResult("bad", USERNAME));
+            }
+            recording.stop();
+            recording.dump(file);
+
+            Map<String, Integer> counts = new HashMap<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String name = event.getEventType().getName();
+                counts.merge(name, 1, Integer::sum);
+                assertTrue(event.getDuration().toNanos() > 0);
+                if (name.equals("com.duosecurity.CreateAuthUrl")) {
+                    assertEquals("/oauth/v1/authorize", event.getString("endpoint"));
+                    assertEquals("success", event.getString("outcome"));
+                    assertTrue(event.getLong("bytes") > 0);
+                } else if (name.equals("com.duosecurity.TokenExchange")
+                        && !event.getString("outcome").equals("success")) {
+                    assertEquals("DuoResponseException", event.getString("outcome"));
+                    assertEquals("/oauth/v1/token", event.getString("endpoint"));
+                }
+            }
+            assertEquals(1, counts.get("com.duosecurity.HealthCheck"));
+            assertEquals(1, counts.get("com.duosecurity.CreateAuthUrl"));
+            assertEquals(2, counts.get("com.duosecurity.TokenExchange"));
+            assertEquals(3, counts.get("com.duosecurity.JwtSigning"));
+            assertEquals(1, counts.get("com.duosecurity.IdTokenValidation"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void virtual_threads_run_many_concurrent_exchanges() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET)
+                .setLatency(MockDuoServer.Endpoint.TOKEN, LatencyProfile.fixed(500, TimeUnit.MILLISECONDS))
+                .start();
+        int logins = 50;
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(server.getCaCerts())
+                .setTrustManager(server.getTrustManager())
+                .setUseVirtualThreads(true)
+                .build()) {
+            OkHttpClient browser = server.newBrowser();
+            List<String> codes = new ArrayList<>();
+            for (int i = 0; i < logins; i++) {
+                codes.add(login(client, browser));
+            }
+            Method isVirtual = Thread.class.getMethod("isVirtual");
+            long start = System.nanoTime();
+            List<CompletableFuture<Boolean>> onVirtualThread = new ArrayList<>();
+            for (String code : codes) {
+                onVirtualThread.add(client.exchangeAuthorizationCodeFor2FAResultAsync(code, USERNAME)
+                        .thenApply(token -> isVirtual(isVirtual)));
+            }
+            for (CompletableFuture<Boolean> result : onVirtualThread) {
+                assertTrue(result.get(10, TimeUnit.SECONDS));
+            }
+            // the dispatcher's default of 5 calls per host would take 10 rounds of 500 ms
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(4000));
+        }
+        assertEquals(logins, server.getRequestCount(MockDuoServer.Endpoint.TOKEN));
+    }
+
+    private static boolean isVirtual(Method isVirtual) {
+        try {
+            return (Boolean) isVirtual.invoke(Thread.currentThread());
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    void warm_up_leaves_a_pooled_connection_for_the_first_login() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        DuoMetrics metrics = new DuoMetrics();
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(server.getCaCerts())
+                .setTrustManager(server.getTrustManager())
+                .setMetrics(metrics)
+                .build()) {
+            client.warmUp();
+            client.exchangeAuthorizationCodeFor2FAResult(login(client, server.newBrowser()), USERNAME);
+        }
+
+        EndpointSnapshot token = metrics.snapshot().getEndpoints().get("/oauth/v1/token");
+        assertEquals(0, token.getNewConnectionCount());
+        assertEquals(1, token.getPooledConnectionCount());
+        assertEquals(1, server.getRequestCount(MockDuoServer.Endpoint.HEALTH_CHECK));
+    }
+
+    @Test
+    void metrics_report_the_effective_connection_settings() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        DuoMetrics metrics = new DuoMetrics();
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(server.getCaCerts())
+                .setTrustManager(server.getTrustManager())
+                .setMetrics(metrics)
+                .setConnectionPool(16, 30, TimeUnit.SECONDS)
+                .setMaxRequests(100, 20)
+                .setHttpVersion(DuoConnectionSettings.HttpVersion.HTTP_1_1)
+                .setTlsSessionCache(1000, 1, TimeUnit.HOURS)
+                .build()) {
+            assertTrue(metrics.snapshot().getTransports().isEmpty());
+            client.exchangeAuthorizationCodeFor2FAResult(login(client, server.newBrowser()), USERNAME);
+
+            List<TransportSnapshot> transports = metrics.snapshot().getTransports();
+            assertEquals(1, transports.size());
+            DuoConnectionSettings settings = transports.get(0).getSettings();
+            assertEquals(16, settings.getMaxIdleConnections());
+            assertEquals(30000, settings.getKeepAliveMillis());
+            assertEquals(20, settings.getMaxRequestsPerHost());
+            assertEquals(DuoConnectionSettings.HttpVersion.HTTP_1_1, settings.getHttpVersion());
+            assertEquals(1000, settings.getTlsSessionCacheSize());
+            assertEquals(3600, settings.getTlsSessionTimeoutSeconds());
+            assertEquals(1, transports.get(0).getIdleConnectionCount());
+        }
+        assertTrue(metrics.snapshot().getTransports().isEmpty());
+    }
+
+    @Test
+    void keep_warm_checks_health_in_the_background() throws Exception {
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(server.getCaCerts())
+                .setTrustManager(server.getTrustManager())
+                .setKeepWarm(100, TimeUnit.MILLISECONDS)
+                .build()) {
+            Thread.sleep(200);
+            assertEquals(0, server.getRequestCount(MockDuoServer.Endpoint.HEALTH_CHECK));
+
+            client.warmUp();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (server.getRequestCount(MockDuoServer.Endpoint.HEALTH_CHECK) < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+        assertTrue(server.getRequestCount(MockDuoServer.Endpoint.HEALTH_CHECK) >= 3);
+    }
+
+    @Test
+    void jdk_http_engine_runs_the_login() throws Exception {
+        assumeTrue(JdkHttpEngine.isSupported());
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(server.getCaCerts())
+                .setTrustManager(server.getTrustManager())
+                .setHttpEngine(JdkHttpEngine.factory())
+                .build()) {
+            assertTrue(client.healthCheck().wasSuccess());
+
+            OkHttpClient browser = server.newBrowser();
+            Token token = client.exchangeAuthorizationCodeFor2FAResult(login(client, browser), USERNAME);
+            assertEquals(USERNAME, token.getPreferred_username());
+            token = client.exchangeAuthorizationCodeFor2FAResultAsync(login(client, browser), USERNAME)
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals("allow", token.getAuth_result().getStatus());
+
+            String duoCode = login(client, browser);
+            client.exchangeAuthorizationCodeFor2FAResult(duoCode, USERNAME);
+            DuoException e = assertThrows(DuoException.class,
+                    () -> client.exchangeAuthorizationCodeFor2FAResult(duoCode, USERNAME));
+            assertTrue(e.getMessage().contains("invalid_grant"));
+        }
+        assertEquals(4, server.getRequestCount(MockDuoServer.Endpoint.TOKEN));
+    }
+
+    @Test
+    void jdk_http_engine_fails_when_pin_does_not_match() throws Exception {
+        assumeTrue(JdkHttpEngine.isSupported());
+        server = MockDuoServer.builder(CLIENT_ID, CLIENT_SECRET).start();
+        try (Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, server.getApiHost(), REDIRECT_URI)
+                .setCACerts(new String[] {"sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA="})
+                .setTrustManager(server.getTrustManager())
+                .setHttpEngine(JdkHttpEngine.factory())
+                .build()) {
+            assertThrows(DuoException.class, client::healthCheck);
+        }
+        assertEquals(0, server.getRequestCount(MockDuoServer.Endpoint.HEALTH_CHECK));
+    }
+
+    @Test
+    void latency_profiles_stay_in_range() {
+        LatencyProfile uniform = LatencyProfile.uniform(10, 20, TimeUnit.MILLISECONDS);
+        LatencyProfile logNormal = LatencyProfile.logNormal(10, 100, TimeUnit.MILLISECONDS);
+        int belowMedian = 0;
+        for (int i = 0; i < 10000; i++) {
+            long delay = uniform.nextDelayNanos();
+            assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(10) && delay <= TimeUnit.MILLISECONDS.toNanos(20));
+            if (logNormal.nextDelayNanos() < TimeUnit.MILLISECONDS.toNanos(10)) {
+                belowMedian++;
+            }
+        }
+        assertTrue(belowMedian > 4500 && belowMedian < 5500);
+        assertThrows(IllegalArgumentException.class, () -> ErrorProfile.serverErrors(0.6).withDisconnects(0.6));
+    }
+}
@@ -0,0 +1,70 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link Client} calls made before the user is sent to Duo, which involve no
+ * network I/O: checking whether Duo is available, generating the state and building the auth
+ * URL.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar ClientBenchmark -prof gc}
+ * to report {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientBenchmark {
+
+  private static final String REDIRECT_URI = "https://example.com/duo-callback";
+
+  private Client client;
+
+  private String state;
+
+  /**
+   * Builds a Client with the default settings and a circuit breaker.
+   */
+  @Setup
+  public void setUp() throws DuoException {
+    client = new Client.Builder(IdTokenCorpus.CLIENT_ID, IdTokenCorpus.CLIENT_SECRET,
+        IdTokenCorpus.API_HOST, REDIRECT_URI)
+        .setCircuitBreaker(new CircuitBreaker.Builder().build())
+        .build();
+    state = client.generateState();
+  }
+
+  @TearDown
+  public void tearDown() {
+    client.close();
+  }
+
+  @Benchmark
+  public boolean isDuoAvailable() {
+    return client.isDuoAvailable();
+  }
+
+  @Benchmark
+  public String generateState() {
+    return client.generateState();
+  }
+
+  @Benchmark
+  public String createAuthUrl() throws DuoException {
+    return client.createAuthUrl(IdTokenCorpus.USERNAME, state);
+  }
+}
@@ -0,0 +1,88 @@
+package com.duosecurity;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.duosecurity.exception.DuoException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares signing the client assertion and validating an id_token with a fresh
+ * {@code Algorithm.HMAC512} and verifier per call, as Client used to do, against the
+ * {@link CryptoContext} the Client now builds once, and the generic JWT builder with the
+ * client assertion template.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar CryptoContextBenchmark -prof gc}
+ * to report {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptoContextBenchmark {
+
+  private static final String CLIENT_ID = "DIXXXXXXXXXXXXXXXXXX";
+  private static final String CLIENT_SECRET = "abcdefghijklmnopqrstuvwxyzabcdefghijklmn";
+  private static final String API_HOST = "api-benchmark.duosecurity.com";
+  private static final String AUD = "https://" + API_HOST + "/oauth/v1/health_check";
+  private static final String USERNAME = "user";
+
+  private CryptoContext crypto;
+
+  private String idToken;
+
+  /**
+   * Builds the context and an id_token that passes validation.
+   */
+  @Setup
+  public void setUp() {
+    crypto = new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST);
+    idToken = JWT.create()
+            .withIssuer("https://" + API_HOST + "/oauth/v1/token")
+            .withAudience(CLIENT_ID)
+            .withExpiresAt(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+            .withIssuedAt(new Date())
+            .withClaim("preferred_username", USERNAME)
+            .sign(Algorithm.HMAC512(CLIENT_SECRET));
+  }
+
+  @Benchmark
+  public String createJwtPerCallAlgorithm() {
+    return Utils.createJwt(CLIENT_ID, CLIENT_SECRET, AUD);
+  }
+
+  @Benchmark
+  public String createJwtWithContext() {
+    return Utils.createJwt(crypto.getAlgorithm(), CLIENT_ID, AUD);
+  }
+
+  @Benchmark
+  public String createClientAssertion() {
+    return crypto.createClientAssertion(AUD);
+  }
+
+  @Benchmark
+  public DecodedJWT validatePerCallVerifier() throws DuoException {
+    return new DuoIdTokenValidator(CLIENT_SECRET, USERNAME, CLIENT_ID, API_HOST)
+            .validateAndDecode(idToken);
+  }
+
+  @Benchmark
+  public DecodedJWT validateWithContext() throws DuoException {
+    return new DuoIdTokenValidator(crypto.getIdTokenVerifier(), USERNAME, null)
+            .validateAndDecode(idToken);
+  }
+}
@@ -0,0 +1,71 @@
+package com.duosecurity;
+
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.duosecurity.exception.DuoException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DuoIdTokenValidator#validateAndDecode} over the {@link IdTokenCorpus},
+ * both through the public constructor an integration uses for a custom flow and with the
+ * verifier template the Client shares between logins.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar DuoIdTokenValidatorBenchmark -prof gc}
+ * to report {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuoIdTokenValidatorBenchmark {
+
+  @Param({IdTokenCorpus.MINIMAL, IdTokenCorpus.FULL, IdTokenCorpus.WITH_NONCE})
+  private String payload;
+
+  private String idToken;
+
+  private String nonce;
+
+  private JWTVerifier verifier;
+
+  /**
+   * Signs the id_token and builds the shared verifier.
+   */
+  @Setup
+  public void setUp() {
+    idToken = IdTokenCorpus.sign(payload);
+    nonce = IdTokenCorpus.nonce(payload);
+    verifier = DuoIdTokenValidator.buildVerifierTemplate(
+        Algorithm.HMAC512(IdTokenCorpus.CLIENT_SECRET), IdTokenCorpus.CLIENT_ID,
+        IdTokenCorpus.API_HOST);
+  }
+
+  /**
+   * A new validator, and so a new HMAC key and verifier, for each token.
+   */
+  @Benchmark
+  public DecodedJWT validateAndDecode() throws DuoException {
+    return new DuoIdTokenValidator(IdTokenCorpus.CLIENT_SECRET, IdTokenCorpus.USERNAME,
+        IdTokenCorpus.CLIENT_ID, IdTokenCorpus.API_HOST, nonce).validateAndDecode(idToken);
+  }
+
+  @Benchmark
+  public DecodedJWT validateAndDecodeSharedVerifier() throws DuoException {
+    return new DuoIdTokenValidator(verifier, IdTokenCorpus.USERNAME, nonce)
+        .validateAndDecode(idToken);
+  }
+}
@@ -0,0 +1,52 @@
+package com.duosecurity;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what {@link DuoMetrics} adds to each timed operation, with metrics enabled and
+ * disabled, and with several threads recording the same operation at once.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar DuoMetricsBenchmark -prof gc}
+ * to check that recording does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuoMetricsBenchmark {
+
+  private final DuoMetrics metrics = new DuoMetrics();
+
+  @Benchmark
+  public void record() {
+    metrics.record(DuoMetrics.Operation.CLIENT_ASSERTION, metrics.start(), null);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void recordContended() {
+    metrics.record(DuoMetrics.Operation.CLIENT_ASSERTION, metrics.start(), null);
+  }
+
+  @Benchmark
+  public void recordDisabled() {
+    DuoMetrics.NONE.record(DuoMetrics.Operation.CLIENT_ASSERTION, DuoMetrics.NONE.start(), null);
+  }
+
+  @Benchmark
+  public MetricsSnapshot snapshot() {
+    return metrics.snapshot();
+  }
+}
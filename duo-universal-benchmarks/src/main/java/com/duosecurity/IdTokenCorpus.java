@@ -0,0 +1,132 @@
+package com.duosecurity;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.algorithms.Algorithm;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The id_tokens the benchmarks validate and decode, shaped like the ones Duo returns from
+ * /oauth/v1/token.  The minimal token has only the claims Duo always sends and
+ * DuoIdTokenValidator checks, with a short auth_context as returned for a bypass user.  The full
+ * token populates every auth_context field, including both device locations, and the nonce token
+ * adds a nonce to the full payload, for integrations that send one.  Tokens expire a day after
+ * they are signed, so a benchmark run never sees them expire.
+ */
+final class IdTokenCorpus {
+
+  static final String CLIENT_ID = "DIXXXXXXXXXXXXXXXXXX";
+  static final String CLIENT_SECRET = "abcdefghijklmnopqrstuvwxyzabcdefghijklmn";
+  static final String API_HOST = "api-benchmark.duosecurity.com";
+  static final String USERNAME = "user";
+  static final String NONCE = "b3f6c9d2a1e84f7c9a0d5e6f7a8b9c0d";
+
+  /**
+   * The payload names accepted by {@link #sign}, for use in {@code @Param}.
+   */
+  static final String MINIMAL = "minimal";
+  static final String FULL = "full";
+  static final String WITH_NONCE = "nonce";
+
+  private IdTokenCorpus() {
+  }
+
+  /**
+   * Signs the named payload with {@link #CLIENT_SECRET}.
+   *
+   * @param payload One of {@link #MINIMAL}, {@link #FULL} or {@link #WITH_NONCE}
+   *
+   * @return the id_token
+   */
+  static String sign(String payload) {
+    JWTCreator.Builder builder = JWT.create()
+            .withIssuer("https://" + API_HOST + "/oauth/v1/token")
+            .withAudience(CLIENT_ID)
+            .withSubject(USERNAME)
+            .withExpiresAt(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+            .withIssuedAt(new Date())
+            .withClaim("auth_time", System.currentTimeMillis() / 1000)
+            .withClaim("preferred_username", USERNAME)
+            .withClaim("auth_result", authResult());
+    switch (payload) {
+      case MINIMAL:
+        builder.withClaim("auth_context", minimalAuthContext());
+        break;
+      case FULL:
+        builder.withClaim("auth_context", fullAuthContext());
+        break;
+      case WITH_NONCE:
+        builder.withClaim("auth_context", fullAuthContext()).withClaim("nonce", NONCE);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown id_token payload: " + payload);
+    }
+    return builder.sign(Algorithm.HMAC512(CLIENT_SECRET));
+  }
+
+  /**
+   * The nonce the named payload carries, or null.
+   */
+  static String nonce(String payload) {
+    return WITH_NONCE.equals(payload) ? NONCE : null;
+  }
+
+  private static Map<String, Object> authResult() {
+    Map<String, Object> authResult = new HashMap<>();
+    authResult.put("status_msg", "Login Successful");
+    authResult.put("status", "allow");
+    authResult.put("result", "allow");
+    return authResult;
+  }
+
+  private static Map<String, Object> minimalAuthContext() {
+    Map<String, Object> authContext = new HashMap<>();
+    authContext.put("result", "success");
+    authContext.put("timestamp", 1600000000);
+    authContext.put("txid", "5a9fc0a4-4ee2-4f03-8a0e-0b8a0c1e0f6d");
+    authContext.put("event_type", "authentication");
+    authContext.put("reason", "bypass_user");
+    authContext.put("factor", "not_available");
+    return authContext;
+  }
+
+  private static Map<String, Object> fullAuthContext() {
+    Map<String, Object> authLocation = new HashMap<>();
+    authLocation.put("city", "Ann Arbor");
+    authLocation.put("state", "Michigan");
+    authLocation.put("country", "US");
+    Map<String, Object> authDevice = new HashMap<>();
+    authDevice.put("ip", "192.0.2.1");
+    authDevice.put("name", "My Phone");
+    authDevice.put("location", authLocation);
+    Map<String, Object> accessLocation = new HashMap<>();
+    accessLocation.put("city", "Detroit");
+    accessLocation.put("state", "Michigan");
+    accessLocation.put("country", "US");
+    Map<String, Object> accessDevice = new HashMap<>();
+    accessDevice.put("ip", "198.51.100.7");
+    accessDevice.put("hostname", "workstation-0042.corp.example.com");
+    accessDevice.put("location", accessLocation);
+    Map<String, Object> application = new HashMap<>();
+    application.put("key", CLIENT_ID);
+    application.put("name", "Benchmark Web SSO");
+    Map<String, Object> user = new HashMap<>();
+    user.put("key", "DUXXXXXXXXXXXXXXXXXX");
+    user.put("name", USERNAME);
+    Map<String, Object> authContext = new HashMap<>();
+    authContext.put("result", "success");
+    authContext.put("timestamp", 1600000000);
+    authContext.put("txid", "5a9fc0a4-4ee2-4f03-8a0e-0b8a0c1e0f6d");
+    authContext.put("event_type", "authentication");
+    authContext.put("reason", "user_approved");
+    authContext.put("factor", "duo_push");
+    authContext.put("auth_device", authDevice);
+    authContext.put("access_device", accessDevice);
+    authContext.put("application", application);
+    authContext.put("user", user);
+    return authContext;
+  }
+}
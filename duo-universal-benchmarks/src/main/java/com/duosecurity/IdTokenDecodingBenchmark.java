@@ -0,0 +1,65 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.model.Token;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares turning an id_token from the {@link IdTokenCorpus} into a {@link Token} through
+ * DuoIdTokenValidator and {@code Utils.transformDecodedJwtToToken} with the single pass
+ * {@link StreamingIdTokenVerifier}.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar IdTokenDecodingBenchmark -prof gc}
+ * to report {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdTokenDecodingBenchmark {
+
+  @Param({IdTokenCorpus.MINIMAL, IdTokenCorpus.FULL})
+  private String payload;
+
+  private CryptoContext crypto;
+
+  private String idToken;
+
+  /**
+   * Builds the context and signs the id_token.
+   */
+  @Setup
+  public void setUp() {
+    crypto = new CryptoContext(IdTokenCorpus.CLIENT_ID, IdTokenCorpus.CLIENT_SECRET,
+        IdTokenCorpus.API_HOST);
+    idToken = IdTokenCorpus.sign(payload);
+  }
+
+  /**
+   * The DecodedJWT path, with the verifier template from the context.
+   */
+  @Benchmark
+  public Token validateAndTransform() throws DuoException {
+    return Utils.transformDecodedJwtToToken(
+            new DuoIdTokenValidator(crypto.getIdTokenVerifier(), IdTokenCorpus.USERNAME, null)
+                    .validateAndDecode(idToken));
+  }
+
+  @Benchmark
+  public Token streamingVerifier() throws DuoException {
+    return crypto.getStreamingIdTokenVerifier().verify(idToken, IdTokenCorpus.USERNAME, null);
+  }
+}
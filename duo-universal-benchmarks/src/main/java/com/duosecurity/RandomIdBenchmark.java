@@ -0,0 +1,69 @@
+package com.duosecurity;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares generating a 36 character state the way Utils.generateJwtId used to (a new
+ * SecureRandom per call and a StringBuilder of hex chunks), with {@link RandomIdGenerator}
+ * and with a {@link PrefetchedIds} buffer.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar RandomIdBenchmark -prof gc}; add
+ * {@code -t 64} to measure under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RandomIdBenchmark {
+
+  private static final int LENGTH = 36;
+
+  private PrefetchedIds prefetched;
+
+  @Setup
+  public void setUp() {
+    prefetched = new PrefetchedIds(LENGTH, 4096);
+  }
+
+  @TearDown
+  public void tearDown() {
+    prefetched.close();
+  }
+
+  /**
+   * The previous implementation of Utils.generateJwtId.
+   */
+  @Benchmark
+  public String newSecureRandomPerCall() {
+    SecureRandom secureRandom = new SecureRandom();
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < LENGTH) {
+      sb.append(Integer.toHexString(secureRandom.nextInt()));
+    }
+    return sb.substring(0, LENGTH);
+  }
+
+  @Benchmark
+  public String sharedGenerator() {
+    return RandomIdGenerator.hex(LENGTH);
+  }
+
+  @Benchmark
+  public String prefetched() {
+    return prefetched.next();
+  }
+}
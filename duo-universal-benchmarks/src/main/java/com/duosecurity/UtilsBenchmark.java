@@ -0,0 +1,83 @@
+package com.duosecurity;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.duosecurity.model.Token;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the JWT helpers in {@link Utils}: signing the client assertion and the auth URL
+ * request, and mapping an already decoded id_token from the {@link IdTokenCorpus} to a
+ * {@link Token}.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar UtilsBenchmark -prof gc}
+ * to report {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilsBenchmark {
+
+  private static final String AUD =
+      "https://" + IdTokenCorpus.API_HOST + "/oauth/v1/token";
+  private static final String REDIRECT_URI = "https://example.com/duo-callback";
+  private static final String STATE = "deadbeefdeadbeefdeadbeefdeadbeefdead";
+
+  private Algorithm algorithm;
+
+  /**
+   * Builds the signing algorithm once, as the Client does.
+   */
+  @Setup
+  public void setUp() {
+    algorithm = Algorithm.HMAC512(IdTokenCorpus.CLIENT_SECRET);
+  }
+
+  @Benchmark
+  public String createJwt() {
+    return Utils.createJwt(algorithm, IdTokenCorpus.CLIENT_ID, AUD);
+  }
+
+  @Benchmark
+  public String createJwtForAuthUrl() {
+    return Utils.createJwtForAuthUrl(algorithm, IdTokenCorpus.CLIENT_ID, REDIRECT_URI, STATE,
+        IdTokenCorpus.USERNAME, true);
+  }
+
+  @Benchmark
+  public Token transformDecodedJwtToToken(DecodedIdToken idToken) {
+    return Utils.transformDecodedJwtToToken(idToken.decoded);
+  }
+
+  /**
+   * An id_token from the corpus, decoded once so that only the mapping is measured.
+   */
+  @State(Scope.Benchmark)
+  public static class DecodedIdToken {
+
+    @Param({IdTokenCorpus.MINIMAL, IdTokenCorpus.FULL})
+    private String payload;
+
+    private DecodedJWT decoded;
+
+    @Setup
+    public void setUp() {
+      decoded = JWT.decode(IdTokenCorpus.sign(payload));
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Validator#validateClientParams}, which runs on every
+ * {@link Client.Builder#build()}.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar ValidatorBenchmark -prof gc}
+ * to report {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidatorBenchmark {
+
+  private static final String REDIRECT_URI = "https://example.com/duo-callback";
+
+  /**
+   * Validates the parameters of a correctly configured Client.
+   */
+  @Benchmark
+  public void validateClientParams() throws DuoException {
+    Validator.validateClientParams(IdTokenCorpus.CLIENT_ID, IdTokenCorpus.CLIENT_SECRET,
+        IdTokenCorpus.API_HOST, REDIRECT_URI);
+  }
+}
@@ -0,0 +1,59 @@
+package com.duosecurity.service;
+
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.model.HealthCheckResponse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import retrofit2.Call;
+
+/**
+ * Compares building a health check call through a freshly created {@link DuoService} proxy,
+ * as DuoConnector used to do on every request, with the proxy the connector now caches.
+ * No request is sent; only the per-call binding work is measured.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar DuoServiceBindingBenchmark -prof gc}
+ * to report {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuoServiceBindingBenchmark {
+
+  private static final String[] CA_CERTS = {"sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA="};
+
+  private DuoConnector connector;
+
+  @Setup
+  public void setUp() throws DuoException {
+    connector = new DuoConnector("api-benchmark.duosecurity.com", CA_CERTS);
+  }
+
+  @TearDown
+  public void tearDown() {
+    connector.close();
+  }
+
+  @Benchmark
+  public Call<HealthCheckResponse> createServicePerCall() {
+    return connector.retrofit.create(DuoService.class)
+            .duoHealthCheck("client_id", "client_assertion");
+  }
+
+  @Benchmark
+  public Call<HealthCheckResponse> cachedService() {
+    return connector.service.duoHealthCheck("client_id", "client_assertion");
+  }
+}
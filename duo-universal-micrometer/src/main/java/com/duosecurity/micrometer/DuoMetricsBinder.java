@@ -0,0 +1,193 @@
+package com.duosecurity.micrometer;
+
+import com.duosecurity.DuoMetrics;
+import com.duosecurity.MetricsSnapshot;
+import com.duosecurity.metrics.EndpointSnapshot;
+import com.duosecurity.metrics.NetworkMetrics;
+import com.duosecurity.service.TransportSnapshot;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Publishes a {@link DuoMetrics} to a Micrometer registry.  Each operation gets a function timer
+ * named duo.sdk.operation and a counter named duo.sdk.operation.errors, both tagged operation,
+ * and time gauges named duo.sdk.operation.latency for its 50th, 90th, 99th and 99.9th
+ * percentiles, tagged operation and percentile.  Each endpoint gets a function timer named
+ * duo.sdk.http per network phase, tagged endpoint and phase, counters named
+ * duo.sdk.http.connections of the connections it used, tagged endpoint and connection, new or
+ * pooled, and a counter named duo.sdk.http.failures of the calls that got no response.  The
+ * retry policies and circuit breakers of the Clients using the metrics are counted by
+ * duo.sdk.retries, duo.sdk.retry.budget.exhausted and duo.sdk.circuit.breaker.rejected.  The
+ * gauges duo.sdk.transport.connections, tagged state, active or idle, and duo.sdk.transport.calls,
+ * tagged state, running or queued, are summed over the transports of those Clients.  A registry
+ * reads every meter on each publish; the meters share one snapshot of the metrics, taken at most
+ * once a second.  Like other Micrometer meters they reference the metrics weakly, so the metrics
+ * must stay reachable, as they are through the Client using them.
+ */
+public final class DuoMetricsBinder implements MeterBinder {
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private static final String[] ENDPOINTS = {"/oauth/v1/health_check", "/oauth/v1/token"};
+
+  private static final long MAX_SNAPSHOT_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final DuoMetrics metrics;
+
+  private final Iterable<Tag> tags;
+
+  private volatile MetricsSnapshot snapshot;
+
+  private volatile long snapshotNanos;
+
+  /**
+   * Publishes the metrics without extra tags.
+   *
+   * @param metrics The metrics passed to {@link com.duosecurity.Client.Builder#setMetrics}
+   */
+  public DuoMetricsBinder(DuoMetrics metrics) {
+    this(metrics, Tags.empty());
+  }
+
+  /**
+   * Publishes the metrics with tags added to every meter, for example to tell apart several
+   * integrations in one application.
+   *
+   * @param metrics The metrics passed to {@link com.duosecurity.Client.Builder#setMetrics}
+   * @param tags    The tags to add
+   */
+  public DuoMetricsBinder(DuoMetrics metrics, Iterable<Tag> tags) {
+    if (metrics == null) {
+      throw new IllegalArgumentException("The metrics cannot be null");
+    }
+    this.metrics = metrics;
+    this.tags = tags;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    for (DuoMetrics.Operation operation : DuoMetrics.Operation.values()) {
+      Tags operationTags =
+          Tags.of(tags).and("operation", operation.name().toLowerCase(Locale.ROOT));
+      FunctionTimer.builder("duo.sdk.operation", metrics,
+          m -> operation(operation).getCount(),
+          m -> operation(operation).getLatency().getTotal(),
+          TimeUnit.NANOSECONDS)
+          .description("Calls to Duo and SDK work on each login")
+          .tags(operationTags)
+          .register(registry);
+      FunctionCounter.builder("duo.sdk.operation.errors", metrics,
+          m -> operation(operation).getErrorCount())
+          .description("Operations that failed")
+          .tags(operationTags)
+          .register(registry);
+      for (double percentile : PERCENTILES) {
+        TimeGauge.builder("duo.sdk.operation.latency", metrics, TimeUnit.NANOSECONDS,
+            m -> operation(operation).getLatency().getValueAtPercentile(percentile))
+            .description("Operation latency percentiles since the metrics were created")
+            .tags(operationTags.and("percentile", Double.toString(percentile / 100)))
+            .register(registry);
+      }
+    }
+    for (String endpoint : ENDPOINTS) {
+      bindEndpoint(registry, endpoint);
+    }
+    counter(registry, "duo.sdk.retries", "Retries of failed calls to Duo",
+        m -> snapshot().getRetryCount());
+    counter(registry, "duo.sdk.retry.budget.exhausted",
+        "Retries not made because the retry budget was empty",
+        m -> snapshot().getRetryBudgetExhaustedCount());
+    counter(registry, "duo.sdk.circuit.breaker.rejected",
+        "Calls rejected by an open circuit breaker",
+        m -> snapshot().getCircuitBreakerRejectedCount());
+    gauge(registry, "duo.sdk.transport.connections", "Connections in the connection pools",
+        "active", t -> t.getConnectionCount() - t.getIdleConnectionCount());
+    gauge(registry, "duo.sdk.transport.connections", "Connections in the connection pools",
+        "idle", TransportSnapshot::getIdleConnectionCount);
+    gauge(registry, "duo.sdk.transport.calls", "Async calls to Duo in the dispatchers",
+        "running", TransportSnapshot::getRunningCallCount);
+    gauge(registry, "duo.sdk.transport.calls", "Async calls to Duo in the dispatchers",
+        "queued", TransportSnapshot::getQueuedCallCount);
+  }
+
+  private void gauge(MeterRegistry registry, String name, String description, String state,
+                     ToIntFunction<TransportSnapshot> value) {
+    ToDoubleFunction<DuoMetrics> total = m -> {
+      int sum = 0;
+      for (TransportSnapshot transport : snapshot().getTransports()) {
+        sum += value.applyAsInt(transport);
+      }
+      return sum;
+    };
+    Gauge.builder(name, metrics, total)
+        .description(description)
+        .tags(Tags.of(tags).and("state", state))
+        .register(registry);
+  }
+
+  private void bindEndpoint(MeterRegistry registry, String endpoint) {
+    Tags endpointTags = Tags.of(tags).and("endpoint", endpoint);
+    for (NetworkMetrics.Phase phase : NetworkMetrics.Phase.values()) {
+      FunctionTimer.builder("duo.sdk.http", metrics,
+          m -> (long) endpoint(endpoint, e -> e.getLatency(phase).getCount()),
+          m -> endpoint(endpoint, e -> e.getLatency(phase).getTotal()),
+          TimeUnit.NANOSECONDS)
+          .description("Network phases of the HTTP calls to Duo")
+          .tags(endpointTags.and("phase", phase.name().toLowerCase(Locale.ROOT)))
+          .register(registry);
+    }
+    FunctionCounter.builder("duo.sdk.http.connections", metrics,
+        m -> endpoint(endpoint, EndpointSnapshot::getNewConnectionCount))
+        .description("Connections used by the HTTP calls to Duo")
+        .tags(endpointTags.and("connection", "new"))
+        .register(registry);
+    FunctionCounter.builder("duo.sdk.http.connections", metrics,
+        m -> endpoint(endpoint, EndpointSnapshot::getPooledConnectionCount))
+        .description("Connections used by the HTTP calls to Duo")
+        .tags(endpointTags.and("connection", "pooled"))
+        .register(registry);
+    FunctionCounter.builder("duo.sdk.http.failures", metrics,
+        m -> endpoint(endpoint, EndpointSnapshot::getFailureCount))
+        .description("HTTP calls to Duo that got no response")
+        .tags(endpointTags)
+        .register(registry);
+  }
+
+  private double endpoint(String endpoint, ToDoubleFunction<EndpointSnapshot> value) {
+    EndpointSnapshot timings = snapshot().getEndpoints().get(endpoint);
+    return timings == null ? 0 : value.applyAsDouble(timings);
+  }
+
+  private void counter(MeterRegistry registry, String name, String description,
+                       ToDoubleFunction<DuoMetrics> count) {
+    FunctionCounter.builder(name, metrics, count)
+        .description(description)
+        .tags(tags)
+        .register(registry);
+  }
+
+  private MetricsSnapshot.OperationSnapshot operation(DuoMetrics.Operation operation) {
+    return snapshot().getOperation(operation);
+  }
+
+  private MetricsSnapshot snapshot() {
+    long now = System.nanoTime();
+    MetricsSnapshot current = snapshot;
+    if (current == null || now - snapshotNanos >= MAX_SNAPSHOT_AGE_NANOS) {
+      current = metrics.snapshot();
+      snapshot = current;
+      snapshotNanos = now;
+    }
+    return current;
+  }
+}
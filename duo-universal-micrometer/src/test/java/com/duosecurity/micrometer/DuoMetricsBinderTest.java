@@ -0,0 +1,55 @@
+package com.duosecurity.micrometer;
+
+import com.duosecurity.Client;
+import com.duosecurity.DuoMetrics;
+import com.duosecurity.RetryPolicy;
+import com.duosecurity.exception.DuoException;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuoMetricsBinderTest {
+
+    private static final String CLIENT_ID = "DIEN9ZH50WBGER236YT5";
+    private static final String CLIENT_SECRET = "IZjstQj23454IB2H1qhoQj23Ws2ddZfIOGSxOGSx";
+
+    @Test
+    void binds_every_operation() throws DuoException {
+        DuoMetrics metrics = new DuoMetrics();
+        Client client = new Client.Builder(CLIENT_ID, CLIENT_SECRET, "localhost:1", "https://example.com")
+                .setMetrics(metrics)
+                .setRetryPolicy(new RetryPolicy.Builder().setBackoff(1, 1, TimeUnit.MILLISECONDS).build())
+                .setTimeouts(500, 500, 500, TimeUnit.MILLISECONDS)
+                .build();
+        // Nothing listens on port 1, so each attempt is refused before reaching Duo and retried
+        assertThrows(DuoException.class, client::healthCheck);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new DuoMetricsBinder(metrics, Tags.of("integration", "test")).bindTo(registry);
+
+        FunctionTimer healthCheck = registry.get("duo.sdk.operation")
+                .tags("operation", "health_check", "integration", "test").functionTimer();
+        assertEquals(1, healthCheck.count());
+        assertTrue(healthCheck.totalTime(TimeUnit.NANOSECONDS) > 0);
+        assertEquals(1, registry.get("duo.sdk.operation.errors").tags("operation", "health_check").functionCounter().count());
+        assertEquals(3, registry.get("duo.sdk.operation").tags("operation", "client_assertion").functionTimer().count());
+        assertEquals(0, registry.get("duo.sdk.operation").tags("operation", "token_exchange").functionTimer().count());
+        assertTrue(registry.get("duo.sdk.operation.latency")
+                .tags("operation", "health_check", "percentile", "0.99").timeGauge().value(TimeUnit.NANOSECONDS) > 0);
+        assertEquals(2, registry.get("duo.sdk.retries").functionCounter().count());
+        assertEquals(0, registry.get("duo.sdk.circuit.breaker.rejected").functionCounter().count());
+        assertEquals(3, registry.get("duo.sdk.http.failures").tags("endpoint", "/oauth/v1/health_check")
+                .functionCounter().count());
+        assertEquals(3, registry.get("duo.sdk.http").tags("endpoint", "/oauth/v1/health_check", "phase", "call")
+                .functionTimer().count());
+        assertEquals(0, registry.get("duo.sdk.http").tags("endpoint", "/oauth/v1/token", "phase", "call")
+                .functionTimer().count());
+        assertEquals(0, registry.get("duo.sdk.transport.connections").tags("state", "active").gauge().value());
+        assertEquals(0, registry.get("duo.sdk.transport.calls").tags("state", "queued").gauge().value());
+    }
+}
@@ -0,0 +1,32 @@
+package com.duosecurity;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one daemon thread that starts the SDK's delayed work: retries, health check refreshes and
+ * keep-warm calls.  It only starts requests, which run asynchronously, so it is shared by every
+ * Client.
+ */
+final class BackgroundScheduler {
+
+  private static final ScheduledThreadPoolExecutor EXECUTOR = create();
+
+  private BackgroundScheduler() {
+  }
+
+  static ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+    return EXECUTOR.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private static ScheduledThreadPoolExecutor create() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "duo-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+}
@@ -0,0 +1,456 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.CircuitBreakerOpenException;
+import com.duosecurity.exception.DuoResponseException;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling Duo for a while once recent calls show that it is failing or too slow, so that
+ * an outage costs each login a field read instead of a connect or read timeout.  While CLOSED,
+ * calls go through and the outcomes of the last windowSize calls are kept.  Once at least
+ * minimumCalls have completed, the breaker opens if the share of failed calls or of slow calls
+ * reaches its threshold.  While OPEN, calls fail at once with a
+ * {@link CircuitBreakerOpenException} until the open duration has passed.  It is then
+ * HALF_OPEN: a few trial calls are let through and other calls are rejected, and the breaker
+ * closes if the trial calls stay below both thresholds and opens again otherwise.  A call fails
+ * if a network error stopped it, or if Duo answered 5xx or 429.  Other errors, such as an
+ * invalid duoCode, are Duo working as intended and count as successes, and calls cut short by
+ * the caller's own deadline are not recorded, so that one caller with a short deadline cannot
+ * open the breaker for every login.  A health check that reports Duo unhealthy counts as a
+ * failure, so with {@link Client.Builder#setHealthCheckCache} the background health check both
+ * opens the breaker without waiting for a login, and makes the trial calls that close it
+ * again.  The state is a volatile field, so {@link #getState()} does not take a lock.
+ */
+public final class CircuitBreaker {
+
+  /**
+   * The states of a circuit breaker.
+   */
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private static final int FAILED = 1;
+
+  private static final int SLOW = 2;
+
+  private final int windowSize;
+
+  private final int minimumCalls;
+
+  private final int failureRateThreshold;
+
+  private final int slowCallRateThreshold;
+
+  private final long slowCallNanos;
+
+  private final long openNanos;
+
+  private final int halfOpenCalls;
+
+  private final LongSupplier ticker;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final LongAdder rejected = new LongAdder();
+
+  // The outcomes of the last windowSize calls, guarded by lock
+  private final byte[] outcomes;
+
+  private int next;
+
+  private int recorded;
+
+  private int failures;
+
+  private int slowCalls;
+
+  private int halfOpenAvailable;
+
+  private volatile State state = State.CLOSED;
+
+  // Bumped on every transition, so that calls started before it are not recorded after it
+  private volatile long generation;
+
+  private volatile long openedAtNanos;
+
+  private CircuitBreaker(Builder builder, LongSupplier ticker) {
+    this.windowSize = builder.windowSize;
+    this.minimumCalls = builder.minimumCalls;
+    this.failureRateThreshold = builder.failureRateThreshold;
+    this.slowCallRateThreshold = builder.slowCallRateThreshold;
+    this.slowCallNanos = builder.slowCallNanos;
+    this.openNanos = builder.openNanos;
+    this.halfOpenCalls = builder.halfOpenCalls;
+    this.ticker = ticker;
+    this.outcomes = new byte[windowSize];
+  }
+
+  /**
+   * The current state, without taking a lock.  An open breaker whose open duration has passed
+   * is reported as HALF_OPEN; it moves there when the next call is made.
+   *
+   * @return the state
+   */
+  public State getState() {
+    State current = state;
+    if (current == State.OPEN && ticker.getAsLong() - openedAtNanos >= openNanos) {
+      return State.HALF_OPEN;
+    }
+    return current;
+  }
+
+  /**
+   * The share of failed calls among those recorded in the current state.
+   *
+   * @return a percentage, or -1 if fewer than the minimum number of calls have been recorded
+   */
+  public float getFailureRate() {
+    lock.lock();
+    try {
+      return recorded < Math.min(minimumCalls, windowSize) ? -1 : failures * 100f / recorded;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The share of slow calls among those recorded in the current state.
+   *
+   * @return a percentage, or -1 if fewer than the minimum number of calls have been recorded
+   */
+  public float getSlowCallRate() {
+    lock.lock();
+    try {
+      return recorded < Math.min(minimumCalls, windowSize) ? -1 : slowCalls * 100f / recorded;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The number of calls rejected without contacting Duo.
+   *
+   * @return the rejected call count since the breaker was created
+   */
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "CircuitBreaker [state=" + getState()
+        + ", failureRate=" + getFailureRate()
+        + ", slowCallRate=" + getSlowCallRate()
+        + ", rejected=" + getRejectedCount()
+        + "]";
+  }
+
+  /**
+   * Asks to make a call.  The returned permit must be completed when the call ends.
+   *
+   * @throws CircuitBreakerOpenException If the call should not be made
+   */
+  Permit acquirePermit() throws CircuitBreakerOpenException {
+    long permitGeneration = generation;
+    if (state == State.CLOSED) {
+      return new Permit(this, permitGeneration, ticker.getAsLong());
+    }
+    long now = ticker.getAsLong();
+    lock.lock();
+    try {
+      if (state == State.OPEN && now - openedAtNanos >= openNanos) {
+        transition(State.HALF_OPEN);
+        halfOpenAvailable = halfOpenCalls;
+      }
+      if (state == State.CLOSED) {
+        return new Permit(this, generation, now);
+      }
+      if (state == State.HALF_OPEN && halfOpenAvailable > 0) {
+        halfOpenAvailable--;
+        return new Permit(this, generation, now);
+      }
+    } finally {
+      lock.unlock();
+    }
+    rejected.increment();
+    if (state == State.OPEN) {
+      long remaining = TimeUnit.NANOSECONDS.toMillis(openedAtNanos + openNanos - now);
+      throw new CircuitBreakerOpenException(String.format(
+          "Duo calls are suspended for another %d ms after recent failures", remaining));
+    }
+    throw new CircuitBreakerOpenException(
+        "Duo calls are suspended while trial calls check that it has recovered");
+  }
+
+  private void record(Permit permit, boolean failed) {
+    long now = ticker.getAsLong();
+    int outcome = (failed ? FAILED : 0)
+        | (now - permit.startNanos >= slowCallNanos ? SLOW : 0);
+    lock.lock();
+    try {
+      if (permit.generation != generation) {
+        return;
+      }
+      if (recorded == windowSize) {
+        int oldest = outcomes[next];
+        failures -= oldest & FAILED;
+        slowCalls -= (oldest & SLOW) >> 1;
+        recorded--;
+      }
+      outcomes[next] = (byte) outcome;
+      next = (next + 1) % windowSize;
+      recorded++;
+      failures += outcome & FAILED;
+      slowCalls += (outcome & SLOW) >> 1;
+      if (state == State.CLOSED && recorded >= Math.min(minimumCalls, windowSize)) {
+        if (exceedsThresholds()) {
+          open(now);
+        }
+      } else if (state == State.HALF_OPEN && recorded == halfOpenCalls) {
+        if (exceedsThresholds()) {
+          open(now);
+        } else {
+          transition(State.CLOSED);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean exceedsThresholds() {
+    return failures * 100L >= (long) failureRateThreshold * recorded
+        || slowCalls * 100L >= (long) slowCallRateThreshold * recorded;
+  }
+
+  private void open(long now) {
+    openedAtNanos = now;
+    transition(State.OPEN);
+  }
+
+  private void transition(State to) {
+    next = 0;
+    recorded = 0;
+    failures = 0;
+    slowCalls = 0;
+    generation++;
+    state = to;
+  }
+
+  /**
+   * Takes back a permit whose call's outcome is unknown, so that a trial call may be made again.
+   */
+  private void giveBack(Permit permit) {
+    lock.lock();
+    try {
+      if (permit.generation == generation && state == State.HALF_OPEN) {
+        halfOpenAvailable++;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static boolean isFailure(Throwable error) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    if (error instanceof DuoResponseException) {
+      int status = ((DuoResponseException) error).getStatusCode();
+      return status >= 500 || status == 429;
+    }
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof IOException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Permission to make one call, completed with its outcome.
+   */
+  static final class Permit {
+    /**
+     * A permit that records nothing, for Clients without a circuit breaker.
+     */
+    static final Permit NONE = new Permit(null, 0, 0);
+
+    private final CircuitBreaker breaker;
+    private final long generation;
+    private final long startNanos;
+
+    private Permit(CircuitBreaker breaker, long generation, long startNanos) {
+      this.breaker = breaker;
+      this.generation = generation;
+      this.startNanos = startNanos;
+    }
+
+    /**
+     * Records the outcome of the call, in the shape of a CompletableFuture completion.
+     *
+     * @param result Ignored
+     * @param error  Why the call failed, or null if it succeeded
+     */
+    void complete(Object result, Throwable error) {
+      if (breaker == null) {
+        return;
+      }
+      if (error instanceof CancellationException) {
+        breaker.giveBack(this);
+      } else {
+        breaker.record(this, isFailure(error));
+      }
+    }
+
+    /**
+     * Records the call as failed whatever its error, such as a health check in which Duo
+     * reported itself unhealthy.
+     */
+    void fail() {
+      if (breaker != null) {
+        breaker.record(this, true);
+      }
+    }
+
+    /**
+     * Gives the permit back without recording an outcome, for a call abandoned for a reason
+     * that says nothing about Duo, such as the caller's own deadline passing.
+     */
+    void release() {
+      if (breaker != null) {
+        breaker.giveBack(this);
+      }
+    }
+  }
+
+  /**
+   * Builds a {@link CircuitBreaker}.  The defaults open the breaker when half of the last 50
+   * calls, once there have been 10, failed or took 5 seconds or more, and try again after 30
+   * seconds with 3 trial calls.
+   */
+  public static class Builder {
+    private int windowSize = 50;
+    private int minimumCalls = 10;
+    private int failureRateThreshold = 50;
+    private int slowCallRateThreshold = 50;
+    private long slowCallNanos = TimeUnit.SECONDS.toNanos(5);
+    private long openNanos = TimeUnit.SECONDS.toNanos(30);
+    private int halfOpenCalls = 3;
+
+    /**
+     * Optionally set how many of the most recent calls are considered, and how many must have
+     * completed before the breaker can open.
+     *
+     * @param windowSize   The number of calls to keep
+     * @param minimumCalls The number of calls needed to judge the rates
+     *
+     * @return the Builder
+     */
+    public Builder setSlidingWindow(int windowSize, int minimumCalls) {
+      if (windowSize <= 0 || minimumCalls <= 0) {
+        throw new IllegalArgumentException("The window size and minimum calls must be positive");
+      }
+      this.windowSize = windowSize;
+      this.minimumCalls = minimumCalls;
+      return this;
+    }
+
+    /**
+     * Optionally set the percentage of failed calls that opens the breaker.  Defaults to 50.
+     *
+     * @param percent Between 1 and 100
+     *
+     * @return the Builder
+     */
+    public Builder setFailureRateThreshold(int percent) {
+      this.failureRateThreshold = checkPercent(percent);
+      return this;
+    }
+
+    /**
+     * Optionally set what counts as a slow call, and the percentage of slow calls that opens
+     * the breaker.  Defaults to 50 percent of calls taking 5 seconds or more.
+     *
+     * @param duration How long a call may take before it is slow
+     * @param unit     The unit of duration
+     * @param percent  Between 1 and 100
+     *
+     * @return the Builder
+     */
+    public Builder setSlowCallRateThreshold(long duration, TimeUnit unit, int percent) {
+      if (duration <= 0) {
+        throw new IllegalArgumentException("The slow call duration must be positive");
+      }
+      this.slowCallNanos = unit.toNanos(duration);
+      this.slowCallRateThreshold = checkPercent(percent);
+      return this;
+    }
+
+    /**
+     * Optionally set how long the breaker stays open before trial calls are let through.
+     * Defaults to 30 seconds.
+     *
+     * @param duration How long to stay open
+     * @param unit     The unit of duration
+     *
+     * @return the Builder
+     */
+    public Builder setOpenDuration(long duration, TimeUnit unit) {
+      if (duration <= 0) {
+        throw new IllegalArgumentException("The open duration must be positive");
+      }
+      this.openNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    /**
+     * Optionally set how many trial calls decide whether a half open breaker closes.
+     * Defaults to 3.
+     *
+     * @param calls The number of trial calls
+     *
+     * @return the Builder
+     */
+    public Builder setHalfOpenCalls(int calls) {
+      if (calls <= 0) {
+        throw new IllegalArgumentException("The number of half open calls must be positive");
+      }
+      this.halfOpenCalls = calls;
+      return this;
+    }
+
+    /**
+     * Build the circuit breaker.
+     *
+     * @return {@link CircuitBreaker}, closed
+     */
+    public CircuitBreaker build() {
+      return build(System::nanoTime);
+    }
+
+    CircuitBreaker build(LongSupplier ticker) {
+      if (halfOpenCalls > windowSize) {
+        throw new IllegalArgumentException(
+            "The number of half open calls cannot exceed the window size");
+      }
+      return new CircuitBreaker(this, ticker);
+    }
+
+    private static int checkPercent(int percent) {
+      if (percent < 1 || percent > 100) {
+        throw new IllegalArgumentException("A rate threshold must be between 1 and 100");
+      }
+      return percent;
+    }
+  }
+}
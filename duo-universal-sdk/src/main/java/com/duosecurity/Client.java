@@ -1,6 +1,5 @@
 package com.duosecurity;
 
-import static com.duosecurity.Utils.createJwt;
 import static com.duosecurity.Utils.createJwtForAuthUrl;
 import static com.duosecurity.Utils.getAndValidateUrl;
 import static com.duosecurity.Utils.transformDecodedJwtToToken;
@@ -11,18 +10,34 @@ import static com.duosecurity.Validator.validateUsername;
 import static java.lang.String.format;
 
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.duosecurity.exception.CircuitBreakerOpenException;
 import com.duosecurity.exception.DuoException;
+import com.duosecurity.exception.DuoResponseException;
+import com.duosecurity.model.CachedHealthStatus;
 import com.duosecurity.model.HealthCheckResponse;
 import com.duosecurity.model.Token;
 import com.duosecurity.model.TokenResponse;
+import com.duosecurity.service.DuoConnectionSettings;
 import com.duosecurity.service.DuoConnector;
+import com.duosecurity.service.DuoTimeouts;
+import com.duosecurity.service.DuoTransport;
+import com.duosecurity.service.HttpEngine;
+import com.duosecurity.service.HttpEngineConfig;
+import com.duosecurity.service.JdkHttpEngine;
+import com.duosecurity.service.VirtualThreads;
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.X509TrustManager;
 
 
 /**
  * Client serves as the entry point for this library. Instantiating this class
  * gives access to four public methods required for Duo's Universal Prompt 2FA.
  */
-public class Client {
+public class Client implements Closeable {
 
   // **************************************************
   // Constants
@@ -36,6 +51,8 @@ public class Client {
   private static final String CLIENT_ASSERTION_TYPE
         = "urn:ietf:params:oauth:client-assertion-type:jwt-bearer";
 
+  private static final int STATE_LENGTH = 36;
+
   private static final String USER_AGENT_LIB = "duo_universal_java";
 
   private static final String USER_AGENT_VERSION = "1.2.1-SNAPSHOT";
@@ -53,14 +70,36 @@ public class Client {
 
   private Boolean useDuoCodeAttribute;
 
+  private boolean useStreamingTokenVerifier;
+
   private String proxyHost;
 
   private Integer proxyPort;
 
-  protected DuoConnector duoConnector;
+  protected volatile DuoConnector duoConnector;
+
+  private LazyConnector lazyConnector;
+
+  private PeriodicCall keepWarm;
+
+  private SingleFlight<TokenResponse> tokenExchanges;
 
   private String userAgent;
 
+  private HealthCheckCache healthCheckCache;
+
+  private CryptoContext crypto;
+
+  private PrefetchedIds statePrefetch;
+
+  private CircuitBreaker circuitBreaker;
+
+  private FailMode failMode;
+
+  private RetryPolicy retryPolicy;
+
+  private DuoMetrics metrics;
+
   // **************************************************
   // Constructors
   // This class uses the "Builder" pattern and should not be directly instantiated.
@@ -111,8 +150,19 @@ public class Client {
     this.apiHost = client.apiHost;
     this.redirectUri = client.redirectUri;
     this.useDuoCodeAttribute = client.useDuoCodeAttribute;
+    this.useStreamingTokenVerifier = client.useStreamingTokenVerifier;
     this.duoConnector = client.duoConnector;
+    this.lazyConnector = client.lazyConnector;
+    this.keepWarm = client.keepWarm;
+    this.tokenExchanges = client.tokenExchanges;
     this.userAgent = client.userAgent;
+    this.healthCheckCache = client.healthCheckCache;
+    this.crypto = client.crypto;
+    this.statePrefetch = client.statePrefetch;
+    this.circuitBreaker = client.circuitBreaker;
+    this.failMode = client.failMode;
+    this.retryPolicy = client.retryPolicy;
+    this.metrics = client.metrics;
   }
 
   /**
@@ -146,8 +196,19 @@ public class Client {
     this.apiHost = client.apiHost;
     this.redirectUri = client.redirectUri;
     this.useDuoCodeAttribute = client.useDuoCodeAttribute;
+    this.useStreamingTokenVerifier = client.useStreamingTokenVerifier;
     this.duoConnector = client.duoConnector;
+    this.lazyConnector = client.lazyConnector;
+    this.keepWarm = client.keepWarm;
+    this.tokenExchanges = client.tokenExchanges;
     this.userAgent = client.userAgent;
+    this.healthCheckCache = client.healthCheckCache;
+    this.crypto = client.crypto;
+    this.statePrefetch = client.statePrefetch;
+    this.circuitBreaker = client.circuitBreaker;
+    this.failMode = client.failMode;
+    this.retryPolicy = client.retryPolicy;
+    this.metrics = client.metrics;
     this.proxyHost = client.proxyHost;
     this.proxyPort = client.proxyPort;
   }
@@ -162,6 +223,25 @@ public class Client {
     private Boolean useDuoCodeAttribute;
     private String[] caCerts;
     private String userAgent;
+    private boolean useSharedTransport;
+    private HttpEngine.Factory httpEngineFactory;
+    private boolean useStreamingTokenVerifier;
+    private Executor callbackExecutor;
+    private long healthCheckRefreshInterval;
+    private long healthCheckTimeToLive;
+    private TimeUnit healthCheckTimeUnit;
+    private long keepWarmInterval;
+    private TimeUnit keepWarmTimeUnit;
+    private long exchangeCoalescingTimeToLive;
+    private TimeUnit exchangeCoalescingTimeUnit;
+    private int statePrefetchCapacity;
+    private CircuitBreaker circuitBreaker;
+    private FailMode failMode = FailMode.CLOSED;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    private DuoMetrics metrics = DuoMetrics.NONE;
+    private DuoTimeouts timeouts = DuoTimeouts.DEFAULT;
+    private final DuoConnectionSettings.Builder connectionSettings =
+        new DuoConnectionSettings.Builder();
 
     private static final String[] DEFAULT_CA_CERTS = {
         //Source URL: https://www.amazontrust.com/repository/AmazonRootCA1.cer
@@ -585,6 +665,15 @@ public class Client {
         + "mMpYjn0q7pBZc2T5NnReJaH1ZgUufzkVqSr7UIuOhWn0",
     };
 
+    /**
+     * The pins for DEFAULT_CA_CERTS.  The bundle holds whole certificates rather than hashes,
+     * so the SHA-256 of each certificate's public key is derived once per JVM, the first time
+     * a Client using the bundle calls Duo, and every Client shares the result.
+     */
+    private static final class DefaultCaPins {
+      private static final String[] PINS = Utils.spkiPins(DEFAULT_CA_CERTS);
+    }
+
     /**
      * Builder.
      *
@@ -647,26 +736,102 @@ public class Client {
       client.apiHost = apiHost;
       client.redirectUri = redirectUri;
       client.useDuoCodeAttribute = useDuoCodeAttribute;
+      client.useStreamingTokenVerifier = useStreamingTokenVerifier;
       client.userAgent = userAgent;
-      client.duoConnector = new DuoConnector(apiHost, proxyHost, proxyPort, caCerts);
+      client.circuitBreaker = circuitBreaker;
+      client.failMode = failMode;
+      client.retryPolicy = retryPolicy;
+      client.metrics = metrics;
+      metrics.track(retryPolicy, circuitBreaker);
+      client.crypto = new CryptoContext(clientId, clientSecret, apiHost);
+      if (statePrefetchCapacity > 0) {
+        client.statePrefetch = new PrefetchedIds(STATE_LENGTH, statePrefetchCapacity);
+      }
+      client.lazyConnector = new LazyConnector(connectorFactory());
+      if (exchangeCoalescingTimeUnit != null) {
+        client.tokenExchanges = new SingleFlight<>(exchangeCoalescingTimeToLive,
+                exchangeCoalescingTimeUnit);
+      }
+      if (healthCheckTimeUnit != null) {
+        client.healthCheckCache = new HealthCheckCache(client::healthCheckAsync,
+                healthCheckRefreshInterval, healthCheckTimeToLive, healthCheckTimeUnit);
+      }
+      if (keepWarmTimeUnit != null) {
+        client.keepWarm = new PeriodicCall(client::healthCheckAsync, keepWarmInterval,
+                keepWarmTimeUnit);
+      }
 
       return client;
     }
 
+    /**
+     * Captures the connection settings as they are now, so that changing the Builder after
+     * build() does not change the connector created later.
+     */
+    private LazyConnector.Factory connectorFactory() {
+      final String proxyHost = this.proxyHost;
+      final Integer proxyPort = this.proxyPort;
+      final String[] caCerts = this.caCerts;
+      final boolean useSharedTransport = this.useSharedTransport;
+      final Executor callbackExecutor = this.callbackExecutor;
+      final DuoTimeouts timeouts = this.timeouts;
+      final DuoMetrics metrics = this.metrics;
+      final HttpEngine.Factory httpEngineFactory = this.httpEngineFactory;
+      final DuoConnectionSettings connectionSettings = this.connectionSettings.build();
+      return () -> {
+        final String[] pins = caCerts == DEFAULT_CA_CERTS ? DefaultCaPins.PINS : caCerts;
+        if (httpEngineFactory != null) {
+          return new DuoConnector(httpEngineFactory.create(new HttpEngineConfig(apiHost,
+              proxyHost, proxyPort, pins, timeouts, connectionSettings)),
+              callbackExecutor, timeouts, metrics.network());
+        }
+        DuoTransport transport = useSharedTransport
+                ? DuoTransport.acquire(apiHost, proxyHost, proxyPort, pins, connectionSettings)
+                : DuoTransport.create(apiHost, proxyHost, proxyPort, pins, connectionSettings);
+        try {
+          DuoConnector connector =
+              new DuoConnector(transport, callbackExecutor, timeouts, metrics.network());
+          metrics.track(transport);
+          return connector;
+        } catch (DuoException | RuntimeException e) {
+          transport.release();
+          throw e;
+        }
+      };
+    }
+
     /**
      * Optionally use custom CA Certificates when validating connections to Duo.
      *
-     * @param userCaCerts List of CA Certificates to use
+     * @param userCaCerts List of CA Certificates to use, each either the SHA-256 pin of a
+     *                    public key or a whole DER certificate in base64, with a "sha256/"
+     *                    prefix
      * 
      * @return the Builder
+     *
+     * @throws IllegalArgumentException If an entry is neither a pin nor a certificate
      */
     public Builder setCACerts(String[] userCaCerts) {
       if (validateCaCert(userCaCerts)) {
-        this.caCerts = userCaCerts;
+        this.caCerts = Utils.pins(userCaCerts);
       }
       return this;
     }
 
+    /**
+     * Optionally decide which server certificate chains to trust with the given trust manager
+     * instead of the JVM's default trust store, for example to test against a local server
+     * that uses its own CA.  Connections must still match the pinned CA Certificates.
+     *
+     * @param trustManager The trust manager to use
+     *
+     * @return the Builder
+     */
+    public Builder setTrustManager(X509TrustManager trustManager) {
+      connectionSettings.setTrustManager(trustManager);
+      return this;
+    }
+
     /**
      * Optionally toggle the returned authorization parameter to use duo_code vs code.
      * Defaults true to use duo_code.
@@ -680,6 +845,370 @@ public class Client {
       return this;
     }
 
+    /**
+     * Optionally keep a buffer of states generated ahead of time by a background thread, so that
+     * {@link Client#generateState()} only has to take one.  The buffer is refilled when it is
+     * half empty.  Defaults to 0, generating each state when it is requested.
+     *
+     * @param capacity The number of states to keep ready
+     *
+     * @return the Builder
+     */
+    public Builder setStatePrefetch(int capacity) {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("The state prefetch capacity cannot be negative");
+      }
+      this.statePrefetchCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * Optionally verify and decode the id_token in a single streaming pass when exchanging a
+     * duoCode for a username, instead of through java-jwt's DecodedJWT.  The same tokens are
+     * accepted and the same Token is returned.  Defaults false.  Exchanges that pass their own
+     * TokenValidator are not affected.
+     *
+     * @param useStreamingTokenVerifier true/false toggle
+     *
+     * @return the Builder
+     */
+    public Builder setUseStreamingTokenVerifier(boolean useStreamingTokenVerifier) {
+      this.useStreamingTokenVerifier = useStreamingTokenVerifier;
+      return this;
+    }
+
+    /**
+     * Optionally share the connection pool and dispatcher with every other Client that uses the
+     * same api host, proxy, CA Certificates and connection settings.  Defaults false, giving
+     * each Client its own.
+     * Shared resources are released when the last Client using them is closed.
+     *
+     * @param useSharedTransport true/false toggle
+     *
+     * @return the Builder
+     */
+    public Builder setUseSharedTransport(boolean useSharedTransport) {
+      this.useSharedTransport = useSharedTransport;
+      return this;
+    }
+
+    /**
+     * Optionally run the HTTP calls of the async methods on virtual threads, one per call,
+     * instead of the dispatcher's platform threads, and lift the dispatcher's limit of 5
+     * concurrent calls per host.  Requires Java 21 or later; see
+     * {@link VirtualThreads#isSupported()}.  Connections are then made over HTTP/1.1, since
+     * OkHttp's HTTP/2 support waits inside synchronized blocks, and the SDK takes no monitor
+     * locks on the call path, so the blocking methods can also be called from a virtual
+     * thread per login without pinning its carrier thread.  Defaults false.
+     *
+     * @param useVirtualThreads true/false toggle
+     *
+     * @return the Builder
+     *
+     * @throws UnsupportedOperationException If virtual threads are not supported
+     */
+    public Builder setUseVirtualThreads(boolean useVirtualThreads) {
+      connectionSettings.setUseVirtualThreads(useVirtualThreads);
+      return this;
+    }
+
+    /**
+     * Optionally send requests to Duo through the given {@link HttpEngine} instead of OkHttp,
+     * for example {@link JdkHttpEngine#factory()} to use the JDK's HTTP client, with HTTP/2,
+     * on Java 11 and later.  The engine is created from this Builder's api host, proxy, CA
+     * Certificates, trust manager, timeouts and virtual threads setting when the Client first
+     * calls Duo, and is closed with the Client.  It is never shared, so
+     * {@link #setUseSharedTransport} does not apply, and network metrics only record the
+     * duration and failures of each call.
+     *
+     * @param httpEngineFactory Creates the engine
+     *
+     * @return the Builder
+     */
+    public Builder setHttpEngine(HttpEngine.Factory httpEngineFactory) {
+      if (httpEngineFactory == null) {
+        throw new IllegalArgumentException("The HTTP engine factory cannot be null");
+      }
+      this.httpEngineFactory = httpEngineFactory;
+      return this;
+    }
+
+    /**
+     * Optionally set the executor that completes the futures returned by the async methods.
+     * By default they are completed on the HTTP client's dispatcher threads, so dependent
+     * stages should not block.
+     *
+     * @param callbackExecutor The executor used to deliver async results
+     *
+     * @return the Builder
+     */
+    public Builder setCallbackExecutor(Executor callbackExecutor) {
+      this.callbackExecutor = callbackExecutor;
+      return this;
+    }
+
+    /**
+     * Optionally keep the result of the health check cached and refreshed in the background,
+     * so that {@link Client#getCachedHealthStatus()} can be used instead of calling Duo on
+     * every login.  The first check is started when the Client is first used: on the first
+     * read of the cache, call to Duo or {@link Client#warmUp()}, so that building the Client
+     * stays cheap.
+     *
+     * @param refreshInterval How often to refresh the health check; each refresh is
+     *                        scheduled with +/- 10% jitter
+     * @param timeToLive      How long a result may be served before it is reported as expired;
+     *                        should be longer than refreshInterval
+     * @param unit            The unit of refreshInterval and timeToLive
+     *
+     * @return the Builder
+     */
+    public Builder setHealthCheckCache(long refreshInterval, long timeToLive, TimeUnit unit) {
+      if (refreshInterval <= 0 || timeToLive <= 0) {
+        throw new IllegalArgumentException("refreshInterval and timeToLive must be positive");
+      }
+      this.healthCheckRefreshInterval = refreshInterval;
+      this.healthCheckTimeToLive = timeToLive;
+      this.healthCheckTimeUnit = unit;
+      return this;
+    }
+
+    /**
+     * Optionally keep the connection to Duo warm by making a health check in the background
+     * every interval, +/- 10% jitter, starting the first time the Client calls Duo, reads
+     * its health check cache or is warmed up with {@link Client#warmUp()}.  The first login
+     * after a quiet period then finds a pooled TLS connection instead of paying for DNS, a
+     * new connection and the TLS handshake.  The interval should be shorter than the time Duo
+     * and any proxy keep idle connections open, such as 30 seconds.  A health check cache
+     * set with {@link #setHealthCheckCache} already keeps the connection warm if it refreshes
+     * often enough.
+     *
+     * @param interval How often to call Duo
+     * @param unit     The unit of interval
+     *
+     * @return the Builder
+     */
+    public Builder setKeepWarm(long interval, TimeUnit unit) {
+      if (interval <= 0) {
+        throw new IllegalArgumentException("The keep warm interval must be positive");
+      }
+      if (unit == null) {
+        throw new IllegalArgumentException("The time unit cannot be null");
+      }
+      this.keepWarmInterval = interval;
+      this.keepWarmTimeUnit = unit;
+      return this;
+    }
+
+    /**
+     * Optionally coalesce token exchanges for the same duoCode.  A browser that retries or
+     * double-submits the redirect from Duo calls back twice with one duoCode, and the second
+     * exchange fails because Duo accepts each code only once.  With coalescing, an exchange
+     * that arrives while another for its duoCode is running waits for that one's result
+     * instead of calling Duo.  Each caller still validates the id_token against its own
+     * username, so a duplicate for another user fails.  Errors are shared with the callers
+     * waiting at the time.  Nothing is kept once the exchange returns, so a duplicate that
+     * arrives later calls Duo and fails as before.
+     *
+     * @return the Builder
+     */
+    public Builder setExchangeCoalescing() {
+      return setExchangeCoalescing(0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Optionally coalesce token exchanges for the same duoCode, as {@link
+     * #setExchangeCoalescing()} does, and also keep the response Duo returned for timeToLive,
+     * so that late duplicates are answered without calling Duo.  This is a security trade-off:
+     * for timeToLive, anyone who replays the callback with the duoCode is logged in again, which
+     * Duo's single use of each code would otherwise prevent.  Keep it short, such as a few
+     * seconds, and prefer {@link #setExchangeCoalescing()} unless late duplicates are a real
+     * problem.  Errors are never kept.
+     *
+     * @param timeToLive How long the response for a duoCode is kept, or 0 to keep nothing
+     * @param unit       The unit of timeToLive
+     *
+     * @return the Builder
+     */
+    public Builder setExchangeCoalescing(long timeToLive, TimeUnit unit) {
+      if (timeToLive < 0) {
+        throw new IllegalArgumentException("The time to live cannot be negative");
+      }
+      if (unit == null) {
+        throw new IllegalArgumentException("The time unit cannot be null");
+      }
+      this.exchangeCoalescingTimeToLive = timeToLive;
+      this.exchangeCoalescingTimeUnit = unit;
+      return this;
+    }
+
+    /**
+     * Optionally set the connect, read and write timeouts of requests to Duo.  Each defaults to
+     * 10 seconds; 0 means no timeout.
+     *
+     * @param connectTimeout How long to wait to establish a connection, including TLS
+     * @param readTimeout    The longest pause allowed while reading a response
+     * @param writeTimeout   The longest pause allowed while sending a request
+     * @param unit           The unit of the timeouts
+     *
+     * @return the Builder
+     */
+    public Builder setTimeouts(long connectTimeout, long readTimeout, long writeTimeout,
+                               TimeUnit unit) {
+      if (unit == null) {
+        throw new IllegalArgumentException("The time unit cannot be null");
+      }
+      this.timeouts = new DuoTimeouts(unit.toMillis(connectTimeout), unit.toMillis(readTimeout),
+              unit.toMillis(writeTimeout), timeouts.getCallTimeoutMillis(), TimeUnit.MILLISECONDS);
+      return this;
+    }
+
+    /**
+     * Optionally limit how long a whole request to Duo may take, from sending it to reading
+     * the last byte of the response.  Defaults to 0, no limit beyond the connect, read and
+     * write timeouts.  Calls with a deadline are limited by whichever ends first.
+     *
+     * @param callTimeout How long a request may take
+     * @param unit        The unit of callTimeout
+     *
+     * @return the Builder
+     */
+    public Builder setCallTimeout(long callTimeout, TimeUnit unit) {
+      if (unit == null) {
+        throw new IllegalArgumentException("The time unit cannot be null");
+      }
+      this.timeouts = new DuoTimeouts(timeouts.getConnectTimeoutMillis(),
+              timeouts.getReadTimeoutMillis(), timeouts.getWriteTimeoutMillis(),
+              unit.toMillis(callTimeout), TimeUnit.MILLISECONDS);
+      return this;
+    }
+
+    /**
+     * Optionally size the connection pool.  Defaults to 5 idle connections, each closed after
+     * 5 minutes unused.  Raise it to at least the number of concurrent calls at peak, so that
+     * bursts of logins reuse connections instead of opening new ones.
+     *
+     * @param maxIdleConnections The most idle connections to keep
+     * @param keepAlive          How long an idle connection is kept
+     * @param unit               The unit of keepAlive
+     *
+     * @return the Builder
+     */
+    public Builder setConnectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+      connectionSettings.setConnectionPool(maxIdleConnections, keepAlive, unit);
+      return this;
+    }
+
+    /**
+     * Optionally limit how many calls made by the async methods run at once; the rest wait
+     * in a queue.  Defaults to 64 in total and 5 to the api host.  The blocking methods are not
+     * limited.  Ignored with virtual threads, which lift both limits.
+     *
+     * @param maxRequests        The most async calls to run at once
+     * @param maxRequestsPerHost The most async calls to run at once to the api host
+     *
+     * @return the Builder
+     */
+    public Builder setMaxRequests(int maxRequests, int maxRequestsPerHost) {
+      connectionSettings.setMaxRequests(maxRequests, maxRequestsPerHost);
+      return this;
+    }
+
+    /**
+     * Optionally choose whether HTTP/2 is offered to Duo.  Defaults to HTTP_2, which
+     * multiplexes concurrent calls over one connection when Duo accepts it; HTTP_1_1 uses a
+     * connection per concurrent call.  Virtual threads always use HTTP/1.1.
+     *
+     * @param httpVersion The protocols to offer
+     *
+     * @return the Builder
+     */
+    public Builder setHttpVersion(DuoConnectionSettings.HttpVersion httpVersion) {
+      connectionSettings.setHttpVersion(httpVersion);
+      return this;
+    }
+
+    /**
+     * Optionally size the cache of TLS sessions, which lets new connections resume a session
+     * with an abbreviated handshake.  Defaults to the JVM's, which is 20480 sessions kept for
+     * 24 hours on recent JVMs.  A size or timeout of 0 keeps the JVM's default.
+     *
+     * @param size    The most sessions to keep
+     * @param timeout How long a session may be resumed
+     * @param unit    The unit of timeout
+     *
+     * @return the Builder
+     */
+    public Builder setTlsSessionCache(int size, long timeout, TimeUnit unit) {
+      connectionSettings.setTlsSessionCache(size, timeout, unit);
+      return this;
+    }
+
+    /**
+     * Optionally stop calling Duo for a while after calls fail or are slow, so that logins
+     * during an outage are rejected at once instead of each waiting for a timeout.  A breaker
+     * may be shared by several Clients for the same api host.  Defaults to none.
+     *
+     * @param circuitBreaker The circuit breaker to call Duo through
+     *
+     * @return the Builder
+     */
+    public Builder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+      this.circuitBreaker = circuitBreaker;
+      return this;
+    }
+
+    /**
+     * Optionally set what the integration should do with logins while Duo is unavailable, as
+     * reported by {@link Client#getFailMode()}.  The Client only reports it; the integration
+     * decides whether to let the user in.  Defaults to {@link FailMode#CLOSED}.
+     *
+     * @param failMode The fail mode
+     *
+     * @return the Builder
+     */
+    public Builder setFailMode(FailMode failMode) {
+      if (failMode == null) {
+        throw new IllegalArgumentException("The fail mode cannot be null");
+      }
+      this.failMode = failMode;
+      return this;
+    }
+
+    /**
+     * Optionally retry failed calls to Duo.  Health checks are retried after any connection
+     * failure or 5xx answer; token exchanges only when the request never reached Duo, since a
+     * duoCode can only be exchanged once.  Each retry acquires its own circuit breaker permit.
+     * A policy may be shared by several Clients.  Defaults to making every call once.
+     *
+     * @param retryPolicy The retry policy
+     *
+     * @return the Builder
+     */
+    public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+      if (retryPolicy == null) {
+        throw new IllegalArgumentException("The retry policy cannot be null");
+      }
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    /**
+     * Optionally count the calls made to Duo and record their latency, and that of signing
+     * client assertions and verifying id_tokens.  The metrics may be shared by several Clients.
+     * Defaults to recording nothing.
+     *
+     * @param metrics The metrics to record into
+     *
+     * @return the Builder
+     */
+    public Builder setMetrics(DuoMetrics metrics) {
+      if (metrics == null) {
+        throw new IllegalArgumentException("The metrics cannot be null");
+      }
+      this.metrics = metrics;
+      return this;
+    }
+
     /**
      * Optionally appends string to userAgent.
      *
@@ -717,15 +1246,227 @@ public class Client {
    * @throws DuoException For health check errors
    */
   public HealthCheckResponse healthCheck() throws DuoException {
+    return checkHealth(null);
+  }
+
+  /**
+   * Checks if Duo is healthy and available for 2FA, giving up once the timeout has passed.
+   * Pass the time left of the caller's own deadline, so that a slow Duo response cannot hold
+   * the caller past it.
+   *
+   * @param timeout How long the health check may take
+   * @param unit    The unit of timeout
+   *
+   * @return {@link HealthCheckResponse}
+   *
+   * @throws DuoException For health check errors, or if the timeout passes first
+   */
+  public HealthCheckResponse healthCheck(long timeout, TimeUnit unit) throws DuoException {
+    return checkHealth(Deadline.after(timeout, unit));
+  }
+
+  private HealthCheckResponse checkHealth(Deadline deadline) throws DuoException {
+    final FlightRecorderEvent event = FlightRecorderEvent.healthCheck();
+    final long start = metrics.start();
+    HealthCheckResponse response;
+    try {
+      response = retryPolicy.execute(true, deadline, () -> healthCheckAttempt(deadline, event));
+    } catch (DuoException e) {
+      metrics.record(DuoMetrics.Operation.HEALTH_CHECK, start, e);
+      event.end(OAUTH_V_1_HEALTH_CHECK_ENDPOINT, e);
+      throw e;
+    }
+    metrics.record(DuoMetrics.Operation.HEALTH_CHECK, start, null);
+    event.end(OAUTH_V_1_HEALTH_CHECK_ENDPOINT, null);
+    return response;
+  }
+
+  private HealthCheckResponse healthCheckAttempt(Deadline deadline, FlightRecorderEvent event)
+      throws DuoException {
     String aud = getAndValidateUrl(apiHost, OAUTH_V_1_HEALTH_CHECK_ENDPOINT).toString();
-    HealthCheckResponse response = duoConnector.duoHealthcheck(clientId,
-                createJwt(clientId, clientSecret, aud));
+    Deadline.check(deadline);
+    CircuitBreaker.Permit permit = acquirePermit();
+    HealthCheckResponse response;
+    try {
+      DuoConnector connector = connector();
+      String clientAssertion = createClientAssertion(aud, OAUTH_V_1_HEALTH_CHECK_ENDPOINT);
+      event.addBytes(clientAssertion.length());
+      response = deadline == null
+          ? connector.duoHealthcheck(clientId, clientAssertion)
+          : connector.duoHealthcheck(clientId, clientAssertion, deadline.remainingNanos(),
+              TimeUnit.NANOSECONDS);
+    } catch (DuoException e) {
+      completeFailed(permit, e, deadline);
+      throw e;
+    }
     if (!response.wasSuccess()) {
+      permit.fail();
       throw new DuoException(response.getMessage());
     }
+    permit.complete(response, null);
     return response;
   }
 
+  /**
+   * Checks if Duo is healthy and available for 2FA without blocking the calling thread.
+   *
+   * @return CompletableFuture that completes with the {@link HealthCheckResponse}, or
+   *     exceptionally with a {@link DuoException} for health check errors.  Cancelling it
+   *     cancels the underlying HTTP call.
+   */
+  public CompletableFuture<HealthCheckResponse> healthCheckAsync() {
+    FlightRecorderEvent event = FlightRecorderEvent.healthCheck();
+    long start = metrics.start();
+    CompletableFuture<HealthCheckResponse> result =
+        retryPolicy.executeAsync(true, () -> healthCheckAttemptAsync(event));
+    result.whenComplete((response, error) -> {
+      metrics.record(DuoMetrics.Operation.HEALTH_CHECK, start, error);
+      event.end(OAUTH_V_1_HEALTH_CHECK_ENDPOINT, error);
+    });
+    return result;
+  }
+
+  private CompletableFuture<HealthCheckResponse> healthCheckAttemptAsync(
+      FlightRecorderEvent event) {
+    String aud;
+    DuoConnector connector;
+    CircuitBreaker.Permit permit;
+    try {
+      aud = getAndValidateUrl(apiHost, OAUTH_V_1_HEALTH_CHECK_ENDPOINT).toString();
+      connector = connector();
+      permit = acquirePermit();
+    } catch (DuoException e) {
+      return failedFuture(e);
+    }
+    String clientAssertion = createClientAssertion(aud, OAUTH_V_1_HEALTH_CHECK_ENDPOINT);
+    event.addBytes(clientAssertion.length());
+    CompletableFuture<HealthCheckResponse> request = connector.duoHealthcheckAsync(clientId,
+                clientAssertion);
+    request.whenComplete((response, error) -> {
+      if (error == null && !response.wasSuccess()) {
+        permit.fail();
+      } else {
+        permit.complete(response, error);
+      }
+    });
+    CompletableFuture<HealthCheckResponse> result = request.thenApply(response -> {
+      if (!response.wasSuccess()) {
+        throw new CompletionException(new DuoException(response.getMessage()));
+      }
+      return response;
+    });
+    return cancelling(request, result);
+  }
+
+  /**
+   * Returns the result of the most recent background health check without contacting Duo.
+   * If the result is older than the refresh interval a refresh is started, and the current
+   * result is returned meanwhile.  Requires {@link Builder#setHealthCheckCache}.
+   *
+   * @return {@link CachedHealthStatus}
+   *
+   * @throws IllegalStateException If the health check cache was not enabled
+   */
+  public CachedHealthStatus getCachedHealthStatus() {
+    return requireHealthCheckCache().get();
+  }
+
+  /**
+   * Refreshes the cached health check now.  If a refresh is already running, its result is
+   * returned instead of starting another request.  Requires {@link Builder#setHealthCheckCache}.
+   *
+   * @return CompletableFuture that completes with the new {@link CachedHealthStatus}; health
+   *     check failures are reported through the status rather than exceptionally
+   *
+   * @throws IllegalStateException If the health check cache was not enabled
+   */
+  public CompletableFuture<CachedHealthStatus> refreshHealthStatus() {
+    return requireHealthCheckCache().refresh();
+  }
+
+  /**
+   * Whether Duo can be used for a login right now, judged without contacting Duo: false while
+   * the circuit breaker is open, or while the cached health check reports Duo unhealthy.
+   * Without a circuit breaker or health check cache, that source is ignored.  When this is
+   * false, apply {@link #getFailMode()}.
+   *
+   * @return boolean  true if the user should be sent to Duo
+   */
+  public boolean isDuoAvailable() {
+    if (circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+      return false;
+    }
+    if (healthCheckCache == null) {
+      return true;
+    }
+    startBackgroundCalls();
+    return healthCheckCache.get().isHealthy();
+  }
+
+  /**
+   * The state of the circuit breaker set with {@link Builder#setCircuitBreaker}, read without
+   * taking a lock.
+   *
+   * @return {@link CircuitBreaker.State}, CLOSED if there is no circuit breaker
+   */
+  public CircuitBreaker.State getCircuitBreakerState() {
+    return circuitBreaker == null ? CircuitBreaker.State.CLOSED : circuitBreaker.getState();
+  }
+
+  /**
+   * What the integration should do with logins while Duo is unavailable, as set with
+   * {@link Builder#setFailMode}.
+   *
+   * @return {@link FailMode}
+   */
+  public FailMode getFailMode() {
+    return failMode;
+  }
+
+  /**
+   * The retry policy set with {@link Builder#setRetryPolicy}, whose counts show how often
+   * calls to Duo were retried.
+   *
+   * @return {@link RetryPolicy}
+   */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * The metrics set with {@link Builder#setMetrics}.
+   *
+   * @return {@link DuoMetrics}, or null if the Client records none
+   */
+  public DuoMetrics getMetrics() {
+    return metrics == DuoMetrics.NONE ? null : metrics;
+  }
+
+  private CircuitBreaker.Permit acquirePermit() throws CircuitBreakerOpenException {
+    return circuitBreaker == null ? CircuitBreaker.Permit.NONE : circuitBreaker.acquirePermit();
+  }
+
+  private HealthCheckCache requireHealthCheckCache() {
+    if (healthCheckCache == null) {
+      throw new IllegalStateException("The health check cache is not enabled");
+    }
+    startBackgroundCalls();
+    return healthCheckCache;
+  }
+
+  /**
+   * Starts the health check cache and the keep-warm calls the first time the Client is used,
+   * rather than when it is built, so that building a Client does not create its connector.
+   */
+  private void startBackgroundCalls() {
+    if (healthCheckCache != null) {
+      healthCheckCache.start();
+    }
+    if (keepWarm != null) {
+      keepWarm.start();
+    }
+  }
+
 
   /**
    * Constructs a string which can be used to redirect the client browser to Duo for 2FA.
@@ -740,14 +1481,24 @@ public class Client {
    * @throws DuoException For problems creating the auth url
    */
   public String createAuthUrl(String username, String state) throws DuoException {
-    validateUsername(username);
-    validateState(state);
-    String request = createJwtForAuthUrl(clientId, clientSecret, redirectUri,
-            state, username, useDuoCodeAttribute);
-    String query = format(
-            "?scope=openid&response_type=code&redirect_uri=%s&client_id=%s&request=%s",
-            redirectUri, clientId, request);
-    return getAndValidateUrl(apiHost, OAUTH_V_1_AUTHORIZE_ENDPOINT + query).toString();
+    FlightRecorderEvent event = FlightRecorderEvent.createAuthUrl();
+    String authUrl;
+    try {
+      validateUsername(username);
+      validateState(state);
+      String request = createJwtForAuthUrl(crypto.getAlgorithm(), clientId, redirectUri,
+              state, username, useDuoCodeAttribute);
+      String query = format(
+              "?scope=openid&response_type=code&redirect_uri=%s&client_id=%s&request=%s",
+              redirectUri, clientId, request);
+      authUrl = getAndValidateUrl(apiHost, OAUTH_V_1_AUTHORIZE_ENDPOINT + query).toString();
+    } catch (DuoException | RuntimeException e) {
+      event.end(OAUTH_V_1_AUTHORIZE_ENDPOINT, e);
+      throw e;
+    }
+    event.addBytes(authUrl.length());
+    event.end(OAUTH_V_1_AUTHORIZE_ENDPOINT, null);
+    return authUrl;
   }
 
 
@@ -769,8 +1520,31 @@ public class Client {
    */
   public Token exchangeAuthorizationCodeFor2FAResult(String duoCode, String username)
       throws DuoException {
-    TokenValidator validator = new DuoIdTokenValidator(clientSecret, username, clientId, apiHost);
-    return exchangeAuthorizationCodeFor2FAResult(duoCode, validator);
+    return exchange(duoCode, username, null);
+  }
+
+  /**
+   * Verifies the duoCode returned by Duo and exchanges it for a {@link Token}, giving up once
+   * the timeout has passed.  Pass the time left of the caller's own deadline, so that a slow
+   * Duo response cannot hold the caller past it.  Uses the default token validator defined in
+   * DuoIdTokenValidator.
+   *
+   * @param duoCode  This string is an identifier for the auth and should be exchanged with Duo
+   *                 for a token to determine if the auth was successful as well as obtain
+   *                 meta-data about the auth.
+   * @param username The user to be authenticated by Duo
+   * @param timeout  How long the request to Duo may take
+   * @param unit     The unit of timeout
+   *
+   * @return {@link Token}
+   *
+   * @throws DuoException For errors exchanging duoCode for 2FA results, or if the timeout
+   *                      passes first
+   */
+  public Token exchangeAuthorizationCodeFor2FAResult(String duoCode, String username,
+                                                     long timeout, TimeUnit unit)
+      throws DuoException {
+    return exchange(duoCode, username, Deadline.after(timeout, unit));
   }
 
   /**
@@ -800,13 +1574,305 @@ public class Client {
    */
   public Token exchangeAuthorizationCodeFor2FAResult(String duoCode, TokenValidator validator)
       throws DuoException {
+    return exchange(duoCode, validator, null);
+  }
+
+  /**
+   * Verifies the duoCode returned by Duo and exchanges it for a {@link Token}, giving up once
+   * the timeout has passed, using a custom JWT token validator.  The same requirements apply
+   * to the validator as for {@link #exchangeAuthorizationCodeFor2FAResult(String,
+   * TokenValidator)}.
+   *
+   * @param duoCode   This string is an identifier for the auth and should be exchanged with
+   *                  Duo for a token to determine if the auth was successful as well as obtain
+   *                  meta-data about the auth.
+   * @param validator A TokenValidator that will validate and decode the JWT ID Token provided
+   *                  by Duo.
+   * @param timeout   How long the request to Duo may take
+   * @param unit      The unit of timeout
+   *
+   * @return {@link Token}
+   *
+   * @throws DuoException For errors exchanging duoCode for 2FA results, or if the timeout
+   *                      passes first
+   */
+  public Token exchangeAuthorizationCodeFor2FAResult(String duoCode, TokenValidator validator,
+                                                     long timeout, TimeUnit unit)
+      throws DuoException {
+    return exchange(duoCode, validator, Deadline.after(timeout, unit));
+  }
+
+  private Token exchange(String duoCode, String username, Deadline deadline)
+      throws DuoException {
+    if (useStreamingTokenVerifier) {
+      StreamingIdTokenVerifier verifier = crypto.getStreamingIdTokenVerifier();
+      return exchangeAndDecode(duoCode, idToken -> verifyStreaming(verifier, idToken, username),
+          deadline);
+    }
+    TokenValidator validator = new DuoIdTokenValidator(crypto.getIdTokenVerifier(), username,
+                                                        null);
+    return exchange(duoCode, validator, deadline);
+  }
+
+  private Token exchange(String duoCode, TokenValidator validator, Deadline deadline)
+      throws DuoException {
+    return exchangeAndDecode(duoCode, idToken -> transform(validate(validator, idToken)),
+        deadline);
+  }
+
+  private Token exchangeAndDecode(String duoCode, IdTokenDecoder decoder, Deadline deadline)
+      throws DuoException {
+    FlightRecorderEvent event = FlightRecorderEvent.tokenExchange();
+    Token token;
+    try {
+      String idToken = coalescedRequestToken(duoCode, deadline).getId_token();
+      event.addBytes(idToken == null ? 0 : idToken.length());
+      token = decoder.decode(idToken);
+    } catch (DuoException | RuntimeException e) {
+      event.end(OAUTH_V_1_TOKEN_ENDPOINT, e);
+      throw e;
+    }
+    event.end(OAUTH_V_1_TOKEN_ENDPOINT, null);
+    return token;
+  }
+
+  private DecodedJWT validate(TokenValidator validator, String idToken) throws DuoException {
+    final FlightRecorderEvent event = idTokenValidationEvent(idToken);
+    final long start = metrics.start();
+    DecodedJWT decodedJwt;
+    try {
+      decodedJwt = validator.validateAndDecode(idToken);
+    } catch (DuoException | RuntimeException e) {
+      metrics.record(DuoMetrics.Operation.ID_TOKEN_VERIFICATION, start, e);
+      event.end(OAUTH_V_1_TOKEN_ENDPOINT, e);
+      throw e;
+    }
+    metrics.record(DuoMetrics.Operation.ID_TOKEN_VERIFICATION, start, null);
+    event.end(OAUTH_V_1_TOKEN_ENDPOINT, null);
+    return decodedJwt;
+  }
+
+  private Token verifyStreaming(StreamingIdTokenVerifier verifier, String idToken,
+                                String username) throws DuoException {
+    final FlightRecorderEvent event = idTokenValidationEvent(idToken);
+    final long start = metrics.start();
+    Token token;
+    try {
+      token = verifier.verify(idToken, username, null);
+    } catch (DuoException | RuntimeException e) {
+      metrics.record(DuoMetrics.Operation.ID_TOKEN_VERIFICATION, start, e);
+      event.end(OAUTH_V_1_TOKEN_ENDPOINT, e);
+      throw e;
+    }
+    metrics.record(DuoMetrics.Operation.ID_TOKEN_VERIFICATION, start, null);
+    event.end(OAUTH_V_1_TOKEN_ENDPOINT, null);
+    return token;
+  }
+
+  private static FlightRecorderEvent idTokenValidationEvent(String idToken) {
+    FlightRecorderEvent event = FlightRecorderEvent.idTokenValidation();
+    event.addBytes(idToken == null ? 0 : idToken.length());
+    return event;
+  }
+
+  private Token transform(DecodedJWT decodedJwt) {
+    final long start = metrics.start();
+    Token token;
+    try {
+      token = transformDecodedJwtToToken(decodedJwt);
+    } catch (RuntimeException e) {
+      metrics.record(DuoMetrics.Operation.TOKEN_TRANSFORM, start, e);
+      throw e;
+    }
+    metrics.record(DuoMetrics.Operation.TOKEN_TRANSFORM, start, null);
+    return token;
+  }
+
+  private String createClientAssertion(String aud, String endpoint) {
+    FlightRecorderEvent event = FlightRecorderEvent.jwtSigning();
+    long start = metrics.start();
+    String clientAssertion = crypto.createClientAssertion(aud);
+    metrics.record(DuoMetrics.Operation.CLIENT_ASSERTION, start, null);
+    event.addBytes(clientAssertion.length());
+    event.end(endpoint, null);
+    return clientAssertion;
+  }
+
+  private TokenResponse coalescedRequestToken(String duoCode, Deadline deadline)
+      throws DuoException {
+    if (tokenExchanges == null) {
+      return requestToken(duoCode, deadline);
+    }
+    return tokenExchanges.execute(duoCode, deadline, () -> requestToken(duoCode, deadline));
+  }
+
+  private TokenResponse requestToken(String duoCode, Deadline deadline) throws DuoException {
+    final long start = metrics.start();
+    TokenResponse response;
+    try {
+      response = retryPolicy.execute(false, deadline, () -> tokenAttempt(duoCode, deadline));
+    } catch (DuoException e) {
+      metrics.record(DuoMetrics.Operation.TOKEN_EXCHANGE, start, e);
+      throw e;
+    }
+    metrics.record(DuoMetrics.Operation.TOKEN_EXCHANGE, start, null);
+    return response;
+  }
+
+  private TokenResponse tokenAttempt(String duoCode, Deadline deadline) throws DuoException {
     String aud = getAndValidateUrl(apiHost, OAUTH_V_1_TOKEN_ENDPOINT).toString();
-    TokenResponse response = duoConnector.exchangeAuthorizationCodeFor2FAResult(userAgent,
+    Deadline.check(deadline);
+    CircuitBreaker.Permit permit = acquirePermit();
+    TokenResponse response;
+    try {
+      DuoConnector connector = connector();
+      String clientAssertion = createClientAssertion(aud, OAUTH_V_1_TOKEN_ENDPOINT);
+      response = deadline == null
+          ? connector.exchangeAuthorizationCodeFor2FAResult(userAgent, "authorization_code",
+              duoCode, redirectUri, CLIENT_ASSERTION_TYPE, clientAssertion)
+          : connector.exchangeAuthorizationCodeFor2FAResult(userAgent, "authorization_code",
+              duoCode, redirectUri, CLIENT_ASSERTION_TYPE, clientAssertion,
+              deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    } catch (DuoException e) {
+      completeFailed(permit, e, deadline);
+      throw e;
+    }
+    permit.complete(response, null);
+    return response;
+  }
+
+  /**
+   * Records a failed call with the circuit breaker, unless the caller's own deadline passed
+   * before Duo answered: a timeout the caller chose says nothing about Duo's health.
+   */
+  private static void completeFailed(CircuitBreaker.Permit permit, DuoException error,
+                                     Deadline deadline) {
+    if (deadline != null && deadline.remainingNanos() <= 0
+        && !(error instanceof DuoResponseException)) {
+      permit.release();
+    } else {
+      permit.complete(null, error);
+    }
+  }
+
+  /**
+   * Verifies the duoCode returned by Duo and exchanges it for a {@link Token} without blocking
+   * the calling thread.  Uses the default token validator defined in DuoIdTokenValidator.
+   *
+   * @param duoCode This string is an identifier for the auth and should be exchanged with Duo for a
+   *             token to determine if the auth was successful as well as obtain meta-data about
+   *             about the auth.
+   *
+   * @param username The user to be authenticated by Duo
+   *
+   * @return CompletableFuture that completes with the {@link Token}, or exceptionally with a
+   *     {@link DuoException} for errors exchanging duoCode for 2FA results.  Cancelling it
+   *     cancels the underlying HTTP call.
+   */
+  public CompletableFuture<Token> exchangeAuthorizationCodeFor2FAResultAsync(String duoCode,
+                                                                             String username) {
+    if (useStreamingTokenVerifier) {
+      StreamingIdTokenVerifier verifier = crypto.getStreamingIdTokenVerifier();
+      return exchangeAsync(duoCode, idToken -> verifyStreaming(verifier, idToken, username));
+    }
+    TokenValidator validator = new DuoIdTokenValidator(crypto.getIdTokenVerifier(), username,
+                                                        null);
+    return exchangeAuthorizationCodeFor2FAResultAsync(duoCode, validator);
+  }
+
+  /**
+   * Verifies the duoCode returned by Duo and exchanges it for a {@link Token} without blocking
+   * the calling thread, using a custom JWT token validator.  The same requirements apply to the
+   * validator as for {@link #exchangeAuthorizationCodeFor2FAResult(String, TokenValidator)}.
+   * The validator runs on the thread that completes the HTTP call.
+   *
+   * @param duoCode This string is an identifier for the auth and should be exchanged with Duo for a
+   *                token to determine if the auth was successful as well as obtain meta-data about
+   *                the auth.
+   *
+   * @param validator A TokenValidator that will validate and decode the JWT ID Token provided
+   *                  by Duo.
+   *
+   * @return CompletableFuture that completes with the {@link Token}, or exceptionally with a
+   *     {@link DuoException} for errors exchanging duoCode for 2FA results.  Cancelling it
+   *     cancels the underlying HTTP call.
+   */
+  public CompletableFuture<Token> exchangeAuthorizationCodeFor2FAResultAsync(String duoCode,
+                                                                     TokenValidator validator) {
+    return exchangeAsync(duoCode,
+        idToken -> transform(validate(validator, idToken)));
+  }
+
+  private CompletableFuture<Token> exchangeAsync(String duoCode, IdTokenDecoder decoder) {
+    FlightRecorderEvent event = FlightRecorderEvent.tokenExchange();
+    CompletableFuture<TokenResponse> request = tokenExchanges == null
+            ? requestTokenAsync(duoCode)
+            : tokenExchanges.executeAsync(duoCode, () -> requestTokenAsync(duoCode));
+    CompletableFuture<Token> result = request.thenApply(response -> {
+      String idToken = response.getId_token();
+      event.addBytes(idToken == null ? 0 : idToken.length());
+      try {
+        return decoder.decode(idToken);
+      } catch (DuoException e) {
+        throw new CompletionException(e);
+      }
+    });
+    result.whenComplete((token, error) -> event.end(OAUTH_V_1_TOKEN_ENDPOINT, error));
+    return cancelling(request, result);
+  }
+
+  private CompletableFuture<TokenResponse> requestTokenAsync(String duoCode) {
+    long start = metrics.start();
+    CompletableFuture<TokenResponse> request =
+            retryPolicy.executeAsync(false, () -> tokenAttemptAsync(duoCode));
+    request.whenComplete((response, error) ->
+        metrics.record(DuoMetrics.Operation.TOKEN_EXCHANGE, start, error));
+    return request;
+  }
+
+  private CompletableFuture<TokenResponse> tokenAttemptAsync(String duoCode) {
+    String aud;
+    DuoConnector connector;
+    CircuitBreaker.Permit permit;
+    try {
+      aud = getAndValidateUrl(apiHost, OAUTH_V_1_TOKEN_ENDPOINT).toString();
+      connector = connector();
+      permit = acquirePermit();
+    } catch (DuoException e) {
+      return failedFuture(e);
+    }
+    CompletableFuture<TokenResponse> request =
+            connector.exchangeAuthorizationCodeFor2FAResultAsync(userAgent,
             "authorization_code", duoCode, redirectUri, CLIENT_ASSERTION_TYPE,
-            createJwt(clientId, clientSecret, aud));
-    String idToken = response.getId_token();
-    DecodedJWT decodedJwt = validator.validateAndDecode(idToken);
-    return transformDecodedJwtToToken(decodedJwt);
+            createClientAssertion(aud, OAUTH_V_1_TOKEN_ENDPOINT));
+    request.whenComplete(permit::complete);
+    return request;
+  }
+
+  /**
+   * Prepares this Client for its first login, so that it does not pay for startup costs.  This
+   * creates the HTTP client, signs an auth URL request and a client assertion, verifies a
+   * sample id_token signed with the client secret, and makes a health check, which resolves
+   * the api host and leaves a TLS connection to it in the connection pool.  Call it during
+   * application startup; this also starts the health check cache and the keep-warm calls,
+   * see {@link Builder#setKeepWarm} to keep the connection open.
+   *
+   * @throws DuoException If the health check fails
+   */
+  public void warmUp() throws DuoException {
+    String username = "warm-up";
+    createJwtForAuthUrl(crypto.getAlgorithm(), clientId, redirectUri,
+        Utils.generateJwtId(STATE_LENGTH), username, useDuoCodeAttribute);
+    crypto.createClientAssertion(getAndValidateUrl(apiHost, OAUTH_V_1_TOKEN_ENDPOINT).toString());
+    String idToken = Utils.createWarmUpIdToken(crypto.getAlgorithm(), clientId, apiHost,
+        username);
+    if (useStreamingTokenVerifier) {
+      crypto.getStreamingIdTokenVerifier().verify(idToken, username, null);
+    } else {
+      transformDecodedJwtToToken(new DuoIdTokenValidator(crypto.getIdTokenVerifier(), username,
+          null).validateAndDecode(idToken));
+    }
+    checkHealth(null);
   }
 
   /**
@@ -817,7 +1883,65 @@ public class Client {
    * @return String
    */
   public String generateState() {
-    return Utils.generateJwtId(36);
+    if (statePrefetch != null) {
+      return statePrefetch.next();
+    }
+    return Utils.generateJwtId(STATE_LENGTH);
   }
 
+  /**
+   * Releases the HTTP resources held by this Client.  When the transport is shared, the
+   * connection pool and dispatcher are shut down once the last Client using them is closed.
+   */
+  @Override
+  public void close() {
+    if (healthCheckCache != null) {
+      healthCheckCache.close();
+    }
+    if (statePrefetch != null) {
+      statePrefetch.close();
+    }
+    if (keepWarm != null) {
+      keepWarm.close();
+    }
+    DuoConnector connector = duoConnector;
+    if (connector != null) {
+      connector.close();
+    }
+    lazyConnector.close();
+  }
+
+  private DuoConnector connector() throws DuoException {
+    DuoConnector connector = duoConnector;
+    if (connector == null) {
+      connector = lazyConnector.get();
+      duoConnector = connector;
+      startBackgroundCalls();
+    }
+    return connector;
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(error);
+    return future;
+  }
+
+  /**
+   * Makes cancelling a dependent stage also cancel the request it was derived from, since
+   * CompletableFuture does not propagate cancellation upstream on its own.
+   */
+  private static <T> CompletableFuture<T> cancelling(CompletableFuture<?> request,
+                                                     CompletableFuture<T> result) {
+    result.whenComplete((value, error) -> {
+      if (result.isCancelled()) {
+        request.cancel(true);
+      }
+    });
+    return result;
+  }
+
+  private interface IdTokenDecoder {
+    Token decode(String idToken) throws DuoException;
+  }
 }
@@ -0,0 +1,196 @@
+package com.duosecurity;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import javax.crypto.Mac;
+
+/**
+ * Signs the HS512 client assertion sent to one Duo endpoint.  The header and the iss, sub and
+ * aud claims never change for a Client and endpoint, so they are serialized and Base64URL
+ * encoded once, when the signer is created.  Each call only encodes exp and jti, HMACs the
+ * result with a pooled Mac and writes the token into a buffer kept per thread, so that the
+ * token's String is the only allocation.  The tokens carry the same header and claims as
+ * {@link Utils#createJwt}.
+ */
+final class ClientAssertionSigner {
+
+  private static final long EXPIRATION_SECONDS = 3600;
+
+  private static final int JTI_BYTES = 16;
+
+  private static final byte[] HEADER = "{\"typ\":\"JWT\",\"alg\":\"HS512\"}"
+      .getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] EXP_PREFIX = "\"exp\":".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] JTI_PREFIX = ",\"jti\":\"".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.US_ASCII);
+
+  // exp (at most 19 digits) and a hex jti, plus the JSON around them
+  private static final int MAX_CLAIMS_LENGTH =
+      EXP_PREFIX.length + 19 + JTI_PREFIX.length + 2 * JTI_BYTES + SUFFIX.length;
+
+  private static final int MAC_LENGTH = 64;
+
+  // HMAC SHA-512 gives 64 bytes, 86 characters in Base64URL without padding
+  private static final int SIGNATURE_LENGTH = 86;
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private static final byte[] BASE64URL =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+          .getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final MacPool macs;
+
+  // "<header>.<static claims>", where the static claims are padded to a multiple of 3 bytes so
+  // that the changing claims start on a Base64 boundary
+  private final byte[] template;
+
+  ClientAssertionSigner(MacPool macs, String clientId, String aud) {
+    this.macs = macs;
+    byte[] header = encode(HEADER);
+    byte[] claims = encode(staticClaims(clientId, aud));
+    this.template = new byte[header.length + 1 + claims.length];
+    System.arraycopy(header, 0, template, 0, header.length);
+    template[header.length] = '.';
+    System.arraycopy(claims, 0, template, header.length + 1, claims.length);
+  }
+
+  /**
+   * Creates a client assertion that expires in one hour.
+   *
+   * @return the signed JWT
+   */
+  String sign() {
+    return sign(System.currentTimeMillis() / 1000 + EXPIRATION_SECONDS);
+  }
+
+  String sign(long expiresAtSeconds) {
+    Scratch scratch = SCRATCH.get();
+    byte[] claims = scratch.claims;
+    int claimsLength = writeClaims(scratch, expiresAtSeconds);
+
+    byte[] jwt = scratch.jwt(template.length + (claimsLength * 4 + 2) / 3 + 1 + SIGNATURE_LENGTH);
+    System.arraycopy(template, 0, jwt, 0, template.length);
+    int position = encode(claims, claimsLength, jwt, template.length);
+
+    byte[] signature = scratch.signature;
+    try {
+      Mac mac = macs.acquire();
+      try {
+        mac.update(jwt, 0, position);
+        mac.doFinal(signature, 0);
+      } finally {
+        macs.release(mac);
+      }
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Unable to sign the client assertion", e);
+    }
+
+    jwt[position++] = '.';
+    position = encode(signature, signature.length, jwt, position);
+    return new String(jwt, 0, position, StandardCharsets.US_ASCII);
+  }
+
+  private static int writeClaims(Scratch scratch, long expiresAtSeconds) {
+    byte[] claims = scratch.claims;
+    int position = put(claims, 0, EXP_PREFIX);
+    position = putDigits(claims, position, expiresAtSeconds);
+    position = put(claims, position, JTI_PREFIX);
+    byte[] jti = scratch.jti;
+    RandomIdGenerator.nextBytes(jti);
+    for (byte b : jti) {
+      claims[position++] = HEX[(b >> 4) & 0xf];
+      claims[position++] = HEX[b & 0xf];
+    }
+    return put(claims, position, SUFFIX);
+  }
+
+  private static byte[] staticClaims(String clientId, String aud) {
+    String json;
+    try {
+      json = "{\"iss\":" + MAPPER.writeValueAsString(clientId)
+          + ",\"sub\":" + MAPPER.writeValueAsString(clientId)
+          + ",\"aud\":" + MAPPER.writeValueAsString(aud) + ",";
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Unable to serialize the client assertion claims", e);
+    }
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    int padded = (bytes.length + 2) / 3 * 3;
+    byte[] result = Arrays.copyOf(bytes, padded);
+    Arrays.fill(result, bytes.length, padded, (byte) ' ');
+    return result;
+  }
+
+  private static int put(byte[] target, int position, byte[] value) {
+    System.arraycopy(value, 0, target, position, value.length);
+    return position + value.length;
+  }
+
+  private static int putDigits(byte[] target, int position, long value) {
+    int length = 1;
+    for (long rest = value / 10; rest != 0; rest /= 10) {
+      length++;
+    }
+    for (int i = position + length - 1; i >= position; i--) {
+      target[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    return position + length;
+  }
+
+  private static byte[] encode(byte[] source) {
+    byte[] target = new byte[(source.length * 4 + 2) / 3];
+    encode(source, source.length, target, 0);
+    return target;
+  }
+
+  // Base64URL without padding; returns the position after the last character written
+  private static int encode(byte[] source, int length, byte[] target, int position) {
+    int i = 0;
+    for (; i + 2 < length; i += 3) {
+      int bits = (source[i] & 0xff) << 16 | (source[i + 1] & 0xff) << 8 | (source[i + 2] & 0xff);
+      target[position++] = BASE64URL[bits >>> 18];
+      target[position++] = BASE64URL[(bits >>> 12) & 0x3f];
+      target[position++] = BASE64URL[(bits >>> 6) & 0x3f];
+      target[position++] = BASE64URL[bits & 0x3f];
+    }
+    int remaining = length - i;
+    if (remaining > 0) {
+      int bits = (source[i] & 0xff) << 16 | (remaining == 2 ? (source[i + 1] & 0xff) << 8 : 0);
+      target[position++] = BASE64URL[bits >>> 18];
+      target[position++] = BASE64URL[(bits >>> 12) & 0x3f];
+      if (remaining == 2) {
+        target[position++] = BASE64URL[(bits >>> 6) & 0x3f];
+      }
+    }
+    return position;
+  }
+
+  /**
+   * The buffers one thread signs with.  The token buffer is shared by every signer and grows
+   * to fit the longest template.
+   */
+  private static final class Scratch {
+    private final byte[] claims = new byte[MAX_CLAIMS_LENGTH];
+    private final byte[] jti = new byte[JTI_BYTES];
+    private final byte[] signature = new byte[MAC_LENGTH];
+    private byte[] jwt = new byte[0];
+
+    byte[] jwt(int length) {
+      if (jwt.length < length) {
+        jwt = new byte[length];
+      }
+      return jwt;
+    }
+  }
+}
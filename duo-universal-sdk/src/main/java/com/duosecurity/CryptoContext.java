@@ -0,0 +1,62 @@
+package com.duosecurity;
+
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The signing and verification state of one Client, created once when the Client is built:
+ * the HS512 algorithm keyed with the client secret, backed by a pool of ready Mac instances,
+ * the id_token verifiers for the claims that are the same on every exchange, and one client
+ * assertion signer per endpoint.
+ */
+final class CryptoContext {
+
+  private final String clientId;
+
+  private final PooledHmacAlgorithm algorithm;
+
+  private final JWTVerifier idTokenVerifier;
+
+  private final StreamingIdTokenVerifier streamingIdTokenVerifier;
+
+  private final ConcurrentMap<String, ClientAssertionSigner> assertionSigners =
+      new ConcurrentHashMap<>();
+
+  CryptoContext(String clientId, String clientSecret, String apiHost) {
+    this.clientId = clientId;
+    this.algorithm = new PooledHmacAlgorithm(clientSecret);
+    this.idTokenVerifier = DuoIdTokenValidator.buildVerifierTemplate(algorithm, clientId, apiHost);
+    this.streamingIdTokenVerifier = new StreamingIdTokenVerifier(algorithm, clientId, apiHost);
+  }
+
+  Algorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  MacPool getMacPool() {
+    return algorithm.getMacPool();
+  }
+
+  JWTVerifier getIdTokenVerifier() {
+    return idTokenVerifier;
+  }
+
+  StreamingIdTokenVerifier getStreamingIdTokenVerifier() {
+    return streamingIdTokenVerifier;
+  }
+
+  /**
+   * Creates the client assertion for the endpoint at aud, equivalent to
+   * {@code Utils.createJwt(clientId, clientSecret, aud)}.
+   */
+  String createClientAssertion(String aud) {
+    ClientAssertionSigner signer = assertionSigners.get(aud);
+    if (signer == null) {
+      signer = assertionSigners.computeIfAbsent(aud,
+          endpoint -> new ClientAssertionSigner(getMacPool(), clientId, endpoint));
+    }
+    return signer.sign();
+  }
+}
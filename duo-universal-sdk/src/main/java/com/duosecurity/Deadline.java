@@ -0,0 +1,33 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time, on the System.nanoTime clock, by which a call must be complete.
+ */
+final class Deadline {
+
+  private final long atNanos;
+
+  private Deadline(long atNanos) {
+    this.atNanos = atNanos;
+  }
+
+  static Deadline after(long timeout, TimeUnit unit) {
+    return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+  }
+
+  long remainingNanos() {
+    return atNanos - System.nanoTime();
+  }
+
+  /**
+   * Fails without contacting Duo if the deadline has already passed.
+   */
+  static void check(Deadline deadline) throws DuoException {
+    if (deadline != null && deadline.remainingNanos() <= 0) {
+      throw new DuoException("The deadline passed before the request to Duo was sent");
+    }
+  }
+}
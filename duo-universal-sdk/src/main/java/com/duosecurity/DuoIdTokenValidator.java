@@ -3,19 +3,18 @@ package com.duosecurity;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.IncorrectClaimException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.MissingClaimException;
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.auth0.jwt.interfaces.Verification;
 import com.duosecurity.exception.DuoException;
+import java.util.Objects;
 
 /**
- * A JWT ID Token Validator that enforces Duo's claim requirements.
- *   Issuer must match expected
- *   Audience must match expected
- *   Subject must match expected username
- *   Allow 1 minutes leeway on Issued at / Expiration
- *   MAC is valid  
- *   [Optional] Nonce must match expected
+ * A JWT ID Token Validator that enforces Duo's claim requirements.  The MAC must be valid, the
+ * issuer, audience and username must match the expected ones, issued at and expiration are
+ * allowed 1 minute of leeway, and if a nonce is expected it must match too.
  */
 public final class DuoIdTokenValidator implements TokenValidator {
 
@@ -26,12 +25,9 @@ public final class DuoIdTokenValidator implements TokenValidator {
   private static final String NONCE_CLAIM = "nonce";
   private static final String USERNAME_CLAIM = "preferred_username";
 
-  private final String clientSecret;
+  private final JWTVerifier verifier;
   private final String username;
-  private final String audience;
-  private final String issuer;
   private final String nonce;
-  private long leeway = DUO_LEEWAY;
 
   public DuoIdTokenValidator(String clientSecret, String username,
                              String audience, String apiHost) {
@@ -49,10 +45,20 @@ public final class DuoIdTokenValidator implements TokenValidator {
    */
   public DuoIdTokenValidator(String clientSecret, String username, String audience,
                              String apiHost, String nonce) {
-    this.clientSecret = clientSecret;
+    this(buildVerifierTemplate(Algorithm.HMAC512(clientSecret), audience, apiHost),
+         username, nonce);
+  }
+
+  /**
+   * Constructor reusing a verifier built by {@link #buildVerifierTemplate}.
+   *
+   * @param verifier        Verifies the MAC, issuer, audience and timestamps
+   * @param username        The name of the user trying to auth
+   * @param nonce           A string used to associate a client session with an ID token.
+   */
+  DuoIdTokenValidator(JWTVerifier verifier, String username, String nonce) {
+    this.verifier = verifier;
     this.username = username;
-    this.audience = audience;
-    this.issuer = HTTPS + apiHost + ISSUER_PATH;
     this.nonce = nonce;
   }
 
@@ -68,26 +74,40 @@ public final class DuoIdTokenValidator implements TokenValidator {
     }
 
     try {
-      JWTVerifier verifier = buildVerifier();
-      return verifier.verify(jwt);
+      DecodedJWT decodedJwt = verifier.verify(jwt);
+      assertClaim(decodedJwt, USERNAME_CLAIM, this.username);
+      if (nonce != null) {
+        assertClaim(decodedJwt, NONCE_CLAIM, this.nonce);
+      }
+      return decodedJwt;
     } catch (JWTVerificationException e) {
       throw new DuoException("ID Token verification failed", e);
     }
   }
 
   /**
-   * Build a JWT verifier that will enforce the claims as described above.
+   * Build a JWT verifier that enforces the claims described above which do not depend on the
+   * user: the MAC, issuer, audience and timestamps.  The verifier is thread-safe and can be
+   * shared by every validation for the same client.
    */
-  private JWTVerifier buildVerifier() {
-    Algorithm signingAlgorithm = Algorithm.HMAC512(this.clientSecret);
-    Verification verifier = JWT.require(signingAlgorithm)
-                               .withIssuer(this.issuer)
-                               .withAudience(this.audience)
-                               .withClaim(USERNAME_CLAIM, this.username)
-                               .acceptLeeway(this.leeway);
-    if (nonce != null) {
-      verifier.withClaim(NONCE_CLAIM, this.nonce);
+  static JWTVerifier buildVerifierTemplate(Algorithm signingAlgorithm, String audience,
+                                           String apiHost) {
+    return JWT.require(signingAlgorithm)
+              .withIssuer(HTTPS + apiHost + ISSUER_PATH)
+              .withAudience(audience)
+              .acceptLeeway(DUO_LEEWAY)
+              .build();
+  }
+
+  private static void assertClaim(DecodedJWT decodedJwt, String name, String expected) {
+    Claim claim = decodedJwt.getClaim(name);
+    if (claim.isMissing()) {
+      throw new MissingClaimException(name);
+    }
+    if (!Objects.equals(expected, claim.asString())) {
+      throw new IncorrectClaimException(
+          String.format("The Claim '%s' value doesn't match the required one.", name),
+          name, claim);
     }
-    return verifier.build();
   }
 }
@@ -0,0 +1,184 @@
+package com.duosecurity;
+
+import com.duosecurity.metrics.EndpointSnapshot;
+import com.duosecurity.metrics.LatencyHistogram;
+import com.duosecurity.metrics.NetworkMetrics;
+import com.duosecurity.service.DuoTransport;
+import com.duosecurity.service.TransportSnapshot;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the calls a {@link Client} makes to Duo and the SDK's own work on each login, and
+ * records their latency in nanoseconds, without any dependency.  HEALTH_CHECK and
+ * TOKEN_EXCHANGE time the requests to Duo as the caller sees them, including retries and calls
+ * rejected by an open circuit breaker.  CLIENT_ASSERTION times signing the client assertion
+ * sent with each attempt, and ID_TOKEN_VERIFICATION times checking the id_token's signature and
+ * claims.  TOKEN_TRANSFORM times turning the verified id_token into a {@link
+ * com.duosecurity.model.Token}; with {@link Client.Builder#setUseStreamingTokenVerifier} this
+ * is part of ID_TOKEN_VERIFICATION and is not recorded separately.  A call that throws or
+ * completes exceptionally, including by being cancelled, counts as an error.  Recording takes
+ * no lock and does not allocate.  One instance may be shared by several Clients, and
+ * {@link #snapshot()} then adds up their retry and circuit breaker counts too.  The HTTP calls
+ * behind HEALTH_CHECK and TOKEN_EXCHANGE are also broken down into network phases by
+ * {@link NetworkMetrics}, and snapshots include the effective connection settings and pool
+ * state of the transports the Clients use.
+ */
+public final class DuoMetrics {
+
+  /**
+   * The operations that are timed.
+   */
+  public enum Operation {
+    HEALTH_CHECK,
+    TOKEN_EXCHANGE,
+    CLIENT_ASSERTION,
+    ID_TOKEN_VERIFICATION,
+    TOKEN_TRANSFORM
+  }
+
+  /**
+   * Records nothing, for Clients without metrics.
+   */
+  static final DuoMetrics NONE = new DuoMetrics(false);
+
+  private static final Operation[] OPERATIONS = Operation.values();
+
+  private final boolean enabled;
+
+  private final LatencyHistogram[] latencies;
+
+  private final LongAdder[] errors;
+
+  private final NetworkMetrics network;
+
+  private final Set<RetryPolicy> retryPolicies =
+      Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  private final Set<CircuitBreaker> circuitBreakers =
+      Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  private final Set<DuoTransport> transports =
+      Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  /**
+   * Creates an empty set of metrics to pass to {@link Client.Builder#setMetrics}.
+   */
+  public DuoMetrics() {
+    this(true);
+  }
+
+  private DuoMetrics(boolean enabled) {
+    this.enabled = enabled;
+    this.latencies = new LatencyHistogram[enabled ? OPERATIONS.length : 0];
+    this.errors = new LongAdder[latencies.length];
+    this.network = enabled ? new NetworkMetrics() : null;
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = new LatencyHistogram();
+      errors[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Copies the current counts.
+   *
+   * @return {@link MetricsSnapshot}
+   */
+  public MetricsSnapshot snapshot() {
+    Map<Operation, MetricsSnapshot.OperationSnapshot> operations = new EnumMap<>(Operation.class);
+    for (int i = 0; i < latencies.length; i++) {
+      operations.put(OPERATIONS[i],
+          new MetricsSnapshot.OperationSnapshot(errors[i].sum(), latencies[i].snapshot()));
+    }
+    long retries = 0;
+    long budgetExhausted = 0;
+    for (RetryPolicy retryPolicy : retryPolicies) {
+      retries += retryPolicy.getRetryCount();
+      budgetExhausted += retryPolicy.getBudgetExhaustedCount();
+    }
+    long rejected = 0;
+    for (CircuitBreaker circuitBreaker : circuitBreakers) {
+      rejected += circuitBreaker.getRejectedCount();
+    }
+    Map<String, EndpointSnapshot> endpoints = network == null
+        ? Collections.emptyMap() : network.snapshot();
+    List<TransportSnapshot> transportSnapshots = new ArrayList<>();
+    for (DuoTransport transport : transports) {
+      if (transport.isShutdown()) {
+        transports.remove(transport);
+      } else {
+        transportSnapshots.add(transport.snapshot());
+      }
+    }
+    return new MetricsSnapshot(operations, endpoints, retries, budgetExhausted, rejected,
+        Collections.unmodifiableList(transportSnapshots));
+  }
+
+  @Override
+  public String toString() {
+    return snapshot().toString();
+  }
+
+  /**
+   * The start time to pass to {@link #record}, or 0 without reading the clock if this records
+   * nothing.
+   */
+  long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records one operation that began at startNanos and has just ended.
+   *
+   * @param operation  The operation
+   * @param startNanos The value {@link #start()} returned before it
+   * @param error      Why it failed, or null if it succeeded
+   */
+  void record(Operation operation, long startNanos, Throwable error) {
+    if (!enabled) {
+      return;
+    }
+    int index = operation.ordinal();
+    latencies[index].record(System.nanoTime() - startNanos);
+    if (error != null) {
+      errors[index].increment();
+    }
+  }
+
+  /**
+   * The network phase timings to record into, or null if this records nothing.
+   */
+  NetworkMetrics network() {
+    return network;
+  }
+
+  /**
+   * Includes the counts of a Client's retry policy and circuit breaker in snapshots.
+   */
+  void track(RetryPolicy retryPolicy, CircuitBreaker circuitBreaker) {
+    if (!enabled) {
+      return;
+    }
+    if (retryPolicy != RetryPolicy.NONE) {
+      retryPolicies.add(retryPolicy);
+    }
+    if (circuitBreaker != null) {
+      circuitBreakers.add(circuitBreaker);
+    }
+  }
+
+  /**
+   * Includes a transport a Client has started using in snapshots, until it is shut down.
+   */
+  void track(DuoTransport transport) {
+    if (enabled) {
+      transports.add(transport);
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package com.duosecurity;
+
+/**
+ * What an integration should do with a login when Duo is unavailable, as reported by
+ * {@link Client#getFailMode()}.
+ */
+public enum FailMode {
+  /**
+   * Let the user in after primary authentication alone.
+   */
+  OPEN,
+  /**
+   * Refuse the login until Duo is available again.
+   */
+  CLOSED
+}
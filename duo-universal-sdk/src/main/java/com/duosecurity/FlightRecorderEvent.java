@@ -0,0 +1,52 @@
+package com.duosecurity;
+
+/**
+ * A Java Flight Recorder event around one SDK operation.  JFR's API is not part of Java 8, so
+ * this version records nothing; the multi-release jar replaces it on Java 11 and later with
+ * one that emits the com.duosecurity events.  Every factory returns {@link #DISABLED} here, so
+ * the call sites cost one static call.
+ */
+class FlightRecorderEvent {
+
+  static final FlightRecorderEvent DISABLED = new FlightRecorderEvent();
+
+  FlightRecorderEvent() {
+  }
+
+  static FlightRecorderEvent healthCheck() {
+    return DISABLED;
+  }
+
+  static FlightRecorderEvent createAuthUrl() {
+    return DISABLED;
+  }
+
+  static FlightRecorderEvent tokenExchange() {
+    return DISABLED;
+  }
+
+  static FlightRecorderEvent jwtSigning() {
+    return DISABLED;
+  }
+
+  static FlightRecorderEvent idTokenValidation() {
+    return DISABLED;
+  }
+
+  /**
+   * Adds to the bytes sent or received by the operation.
+   *
+   * @param bytes The number of bytes
+   */
+  void addBytes(long bytes) {
+  }
+
+  /**
+   * Ends the operation and commits the event if it passed the recording's threshold.
+   *
+   * @param endpoint The path of the Duo endpoint the operation is for
+   * @param error    The error the operation failed with, or null if it succeeded
+   */
+  void end(String endpoint, Throwable error) {
+  }
+}
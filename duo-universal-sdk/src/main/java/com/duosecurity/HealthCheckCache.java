@@ -0,0 +1,105 @@
+package com.duosecurity;
+
+import com.duosecurity.model.CachedHealthStatus;
+import com.duosecurity.model.HealthCheckResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the result of the last health check so that logins can read it instead of calling Duo.
+ * The status is refreshed in the background every refresh interval, with 10% jitter either
+ * way.  A read that finds the status older than the refresh interval triggers a refresh and is
+ * served the current status meanwhile, and concurrent refreshes share a single request.  A
+ * result older than the time to live is reported as expired and not healthy.
+ */
+final class HealthCheckCache {
+
+  private final Supplier<CompletableFuture<HealthCheckResponse>> healthCheck;
+
+  private final long refreshIntervalNanos;
+
+  private final long timeToLiveNanos;
+
+  private final AtomicReference<CompletableFuture<CachedHealthStatus>> inFlight =
+          new AtomicReference<>();
+
+  private final PeriodicCall refresher;
+
+  private volatile CachedHealthStatus status;
+
+  HealthCheckCache(Supplier<CompletableFuture<HealthCheckResponse>> healthCheck,
+                   long refreshInterval, long timeToLive, TimeUnit unit) {
+    this.healthCheck = healthCheck;
+    this.refreshIntervalNanos = unit.toNanos(refreshInterval);
+    this.timeToLiveNanos = unit.toNanos(timeToLive);
+    this.status = CachedHealthStatus.unknown(timeToLiveNanos);
+    this.refresher = new PeriodicCall(this::refresh, refreshInterval, unit);
+  }
+
+  /**
+   * Starts the background refresher with an immediate first check, unless it is running.
+   */
+  void start() {
+    refresher.start();
+  }
+
+  /**
+   * Returns the last known status without blocking.
+   */
+  CachedHealthStatus get() {
+    CachedHealthStatus current = status;
+    if (current.getAge(TimeUnit.NANOSECONDS) >= refreshIntervalNanos && inFlight.get() == null) {
+      refresh();
+    }
+    return current;
+  }
+
+  /**
+   * Starts a health check unless one is already running, and returns the pending result.
+   */
+  CompletableFuture<CachedHealthStatus> refresh() {
+    while (true) {
+      CompletableFuture<CachedHealthStatus> existing = inFlight.get();
+      if (existing != null) {
+        return existing;
+      }
+      CompletableFuture<CachedHealthStatus> promise = new CompletableFuture<>();
+      if (inFlight.compareAndSet(null, promise)) {
+        check(promise);
+        return promise;
+      }
+    }
+  }
+
+  void close() {
+    refresher.close();
+  }
+
+  private void check(CompletableFuture<CachedHealthStatus> promise) {
+    CompletableFuture<HealthCheckResponse> request;
+    try {
+      request = healthCheck.get();
+    } catch (RuntimeException e) {
+      request = new CompletableFuture<>();
+      request.completeExceptionally(e);
+    }
+    request.whenComplete((response, error) -> {
+      CachedHealthStatus next = error == null
+              ? CachedHealthStatus.of(response, timeToLiveNanos)
+              : CachedHealthStatus.failed(unwrap(error).getMessage(), timeToLiveNanos);
+      status = next;
+      inFlight.set(null);
+      promise.complete(next);
+    });
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      return error.getCause();
+    }
+    return error;
+  }
+}
@@ -0,0 +1,214 @@
+package com.duosecurity;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link StateStore} held in memory, for applications running on a single node.  States
+ * expire after a fixed time to live, and at most maximumSize states are kept, the oldest being
+ * evicted first when the store is full.  The store is split into independently locked
+ * segments, so concurrent logins rarely wait on each other.  Each segment keeps its states in
+ * insertion order, which is also their expiration order, so expiring and evicting only ever
+ * look at the oldest entries.  Expired states are removed as new ones are stored, or by
+ * {@link #removeExpired()}.
+ *
+ * @param <V> What is remembered for the login, such as the username
+ */
+public final class InMemoryStateStore<V> implements StateStore<V> {
+
+  private final long timeToLiveNanos;
+
+  private final LongSupplier ticker;
+
+  private final Segment<V>[] segments;
+
+  private final int segmentMask;
+
+  private final LongAdder expirations = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates an empty store.
+   *
+   * @param timeToLive  How long a state stays valid
+   * @param unit        The unit of timeToLive
+   * @param maximumSize The maximum number of pending logins to keep
+   */
+  public InMemoryStateStore(long timeToLive, TimeUnit unit, int maximumSize) {
+    this(timeToLive, unit, maximumSize, System::nanoTime);
+  }
+
+  @SuppressWarnings("unchecked")
+  InMemoryStateStore(long timeToLive, TimeUnit unit, int maximumSize, LongSupplier ticker) {
+    if (timeToLive <= 0 || maximumSize <= 0) {
+      throw new IllegalArgumentException("The time to live and maximum size must be positive");
+    }
+    this.timeToLiveNanos = unit.toNanos(timeToLive);
+    this.ticker = ticker;
+    int count = segmentCount(maximumSize);
+    this.segments = new Segment[count];
+    this.segmentMask = count - 1;
+    for (int i = 0; i < count; i++) {
+      // Spread the remainder so that the segment sizes add up to maximumSize
+      int capacity = maximumSize / count + (i < maximumSize % count ? 1 : 0);
+      segments[i] = new Segment<>(capacity);
+    }
+  }
+
+  @Override
+  public boolean put(String state, V value) {
+    if (state == null || value == null) {
+      throw new IllegalArgumentException("The state and value cannot be null");
+    }
+    Segment<V> segment = segmentFor(state);
+    long now = ticker.getAsLong();
+    segment.lock.lock();
+    try {
+      expire(segment, now);
+      Entry<V> existing = segment.entries.get(state);
+      if (existing != null) {
+        return false;
+      }
+      if (segment.entries.size() >= segment.capacity) {
+        Iterator<Entry<V>> oldest = segment.entries.values().iterator();
+        oldest.next();
+        oldest.remove();
+        evictions.increment();
+      }
+      segment.entries.put(state, new Entry<>(value, now + timeToLiveNanos));
+      return true;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public V consume(String state) {
+    if (state == null) {
+      return null;
+    }
+    Segment<V> segment = segmentFor(state);
+    Entry<V> entry;
+    segment.lock.lock();
+    try {
+      entry = segment.entries.remove(state);
+    } finally {
+      segment.lock.unlock();
+    }
+    if (entry == null) {
+      return null;
+    }
+    if (ticker.getAsLong() - entry.expiresAtNanos > 0) {
+      expirations.increment();
+      return null;
+    }
+    return entry.value;
+  }
+
+  /**
+   * Removes every expired state now, rather than waiting for new states to be stored.
+   *
+   * @return the number of states removed
+   */
+  public int removeExpired() {
+    int removed = 0;
+    for (Segment<V> segment : segments) {
+      long now = ticker.getAsLong();
+      segment.lock.lock();
+      try {
+        removed += expire(segment, now);
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * The number of states held, including expired states that have not been removed yet.
+   *
+   * @return the number of states
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<V> segment : segments) {
+      segment.lock.lock();
+      try {
+        size += segment.entries.size();
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * The number of states that expired before they were consumed.
+   *
+   * @return the expiration count since the store was created
+   */
+  public long getExpirationCount() {
+    return expirations.sum();
+  }
+
+  /**
+   * The number of states evicted, unexpired, to stay within the maximum size.
+   *
+   * @return the eviction count since the store was created
+   */
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  private int expire(Segment<V> segment, long now) {
+    int removed = 0;
+    Iterator<Entry<V>> oldest = segment.entries.values().iterator();
+    while (oldest.hasNext() && now - oldest.next().expiresAtNanos > 0) {
+      oldest.remove();
+      removed++;
+    }
+    expirations.add(removed);
+    return removed;
+  }
+
+  private Segment<V> segmentFor(String state) {
+    int hash = state.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & segmentMask];
+  }
+
+  private static int segmentCount(int maximumSize) {
+    int processors = Runtime.getRuntime().availableProcessors();
+    int count = Integer.highestOneBit(Math.max(1, processors * 4 - 1)) << 1;
+    // Keep at least 16 states per segment so that small stores still evict in age order
+    while (count > 1 && maximumSize / count < 16) {
+      count >>= 1;
+    }
+    return count;
+  }
+
+  private static final class Segment<V> {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Entry<V>> entries = new LinkedHashMap<>();
+    private final int capacity;
+
+    Segment(int capacity) {
+      this.capacity = capacity;
+    }
+  }
+
+  private static final class Entry<V> {
+    private final V value;
+    private final long expiresAtNanos;
+
+    Entry(V value, long expiresAtNanos) {
+      this.value = value;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+  }
+}
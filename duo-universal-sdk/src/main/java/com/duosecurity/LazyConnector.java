@@ -0,0 +1,72 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.service.DuoConnector;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Creates a Client's {@link DuoConnector} on first use, so that building a Client and creating
+ * auth URLs do not pay for the HTTP client, the certificate pinner and Retrofit.  Once created,
+ * reading the connector takes no lock.
+ */
+final class LazyConnector {
+
+  private final Factory factory;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private volatile DuoConnector connector;
+
+  private boolean closed;
+
+  LazyConnector(Factory factory) {
+    this.factory = factory;
+  }
+
+  /**
+   * Returns the connector, creating it if this is the first call.
+   *
+   * @throws DuoException If the connector cannot be created, or the Client was closed first
+   */
+  DuoConnector get() throws DuoException {
+    DuoConnector current = connector;
+    if (current != null) {
+      return current;
+    }
+    lock.lock();
+    try {
+      if (connector == null) {
+        if (closed) {
+          throw new DuoException("The Client is closed");
+        }
+        connector = factory.create();
+      }
+      return connector;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  boolean isCreated() {
+    return connector != null;
+  }
+
+  /**
+   * Closes the connector if it was created, and stops one from being created later.
+   */
+  void close() {
+    lock.lock();
+    try {
+      closed = true;
+      if (connector != null) {
+        connector.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  interface Factory {
+    DuoConnector create() throws DuoException;
+  }
+}
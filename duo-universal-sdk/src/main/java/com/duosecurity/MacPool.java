@@ -0,0 +1,64 @@
+package com.duosecurity;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A small lock-free pool of {@link Mac} instances already initialized with one key, so that
+ * signing and verifying do not repeat the provider lookup and key setup on every call.
+ * When every pooled instance is in use a new one is created, and instances returned to a
+ * full pool are dropped.
+ */
+final class MacPool {
+
+  private static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+  private final String algorithm;
+
+  private final SecretKeySpec key;
+
+  private final AtomicReferenceArray<Mac> slots = new AtomicReferenceArray<>(POOL_SIZE);
+
+  MacPool(String algorithm, byte[] secret) {
+    this.algorithm = algorithm;
+    this.key = new SecretKeySpec(secret, algorithm);
+  }
+
+  /**
+   * Takes an initialized Mac from the pool, creating one if none is free.
+   */
+  Mac acquire() throws NoSuchAlgorithmException, InvalidKeyException {
+    int start = probe();
+    for (int i = 0; i < POOL_SIZE; i++) {
+      int index = (start + i) % POOL_SIZE;
+      Mac mac = slots.get(index);
+      if (mac != null && slots.compareAndSet(index, mac, null)) {
+        return mac;
+      }
+    }
+    Mac mac = Mac.getInstance(algorithm);
+    mac.init(key);
+    return mac;
+  }
+
+  /**
+   * Resets the Mac and returns it to the pool.
+   */
+  void release(Mac mac) {
+    mac.reset();
+    int start = probe();
+    for (int i = 0; i < POOL_SIZE; i++) {
+      int index = (start + i) % POOL_SIZE;
+      if (slots.get(index) == null && slots.compareAndSet(index, null, mac)) {
+        return;
+      }
+    }
+  }
+
+  private static int probe() {
+    return (int) (Thread.currentThread().getId() % POOL_SIZE);
+  }
+}
@@ -0,0 +1,138 @@
+package com.duosecurity;
+
+import com.duosecurity.metrics.EndpointSnapshot;
+import com.duosecurity.metrics.HistogramSnapshot;
+import com.duosecurity.service.TransportSnapshot;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of a {@link DuoMetrics}, taken with {@link DuoMetrics#snapshot()}.
+ * Latencies are in nanoseconds.
+ */
+public final class MetricsSnapshot {
+
+  private final Map<DuoMetrics.Operation, OperationSnapshot> operations;
+
+  private final Map<String, EndpointSnapshot> endpoints;
+
+  private final long retryCount;
+
+  private final long retryBudgetExhaustedCount;
+
+  private final long circuitBreakerRejectedCount;
+
+  private final List<TransportSnapshot> transports;
+
+  MetricsSnapshot(Map<DuoMetrics.Operation, OperationSnapshot> operations,
+                  Map<String, EndpointSnapshot> endpoints, long retryCount,
+                  long retryBudgetExhaustedCount, long circuitBreakerRejectedCount,
+                  List<TransportSnapshot> transports) {
+    this.operations = operations;
+    this.endpoints = endpoints;
+    this.retryCount = retryCount;
+    this.retryBudgetExhaustedCount = retryBudgetExhaustedCount;
+    this.circuitBreakerRejectedCount = circuitBreakerRejectedCount;
+    this.transports = transports;
+  }
+
+  /**
+   * The counts and latency of one operation.
+   *
+   * @param operation The operation
+   *
+   * @return {@link OperationSnapshot}
+   */
+  public OperationSnapshot getOperation(DuoMetrics.Operation operation) {
+    return operations.get(operation);
+  }
+
+  /**
+   * The network phase timings and connection reuse of the HTTP calls to each Duo endpoint.
+   *
+   * @return an {@link EndpointSnapshot} for each endpoint called, by path, such as
+   *     /oauth/v1/token
+   */
+  public Map<String, EndpointSnapshot> getEndpoints() {
+    return endpoints;
+  }
+
+  /**
+   * The retries made by the retry policies of the Clients using these metrics.
+   *
+   * @return the count since the policies were created
+   */
+  public long getRetryCount() {
+    return retryCount;
+  }
+
+  /**
+   * The retries not made because a retry budget was empty.
+   *
+   * @return the count since the policies were created
+   */
+  public long getRetryBudgetExhaustedCount() {
+    return retryBudgetExhaustedCount;
+  }
+
+  /**
+   * The calls rejected by the circuit breakers of the Clients using these metrics.
+   *
+   * @return the count since the breakers were created
+   */
+  public long getCircuitBreakerRejectedCount() {
+    return circuitBreakerRejectedCount;
+  }
+
+  /**
+   * The effective connection settings and pool state of each transport the Clients using
+   * these metrics have open.  Clients sharing a transport report it once; Clients using an
+   * {@link com.duosecurity.service.HttpEngine} report none.
+   *
+   * @return a {@link TransportSnapshot} per transport
+   */
+  public List<TransportSnapshot> getTransports() {
+    return transports;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricsSnapshot [operations=" + operations
+        + ", endpoints=" + endpoints
+        + ", retries=" + retryCount
+        + ", retryBudgetExhausted=" + retryBudgetExhaustedCount
+        + ", circuitBreakerRejected=" + circuitBreakerRejectedCount
+        + ", transports=" + transports
+        + "]";
+  }
+
+  /**
+   * The counts and latency of one operation.
+   */
+  public static final class OperationSnapshot {
+    private final long errorCount;
+    private final HistogramSnapshot latency;
+
+    OperationSnapshot(long errorCount, HistogramSnapshot latency) {
+      this.errorCount = errorCount;
+      this.latency = latency;
+    }
+
+    public long getCount() {
+      return latency.getCount();
+    }
+
+    public long getErrorCount() {
+      return errorCount;
+    }
+
+    public HistogramSnapshot getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      return "[errors=" + errorCount + ", latency=" + latency + "]";
+    }
+  }
+}
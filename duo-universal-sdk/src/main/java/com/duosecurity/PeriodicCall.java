@@ -0,0 +1,75 @@
+package com.duosecurity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Makes a call in the background every interval, +/- 10% jitter, so that Clients started
+ * together do not call Duo in lockstep.  The first call is made when it is first started, and each
+ * following one is scheduled once the previous call completes.  Failures are ignored; the next
+ * call is still scheduled.
+ */
+final class PeriodicCall {
+
+  private static final double JITTER = 0.1;
+
+  private final Supplier<? extends CompletableFuture<?>> call;
+
+  private final long intervalNanos;
+
+  private final AtomicBoolean started = new AtomicBoolean();
+
+  private volatile ScheduledFuture<?> next;
+
+  private volatile boolean closed;
+
+  PeriodicCall(Supplier<? extends CompletableFuture<?>> call, long interval, TimeUnit unit) {
+    this.call = call;
+    this.intervalNanos = unit.toNanos(interval);
+  }
+
+  /**
+   * Makes the first call and schedules the next, unless this was already started.
+   */
+  void start() {
+    if (!started.get() && started.compareAndSet(false, true)) {
+      run();
+    }
+  }
+
+  void close() {
+    closed = true;
+    ScheduledFuture<?> scheduled = next;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+  }
+
+  private void run() {
+    if (closed) {
+      return;
+    }
+    CompletableFuture<?> request;
+    try {
+      request = call.get();
+    } catch (RuntimeException e) {
+      request = CompletableFuture.completedFuture(null);
+    }
+    request.whenComplete((result, error) -> scheduleNext());
+  }
+
+  private void scheduleNext() {
+    if (closed) {
+      return;
+    }
+    double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+    next = BackgroundScheduler.schedule(this::run, (long) (intervalNanos * jitter));
+    if (closed) {
+      next.cancel(false);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.duosecurity;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A buffer of identifiers generated ahead of time by a background thread, so that taking one
+ * is a queue poll.  The buffer is refilled whenever it drops to half its capacity, and if it is
+ * empty the identifier is generated on the calling thread.
+ */
+final class PrefetchedIds {
+
+  private final int length;
+
+  private final int lowWaterMark;
+
+  private final ArrayBlockingQueue<String> ids;
+
+  private final AtomicBoolean refilling = new AtomicBoolean();
+
+  private volatile boolean closed;
+
+  PrefetchedIds(int length, int capacity) {
+    this.length = length;
+    this.lowWaterMark = capacity / 2;
+    this.ids = new ArrayBlockingQueue<>(capacity);
+    scheduleRefill();
+  }
+
+  /**
+   * Takes a prefetched identifier, or generates one if none is ready.
+   */
+  String next() {
+    String id = ids.poll();
+    if (ids.size() <= lowWaterMark) {
+      scheduleRefill();
+    }
+    return id != null ? id : RandomIdGenerator.hex(length);
+  }
+
+  int available() {
+    return ids.size();
+  }
+
+  /**
+   * Stops refilling and discards the identifiers that were not used.
+   */
+  void close() {
+    closed = true;
+    ids.clear();
+  }
+
+  private void scheduleRefill() {
+    if (closed || !refilling.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Refiller.INSTANCE.execute(this::refill);
+    } catch (RejectedExecutionException e) {
+      refilling.set(false);
+    }
+  }
+
+  private void refill() {
+    try {
+      while (!closed && ids.remainingCapacity() > 0) {
+        ids.offer(RandomIdGenerator.hex(length));
+      }
+    } finally {
+      refilling.set(false);
+    }
+    if (closed) {
+      ids.clear();
+    }
+  }
+
+  /**
+   * One daemon thread shared by every buffer; it idles out when there is nothing to refill.
+   */
+  private static final class Refiller {
+    private static final ExecutorService INSTANCE = create();
+
+    private static ExecutorService create() {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), Refiller::newThread);
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+
+    private static Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "duo-id-prefetch");
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.duosecurity;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Generates the random identifiers used for states and JWT ids.  Random bytes come from a
+ * small set of SecureRandom instances created once and picked by thread, so concurrent callers
+ * rarely wait on the same instance and no call pays for creating and seeding a new one.  DRBG
+ * is used where the JVM provides it (Java 9 and later) and SHA1PRNG otherwise, both seeded
+ * from the platform's non-blocking source.  Bytes are encoded straight into the result's char
+ * array.
+ */
+final class RandomIdGenerator {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static final int STRIPES = stripes();
+
+  private static final SecureRandom[] RANDOMS = createRandoms();
+
+  private RandomIdGenerator() {
+  }
+
+  /**
+   * Creates a random lowercase hexadecimal identifier.
+   *
+   * @param length The number of characters, each carrying 4 random bits
+   *
+   * @return the identifier
+   */
+  static String hex(int length) {
+    byte[] bytes = new byte[(length + 1) / 2];
+    nextBytes(bytes);
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      int b = bytes[i >> 1];
+      chars[i] = HEX[(i & 1) == 0 ? (b >> 4) & 0xf : b & 0xf];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Fills the array with random bytes.
+   */
+  static void nextBytes(byte[] bytes) {
+    RANDOMS[(int) Thread.currentThread().getId() & (STRIPES - 1)].nextBytes(bytes);
+  }
+
+  private static int stripes() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    return Integer.highestOneBit(Math.max(1, processors * 2 - 1)) << 1;
+  }
+
+  private static SecureRandom[] createRandoms() {
+    SecureRandom seeds = new SecureRandom();
+    SecureRandom[] randoms = new SecureRandom[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      randoms[i] = createRandom(seeds);
+    }
+    return randoms;
+  }
+
+  private static SecureRandom createRandom(SecureRandom seeds) {
+    byte[] seed = new byte[32];
+    seeds.nextBytes(seed);
+    SecureRandom random;
+    try {
+      random = SecureRandom.getInstance("DRBG");
+    } catch (NoSuchAlgorithmException e) {
+      try {
+        random = SecureRandom.getInstance("SHA1PRNG");
+      } catch (NoSuchAlgorithmException unavailable) {
+        return new SecureRandom(seed);
+      }
+    }
+    // For SHA1PRNG this replaces self-seeding, which may read a blocking source on Java 8;
+    // for DRBG it adds to the instance's own seed
+    random.setSeed(seed);
+    return random;
+  }
+}
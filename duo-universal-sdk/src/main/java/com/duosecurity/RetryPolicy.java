@@ -0,0 +1,390 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.CircuitBreakerOpenException;
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.exception.DuoResponseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.EOFException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * Retries failed requests to Duo.  Health checks are retried after a timeout, a reset or
+ * otherwise failed connection, or a truncated response, and when Duo answers 5xx or 429, but
+ * not when a response arrived and could not be parsed.  Token exchanges are retried only when
+ * the request provably never reached Duo: the connection was refused or timed out, or the host
+ * could not be resolved.  A duoCode can only be exchanged once, so a request that may have been
+ * received is never sent again.  Certificate and pinning failures, and calls rejected by an
+ * open circuit breaker, are not retried.  Retries wait with decorrelated jitter: each delay is
+ * random between the base delay and three times the previous delay, capped at the maximum
+ * delay.  A call with a deadline is not retried if the delay would pass it.  Every retry spends
+ * a token from a bucket that each request refills by a fraction of a token, so retries stay a
+ * bounded share of the traffic during an incident instead of multiplying it.  A retry that
+ * finds the bucket empty is not made.  A policy may be shared by several Clients, which then
+ * share its budget and counts.
+ */
+public final class RetryPolicy {
+
+  /**
+   * Makes every request once.
+   */
+  static final RetryPolicy NONE = new Builder().setMaxAttempts(1).build();
+
+  private static final long TOKEN = 1000;
+
+  private final int maxAttempts;
+
+  private final long baseDelayNanos;
+
+  private final long maxDelayNanos;
+
+  private final long maxTokens;
+
+  private final long tokensPerRequest;
+
+  // Thousandths of a token
+  private final AtomicLong tokens;
+
+  private final LongAdder retries = new LongAdder();
+
+  private final LongAdder budgetExhausted = new LongAdder();
+
+  private RetryPolicy(Builder builder) {
+    this.maxAttempts = builder.maxAttempts;
+    this.baseDelayNanos = builder.baseDelayNanos;
+    this.maxDelayNanos = builder.maxDelayNanos;
+    this.maxTokens = builder.maxTokens * TOKEN;
+    this.tokensPerRequest = Math.round(builder.tokenRatio * TOKEN);
+    this.tokens = new AtomicLong(maxTokens);
+  }
+
+  /**
+   * The number of retries made.
+   *
+   * @return the retry count since the policy was created
+   */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  /**
+   * The number of retries not made because the retry budget was empty.
+   *
+   * @return the count since the policy was created
+   */
+  public long getBudgetExhaustedCount() {
+    return budgetExhausted.sum();
+  }
+
+  /**
+   * The retries the budget allows right now.
+   *
+   * @return the number of tokens in the bucket
+   */
+  public double getAvailableRetryTokens() {
+    return tokens.get() / (double) TOKEN;
+  }
+
+  @Override
+  public String toString() {
+    return "RetryPolicy [maxAttempts=" + maxAttempts
+        + ", retries=" + getRetryCount()
+        + ", budgetExhausted=" + getBudgetExhaustedCount()
+        + ", availableRetryTokens=" + getAvailableRetryTokens()
+        + "]";
+  }
+
+  /**
+   * Makes a call, retrying it while this policy allows.
+   *
+   * @param idempotent true for health checks, false for token exchanges
+   * @param deadline   When the call must be complete, or null
+   * @param attempt    Makes one attempt
+   *
+   * @throws DuoException The error of the last attempt
+   */
+  <T> T execute(boolean idempotent, Deadline deadline, Attempt<T> attempt) throws DuoException {
+    if (maxAttempts == 1) {
+      return attempt.run();
+    }
+    deposit();
+    long delayNanos = 0;
+    for (int attempts = 1; ; attempts++) {
+      try {
+        return attempt.run();
+      } catch (DuoException e) {
+        delayNanos = nextDelayNanos(delayNanos);
+        if (!shouldRetry(attempts, e, idempotent, deadline, delayNanos)) {
+          throw e;
+        }
+        try {
+          TimeUnit.NANOSECONDS.sleep(delayNanos);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Makes a call without blocking, retrying it while this policy allows.  Cancelling the
+   * returned future cancels the attempt in flight and stops retrying.
+   *
+   * @param idempotent true for health checks, false for token exchanges
+   * @param attempt    Starts one attempt
+   */
+  <T> CompletableFuture<T> executeAsync(boolean idempotent,
+                                        Supplier<CompletableFuture<T>> attempt) {
+    if (maxAttempts == 1) {
+      return attempt.get();
+    }
+    deposit();
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AsyncRetry<T> retry = new AsyncRetry<>(idempotent, attempt, result);
+    result.whenComplete(retry::cancelIfCancelled);
+    retry.run();
+    return result;
+  }
+
+  private boolean shouldRetry(int attempts, Throwable error, boolean idempotent,
+                              Deadline deadline, long delayNanos) {
+    if (attempts >= maxAttempts || !isRetryable(error, idempotent)) {
+      return false;
+    }
+    if (deadline != null && deadline.remainingNanos() <= delayNanos) {
+      return false;
+    }
+    if (!withdraw()) {
+      budgetExhausted.increment();
+      return false;
+    }
+    retries.increment();
+    return true;
+  }
+
+  private long nextDelayNanos(long previousDelayNanos) {
+    long upper = Math.max(baseDelayNanos, previousDelayNanos * 3);
+    long delay = upper > baseDelayNanos
+        ? ThreadLocalRandom.current().nextLong(baseDelayNanos, upper + 1) : baseDelayNanos;
+    return Math.min(delay, maxDelayNanos);
+  }
+
+  private void deposit() {
+    long current;
+    do {
+      current = tokens.get();
+      if (current >= maxTokens) {
+        return;
+      }
+    } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + tokensPerRequest)));
+  }
+
+  private boolean withdraw() {
+    long current;
+    do {
+      current = tokens.get();
+      if (current < TOKEN) {
+        return false;
+      }
+    } while (!tokens.compareAndSet(current, current - TOKEN));
+    return true;
+  }
+
+  static boolean isRetryable(Throwable error, boolean idempotent) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    if (error instanceof CircuitBreakerOpenException) {
+      return false;
+    }
+    if (error instanceof DuoResponseException) {
+      int status = ((DuoResponseException) error).getStatusCode();
+      return idempotent && (status >= 500 || status == 429);
+    }
+    for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+      if (cause instanceof SSLHandshakeException || cause instanceof SSLPeerUnverifiedException) {
+        return false;
+      }
+      if (neverSent(cause)) {
+        return true;
+      }
+      if (idempotent && isTransportError(cause)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isTransportError(Throwable cause) {
+    // A response that arrived but could not be parsed will not parse any better the next time
+    if (cause instanceof JsonProcessingException) {
+      return false;
+    }
+    // Timeouts, resets and broken pipes, and connections closed before the response was complete
+    return cause instanceof InterruptedIOException || cause instanceof SocketException
+        || cause instanceof EOFException;
+  }
+
+  private static boolean neverSent(Throwable cause) {
+    if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+        || cause instanceof UnknownHostException) {
+      return true;
+    }
+    // Socket.connect reports a connect timeout as a SocketTimeoutException without a subclass
+    return cause instanceof SocketTimeoutException && cause.getMessage() != null
+        && cause.getMessage().toLowerCase(Locale.ROOT).contains("connect timed out");
+  }
+
+  /**
+   * One attempt at a call.
+   */
+  interface Attempt<T> {
+    T run() throws DuoException;
+  }
+
+  private final class AsyncRetry<T> implements Runnable, BiConsumer<T, Throwable> {
+    private final boolean idempotent;
+    private final Supplier<CompletableFuture<T>> attempt;
+    private final CompletableFuture<T> result;
+    private volatile CompletableFuture<T> current;
+    private int attempts;
+    private long delayNanos;
+
+    AsyncRetry(boolean idempotent, Supplier<CompletableFuture<T>> attempt,
+               CompletableFuture<T> result) {
+      this.idempotent = idempotent;
+      this.attempt = attempt;
+      this.result = result;
+    }
+
+    @Override
+    public void run() {
+      if (result.isDone()) {
+        return;
+      }
+      attempts++;
+      CompletableFuture<T> next = attempt.get();
+      current = next;
+      if (result.isCancelled()) {
+        next.cancel(true);
+      }
+      next.whenComplete(this);
+    }
+
+    @Override
+    public void accept(T value, Throwable error) {
+      if (error == null) {
+        result.complete(value);
+        return;
+      }
+      Throwable cause = error instanceof CompletionException && error.getCause() != null
+          ? error.getCause() : error;
+      delayNanos = nextDelayNanos(delayNanos);
+      if (result.isDone() || !shouldRetry(attempts, cause, idempotent, null, delayNanos)) {
+        result.completeExceptionally(cause);
+        return;
+      }
+      BackgroundScheduler.schedule(this, delayNanos);
+    }
+
+    void cancelIfCancelled(T value, Throwable error) {
+      CompletableFuture<T> inFlight = current;
+      if (result.isCancelled() && inFlight != null) {
+        inFlight.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Builds a {@link RetryPolicy}.  The defaults make up to 3 attempts, wait between 50
+   * milliseconds and 2 seconds, and allow a burst of 10 retries plus 1 retry for every 10
+   * requests.
+   */
+  public static class Builder {
+    private int maxAttempts = 3;
+    private long baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    private long maxDelayNanos = TimeUnit.SECONDS.toNanos(2);
+    private int maxTokens = 10;
+    private double tokenRatio = 0.1;
+
+    /**
+     * Optionally set how many times a call may be made, including the first.  Defaults to 3.
+     *
+     * @param maxAttempts At least 1
+     *
+     * @return the Builder
+     */
+    public Builder setMaxAttempts(int maxAttempts) {
+      if (maxAttempts < 1) {
+        throw new IllegalArgumentException("The maximum attempts must be at least 1");
+      }
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Optionally set the shortest and longest wait before a retry.  Defaults to 50
+     * milliseconds and 2 seconds.
+     *
+     * @param baseDelay The shortest wait
+     * @param maxDelay  The longest wait
+     * @param unit      The unit of the delays
+     *
+     * @return the Builder
+     */
+    public Builder setBackoff(long baseDelay, long maxDelay, TimeUnit unit) {
+      if (baseDelay <= 0 || maxDelay < baseDelay) {
+        throw new IllegalArgumentException(
+            "The base delay must be positive and no longer than the maximum delay");
+      }
+      this.baseDelayNanos = unit.toNanos(baseDelay);
+      this.maxDelayNanos = unit.toNanos(maxDelay);
+      return this;
+    }
+
+    /**
+     * Optionally set the retry budget: a bucket of maxTokens tokens, full at first, that each
+     * retry takes one token from and each request adds tokenRatio tokens to.  Over time,
+     * retries are limited to tokenRatio of the requests.  Defaults to 10 and 0.1.
+     *
+     * @param maxTokens  The largest burst of retries
+     * @param tokenRatio The retries allowed per request, between 0 and 1
+     *
+     * @return the Builder
+     */
+    public Builder setRetryBudget(int maxTokens, double tokenRatio) {
+      if (maxTokens < 1 || tokenRatio < 0 || tokenRatio > 1) {
+        throw new IllegalArgumentException(
+            "The retry budget needs at least 1 token and a ratio between 0 and 1");
+      }
+      this.maxTokens = maxTokens;
+      this.tokenRatio = tokenRatio;
+      return this;
+    }
+
+    /**
+     * Build the retry policy.
+     *
+     * @return {@link RetryPolicy}
+     */
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+}
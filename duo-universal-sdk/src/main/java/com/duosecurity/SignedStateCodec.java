@@ -0,0 +1,208 @@
+package com.duosecurity;
+
+import static com.duosecurity.Validator.validateUsername;
+
+import com.duosecurity.exception.DuoException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Creates states that carry the username themselves, so that Duo's callback can be checked
+ * on any node without a {@link StateStore}.
+ *
+ * <p>A state packs a format version, the issue time, the lifetime, a 128 bit random nonce and
+ * the username, followed by an HMAC-SHA256 of all of them, encoded as unpadded base64url.  It
+ * is between 83 and 1024 characters long, so usernames of up to 707 UTF-8 bytes fit within
+ * the limits of {@link Client#createAuthUrl}.  The HMAC key is derived from the given key, so
+ * the client secret, which every node already has, can be used without the states sharing a
+ * key with Duo's JWTs.  Times are read from the wall clock, so the nodes' clocks must agree to
+ * well within the time to live.
+ *
+ * <p>Unlike {@link StateStore#consume}, decoding does not use the state up: it stays valid
+ * until it expires, and only Duo's single use of each duo_code stops a replayed callback.
+ * {@link Client.Builder#setExchangeCoalescing()} keeps that protection, but a response kept by
+ * {@link Client.Builder#setExchangeCoalescing(long, TimeUnit)} is handed to a replay for its
+ * time to live, so do not combine that with signed states.
+ */
+public final class SignedStateCodec {
+
+  private static final byte VERSION = 1;
+
+  private static final byte[] KEY_LABEL =
+      "duo_universal_java signed state".getBytes(StandardCharsets.UTF_8);
+
+  private static final int MINIMUM_KEY_LENGTH = 32;
+
+  private static final int NONCE_LENGTH = 16;
+
+  private static final int MAC_LENGTH = 32;
+
+  private static final int HEADER_LENGTH = 1 + Long.BYTES + Integer.BYTES + NONCE_LENGTH;
+
+  private static final int MAXIMUM_STATE_LENGTH = 1024;
+
+  private static final int MAXIMUM_LENGTH = MAXIMUM_STATE_LENGTH * 3 / 4;
+
+  private final MacPool macs;
+
+  private final int timeToLiveSeconds;
+
+  private final LongSupplier clock;
+
+  /**
+   * Creates a codec.  Every node that handles logins must use the same key.
+   *
+   * @param key        At least 32 bytes of secret key material, such as the client secret
+   * @param timeToLive How long a state stays valid, at least 1 second
+   * @param unit       The unit of timeToLive
+   */
+  public SignedStateCodec(byte[] key, long timeToLive, TimeUnit unit) {
+    this(key, timeToLive, unit, System::currentTimeMillis);
+  }
+
+  SignedStateCodec(byte[] key, long timeToLive, TimeUnit unit, LongSupplier clock) {
+    if (key == null || key.length < MINIMUM_KEY_LENGTH) {
+      throw new IllegalArgumentException("The key must be at least 32 bytes long");
+    }
+    if (unit == null) {
+      throw new IllegalArgumentException("The time unit cannot be null");
+    }
+    long seconds = unit.toSeconds(timeToLive);
+    if (seconds < 1 || seconds > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The time to live must be between 1 second and "
+          + Integer.MAX_VALUE + " seconds");
+    }
+    this.macs = new MacPool("HmacSHA256", deriveKey(key));
+    this.timeToLiveSeconds = (int) seconds;
+    this.clock = clock;
+  }
+
+  /**
+   * Creates a signed state for a login.
+   *
+   * @param username The user that is logging in
+   *
+   * @return the state to pass to {@link Client#createAuthUrl}
+   *
+   * @throws DuoException If the username is missing or too long
+   */
+  public String encode(String username) throws DuoException {
+    validateUsername(username);
+    byte[] name = username.getBytes(StandardCharsets.UTF_8);
+    if (HEADER_LENGTH + name.length + MAC_LENGTH > MAXIMUM_LENGTH) {
+      throw new DuoException("The username is too long for a signed state");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + name.length + MAC_LENGTH);
+    buffer.put(VERSION);
+    buffer.putLong(TimeUnit.MILLISECONDS.toSeconds(clock.getAsLong()));
+    buffer.putInt(timeToLiveSeconds);
+    byte[] nonce = new byte[NONCE_LENGTH];
+    RandomIdGenerator.nextBytes(nonce);
+    buffer.put(nonce);
+    buffer.put(name);
+    buffer.put(mac(buffer.array(), buffer.position()));
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+  }
+
+  /**
+   * Verifies a state returned by Duo and unpacks it.
+   *
+   * @param state The state from Duo's callback
+   *
+   * @return the login the state was created for
+   *
+   * @throws DuoException If the state was not created with this key, was altered, or expired
+   */
+  public SignedState decode(String state) throws DuoException {
+    if (state == null || state.length() > MAXIMUM_STATE_LENGTH) {
+      throw new DuoException("Invalid state");
+    }
+    byte[] bytes;
+    try {
+      bytes = Base64.getUrlDecoder().decode(state);
+    } catch (IllegalArgumentException e) {
+      throw new DuoException("Invalid state", e);
+    }
+    if (bytes.length <= HEADER_LENGTH + MAC_LENGTH || bytes[0] != VERSION) {
+      throw new DuoException("Invalid state");
+    }
+    int macOffset = bytes.length - MAC_LENGTH;
+    byte[] expected = mac(bytes, macOffset);
+    if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, macOffset, bytes.length))) {
+      throw new DuoException("Invalid state");
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, HEADER_LENGTH - 1);
+    long issuedAt = buffer.getLong();
+    long expiresAt = issuedAt + buffer.getInt();
+    if (TimeUnit.MILLISECONDS.toSeconds(clock.getAsLong()) >= expiresAt) {
+      throw new DuoException("Expired state");
+    }
+    String username = new String(bytes, HEADER_LENGTH, macOffset - HEADER_LENGTH,
+        StandardCharsets.UTF_8);
+    return new SignedState(username, Instant.ofEpochSecond(issuedAt),
+        Instant.ofEpochSecond(expiresAt));
+  }
+
+  private byte[] mac(byte[] bytes, int length) throws DuoException {
+    try {
+      Mac mac = macs.acquire();
+      try {
+        mac.update(bytes, 0, length);
+        return mac.doFinal();
+      } finally {
+        macs.release(mac);
+      }
+    } catch (GeneralSecurityException e) {
+      throw new DuoException(e.getMessage(), e);
+    }
+  }
+
+  private static byte[] deriveKey(byte[] key) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(key, "HmacSHA256"));
+      return mac.doFinal(KEY_LABEL);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("HmacSHA256 is not available", e);
+    }
+  }
+
+  /**
+   * The login a verified state was created for.
+   */
+  public static final class SignedState {
+
+    private final String username;
+
+    private final Instant issuedAt;
+
+    private final Instant expiresAt;
+
+    SignedState(String username, Instant issuedAt, Instant expiresAt) {
+      this.username = username;
+      this.issuedAt = issuedAt;
+      this.expiresAt = expiresAt;
+    }
+
+    public String getUsername() {
+      return username;
+    }
+
+    public Instant getIssuedAt() {
+      return issuedAt;
+    }
+
+    public Instant getExpiresAt() {
+      return expiresAt;
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key, so that duplicate callbacks carrying one
+ * duo_code make a single token exchange with Duo.  The first caller for a key makes the call,
+ * and callers that arrive while it runs wait for its result or error instead of making their
+ * own.  With a time to live of 0, nothing is kept once the call returns.  A longer time to live
+ * keeps a result after the call returns, so that late duplicates are answered without calling
+ * Duo, and such results are removed by the calls that follow, at most once per time to live.
+ * Errors are never kept, so the next caller makes a new call.  A caller that gives up waiting
+ * does not affect the others: blocking and async callers both count as waiters, and an async
+ * call is cancelled only once every caller waiting for it has stopped.
+ */
+final class SingleFlight<T> {
+
+  private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+  private final long timeToLiveNanos;
+
+  private volatile long nextSweep;
+
+  SingleFlight(long timeToLive, TimeUnit unit) {
+    this.timeToLiveNanos = unit.toNanos(timeToLive);
+    this.nextSweep = System.nanoTime() + timeToLiveNanos;
+  }
+
+  /**
+   * Makes the call for key on this thread, or waits until the deadline for the result of the
+   * call already made for it.
+   */
+  T execute(String key, Deadline deadline, RetryPolicy.Attempt<T> call) throws DuoException {
+    sweep();
+    Flight flight = new Flight(key, 1);
+    Flight existing = join(flight);
+    if (existing != null) {
+      return existing.await(deadline);
+    }
+    T result;
+    try {
+      result = call.run();
+    } catch (DuoException | RuntimeException e) {
+      land(flight, null, e);
+      throw e;
+    }
+    land(flight, result, null);
+    return result;
+  }
+
+  /**
+   * Starts the call for key, or follows the call already made for it.  Cancelling the returned
+   * future stops waiting, and cancels the call if no other caller is waiting for it.
+   */
+  CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> call) {
+    sweep();
+    Flight flight = new Flight(key, 0);
+    Flight existing = join(flight);
+    if (existing != null) {
+      return existing.follow();
+    }
+    final CompletableFuture<T> view = flight.follow();
+    CompletableFuture<T> request;
+    try {
+      request = call.get();
+    } catch (RuntimeException e) {
+      request = new CompletableFuture<>();
+      request.completeExceptionally(e);
+    }
+    flight.request = request;
+    request.whenComplete((result, error) -> land(flight, result, unwrap(error)));
+    return view;
+  }
+
+  int size() {
+    return flights.size();
+  }
+
+  int waiters(String key) {
+    Flight flight = flights.get(key);
+    return flight == null ? 0 : flight.waiters.get();
+  }
+
+  private Flight join(Flight flight) {
+    while (true) {
+      Flight existing = flights.putIfAbsent(flight.key, flight);
+      if (existing == null) {
+        return null;
+      }
+      if (!existing.isExpired(System.nanoTime())) {
+        return existing;
+      }
+      flights.remove(flight.key, existing);
+    }
+  }
+
+  private void land(Flight flight, T result, Throwable error) {
+    if (error == null && timeToLiveNanos > 0) {
+      flight.expiresAt = System.nanoTime() + timeToLiveNanos;
+      flight.result.complete(result);
+      return;
+    }
+    flights.remove(flight.key, flight);
+    if (error == null) {
+      flight.result.complete(result);
+    } else {
+      flight.result.completeExceptionally(error);
+    }
+  }
+
+  private void sweep() {
+    long now = System.nanoTime();
+    if (timeToLiveNanos == 0 || now - nextSweep < 0) {
+      return;
+    }
+    nextSweep = now + timeToLiveNanos;
+    flights.values().removeIf(flight -> flight.isExpired(now));
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      return error.getCause();
+    }
+    return error;
+  }
+
+  private final class Flight {
+    private final String key;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private final AtomicInteger waiters;
+    private volatile CompletableFuture<T> request;
+    private volatile long expiresAt;
+
+    Flight(String key, int waiters) {
+      this.key = key;
+      this.waiters = new AtomicInteger(waiters);
+    }
+
+    boolean isExpired(long now) {
+      return result.isDone() && now - expiresAt >= 0;
+    }
+
+    T await(Deadline deadline) throws DuoException {
+      waiters.incrementAndGet();
+      try {
+        return deadline == null
+            ? result.get()
+            : result.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof DuoException) {
+          throw (DuoException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new DuoException(cause.getMessage(), cause);
+      } catch (CancellationException e) {
+        throw new DuoException("The token exchange for this duo_code was cancelled", e);
+      } catch (TimeoutException e) {
+        throw new DuoException("The deadline passed while waiting for the token exchange "
+            + "already made for this duo_code", e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DuoException("Interrupted while waiting for the token exchange already made "
+            + "for this duo_code", e);
+      } finally {
+        release();
+      }
+    }
+
+    CompletableFuture<T> follow() {
+      waiters.incrementAndGet();
+      CompletableFuture<T> view = new CompletableFuture<>();
+      result.whenComplete((value, error) -> {
+        if (error == null) {
+          view.complete(value);
+        } else {
+          view.completeExceptionally(error);
+        }
+      });
+      view.whenComplete((value, error) -> {
+        if (view.isCancelled()) {
+          release();
+        }
+      });
+      return view;
+    }
+
+    void release() {
+      CompletableFuture<T> pending = request;
+      if (waiters.decrementAndGet() == 0 && pending != null && !result.isDone()
+          && flights.remove(key, this)) {
+        pending.cancel(true);
+      }
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.duosecurity;
+
+/**
+ * Remembers pending logins between creating the auth URL and Duo's callback, keyed by the
+ * value from {@link Client#generateState()}.
+ * Implementations must be thread-safe, and a state must be consumable at most once, so that
+ * a replayed callback does not find it again.
+ *
+ * @param <V> What is remembered for the login, such as the username
+ */
+public interface StateStore<V> {
+
+  /**
+   * Remembers a pending login.
+   *
+   * @param state The state sent to Duo in the auth URL
+   * @param value What to remember for the login
+   *
+   * @return true if the state was stored, false if it was already present
+   */
+  boolean put(String state, V value);
+
+  /**
+   * Removes a pending login and returns what was remembered for it.
+   *
+   * @param state The state returned by Duo
+   *
+   * @return the remembered value, or null if the state is unknown, expired or already consumed
+   */
+  V consume(String state);
+}
@@ -0,0 +1,592 @@
+package com.duosecurity;
+
+import com.auth0.jwt.exceptions.AlgorithmMismatchException;
+import com.auth0.jwt.exceptions.IncorrectClaimException;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.MissingClaimException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.model.AccessDevice;
+import com.duosecurity.model.Application;
+import com.duosecurity.model.AuthContext;
+import com.duosecurity.model.AuthDevice;
+import com.duosecurity.model.AuthResult;
+import com.duosecurity.model.Location;
+import com.duosecurity.model.Token;
+import com.duosecurity.model.User;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+import javax.crypto.Mac;
+
+/**
+ * Verifies a Duo id_token and decodes it into a {@link Token} in one pass, without building a
+ * DecodedJWT and its claim maps.  The header must name HS512, and the MAC is compared in
+ * constant time before the payload is read.  The payload is then streamed once with Jackson,
+ * filling the model objects and collecting the claims to check, and expiration, issued at and
+ * not before, issuer, audience, preferred_username and the optional nonce are checked as
+ * {@link DuoIdTokenValidator} does.  Accepts and rejects the same tokens as
+ * DuoIdTokenValidator followed by {@code Utils.transformDecodedJwtToToken}, and produces an
+ * equal Token.  Model fields of the wrong JSON type, which make that path fail with a
+ * ClassCastException, are reported as a DuoException here.
+ */
+final class StreamingIdTokenVerifier {
+
+  private static final long DUO_LEEWAY_MILLIS = 60000;  // One minute
+  private static final String ALGORITHM = "HS512";
+  private static final String HTTPS = "https://";
+  private static final String ISSUER_PATH = "/oauth/v1/token";
+
+  private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+  private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final JsonFactory JSON = MAPPER.getFactory();
+
+  private final PooledHmacAlgorithm algorithm;
+
+  private final String issuer;
+
+  private final String audience;
+
+  StreamingIdTokenVerifier(PooledHmacAlgorithm algorithm, String audience, String apiHost) {
+    this.algorithm = algorithm;
+    this.issuer = HTTPS + apiHost + ISSUER_PATH;
+    this.audience = audience;
+  }
+
+  /**
+   * Verifies the id_token and decodes it.
+   *
+   * @param jwt       The id_token returned by Duo
+   * @param username  The name of the user trying to auth
+   * @param nonce     The expected nonce, or null to skip the nonce check
+   *
+   * @return the decoded Token if all the claims check out, otherwise a DuoException is raised
+   */
+  Token verify(String jwt, String username, String nonce) throws DuoException {
+    if (jwt == null) {
+      throw new DuoException("ID Token verification failed: Null token");
+    }
+    try {
+      return verifyAndDecode(jwt, username, nonce);
+    } catch (JWTVerificationException e) {
+      throw new DuoException("ID Token verification failed", e);
+    }
+  }
+
+  private Token verifyAndDecode(String jwt, String username, String nonce) {
+    int headerEnd = jwt.indexOf('.');
+    int payloadEnd = headerEnd < 0 ? -1 : jwt.indexOf('.', headerEnd + 1);
+    if (payloadEnd < 0 || jwt.indexOf('.', payloadEnd + 1) >= 0) {
+      throw new JWTDecodeException("The token was expected to have 3 parts");
+    }
+    byte[] ascii = jwt.getBytes(StandardCharsets.US_ASCII);
+    byte[] header = decode(ascii, 0, headerEnd);
+    byte[] payload = decode(ascii, headerEnd + 1, payloadEnd);
+    byte[] signature = decode(ascii, payloadEnd + 1, ascii.length);
+
+    if (!ALGORITHM.equals(readAlgorithm(header))) {
+      throw new AlgorithmMismatchException(
+          "The provided Algorithm doesn't match the one defined in the JWT's Header.");
+    }
+    verifySignature(ascii, payloadEnd, signature);
+
+    Payload claims = readPayload(payload, audience);
+    claims.verify(issuer, username, nonce, Instant.now());
+    return claims.token;
+  }
+
+  private void verifySignature(byte[] ascii, int length, byte[] signature) {
+    MacPool macs = algorithm.getMacPool();
+    byte[] expected;
+    try {
+      Mac mac = macs.acquire();
+      try {
+        mac.update(ascii, 0, length);
+        expected = mac.doFinal();
+      } finally {
+        macs.release(mac);
+      }
+    } catch (GeneralSecurityException e) {
+      throw new SignatureVerificationException(algorithm, e);
+    }
+    if (!MessageDigest.isEqual(expected, signature)) {
+      throw new SignatureVerificationException(algorithm);
+    }
+  }
+
+  private static byte[] decode(byte[] ascii, int from, int to) {
+    try {
+      return Base64.getUrlDecoder().decode(Arrays.copyOfRange(ascii, from, to));
+    } catch (IllegalArgumentException e) {
+      throw new JWTDecodeException("The token contains invalid Base64", e);
+    }
+  }
+
+  private static String readAlgorithm(byte[] header) {
+    try (JsonParser parser = JSON.createParser(header)) {
+      expect(parser.nextToken(), JsonToken.START_OBJECT);
+      String algorithm = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("alg".equals(name)) {
+          algorithm = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+        }
+        parser.skipChildren();
+      }
+      return algorithm;
+    } catch (IOException e) {
+      throw new JWTDecodeException("The token's header is not valid JSON", e);
+    }
+  }
+
+  private static Payload readPayload(byte[] payload, String audience) {
+    try (JsonParser parser = JSON.createParser(payload)) {
+      expect(parser.nextToken(), JsonToken.START_OBJECT);
+      Payload claims = new Payload(audience);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        claims.read(name, value, parser);
+      }
+      return claims;
+    } catch (IOException e) {
+      throw new JWTDecodeException("The token's payload is not valid JSON", e);
+    }
+  }
+
+  private static void expect(JsonToken actual, JsonToken expected) {
+    if (actual != expected) {
+      throw new JWTDecodeException("Expected " + expected + " but found " + actual);
+    }
+  }
+
+  /**
+   * The claims of the payload, and the Token built from them.
+   */
+  private static final class Payload {
+    private final String expectedAudience;
+    private final Token token = new Token();
+    private boolean hasIssuer;
+    private String issuer;
+    private boolean hasAudience;
+    private boolean audienceMatches;
+    private Number expiresAt;
+    private Number issuedAt;
+    private Number notBefore;
+    private boolean hasUsername;
+    private String username;
+    private boolean hasNonce;
+    private String nonce;
+
+    Payload(String expectedAudience) {
+      this.expectedAudience = expectedAudience;
+    }
+
+    void read(String name, JsonToken value, JsonParser parser) throws IOException {
+      switch (name) {
+        case "iss":
+          hasIssuer = true;
+          issuer = text(value, parser);
+          token.setIss(issuer);
+          break;
+        case "sub":
+          token.setSub(text(value, parser));
+          break;
+        case "aud":
+          hasAudience = true;
+          token.setAud(text(value, parser));
+          readAudience(value, parser);
+          break;
+        case "exp":
+          expiresAt = date(name, value, parser);
+          token.setExp(expiresAt == null ? null : expiresAt.intValue());
+          break;
+        case "iat":
+          issuedAt = date(name, value, parser);
+          token.setIat(issuedAt == null ? null : issuedAt.doubleValue());
+          break;
+        case "nbf":
+          notBefore = date(name, value, parser);
+          break;
+        case "auth_time":
+          Number authTime = number(value, parser);
+          token.setAuth_time(authTime == null ? null : authTime.intValue());
+          break;
+        case "preferred_username":
+          hasUsername = true;
+          username = text(value, parser);
+          token.setPreferred_username(username);
+          break;
+        case "nonce":
+          hasNonce = true;
+          nonce = text(value, parser);
+          break;
+        case "auth_context":
+          token.setAuth_context(value == JsonToken.START_OBJECT ? readAuthContext(parser) : null);
+          break;
+        case "auth_result":
+          token.setAuth_result(value == JsonToken.START_OBJECT ? readAuthResult(parser) : null);
+          break;
+        default:
+          break;
+      }
+      parser.skipChildren();
+    }
+
+    // Collects the audience as a list of strings and remembers whether it holds the client id;
+    // the list itself is only needed for the check, so it is not kept
+    private void readAudience(JsonToken value, JsonParser parser) throws IOException {
+      audienceMatches = false;
+      if (value == JsonToken.VALUE_STRING) {
+        audienceMatches = parser.getText().equals(expectedAudience);
+      } else if (value == JsonToken.START_ARRAY) {
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+          if (element == JsonToken.START_OBJECT || element == JsonToken.START_ARRAY) {
+            throw new JWTDecodeException("Couldn't map the Claim's array contents to String");
+          }
+          if (element != JsonToken.VALUE_NULL && parser.getText().equals(expectedAudience)) {
+            audienceMatches = true;
+          }
+        }
+      }
+    }
+
+    void verify(String expectedIssuer, String expectedUsername, String expectedNonce,
+                Instant now) {
+      // Dates first, then the registered claims, then the user specific ones, as java-jwt
+      // and DuoIdTokenValidator do
+      Instant expiration = instant(expiresAt);
+      if (expiration != null && now.minusMillis(DUO_LEEWAY_MILLIS).isAfter(expiration)) {
+        throw new TokenExpiredException("The Token has expired on " + expiration + ".",
+                                        expiration);
+      }
+      Instant issued = instant(issuedAt);
+      if (issued != null && now.plusMillis(DUO_LEEWAY_MILLIS).isBefore(issued)) {
+        throw new IncorrectClaimException("The Token can't be used before " + issued + ".",
+                                          "iat", null);
+      }
+      Instant notValidBefore = instant(notBefore);
+      if (notValidBefore != null && now.plusMillis(DUO_LEEWAY_MILLIS).isBefore(notValidBefore)) {
+        throw new IncorrectClaimException("The Token can't be used before " + notValidBefore
+                                          + ".", "nbf", null);
+      }
+      if (!hasIssuer) {
+        throw new MissingClaimException("iss");
+      }
+      if (!expectedIssuer.equals(issuer)) {
+        throw new IncorrectClaimException(
+            "The Claim 'iss' value doesn't match the required issuer.", "iss", null);
+      }
+      if (!hasAudience) {
+        throw new MissingClaimException("aud");
+      }
+      if (!audienceMatches) {
+        throw new IncorrectClaimException(
+            "The Claim 'aud' value doesn't contain the required audience.", "aud", null);
+      }
+      assertClaim("preferred_username", hasUsername, username, expectedUsername);
+      if (expectedNonce != null) {
+        assertClaim("nonce", hasNonce, nonce, expectedNonce);
+      }
+    }
+
+    private static Instant instant(Number seconds) {
+      if (seconds == null) {
+        return null;
+      }
+      try {
+        return Instant.ofEpochSecond(seconds.longValue());
+      } catch (DateTimeException e) {
+        throw new JWTDecodeException("The token contains a date out of range", e);
+      }
+    }
+
+    private static void assertClaim(String name, boolean present, String value,
+                                    String expected) {
+      if (!present) {
+        throw new MissingClaimException(name);
+      }
+      if (!Objects.equals(expected, value)) {
+        throw new IncorrectClaimException(
+            String.format("The Claim '%s' value doesn't match the required one.", name),
+            name, null);
+      }
+    }
+  }
+
+  private static AuthContext readAuthContext(JsonParser parser) throws IOException {
+    AuthContext authContext = new AuthContext();
+    authContext.setAuth_device(new AuthDevice());
+    authContext.setAccess_device(new AccessDevice());
+    authContext.setApplication(new Application());
+    authContext.setUser(new User());
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (name) {
+        case "result":
+          authContext.setResult(string(value, parser));
+          break;
+        case "timestamp":
+          authContext.setTimestamp(integer(name, value, parser));
+          break;
+        case "auth_device":
+          authContext.setAuth_device(object(name, value) ? readAuthDevice(parser)
+                                                         : new AuthDevice());
+          break;
+        case "txid":
+          authContext.setTxid(string(value, parser));
+          break;
+        case "event_type":
+          authContext.setEvent_type(string(value, parser));
+          break;
+        case "reason":
+          authContext.setReason(string(value, parser));
+          break;
+        case "access_device":
+          authContext.setAccess_device(object(name, value) ? readAccessDevice(parser)
+                                                           : new AccessDevice());
+          break;
+        case "application":
+          authContext.setApplication(object(name, value) ? readApplication(parser)
+                                                         : new Application());
+          break;
+        case "factor":
+          authContext.setFactor(string(value, parser));
+          break;
+        case "user":
+          authContext.setUser(object(name, value) ? readUser(parser) : new User());
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    return authContext;
+  }
+
+  private static AuthResult readAuthResult(JsonParser parser) throws IOException {
+    AuthResult authResult = new AuthResult();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (name) {
+        case "status_msg":
+          authResult.setStatus_msg(string(value, parser));
+          break;
+        case "status":
+          authResult.setStatus(string(value, parser));
+          break;
+        case "result":
+          authResult.setResult(string(value, parser));
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    return authResult;
+  }
+
+  private static AuthDevice readAuthDevice(JsonParser parser) throws IOException {
+    AuthDevice authDevice = new AuthDevice();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (name) {
+        case "ip":
+          authDevice.setIp(string(value, parser));
+          break;
+        case "name":
+          authDevice.setName(string(value, parser));
+          break;
+        case "location":
+          authDevice.setLocation(object(name, value) ? readLocation(parser) : null);
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    return authDevice;
+  }
+
+  private static AccessDevice readAccessDevice(JsonParser parser) throws IOException {
+    AccessDevice accessDevice = new AccessDevice();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (name) {
+        case "ip":
+          accessDevice.setIp(string(value, parser));
+          break;
+        case "hostname":
+          accessDevice.setHostname(string(value, parser));
+          break;
+        case "location":
+          accessDevice.setLocation(object(name, value) ? readLocation(parser) : null);
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    return accessDevice;
+  }
+
+  private static Location readLocation(JsonParser parser) throws IOException {
+    Location location = new Location();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (name) {
+        case "city":
+          location.setCity(string(value, parser));
+          break;
+        case "state":
+          location.setState(string(value, parser));
+          break;
+        case "country":
+          location.setCountry(string(value, parser));
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    return location;
+  }
+
+  private static Application readApplication(JsonParser parser) throws IOException {
+    Application application = new Application();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (name) {
+        case "key":
+          application.setKey(string(value, parser));
+          break;
+        case "name":
+          application.setName(string(value, parser));
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    return application;
+  }
+
+  private static User readUser(JsonParser parser) throws IOException {
+    User user = new User();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (name) {
+        case "key":
+          user.setKey(string(value, parser));
+          break;
+        case "name":
+          user.setName(string(value, parser));
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    return user;
+  }
+
+  // Claim.asString(): only JSON strings have a value
+  private static String text(JsonToken value, JsonParser parser) throws IOException {
+    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+  }
+
+  // Claim.asInt() and asDouble(): only JSON numbers have a value
+  private static Number number(JsonToken value, JsonParser parser) throws IOException {
+    return value.isNumeric() ? parser.getNumberValue() : null;
+  }
+
+  // Registered dates must be numbers that fit in a long, or null
+  private static Number date(String name, JsonToken value, JsonParser parser)
+      throws IOException {
+    if (value == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    Number number = number(value, parser);
+    if (number == null || !fitsInLong(number)) {
+      throw new JWTDecodeException(
+          String.format("The claim '%s' contained a non-numeric date value.", name));
+    }
+    return number;
+  }
+
+  private static boolean fitsInLong(Number number) {
+    if (number instanceof BigInteger) {
+      return MIN_LONG.compareTo((BigInteger) number) <= 0
+          && MAX_LONG.compareTo((BigInteger) number) >= 0;
+    }
+    if (number instanceof Double || number instanceof Float) {
+      double value = number.doubleValue();
+      return value >= Long.MIN_VALUE && value <= Long.MAX_VALUE;
+    }
+    return true;
+  }
+
+  // Values inside auth_context and auth_result are read as by Claim.asMap() and toString()
+  private static String string(JsonToken value, JsonParser parser) throws IOException {
+    switch (value) {
+      case VALUE_NULL:
+        return null;
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getNumberValue().toString();
+      case START_OBJECT:
+      case START_ARRAY:
+        return MAPPER.readValue(parser, Object.class).toString();
+      default:
+        return parser.getText();
+    }
+  }
+
+  private static Integer integer(String name, JsonToken value, JsonParser parser)
+      throws IOException {
+    if (value == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (value == JsonToken.VALUE_NUMBER_INT
+        && parser.getNumberType() == JsonParser.NumberType.INT) {
+      return parser.getIntValue();
+    }
+    throw new JWTDecodeException(String.format("The claim '%s' is not an integer.", name));
+  }
+
+  private static boolean object(String name, JsonToken value) {
+    if (value == JsonToken.VALUE_NULL) {
+      return false;
+    }
+    if (value == JsonToken.START_OBJECT) {
+      return true;
+    }
+    throw new JWTDecodeException(String.format("The claim '%s' is not an object.", name));
+  }
+}
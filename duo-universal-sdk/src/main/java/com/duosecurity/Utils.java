@@ -14,11 +14,16 @@ import com.duosecurity.model.AuthResult;
 import com.duosecurity.model.Location;
 import com.duosecurity.model.Token;
 import com.duosecurity.model.User;
+import java.io.ByteArrayInputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.SecureRandom;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 
 public class Utils {
@@ -27,9 +32,15 @@ public class Utils {
 
   private static final String HTTPS = "https";
 
+  private static final String SHA256_PIN_PREFIX = "sha256/";
+
   private static final Map<String, Object> HEADERS = Collections.singletonMap("alg", "HS512");
 
   static String createJwt(String clientId, String clientSecret, String aud) {
+    return createJwt(Algorithm.HMAC512(clientSecret), clientId, aud);
+  }
+
+  static String createJwt(Algorithm algorithm, String clientId, String aud) {
     Date expiration = new Date();
     expiration.setTime(expiration.getTime() + ONE_HOUR_IN_MILLISECONDS);
     return JWT.create()
@@ -39,12 +50,19 @@ public class Utils {
               .withAudience(aud)
               .withExpiresAt(expiration)
               .withJWTId(generateJwtId(32))
-              .sign(Algorithm.HMAC512(clientSecret));
+              .sign(algorithm);
   }
 
   static String createJwtForAuthUrl(String clientId, String clientSecret, String redirectUri,
                                     String state, String username,
                                     Boolean useDuoCodeAttribute) {
+    return createJwtForAuthUrl(Algorithm.HMAC512(clientSecret), clientId, redirectUri, state,
+                               username, useDuoCodeAttribute);
+  }
+
+  static String createJwtForAuthUrl(Algorithm algorithm, String clientId, String redirectUri,
+                                    String state, String username,
+                                    Boolean useDuoCodeAttribute) {
     Date expiration = new Date();
     expiration.setTime(expiration.getTime() + ONE_HOUR_IN_MILLISECONDS);
     return JWT.create()
@@ -57,7 +75,7 @@ public class Utils {
               .withClaim("duo_uname", username)
               .withClaim("response_type", "code")
               .withClaim("use_duo_code_attribute", useDuoCodeAttribute)
-              .sign(Algorithm.HMAC512(clientSecret));
+              .sign(algorithm);
   }
 
   static Token transformDecodedJwtToToken(DecodedJWT decodedJwt) {
@@ -86,6 +104,64 @@ public class Utils {
     return true;
   }
 
+  /**
+   * Turns a CA bundle into pins.  Entries that already hold a SHA-256 hash are kept as they
+   * are, and entries that hold a whole certificate in the same "sha256/" format, as
+   * {@link Client.Builder#setCACerts} has always accepted, are replaced by its public key pin.
+   *
+   * @param caCerts Pins or DER certificates in base64, each with a "sha256/" prefix
+   *
+   * @return the pins, in the same order
+   *
+   * @throws IllegalArgumentException If an entry is neither a hash nor a certificate
+   */
+  static String[] pins(String[] caCerts) {
+    String[] pins = caCerts.clone();
+    for (int i = 0; i < pins.length; i++) {
+      if (pins[i] != null && pins[i].startsWith(SHA256_PIN_PREFIX) && !isSha256Hash(pins[i])) {
+        pins[i] = spkiPins(new String[] {pins[i]})[0];
+      }
+    }
+    return pins;
+  }
+
+  private static boolean isSha256Hash(String pin) {
+    try {
+      return Base64.getDecoder().decode(pin.substring(SHA256_PIN_PREFIX.length())).length == 32;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Derives a pin from each certificate: the SHA-256 hash of its SubjectPublicKeyInfo, which is
+   * what OkHttp's CertificatePinner compares against the certificates it sees in a handshake.
+   *
+   * @param certificates DER certificates in base64, each with a "sha256/" prefix; line breaks
+   *                     in the base64 are ignored
+   *
+   * @return the pins, as "sha256/" followed by the base64 hash, in the same order
+   *
+   * @throws IllegalArgumentException If a certificate cannot be parsed
+   */
+  static String[] spkiPins(String[] certificates) {
+    try {
+      CertificateFactory factory = CertificateFactory.getInstance("X.509");
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      String[] pins = new String[certificates.length];
+      for (int i = 0; i < certificates.length; i++) {
+        byte[] der = Base64.getMimeDecoder().decode(
+            certificates[i].substring(SHA256_PIN_PREFIX.length()));
+        byte[] spki = factory.generateCertificate(new ByteArrayInputStream(der))
+            .getPublicKey().getEncoded();
+        pins[i] = SHA256_PIN_PREFIX + Base64.getEncoder().encodeToString(sha256.digest(spki));
+      }
+      return pins;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException("Invalid CA certificate: " + e.getMessage(), e);
+    }
+  }
+
   /**
    * Validates that the host is not empty or null.
    *
@@ -102,7 +178,8 @@ public class Utils {
   /**
    * Creates and validates URL made from host.
    *
-   * @param host    The api host provided by Duo in the admin panel.
+   * @param host    The api host provided by Duo in the admin panel, optionally followed by
+   *                a port, such as a local test server's localhost:8443
    * @param file    Endpoint to append to API Host
    *
    * @return URL    A URL made from the host and the file
@@ -112,19 +189,53 @@ public class Utils {
   public static URL getAndValidateUrl(String host, String file) throws DuoException {
     try {
       validateHost(host);
+      int colon = host.indexOf(':');
+      if (colon > 0 && colon == host.lastIndexOf(':')) {
+        return new URL(HTTPS, host.substring(0, colon), parsePort(host, colon + 1), file);
+      }
       return new URL(HTTPS, host, file);
     } catch (MalformedURLException e) {
       throw new DuoException(e.getMessage(), e);
     }
   }
 
-  static String generateJwtId(Integer length) {
-    SecureRandom secureRandom = new SecureRandom();
-    StringBuilder sb = new StringBuilder();
-    while (sb.length() < length) {
-      sb.append(Integer.toHexString(secureRandom.nextInt()));
+  private static int parsePort(String host, int start) throws DuoException {
+    try {
+      int port = Integer.parseInt(host.substring(start));
+      if (port > 0 && port <= 65535) {
+        return port;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
     }
-    return sb.substring(0, length);
+    throw new DuoException(format("Invalid host: %s", host));
+  }
+
+  /**
+   * Creates an id_token like the ones Duo returns, signed with the client secret, so that
+   * {@link Client#warmUp()} can run the verification code before the first real login.
+   */
+  static String createWarmUpIdToken(Algorithm algorithm, String clientId, String apiHost,
+                                    String username) throws DuoException {
+    final Date issuedAt = new Date();
+    Map<String, Object> authResult = new HashMap<>();
+    authResult.put("result", "allow");
+    authResult.put("status", "allow");
+    authResult.put("status_msg", "Login Successful");
+    return JWT.create()
+              .withHeader(HEADERS)
+              .withIssuer(getAndValidateUrl(apiHost, "/oauth/v1/token").toString())
+              .withAudience(clientId)
+              .withSubject(username)
+              .withIssuedAt(issuedAt)
+              .withExpiresAt(new Date(issuedAt.getTime() + ONE_HOUR_IN_MILLISECONDS))
+              .withClaim("preferred_username", username)
+              .withClaim("auth_result", authResult)
+              .sign(algorithm);
+  }
+
+  static String generateJwtId(Integer length) {
+    return RandomIdGenerator.hex(length);
   }
 
   private static AuthContext getAuthContext(Map<String, Object> authContextMap) {
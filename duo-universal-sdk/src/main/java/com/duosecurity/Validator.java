@@ -5,21 +5,22 @@ import static com.duosecurity.Utils.validateHost;
 import com.duosecurity.exception.DuoException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.regex.Pattern;
 
 class Validator {
 
-  private static final String ALPHA_NUMERIC_REGEX = "^[a-zA-z0-9]*$";
+  private static final Pattern ALPHA_NUMERIC = Pattern.compile("^[a-zA-z0-9]*$");
   private static final int MINIMUM_STATE_LENGTH = 22;
   private static final int MAXMIUM_STATE_LENGTH = 1024;
 
   static void validateClientParams(String clientId, String clientSecret,
                                    String apiHost, String redirectUri) throws DuoException {
     validateHost(apiHost);
-    if (clientId.length() != 20 || !clientId.matches(ALPHA_NUMERIC_REGEX)
+    if (clientId.length() != 20 || !ALPHA_NUMERIC.matcher(clientId).matches()
         || !(clientId.startsWith("DI") || clientId.startsWith("SI"))) {
       throw new DuoException("Invalid client id");
     }
-    if (clientSecret.length() != 40 || !clientSecret.matches(ALPHA_NUMERIC_REGEX)) {
+    if (clientSecret.length() != 40 || !ALPHA_NUMERIC.matcher(clientSecret).matches()) {
       throw new DuoException("Invalid client secret");
     }
     try {
@@ -0,0 +1,12 @@
+package com.duosecurity.exception;
+
+/**
+ * The call was not sent because the circuit breaker is open after recent failures or slow
+ * calls to Duo.
+ */
+public class CircuitBreakerOpenException extends DuoException {
+
+  public CircuitBreakerOpenException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,23 @@
+package com.duosecurity.exception;
+
+/**
+ * Duo answered the request with an error status, as opposed to the request not completing.
+ */
+public class DuoResponseException extends DuoException {
+
+  private final int statusCode;
+
+  public DuoResponseException(String message, int statusCode) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * The HTTP status code of Duo's response.
+   *
+   * @return the status code
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+}
@@ -0,0 +1,52 @@
+package com.duosecurity.metrics;
+
+/**
+ * An immutable copy of the network timings of one endpoint, taken with
+ * {@link NetworkMetrics#snapshot()}.  Latencies are in nanoseconds.
+ */
+public final class EndpointSnapshot {
+
+  private final HistogramSnapshot[] latencies;
+
+  private final long newConnectionCount;
+
+  private final long pooledConnectionCount;
+
+  private final long failureCount;
+
+  EndpointSnapshot(HistogramSnapshot[] latencies, long newConnectionCount,
+                   long pooledConnectionCount, long failureCount) {
+    this.latencies = latencies;
+    this.newConnectionCount = newConnectionCount;
+    this.pooledConnectionCount = pooledConnectionCount;
+    this.failureCount = failureCount;
+  }
+
+  public HistogramSnapshot getLatency(NetworkMetrics.Phase phase) {
+    return latencies[phase.ordinal()];
+  }
+
+  public long getNewConnectionCount() {
+    return newConnectionCount;
+  }
+
+  public long getPooledConnectionCount() {
+    return pooledConnectionCount;
+  }
+
+  public long getFailureCount() {
+    return failureCount;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (NetworkMetrics.Phase phase : NetworkMetrics.Phase.values()) {
+      builder.append(phase).append('=').append(getLatency(phase)).append(", ");
+    }
+    return builder.append("newConnections=").append(newConnectionCount)
+        .append(", pooledConnections=").append(pooledConnectionCount)
+        .append(", failures=").append(failureCount)
+        .append(']').toString();
+  }
+}
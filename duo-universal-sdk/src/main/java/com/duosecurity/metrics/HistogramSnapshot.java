@@ -0,0 +1,80 @@
+package com.duosecurity.metrics;
+
+/**
+ * An immutable copy of a {@link LatencyHistogram}, holding only the buckets that were used.
+ * Values are in the unit they were recorded in; the SDK records nanoseconds.
+ */
+public final class HistogramSnapshot {
+
+  private final int[] indexes;
+
+  private final long[] counts;
+
+  private final long count;
+
+  private final long sum;
+
+  private final long max;
+
+  HistogramSnapshot(int[] indexes, long[] counts, long count, long sum, long max) {
+    this.indexes = indexes;
+    this.counts = counts;
+    this.count = count;
+    this.sum = sum;
+    this.max = max;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public long getTotal() {
+    return sum;
+  }
+
+  /**
+   * The mean of the recorded values.
+   *
+   * @return the mean, or 0 if nothing was recorded
+   */
+  public double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * The value below which the given percentage of the recorded values fall.
+   *
+   * @param percentile Between 0 and 100
+   *
+   * @return the value, or 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < indexes.length; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(LatencyHistogram.highestValueAt(indexes[i]), max);
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "HistogramSnapshot [count=" + count
+        + ", mean=" + Math.round(getMean())
+        + ", p50=" + getValueAtPercentile(50)
+        + ", p99=" + getValueAtPercentile(99)
+        + ", p99.9=" + getValueAtPercentile(99.9)
+        + ", max=" + max
+        + "]";
+  }
+}
@@ -0,0 +1,145 @@
+package com.duosecurity.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.  Values
+ * below 128 are counted exactly.  Above that each power of two is split into 64 buckets, so a
+ * reported value is within 1/64 (about 1.6%) of the recorded one.  Recording is one atomic
+ * increment per bucket plus striped adders for the count, sum and maximum, so any number of
+ * threads can record at once without taking a lock.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+  private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private final LongAdder count = new LongAdder();
+
+  private final LongAdder sum = new LongAdder();
+
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records one value, clamping negative values to 0.
+   *
+   * @param value The value, in any unit as long as it is always the same one
+   */
+  public void record(long value) {
+    long clamped = Math.max(value, 0);
+    counts.incrementAndGet(indexOf(clamped));
+    count.increment();
+    sum.add(clamped);
+    max.accumulate(clamped);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * The mean of the recorded values.
+   *
+   * @return the mean, or 0 if nothing was recorded
+   */
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * The value below which the given percentage of the recorded values fall.
+   *
+   * @param percentile Between 0 and 100
+   *
+   * @return the value, or 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = count.sum();
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(highestValueAt(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Copies the recorded values.  Values recorded while copying may or may not be included,
+   * but the snapshot's count always matches its buckets.
+   *
+   * @return {@link HistogramSnapshot}
+   */
+  public HistogramSnapshot snapshot() {
+    int used = 0;
+    int[] indexes = new int[16];
+    long[] bucketCounts = new long[16];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      long bucketCount = counts.get(i);
+      if (bucketCount == 0) {
+        continue;
+      }
+      if (used == indexes.length) {
+        indexes = Arrays.copyOf(indexes, used * 2);
+        bucketCounts = Arrays.copyOf(bucketCounts, used * 2);
+      }
+      indexes[used] = i;
+      bucketCounts[used] = bucketCount;
+      used++;
+      total += bucketCount;
+    }
+    return new HistogramSnapshot(Arrays.copyOf(indexes, used),
+        Arrays.copyOf(bucketCounts, used), total, sum.sum(), max.get());
+  }
+
+  /**
+   * Clears the recorded values.  Values recorded while resetting may be partly lost.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  static int indexOf(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  static long highestValueAt(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+    long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    long highest = ((subBucket + 1) << shift) - 1;
+    return highest < 0 ? Long.MAX_VALUE : highest;
+  }
+}
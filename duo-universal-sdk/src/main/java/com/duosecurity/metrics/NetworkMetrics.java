@@ -0,0 +1,104 @@
+package com.duosecurity.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times the network phases of each HTTP call to Duo, per endpoint path, to tell whether a slow
+ * call spent its time resolving the host, connecting, in the TLS handshake or waiting for Duo.
+ * DNS, CONNECT and TLS are only timed for new connections, and TLS includes the certificate
+ * pinning check.  TIME_TO_FIRST_BYTE runs from starting to send the request to having read the
+ * response headers, which is mostly Duo's processing time, and CALL is the whole call,
+ * including waiting for a connection.  Each call also counts whether it used a new or a pooled
+ * connection, which shows whether the connection pool and keep-alive settings are keeping
+ * connections warm.  Recording takes no lock.
+ */
+public final class NetworkMetrics {
+
+  /**
+   * The phases of an HTTP call that are timed.
+   */
+  public enum Phase {
+    DNS,
+    CONNECT,
+    TLS,
+    TIME_TO_FIRST_BYTE,
+    CALL
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+
+  private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+  /**
+   * Records how long a phase of a call to an endpoint took.
+   *
+   * @param endpoint The path of the endpoint
+   * @param phase    The phase
+   * @param nanos    How long it took, in nanoseconds
+   */
+  public void record(String endpoint, Phase phase, long nanos) {
+    endpoint(endpoint).latencies[phase.ordinal()].record(nanos);
+  }
+
+  /**
+   * Records which kind of connection a call to an endpoint used.
+   *
+   * @param endpoint The path of the endpoint
+   * @param pooled   false if the connection was made for this call
+   */
+  public void recordConnection(String endpoint, boolean pooled) {
+    Endpoint timings = endpoint(endpoint);
+    (pooled ? timings.pooledConnections : timings.newConnections).increment();
+  }
+
+  /**
+   * Records a call to an endpoint that failed without a response.
+   *
+   * @param endpoint The path of the endpoint
+   */
+  public void recordFailure(String endpoint) {
+    endpoint(endpoint).failures.increment();
+  }
+
+  /**
+   * Copies the current timings.
+   *
+   * @return an {@link EndpointSnapshot} for each endpoint called, by path
+   */
+  public Map<String, EndpointSnapshot> snapshot() {
+    Map<String, EndpointSnapshot> snapshot = new TreeMap<>();
+    for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+      Endpoint timings = entry.getValue();
+      HistogramSnapshot[] latencies = new HistogramSnapshot[PHASES.length];
+      for (int i = 0; i < PHASES.length; i++) {
+        latencies[i] = timings.latencies[i].snapshot();
+      }
+      snapshot.put(entry.getKey(), new EndpointSnapshot(latencies,
+          timings.newConnections.sum(), timings.pooledConnections.sum(), timings.failures.sum()));
+    }
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  private Endpoint endpoint(String endpoint) {
+    Endpoint timings = endpoints.get(endpoint);
+    return timings != null ? timings : endpoints.computeIfAbsent(endpoint, path -> new Endpoint());
+  }
+
+  private static final class Endpoint {
+    private final LatencyHistogram[] latencies = new LatencyHistogram[PHASES.length];
+    private final LongAdder newConnections = new LongAdder();
+    private final LongAdder pooledConnections = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    Endpoint() {
+      for (int i = 0; i < latencies.length; i++) {
+        latencies[i] = new LatencyHistogram();
+      }
+    }
+  }
+}
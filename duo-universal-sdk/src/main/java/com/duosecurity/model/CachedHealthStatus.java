@@ -0,0 +1,128 @@
+package com.duosecurity.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the most recent background health check, as served by
+ * {@code Client.getCachedHealthStatus()}.
+ */
+public final class CachedHealthStatus {
+
+  private final boolean checked;
+
+  private final boolean success;
+
+  private final HealthCheckResponse response;
+
+  private final String errorMessage;
+
+  private final long checkedAtNanos;
+
+  private final long timeToLiveNanos;
+
+  private CachedHealthStatus(boolean checked, boolean success, HealthCheckResponse response,
+                             String errorMessage, long checkedAtNanos, long timeToLiveNanos) {
+    this.checked = checked;
+    this.success = success;
+    this.response = response;
+    this.errorMessage = errorMessage;
+    this.checkedAtNanos = checkedAtNanos;
+    this.timeToLiveNanos = timeToLiveNanos;
+  }
+
+  /**
+   * Status before the first health check has completed.
+   *
+   * @param timeToLiveNanos How long a result stays valid, in nanoseconds
+   *
+   * @return CachedHealthStatus   A status that is neither healthy nor checked
+   */
+  public static CachedHealthStatus unknown(long timeToLiveNanos) {
+    return new CachedHealthStatus(false, false, null, null, System.nanoTime(), timeToLiveNanos);
+  }
+
+  /**
+   * Status for a health check that returned a response.
+   *
+   * @param response        The response from Duo
+   * @param timeToLiveNanos How long the result stays valid, in nanoseconds
+   *
+   * @return CachedHealthStatus   The status, healthy if Duo reported OK
+   */
+  public static CachedHealthStatus of(HealthCheckResponse response, long timeToLiveNanos) {
+    return new CachedHealthStatus(true, response.wasSuccess(), response,
+            response.wasSuccess() ? null : response.getMessage(), System.nanoTime(),
+            timeToLiveNanos);
+  }
+
+  /**
+   * Status for a health check that could not be completed.
+   *
+   * @param errorMessage    Why the health check failed
+   * @param timeToLiveNanos How long the result stays valid, in nanoseconds
+   *
+   * @return CachedHealthStatus   An unhealthy status
+   */
+  public static CachedHealthStatus failed(String errorMessage, long timeToLiveNanos) {
+    return new CachedHealthStatus(true, false, null, errorMessage, System.nanoTime(),
+            timeToLiveNanos);
+  }
+
+  /**
+   * Whether Duo was healthy at the last check and that check has not expired.
+   *
+   * @return boolean  true if 2FA can be performed
+   */
+  public boolean isHealthy() {
+    return success && !isExpired();
+  }
+
+  /**
+   * Whether any health check has completed yet.
+   *
+   * @return boolean  false until the first health check has completed
+   */
+  public boolean isChecked() {
+    return checked;
+  }
+
+  /**
+   * Whether the last result is older than the configured time to live.
+   *
+   * @return boolean  true if the result should no longer be trusted
+   */
+  public boolean isExpired() {
+    return !checked || System.nanoTime() - checkedAtNanos > timeToLiveNanos;
+  }
+
+  /**
+   * The time since the last health check completed.
+   *
+   * @param unit  The unit to express the age in
+   *
+   * @return long  The age, or Long.MAX_VALUE if no health check has completed yet
+   */
+  public long getAge(TimeUnit unit) {
+    if (!checked) {
+      return Long.MAX_VALUE;
+    }
+    return unit.convert(System.nanoTime() - checkedAtNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public HealthCheckResponse getResponse() {
+    return response;
+  }
+
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+
+  @Override
+  public String toString() {
+    return "CachedHealthStatus [checked=" + checked
+        + ", healthy=" + isHealthy()
+        + ", ageMillis=" + getAge(TimeUnit.MILLISECONDS)
+        + ", errorMessage=" + errorMessage
+        + "]";
+  }
+}
@@ -0,0 +1,297 @@
+package com.duosecurity.service;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * How a {@link DuoTransport} or {@link HttpEngine} connects to Duo.  The connection pool keeps
+ * up to maxIdleConnections idle connections, each closed once it has been idle for the
+ * keep-alive.  At most maxRequests async calls run at once, and at most maxRequestsPerHost to
+ * the api host, while further calls wait in the dispatcher's queue; blocking calls are not
+ * limited.  The HTTP version decides whether HTTP/2 is offered in the TLS handshake, or only
+ * HTTP/1.1.  The TLS session cache keeps sessions for resumption, and a size or timeout of 0
+ * keeps the JVM's default.  The trust manager decides which server certificate chains to trust,
+ * the JVM's default trust store being used when there is none, and pinning to the CA
+ * certificates applies either way.  With virtual threads, async calls run on a virtual thread
+ * each instead of the dispatcher's platform threads.  Settings are created with a
+ * {@link Builder}, and transports are only shared by callers with equal settings.
+ */
+public final class DuoConnectionSettings {
+
+  /**
+   * The protocols offered to Duo.
+   */
+  public enum HttpVersion {
+    /**
+     * HTTP/2 if Duo accepts it, so that concurrent calls share one connection, or HTTP/1.1.
+     */
+    HTTP_2,
+    /**
+     * HTTP/1.1 only, with one call at a time on each connection.
+     */
+    HTTP_1_1
+  }
+
+  /**
+   * OkHttp's defaults: 5 idle connections kept for 5 minutes, 64 concurrent async calls with 5
+   * to the api host, HTTP/2, and the JVM's TLS session cache and trust store, without virtual
+   * threads.
+   */
+  public static final DuoConnectionSettings DEFAULT = new Builder().build();
+
+  private final int maxIdleConnections;
+
+  private final long keepAliveMillis;
+
+  private final int maxRequests;
+
+  private final int maxRequestsPerHost;
+
+  private final HttpVersion httpVersion;
+
+  private final int tlsSessionCacheSize;
+
+  private final long tlsSessionTimeoutSeconds;
+
+  private final X509TrustManager trustManager;
+
+  private final boolean virtualThreads;
+
+  private DuoConnectionSettings(Builder builder) {
+    this.maxIdleConnections = builder.maxIdleConnections;
+    this.keepAliveMillis = builder.keepAliveMillis;
+    this.maxRequests = builder.maxRequests;
+    this.maxRequestsPerHost = builder.maxRequestsPerHost;
+    this.httpVersion = builder.httpVersion;
+    this.tlsSessionCacheSize = builder.tlsSessionCacheSize;
+    this.tlsSessionTimeoutSeconds = builder.tlsSessionTimeoutSeconds;
+    this.trustManager = builder.trustManager;
+    this.virtualThreads = builder.virtualThreads;
+  }
+
+  public int getMaxIdleConnections() {
+    return maxIdleConnections;
+  }
+
+  public long getKeepAliveMillis() {
+    return keepAliveMillis;
+  }
+
+  public int getMaxRequests() {
+    return maxRequests;
+  }
+
+  public int getMaxRequestsPerHost() {
+    return maxRequestsPerHost;
+  }
+
+  public HttpVersion getHttpVersion() {
+    return httpVersion;
+  }
+
+  public int getTlsSessionCacheSize() {
+    return tlsSessionCacheSize;
+  }
+
+  public long getTlsSessionTimeoutSeconds() {
+    return tlsSessionTimeoutSeconds;
+  }
+
+  public X509TrustManager getTrustManager() {
+    return trustManager;
+  }
+
+  public boolean usesVirtualThreads() {
+    return virtualThreads;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DuoConnectionSettings)) {
+      return false;
+    }
+    DuoConnectionSettings other = (DuoConnectionSettings) o;
+    return maxIdleConnections == other.maxIdleConnections
+        && keepAliveMillis == other.keepAliveMillis
+        && maxRequests == other.maxRequests
+        && maxRequestsPerHost == other.maxRequestsPerHost
+        && httpVersion == other.httpVersion
+        && tlsSessionCacheSize == other.tlsSessionCacheSize
+        && tlsSessionTimeoutSeconds == other.tlsSessionTimeoutSeconds
+        && trustManager == other.trustManager
+        && virtualThreads == other.virtualThreads;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(maxIdleConnections, keepAliveMillis, maxRequests, maxRequestsPerHost,
+        httpVersion, tlsSessionCacheSize, tlsSessionTimeoutSeconds,
+        System.identityHashCode(trustManager), virtualThreads);
+  }
+
+  @Override
+  public String toString() {
+    return "DuoConnectionSettings [maxIdleConnections=" + maxIdleConnections
+        + ", keepAliveMillis=" + keepAliveMillis
+        + ", maxRequests=" + maxRequests
+        + ", maxRequestsPerHost=" + maxRequestsPerHost
+        + ", httpVersion=" + httpVersion
+        + ", tlsSessionCacheSize=" + tlsSessionCacheSize
+        + ", tlsSessionTimeoutSeconds=" + tlsSessionTimeoutSeconds
+        + ", trustManager=" + trustManager
+        + ", virtualThreads=" + virtualThreads
+        + "]";
+  }
+
+  /**
+   * Builder.
+   */
+  public static final class Builder {
+    private int maxIdleConnections = 5;
+    private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+    private int maxRequests = 64;
+    private int maxRequestsPerHost = 5;
+    private HttpVersion httpVersion = HttpVersion.HTTP_2;
+    private int tlsSessionCacheSize;
+    private long tlsSessionTimeoutSeconds;
+    private X509TrustManager trustManager;
+    private boolean virtualThreads;
+
+    /**
+     * Starts from {@link DuoConnectionSettings#DEFAULT}.
+     */
+    public Builder() {
+    }
+
+    /**
+     * Starts from the given settings.
+     *
+     * @param settings The settings to copy
+     */
+    public Builder(DuoConnectionSettings settings) {
+      this.maxIdleConnections = settings.maxIdleConnections;
+      this.keepAliveMillis = settings.keepAliveMillis;
+      this.maxRequests = settings.maxRequests;
+      this.maxRequestsPerHost = settings.maxRequestsPerHost;
+      this.httpVersion = settings.httpVersion;
+      this.tlsSessionCacheSize = settings.tlsSessionCacheSize;
+      this.tlsSessionTimeoutSeconds = settings.tlsSessionTimeoutSeconds;
+      this.trustManager = settings.trustManager;
+      this.virtualThreads = settings.virtualThreads;
+    }
+
+    /**
+     * Sizes the connection pool.
+     *
+     * @param maxIdleConnections The most idle connections to keep
+     * @param keepAlive          How long an idle connection is kept
+     * @param unit               The unit of keepAlive
+     *
+     * @return the Builder
+     */
+    public Builder setConnectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+      if (unit == null) {
+        throw new IllegalArgumentException("The keep-alive unit cannot be null");
+      }
+      if (maxIdleConnections < 0 || keepAlive <= 0) {
+        throw new IllegalArgumentException(
+            "The pool size cannot be negative and the keep-alive must be positive");
+      }
+      this.maxIdleConnections = maxIdleConnections;
+      this.keepAliveMillis = unit.toMillis(keepAlive);
+      return this;
+    }
+
+    /**
+     * Limits how many async calls run at once.
+     *
+     * @param maxRequests        The most async calls to run at once
+     * @param maxRequestsPerHost The most async calls to run at once to the api host
+     *
+     * @return the Builder
+     */
+    public Builder setMaxRequests(int maxRequests, int maxRequestsPerHost) {
+      if (maxRequests < 1 || maxRequestsPerHost < 1) {
+        throw new IllegalArgumentException("The request limits must be at least 1");
+      }
+      this.maxRequests = maxRequests;
+      this.maxRequestsPerHost = maxRequestsPerHost;
+      return this;
+    }
+
+    /**
+     * Chooses the protocols to offer.
+     *
+     * @param httpVersion The protocols to offer
+     *
+     * @return the Builder
+     */
+    public Builder setHttpVersion(HttpVersion httpVersion) {
+      if (httpVersion == null) {
+        throw new IllegalArgumentException("The HTTP version cannot be null");
+      }
+      this.httpVersion = httpVersion;
+      return this;
+    }
+
+    /**
+     * Sizes the TLS session cache.
+     *
+     * @param size    The most TLS sessions to keep, or 0 for the JVM's default
+     * @param timeout How long a TLS session may be resumed, or 0 for the JVM's default
+     * @param unit    The unit of timeout
+     *
+     * @return the Builder
+     */
+    public Builder setTlsSessionCache(int size, long timeout, TimeUnit unit) {
+      if (unit == null) {
+        throw new IllegalArgumentException("The timeout unit cannot be null");
+      }
+      long seconds = unit.toSeconds(timeout);
+      if (size < 0 || seconds < 0 || seconds > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid TLS session cache size or timeout");
+      }
+      this.tlsSessionCacheSize = size;
+      this.tlsSessionTimeoutSeconds = seconds;
+      return this;
+    }
+
+    /**
+     * Decides which server certificate chains to trust with the given trust manager instead
+     * of the JVM's default trust store.
+     *
+     * @param trustManager The trust manager to use, or null for the JVM's default
+     *
+     * @return the Builder
+     */
+    public Builder setTrustManager(X509TrustManager trustManager) {
+      this.trustManager = trustManager;
+      return this;
+    }
+
+    /**
+     * Runs async calls on virtual threads; see {@link VirtualThreads}.
+     *
+     * @param virtualThreads true/false toggle
+     *
+     * @return the Builder
+     *
+     * @throws UnsupportedOperationException If virtual threads are not supported
+     */
+    public Builder setUseVirtualThreads(boolean virtualThreads) {
+      if (virtualThreads && !VirtualThreads.isSupported()) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+      }
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+
+    public DuoConnectionSettings build() {
+      return new DuoConnectionSettings(this);
+    }
+  }
+}
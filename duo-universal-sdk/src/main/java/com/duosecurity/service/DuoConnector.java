@@ -3,24 +3,56 @@ package com.duosecurity.service;
 import static com.duosecurity.Utils.getAndValidateUrl;
 
 import com.duosecurity.exception.DuoException;
+import com.duosecurity.exception.DuoResponseException;
+import com.duosecurity.metrics.NetworkMetrics;
 import com.duosecurity.model.HealthCheckResponse;
 import com.duosecurity.model.TokenResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
-import okhttp3.CertificatePinner;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import okhttp3.OkHttpClient;
 import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.jackson.JacksonConverterFactory;
 
-public class DuoConnector {
+public class DuoConnector implements Closeable {
 
   protected Retrofit retrofit;
 
+  DuoService service;
+
+  private final DuoTransport transport;
+
+  private final HttpEngine engine;
+
+  private final Executor callbackExecutor;
+
+  private final NetworkMetrics engineMetrics;
+
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  private final long callTimeoutNanos;
+
   private static final int SUCCESS_STATUS_CODE = 200;
 
+  private static final String HEALTH_CHECK_PATH = "/oauth/v1/health_check";
+
+  private static final String TOKEN_PATH = "/oauth/v1/token";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
   /**
    * DuoConnector Constructor.
    *
@@ -45,26 +77,93 @@ public class DuoConnector {
    */
   public DuoConnector(String apiHost, String proxyHost, Integer proxyPort, String[] caCerts)
           throws DuoException {
-    CertificatePinner duoCertificatePinner = new CertificatePinner.Builder()
-            .add(apiHost, caCerts).build();
-    OkHttpClient client;
-    if (proxyHost != null && proxyPort != null) {
-      Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
-      client = new OkHttpClient.Builder()
-              .certificatePinner(duoCertificatePinner)
-              .proxy(proxy)
-              .build();
-    } else {
-      client = new OkHttpClient.Builder()
-              .certificatePinner(duoCertificatePinner)
-              .build();
-    }
+    this(DuoTransport.create(apiHost, proxyHost, proxyPort, caCerts));
+  }
 
-    retrofit = new Retrofit.Builder()
-            .baseUrl(getAndValidateUrl(apiHost, "").toString())
+  /**
+   * DuoConnector Constructor.
+   *
+   * @param transport The transport used to reach Duo.  The connector takes ownership of one
+   *                  reference to the transport and releases it on {@link #close}.
+   *
+   * @throws DuoException For issues getting and validating the URL
+   */
+  public DuoConnector(DuoTransport transport) throws DuoException {
+    this(transport, null, null, null);
+  }
+
+  /**
+   * DuoConnector Constructor.
+   *
+   * @param transport        The transport used to reach Duo.  The connector takes ownership of
+   *                         one reference to the transport and releases it on {@link #close}.
+   * @param callbackExecutor The executor that completes the futures returned by the async
+   *                         methods, or null to complete them on the HTTP dispatcher threads
+   * @param timeouts         The timeouts for every request, or null for
+   *                         {@link DuoTimeouts#DEFAULT}.  They apply to this connector only,
+   *                         even if the transport is shared.
+   * @param networkMetrics   Records the network phases of this connector's calls, or null.
+   *                         Calls made by other connectors sharing the transport are not
+   *                         recorded.
+   *
+   * @throws DuoException For issues getting and validating the URL
+   */
+  public DuoConnector(DuoTransport transport, Executor callbackExecutor, DuoTimeouts timeouts,
+                      NetworkMetrics networkMetrics) throws DuoException {
+    final DuoTimeouts effectiveTimeouts = timeouts != null ? timeouts : DuoTimeouts.DEFAULT;
+    this.transport = transport;
+    this.engine = null;
+    this.callbackExecutor = null;
+    this.engineMetrics = null;
+    this.callTimeoutNanos =
+        TimeUnit.MILLISECONDS.toNanos(effectiveTimeouts.getCallTimeoutMillis());
+    Retrofit.Builder builder = new Retrofit.Builder()
+            .baseUrl(getAndValidateUrl(transport.getApiHost(), "").toString())
             .addConverterFactory(JacksonConverterFactory.create())
-            .client(client)
-            .build();
+            .client(httpClient(transport, effectiveTimeouts, networkMetrics))
+            .validateEagerly(true);
+    if (callbackExecutor != null) {
+      builder.callbackExecutor(callbackExecutor);
+    }
+    retrofit = builder.build();
+    service = retrofit.create(DuoService.class);
+  }
+
+  /**
+   * DuoConnector Constructor, sending requests through an {@link HttpEngine} instead of
+   * OkHttp and Retrofit.
+   *
+   * @param engine           The engine used to reach Duo.  The connector takes ownership of it
+   *                         and closes it on {@link #close}.
+   * @param callbackExecutor The executor that completes the futures returned by the async
+   *                         methods, or null to complete them on the engine's threads
+   * @param timeouts         The timeouts the engine was created with
+   * @param networkMetrics   Records the duration and failures of this connector's calls, or
+   *                         null.  An engine does not report DNS, connect or TLS timings.
+   */
+  public DuoConnector(HttpEngine engine, Executor callbackExecutor, DuoTimeouts timeouts,
+                      NetworkMetrics networkMetrics) {
+    this.transport = null;
+    this.engine = engine;
+    this.callbackExecutor = callbackExecutor;
+    this.engineMetrics = networkMetrics;
+    this.callTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeouts.getCallTimeoutMillis());
+  }
+
+  /**
+   * Releases this connector's reference to its transport.  The connection pool and dispatcher
+   * are shut down once no other connector is using the transport.  A connector created with
+   * an {@link HttpEngine} closes the engine instead.
+   */
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      if (engine != null) {
+        engine.close();
+      } else {
+        transport.release();
+      }
+    }
   }
 
   /**
@@ -79,16 +178,68 @@ public class DuoConnector {
    */
   public HealthCheckResponse duoHealthcheck(String clientId, String clientAssertion)
           throws DuoException {
-    DuoService service = retrofit.create(DuoService.class);
+    if (engine != null) {
+      return read(post(HEALTH_CHECK_PATH, Collections.emptyMap(),
+              healthCheckForm(clientId, clientAssertion), 0), DuoConnector::healthCheckBody);
+    }
     Call<HealthCheckResponse> callSync = service.duoHealthCheck(clientId, clientAssertion);
     try {
-      Response<HealthCheckResponse> response = callSync.execute();
-      return response.body();
+      return healthCheckBody(callSync.execute());
     } catch (IOException e) {
       throw new DuoException(e.getMessage(), e);
     }
   }
 
+  /**
+   * Send Health Check request, giving up once the timeout has passed.
+   *
+   * @param clientId                The client id provided by Duo in the admin panel
+   * @param clientAssertion         A JWT the Duo Health Check endpoint needs
+   * @param timeout                 How long the whole request may take; the call timeout
+   *                                still applies if it is shorter
+   * @param unit                    The unit of timeout
+   *
+   * @return HealthCheckResponse    Returns result from the Health Check
+   *
+   * @throws DuoException           For issues sending or receiving the request, or if the
+   *                                timeout passes first
+   */
+  public HealthCheckResponse duoHealthcheck(String clientId, String clientAssertion,
+                                            long timeout, TimeUnit unit) throws DuoException {
+    if (engine != null) {
+      return read(post(HEALTH_CHECK_PATH, Collections.emptyMap(),
+              healthCheckForm(clientId, clientAssertion), limit(unit.toNanos(timeout))),
+              DuoConnector::healthCheckBody);
+    }
+    Call<HealthCheckResponse> callSync = service.duoHealthCheck(clientId, clientAssertion);
+    limit(callSync, unit.toNanos(timeout));
+    try {
+      return healthCheckBody(callSync.execute());
+    } catch (IOException e) {
+      throw new DuoException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Send Health Check request without blocking the calling thread.
+   *
+   * @param clientId                The client id provided by Duo in the admin panel
+   * @param clientAssertion         A JWT the Duo Health Check endpoint needs
+   *
+   * @return CompletableFuture      Completes with the result from the Health Check, or
+   *                                exceptionally with a DuoException.  Cancelling the future
+   *                                cancels the underlying HTTP call.
+   */
+  public CompletableFuture<HealthCheckResponse> duoHealthcheckAsync(String clientId,
+                                                                    String clientAssertion) {
+    if (engine != null) {
+      return postAsync(HEALTH_CHECK_PATH, Collections.emptyMap(),
+              healthCheckForm(clientId, clientAssertion), DuoConnector::healthCheckBody);
+    }
+    return enqueue(service.duoHealthCheck(clientId, clientAssertion),
+            DuoConnector::healthCheckBody);
+  }
+
   /**
    * Send request to exchange duoCode for an encoded JWT.
    *
@@ -110,22 +261,294 @@ public class DuoConnector {
                                                              String clientAssertionType,
                                                              String clientAssertion)
           throws DuoException {
-    DuoService service = retrofit.create(DuoService.class);
+    if (engine != null) {
+      return read(post(TOKEN_PATH, userAgentHeader(userAgent),
+              tokenForm(grantType, duoCode, redirectUri, clientAssertionType, clientAssertion), 0),
+              DuoConnector::tokenResponseBody);
+    }
     Call<TokenResponse> callSync = service.exchangeAuthorizationCodeFor2FAResult(userAgent,
                             grantType, duoCode, redirectUri, clientAssertionType, clientAssertion);
     try {
-      Response<TokenResponse> response = callSync.execute();
-      if (response.code() != SUCCESS_STATUS_CODE || response.body() == null) {
-        String message = response.message();
-        if (response.errorBody() != null) {
-          throw new DuoException(String.format("msg=%s, msg_detail=%s",
-                  message, response.errorBody().string()));
-        }
-        throw new DuoException(message);
-      }
-      return response.body();
+      return tokenResponseBody(callSync.execute());
     } catch (IOException e) {
       throw new DuoException(e.getMessage(), e);
     }
   }
+
+  /**
+   * Send request to exchange duoCode for an encoded JWT, giving up once the timeout has passed.
+   *
+   * @param userAgent           A user agent string
+   * @param grantType           A string that tells what type of exchange that will occur
+   * @param duoCode             An authentication session transaction id
+   * @param redirectUri         The URL to redirect back to after a successful auth
+   * @param clientAssertionType The type of client assertion used
+   * @param clientAssertion     JWT that holds information to verify that the owner of the duoCode
+   *                            is authorized to have it
+   * @param timeout             How long the whole request may take; the call timeout still
+   *                            applies if it is shorter
+   * @param unit                The unit of timeout
+   *
+   * @return TokenResponse  Returns resulting response containing the JWT
+   *
+   * @throws DuoException   For issues sending or receiving the request, failing to exchange a
+   *                        token, or if the timeout passes first
+   */
+  public TokenResponse exchangeAuthorizationCodeFor2FAResult(String userAgent, String grantType,
+                                                             String duoCode, String redirectUri,
+                                                             String clientAssertionType,
+                                                             String clientAssertion,
+                                                             long timeout, TimeUnit unit)
+          throws DuoException {
+    if (engine != null) {
+      return read(post(TOKEN_PATH, userAgentHeader(userAgent),
+              tokenForm(grantType, duoCode, redirectUri, clientAssertionType, clientAssertion),
+              limit(unit.toNanos(timeout))), DuoConnector::tokenResponseBody);
+    }
+    Call<TokenResponse> callSync = service.exchangeAuthorizationCodeFor2FAResult(userAgent,
+                            grantType, duoCode, redirectUri, clientAssertionType, clientAssertion);
+    limit(callSync, unit.toNanos(timeout));
+    try {
+      return tokenResponseBody(callSync.execute());
+    } catch (IOException e) {
+      throw new DuoException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Send request to exchange duoCode for an encoded JWT without blocking the calling thread.
+   *
+   * @param userAgent           A user agent string
+   * @param grantType           A string that tells what type of exchange that will occur
+   * @param duoCode             An authentication session transaction id
+   * @param redirectUri         The URL to redirect back to after a successful auth
+   * @param clientAssertionType The type of client assertion used
+   * @param clientAssertion     JWT that holds information to verify that the owner of the duoCode
+   *                            is authorized to have it
+   *
+   * @return CompletableFuture  Completes with the response containing the JWT, or exceptionally
+   *                            with a DuoException.  Cancelling the future cancels the
+   *                            underlying HTTP call.
+   */
+  public CompletableFuture<TokenResponse> exchangeAuthorizationCodeFor2FAResultAsync(
+          String userAgent, String grantType, String duoCode, String redirectUri,
+          String clientAssertionType, String clientAssertion) {
+    if (engine != null) {
+      return postAsync(TOKEN_PATH, userAgentHeader(userAgent),
+              tokenForm(grantType, duoCode, redirectUri, clientAssertionType, clientAssertion),
+              DuoConnector::tokenResponseBody);
+    }
+    return enqueue(service.exchangeAuthorizationCodeFor2FAResult(userAgent, grantType, duoCode,
+            redirectUri, clientAssertionType, clientAssertion), DuoConnector::tokenResponseBody);
+  }
+
+  /**
+   * Bounds the whole call by the given timeout, or by the call timeout if that is shorter.
+   */
+  private void limit(Call<?> call, long timeoutNanos) throws DuoException {
+    call.timeout().timeout(limit(timeoutNanos), TimeUnit.NANOSECONDS);
+  }
+
+  private long limit(long timeoutNanos) throws DuoException {
+    if (timeoutNanos <= 0) {
+      throw new DuoException("The deadline passed before the request to Duo was sent");
+    }
+    return callTimeoutNanos > 0 ? Math.min(timeoutNanos, callTimeoutNanos) : timeoutNanos;
+  }
+
+  private HttpEngine.Response post(String path, Map<String, String> headers,
+                                   Map<String, String> form, long timeoutNanos)
+          throws DuoException {
+    long start = System.nanoTime();
+    try {
+      HttpEngine.Response response = engine.post(path, headers, form, timeoutNanos);
+      recordCall(path, start, null);
+      return response;
+    } catch (IOException e) {
+      recordCall(path, start, e);
+      throw new DuoException(e.getMessage(), e);
+    }
+  }
+
+  private static <T> T read(HttpEngine.Response response, EngineResponseHandler<T> handler)
+          throws DuoException {
+    try {
+      return handler.handle(response);
+    } catch (IOException e) {
+      throw new DuoException(e.getMessage(), e);
+    }
+  }
+
+  private <T> CompletableFuture<T> postAsync(String path, Map<String, String> headers,
+                                             Map<String, String> form,
+                                             EngineResponseHandler<T> handler) {
+    final long start = System.nanoTime();
+    CompletableFuture<HttpEngine.Response> request = engine.postAsync(path, headers, form);
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.whenComplete((result, error) -> {
+      if (future.isCancelled()) {
+        request.cancel(true);
+      }
+    });
+    BiConsumer<HttpEngine.Response, Throwable> complete = (response, error) -> {
+      if (error != null) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+            ? error.getCause() : error;
+        recordCall(path, start, cause);
+        future.completeExceptionally(new DuoException(cause.getMessage(), cause));
+        return;
+      }
+      recordCall(path, start, null);
+      try {
+        future.complete(handler.handle(response));
+      } catch (DuoException e) {
+        future.completeExceptionally(e);
+      } catch (IOException e) {
+        future.completeExceptionally(new DuoException(e.getMessage(), e));
+      }
+    };
+    if (callbackExecutor != null) {
+      request.whenCompleteAsync(complete, callbackExecutor);
+    } else {
+      request.whenComplete(complete);
+    }
+    return future;
+  }
+
+  private void recordCall(String path, long start, Throwable error) {
+    if (engineMetrics != null) {
+      engineMetrics.record(path, NetworkMetrics.Phase.CALL, System.nanoTime() - start);
+      if (error != null) {
+        engineMetrics.recordFailure(path);
+      }
+    }
+  }
+
+  private static Map<String, String> healthCheckForm(String clientId, String clientAssertion) {
+    Map<String, String> form = new LinkedHashMap<>();
+    form.put("client_id", clientId);
+    form.put("client_assertion", clientAssertion);
+    return form;
+  }
+
+  private static Map<String, String> tokenForm(String grantType, String duoCode,
+                                               String redirectUri, String clientAssertionType,
+                                               String clientAssertion) {
+    Map<String, String> form = new LinkedHashMap<>();
+    form.put("grant_type", grantType);
+    form.put("code", duoCode);
+    form.put("redirect_uri", redirectUri);
+    form.put("client_assertion_type", clientAssertionType);
+    form.put("client_assertion", clientAssertion);
+    return form;
+  }
+
+  private static Map<String, String> userAgentHeader(String userAgent) {
+    return Collections.singletonMap("user-agent", userAgent);
+  }
+
+  private static OkHttpClient httpClient(DuoTransport transport, DuoTimeouts timeouts,
+                                         NetworkMetrics networkMetrics) {
+    if (DuoTimeouts.DEFAULT.equals(timeouts) && networkMetrics == null) {
+      return transport.getHttpClient();
+    }
+    // Shares the transport's connection pool and dispatcher
+    OkHttpClient.Builder builder = transport.getHttpClient().newBuilder()
+            .connectTimeout(timeouts.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+            .readTimeout(timeouts.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+            .writeTimeout(timeouts.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS)
+            .callTimeout(timeouts.getCallTimeoutMillis(), TimeUnit.MILLISECONDS);
+    if (networkMetrics != null) {
+      builder.eventListenerFactory(TimingEventListener.factory(networkMetrics));
+    }
+    return builder.build();
+  }
+
+  private static HealthCheckResponse healthCheckBody(Response<HealthCheckResponse> response)
+          throws DuoException, IOException {
+    if (response.body() == null) {
+      throw errorResponse(response);
+    }
+    return response.body();
+  }
+
+  private static HealthCheckResponse healthCheckBody(HttpEngine.Response response)
+          throws DuoException, IOException {
+    if (!isSuccessful(response) || response.getBody().length == 0) {
+      throw errorResponse(response);
+    }
+    return MAPPER.readValue(response.getBody(), HealthCheckResponse.class);
+  }
+
+  private static TokenResponse tokenResponseBody(Response<TokenResponse> response)
+          throws DuoException, IOException {
+    if (response.code() != SUCCESS_STATUS_CODE || response.body() == null) {
+      throw errorResponse(response);
+    }
+    return response.body();
+  }
+
+  private static TokenResponse tokenResponseBody(HttpEngine.Response response)
+          throws DuoException, IOException {
+    if (response.getCode() != SUCCESS_STATUS_CODE || response.getBody().length == 0) {
+      throw errorResponse(response);
+    }
+    return MAPPER.readValue(response.getBody(), TokenResponse.class);
+  }
+
+  private static DuoException errorResponse(HttpEngine.Response response) {
+    if (!isSuccessful(response)) {
+      return new DuoResponseException(String.format("msg=%s, msg_detail=%s", response.getMessage(),
+              new String(response.getBody(), StandardCharsets.UTF_8)), response.getCode());
+    }
+    return new DuoResponseException(response.getMessage(), response.getCode());
+  }
+
+  private static DuoException errorResponse(Response<?> response) throws IOException {
+    String message = response.message();
+    if (response.errorBody() != null) {
+      return new DuoResponseException(String.format("msg=%s, msg_detail=%s",
+              message, response.errorBody().string()), response.code());
+    }
+    return new DuoResponseException(message, response.code());
+  }
+
+  private static boolean isSuccessful(HttpEngine.Response response) {
+    return response.getCode() >= 200 && response.getCode() < 300;
+  }
+
+  private static <T> CompletableFuture<T> enqueue(Call<T> call, ResponseHandler<T> handler) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.whenComplete((result, error) -> {
+      if (future.isCancelled()) {
+        call.cancel();
+      }
+    });
+    call.enqueue(new Callback<T>() {
+      @Override
+      public void onResponse(Call<T> call, Response<T> response) {
+        try {
+          future.complete(handler.handle(response));
+        } catch (DuoException e) {
+          future.completeExceptionally(e);
+        } catch (IOException e) {
+          future.completeExceptionally(new DuoException(e.getMessage(), e));
+        }
+      }
+
+      @Override
+      public void onFailure(Call<T> call, Throwable t) {
+        future.completeExceptionally(new DuoException(t.getMessage(), t));
+      }
+    });
+    return future;
+  }
+
+  private interface ResponseHandler<T> {
+    T handle(Response<T> response) throws DuoException, IOException;
+  }
+
+  private interface EngineResponseHandler<T> {
+    T handle(HttpEngine.Response response) throws DuoException, IOException;
+  }
 }
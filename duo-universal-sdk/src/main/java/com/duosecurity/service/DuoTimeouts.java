@@ -0,0 +1,95 @@
+package com.duosecurity.service;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timeouts applied to every request a {@link DuoConnector} sends to Duo.  The connect
+ * timeout covers establishing the TCP connection and the TLS handshake, while the read and write
+ * timeouts limit the longest pause while receiving or sending.  The call timeout covers the whole
+ * request, including redirects and retries of the connection.  A timeout of 0 means no timeout.
+ */
+public final class DuoTimeouts {
+
+  /**
+   * OkHttp's defaults: 10 seconds to connect, read and write, and no call timeout.
+   */
+  public static final DuoTimeouts DEFAULT = new DuoTimeouts(10, 10, 10, 0, TimeUnit.SECONDS);
+
+  private final long connectTimeoutMillis;
+
+  private final long readTimeoutMillis;
+
+  private final long writeTimeoutMillis;
+
+  private final long callTimeoutMillis;
+
+  /**
+   * Creates a set of timeouts.
+   *
+   * @param connectTimeout The connect timeout
+   * @param readTimeout    The read timeout
+   * @param writeTimeout   The write timeout
+   * @param callTimeout    The call timeout
+   * @param unit           The unit of every timeout
+   */
+  public DuoTimeouts(long connectTimeout, long readTimeout, long writeTimeout, long callTimeout,
+                     TimeUnit unit) {
+    if (unit == null) {
+      throw new IllegalArgumentException("The time unit cannot be null");
+    }
+    if (connectTimeout < 0 || readTimeout < 0 || writeTimeout < 0 || callTimeout < 0) {
+      throw new IllegalArgumentException("Timeouts cannot be negative");
+    }
+    this.connectTimeoutMillis = unit.toMillis(connectTimeout);
+    this.readTimeoutMillis = unit.toMillis(readTimeout);
+    this.writeTimeoutMillis = unit.toMillis(writeTimeout);
+    this.callTimeoutMillis = unit.toMillis(callTimeout);
+  }
+
+  public long getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  public long getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  public long getWriteTimeoutMillis() {
+    return writeTimeoutMillis;
+  }
+
+  public long getCallTimeoutMillis() {
+    return callTimeoutMillis;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DuoTimeouts)) {
+      return false;
+    }
+    DuoTimeouts other = (DuoTimeouts) o;
+    return connectTimeoutMillis == other.connectTimeoutMillis
+        && readTimeoutMillis == other.readTimeoutMillis
+        && writeTimeoutMillis == other.writeTimeoutMillis
+        && callTimeoutMillis == other.callTimeoutMillis;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(connectTimeoutMillis, readTimeoutMillis, writeTimeoutMillis,
+        callTimeoutMillis);
+  }
+
+  @Override
+  public String toString() {
+    return "DuoTimeouts [connectMillis=" + connectTimeoutMillis
+        + ", readMillis=" + readTimeoutMillis
+        + ", writeMillis=" + writeTimeoutMillis
+        + ", callMillis=" + callTimeoutMillis
+        + "]";
+  }
+}
@@ -0,0 +1,404 @@
+package com.duosecurity.service;
+
+import static com.duosecurity.Utils.validateHost;
+
+import com.duosecurity.exception.DuoException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import okhttp3.CertificatePinner;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The HTTP resources (connection pool, dispatcher, certificate pinner and TLS session cache)
+ * used to talk to a single Duo api host.
+ *
+ * <p>Transports obtained through {@link #acquire} are shared by every caller asking for the
+ * same apiHost, proxy and CA certificate set, and are reference counted.  Each call to
+ * {@link #acquire} must be balanced by a call to {@link #release}; the underlying connection
+ * pool and dispatcher threads are shut down when the last reference is released.
+ */
+public final class DuoTransport {
+
+  private static final ConcurrentMap<Key, DuoTransport> SHARED = new ConcurrentHashMap<>();
+
+  private static volatile X509TrustManager platformTrustManager;
+
+  private final Key key;
+
+  private final OkHttpClient httpClient;
+
+  private final DuoConnectionSettings effectiveSettings;
+
+  private final boolean shared;
+
+  private final AtomicInteger references = new AtomicInteger(1);
+
+  private DuoTransport(Key key, boolean shared, Tls tls) {
+    this.key = key;
+    this.shared = shared;
+    this.httpClient = buildHttpClient(key, tls);
+    this.effectiveSettings = effectiveSettings(key, tls.sslContext.getClientSessionContext());
+  }
+
+  /**
+   * Returns the shared transport for the given configuration, creating it if this is the first
+   * reference.  The caller owns one reference and must {@link #release} it when done.
+   *
+   * @param apiHost This value is the api host provided by Duo in the admin panel.
+   * @param proxyHost This value is the proxy server hostname
+   * @param proxyPort This value is the proxy server port
+   * @param caCerts CA Certificates used to connect to Duo
+   *
+   * @return DuoTransport   The shared transport
+   *
+   * @throws DuoException For an invalid api host
+   */
+  public static DuoTransport acquire(String apiHost, String proxyHost, Integer proxyPort,
+                                     String[] caCerts) throws DuoException {
+    return acquire(apiHost, proxyHost, proxyPort, caCerts, DuoConnectionSettings.DEFAULT);
+  }
+
+  /**
+   * Returns the shared transport for the given configuration, creating it if this is the first
+   * reference.  The caller owns one reference and must {@link #release} it when done.
+   *
+   * @param apiHost This value is the api host provided by Duo in the admin panel.
+   * @param proxyHost This value is the proxy server hostname
+   * @param proxyPort This value is the proxy server port
+   * @param caCerts CA Certificates used to connect to Duo
+   * @param settings The trust manager, virtual threads, connection pool, request limit,
+   *                 protocol and TLS session settings.  Only transports with equal settings
+   *                 are shared.
+   *
+   * @return DuoTransport   The shared transport
+   *
+   * @throws DuoException For an invalid api host or trust manager
+   */
+  public static DuoTransport acquire(String apiHost, String proxyHost, Integer proxyPort,
+                                     String[] caCerts, DuoConnectionSettings settings)
+          throws DuoException {
+    validateHost(apiHost);
+    Key key = new Key(apiHost, proxyHost, proxyPort, caCerts, settings);
+    DuoTransport shared = SHARED.computeIfPresent(key, (k, existing) -> {
+      existing.references.incrementAndGet();
+      return existing;
+    });
+    if (shared != null) {
+      return shared;
+    }
+    Tls tls = tls(settings);
+    return SHARED.compute(key, (k, existing) -> {
+      if (existing == null) {
+        return new DuoTransport(k, true, tls);
+      }
+      existing.references.incrementAndGet();
+      return existing;
+    });
+  }
+
+  /**
+   * Creates a transport that is not registered for sharing.  The caller owns the only
+   * reference.
+   *
+   * @param apiHost This value is the api host provided by Duo in the admin panel.
+   * @param proxyHost This value is the proxy server hostname
+   * @param proxyPort This value is the proxy server port
+   * @param caCerts CA Certificates used to connect to Duo
+   *
+   * @return DuoTransport   A new transport
+   *
+   * @throws DuoException For an invalid api host
+   */
+  public static DuoTransport create(String apiHost, String proxyHost, Integer proxyPort,
+                                     String[] caCerts) throws DuoException {
+    return create(apiHost, proxyHost, proxyPort, caCerts, DuoConnectionSettings.DEFAULT);
+  }
+
+  /**
+   * Creates a transport that is not registered for sharing.  The caller owns the only
+   * reference.
+   *
+   * @param apiHost This value is the api host provided by Duo in the admin panel.
+   * @param proxyHost This value is the proxy server hostname
+   * @param proxyPort This value is the proxy server port
+   * @param caCerts CA Certificates used to connect to Duo
+   * @param settings The trust manager, virtual threads, connection pool, request limit,
+   *                 protocol and TLS session settings
+   *
+   * @return DuoTransport   A new transport
+   *
+   * @throws DuoException For an invalid api host or trust manager
+   */
+  public static DuoTransport create(String apiHost, String proxyHost, Integer proxyPort,
+                                     String[] caCerts, DuoConnectionSettings settings)
+          throws DuoException {
+    validateHost(apiHost);
+    return new DuoTransport(new Key(apiHost, proxyHost, proxyPort, caCerts, settings), false,
+            tls(settings));
+  }
+
+  /**
+   * Releases one reference to this transport.  Once every reference has been released the
+   * connection pool is evicted and the dispatcher threads are stopped.
+   */
+  public void release() {
+    int remaining;
+    if (shared) {
+      // Decide inside the map operation, so that a concurrent acquire either finds the
+      // transport still registered and revives it, or finds it gone and creates a new one
+      int[] result = {-1};
+      SHARED.computeIfPresent(key, (k, existing) -> {
+        if (existing != this) {
+          return existing;
+        }
+        result[0] = decrementReferences();
+        return result[0] == 0 ? null : existing;
+      });
+      remaining = result[0];
+    } else {
+      remaining = decrementReferences();
+    }
+    if (remaining == 0) {
+      shutdown();
+    }
+  }
+
+  /**
+   * Removes one reference unless none are left.
+   *
+   * @return the references left, or -1 if the transport was already released
+   */
+  private int decrementReferences() {
+    return references.getAndUpdate(count -> count > 0 ? count - 1 : count) - 1;
+  }
+
+  /**
+   * The number of outstanding references to this transport.
+   *
+   * @return int  The reference count; 0 once the transport has been shut down
+   */
+  public int getReferenceCount() {
+    return Math.max(references.get(), 0);
+  }
+
+  /**
+   * Whether every reference has been released and the transport has been shut down.
+   *
+   * @return boolean  true if the transport can no longer be used
+   */
+  public boolean isShutdown() {
+    return references.get() <= 0;
+  }
+
+  /**
+   * The api host this transport connects to.
+   *
+   * @return String  The api host provided by Duo in the admin panel
+   */
+  public String getApiHost() {
+    return key.apiHost;
+  }
+
+  /**
+   * Whether async calls on this transport run on virtual threads.
+   *
+   * @return boolean  true if the transport was created with virtual threads
+   */
+  public boolean usesVirtualThreads() {
+    return key.settings.usesVirtualThreads();
+  }
+
+  /**
+   * The settings this transport runs with, after virtual threads and the JVM's TLS defaults
+   * are applied.
+   *
+   * @return DuoConnectionSettings  The effective settings
+   */
+  public DuoConnectionSettings getEffectiveSettings() {
+    return effectiveSettings;
+  }
+
+  /**
+   * Copies the effective settings and the current state of the connection pool and
+   * dispatcher, to size the settings for peak load.
+   *
+   * @return {@link TransportSnapshot}
+   */
+  public TransportSnapshot snapshot() {
+    ConnectionPool pool = httpClient.connectionPool();
+    Dispatcher dispatcher = httpClient.dispatcher();
+    return new TransportSnapshot(key.apiHost, effectiveSettings, pool.connectionCount(),
+            pool.idleConnectionCount(), dispatcher.runningCallsCount(),
+            dispatcher.queuedCallsCount());
+  }
+
+  OkHttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  private void shutdown() {
+    httpClient.dispatcher().executorService().shutdown();
+    httpClient.connectionPool().evictAll();
+  }
+
+  /**
+   * Creates the transport's own SSLContext, as OkHttp would, so that its TLS session cache
+   * can be sized without changing the JVM's default context.
+   */
+  private static Tls tls(DuoConnectionSettings settings) throws DuoException {
+    try {
+      X509TrustManager effectiveTrustManager = settings.getTrustManager() != null
+          ? settings.getTrustManager() : platformTrustManager();
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, new TrustManager[] {effectiveTrustManager}, null);
+      SSLSessionContext sessions = sslContext.getClientSessionContext();
+      if (settings.getTlsSessionCacheSize() > 0) {
+        sessions.setSessionCacheSize(settings.getTlsSessionCacheSize());
+      }
+      if (settings.getTlsSessionTimeoutSeconds() > 0) {
+        sessions.setSessionTimeout((int) settings.getTlsSessionTimeoutSeconds());
+      }
+      return new Tls(sslContext, effectiveTrustManager);
+    } catch (GeneralSecurityException e) {
+      throw new DuoException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The JVM's default trust manager.  Loading it reads the trust store, so it is loaded once;
+   * two threads racing to load it both get a working one.
+   */
+  private static X509TrustManager platformTrustManager() throws GeneralSecurityException {
+    X509TrustManager loaded = platformTrustManager;
+    if (loaded != null) {
+      return loaded;
+    }
+    TrustManagerFactory factory =
+        TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    factory.init((KeyStore) null);
+    for (TrustManager trustManager : factory.getTrustManagers()) {
+      if (trustManager instanceof X509TrustManager) {
+        platformTrustManager = (X509TrustManager) trustManager;
+        return platformTrustManager;
+      }
+    }
+    throw new GeneralSecurityException("No default X509TrustManager");
+  }
+
+  private static OkHttpClient buildHttpClient(Key key, Tls tls) {
+    DuoConnectionSettings settings = key.settings;
+    CertificatePinner duoCertificatePinner = new CertificatePinner.Builder()
+            .add(key.apiHost, key.caCerts).build();
+    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+            .certificatePinner(duoCertificatePinner)
+            .sslSocketFactory(tls.sslContext.getSocketFactory(), tls.trustManager)
+            .connectionPool(new ConnectionPool(settings.getMaxIdleConnections(),
+                settings.getKeepAliveMillis(), TimeUnit.MILLISECONDS));
+    if (key.proxyHost != null && key.proxyPort != null) {
+      builder.proxy(new Proxy(Proxy.Type.HTTP,
+              new InetSocketAddress(key.proxyHost, key.proxyPort)));
+    }
+    if (settings.usesVirtualThreads()) {
+      // A virtual thread per call is cheap, so the dispatcher's default limit of 5 calls per
+      // host would only queue them; the connection pool and Duo bound concurrency instead.
+      Dispatcher dispatcher = new Dispatcher(VirtualThreads.newExecutor("duo-okhttp"));
+      dispatcher.setMaxRequests(Integer.MAX_VALUE);
+      dispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+      builder.dispatcher(dispatcher);
+    } else {
+      Dispatcher dispatcher = new Dispatcher();
+      dispatcher.setMaxRequests(settings.getMaxRequests());
+      dispatcher.setMaxRequestsPerHost(settings.getMaxRequestsPerHost());
+      builder.dispatcher(dispatcher);
+    }
+    return builder.protocols(protocols(key)).build();
+  }
+
+  private static List<Protocol> protocols(Key key) {
+    // OkHttp 3 waits for HTTP/2 frames with Object.wait() inside synchronized blocks, which
+    // pins a virtual thread to its carrier.  Its HTTP/1.1 path blocks only in socket reads
+    // and writes, outside any monitor.
+    if (key.settings.usesVirtualThreads()
+        || key.settings.getHttpVersion() == DuoConnectionSettings.HttpVersion.HTTP_1_1) {
+      return Collections.singletonList(Protocol.HTTP_1_1);
+    }
+    return Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+  }
+
+  private static DuoConnectionSettings effectiveSettings(Key key, SSLSessionContext sessions) {
+    DuoConnectionSettings.Builder effective = new DuoConnectionSettings.Builder(key.settings)
+        .setTlsSessionCache(sessions.getSessionCacheSize(), sessions.getSessionTimeout(),
+            TimeUnit.SECONDS);
+    if (key.settings.usesVirtualThreads()) {
+      effective.setMaxRequests(Integer.MAX_VALUE, Integer.MAX_VALUE)
+          .setHttpVersion(DuoConnectionSettings.HttpVersion.HTTP_1_1);
+    }
+    return effective.build();
+  }
+
+  private static final class Tls {
+    private final SSLContext sslContext;
+    private final X509TrustManager trustManager;
+
+    private Tls(SSLContext sslContext, X509TrustManager trustManager) {
+      this.sslContext = sslContext;
+      this.trustManager = trustManager;
+    }
+  }
+
+  private static final class Key {
+    private final String apiHost;
+    private final String proxyHost;
+    private final Integer proxyPort;
+    private final String[] caCerts;
+    private final DuoConnectionSettings settings;
+
+    private Key(String apiHost, String proxyHost, Integer proxyPort, String[] caCerts,
+                DuoConnectionSettings settings) {
+      this.apiHost = apiHost;
+      this.proxyHost = proxyHost;
+      this.proxyPort = proxyPort;
+      this.caCerts = caCerts.clone();
+      this.settings = settings;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return apiHost.equals(other.apiHost)
+          && Objects.equals(proxyHost, other.proxyHost)
+          && Objects.equals(proxyPort, other.proxyPort)
+          && Arrays.equals(caCerts, other.caCerts)
+          && settings.equals(other.settings);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(apiHost, proxyHost, proxyPort, Arrays.hashCode(caCerts), settings);
+    }
+  }
+}
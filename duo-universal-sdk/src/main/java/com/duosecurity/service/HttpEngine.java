@@ -0,0 +1,94 @@
+package com.duosecurity.service;
+
+import com.duosecurity.exception.DuoException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The HTTP client underneath a {@link DuoConnector}: it POSTs a form to a Duo endpoint and
+ * returns the response, which the connector reads as JSON.  By default a connector uses
+ * OkHttp through Retrofit and no engine; a connector created with an engine, such as
+ * {@link JdkHttpEngine}, builds no OkHttpClient or Retrofit instance.
+ *
+ * <p>An engine must connect only to the api host it was created for, and must only accept
+ * server certificate chains that are trusted and match one of the pinned CA certificates.
+ */
+public interface HttpEngine extends Closeable {
+
+  /**
+   * Sends a form, blocking until the response has been read.
+   *
+   * @param path         The path of the endpoint, such as /oauth/v1/token
+   * @param headers      Request headers, in addition to the engine's own
+   * @param form         The form fields, sent as application/x-www-form-urlencoded
+   * @param timeoutNanos How long the whole request may take, or 0 for the engine's timeouts
+   *
+   * @return the {@link Response}, whatever its status code
+   *
+   * @throws IOException If no response was read
+   */
+  Response post(String path, Map<String, String> headers, Map<String, String> form,
+                long timeoutNanos) throws IOException;
+
+  /**
+   * Sends a form without blocking the calling thread.
+   *
+   * @param path    The path of the endpoint, such as /oauth/v1/token
+   * @param headers Request headers, in addition to the engine's own
+   * @param form    The form fields, sent as application/x-www-form-urlencoded
+   *
+   * @return CompletableFuture that completes with the {@link Response}, or exceptionally with
+   *     an IOException if no response was read
+   */
+  CompletableFuture<Response> postAsync(String path, Map<String, String> headers,
+                                        Map<String, String> form);
+
+  /**
+   * Releases the engine's connections and threads.
+   */
+  @Override
+  void close();
+
+  /**
+   * Creates the engine for one Client from its connection settings.
+   */
+  interface Factory {
+    HttpEngine create(HttpEngineConfig config) throws DuoException;
+  }
+
+  /**
+   * A response read in full.
+   */
+  final class Response {
+    private final int code;
+    private final String message;
+    private final byte[] body;
+
+    /**
+     * Creates a response.
+     *
+     * @param code    The HTTP status code
+     * @param message The reason phrase, or an empty string if there was none, as in HTTP/2
+     * @param body    The response body
+     */
+    public Response(int code, String message, byte[] body) {
+      this.code = code;
+      this.message = message;
+      this.body = body;
+    }
+
+    public int getCode() {
+      return code;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+  }
+}
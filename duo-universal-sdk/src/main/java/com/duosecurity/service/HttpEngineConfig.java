@@ -0,0 +1,75 @@
+package com.duosecurity.service;
+
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * The connection settings a Client passes to its {@link HttpEngine.Factory}.
+ */
+public final class HttpEngineConfig {
+
+  private final String apiHost;
+
+  private final String proxyHost;
+
+  private final Integer proxyPort;
+
+  private final String[] caCerts;
+
+  private final DuoTimeouts timeouts;
+
+  private final DuoConnectionSettings connectionSettings;
+
+  /**
+   * Creates a set of connection settings.
+   *
+   * @param apiHost            The api host provided by Duo in the admin panel
+   * @param proxyHost          The proxy server hostname, or null
+   * @param proxyPort          The proxy server port, or null
+   * @param caCerts            The pinned CA certificates, as sha256/ SPKI hashes
+   * @param timeouts           The timeouts for every request
+   * @param connectionSettings The trust manager, virtual threads, pool, request limit,
+   *                           protocol and TLS session settings; an engine applies those its
+   *                           HTTP client supports
+   */
+  public HttpEngineConfig(String apiHost, String proxyHost, Integer proxyPort, String[] caCerts,
+                          DuoTimeouts timeouts, DuoConnectionSettings connectionSettings) {
+    this.apiHost = apiHost;
+    this.proxyHost = proxyHost;
+    this.proxyPort = proxyPort;
+    this.caCerts = caCerts.clone();
+    this.timeouts = timeouts;
+    this.connectionSettings = connectionSettings;
+  }
+
+  public String getApiHost() {
+    return apiHost;
+  }
+
+  public String getProxyHost() {
+    return proxyHost;
+  }
+
+  public Integer getProxyPort() {
+    return proxyPort;
+  }
+
+  public String[] getCaCerts() {
+    return caCerts.clone();
+  }
+
+  public X509TrustManager getTrustManager() {
+    return connectionSettings.getTrustManager();
+  }
+
+  public DuoTimeouts getTimeouts() {
+    return timeouts;
+  }
+
+  public boolean usesVirtualThreads() {
+    return connectionSettings.usesVirtualThreads();
+  }
+
+  public DuoConnectionSettings getConnectionSettings() {
+    return connectionSettings;
+  }
+}
@@ -0,0 +1,51 @@
+package com.duosecurity.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link HttpEngine} on the JDK's java.net.http.HttpClient, which is not part of Java 8, so
+ * this version reports it unsupported; the multi-release jar replaces it on Java 11 and later
+ * with the working engine.
+ */
+public final class JdkHttpEngine implements HttpEngine {
+
+  private JdkHttpEngine() {
+  }
+
+  /**
+   * Whether this JVM and SDK jar have the engine.
+   *
+   * @return boolean  true on Java 11 and later, when the SDK is loaded from its jar
+   */
+  public static boolean isSupported() {
+    return false;
+  }
+
+  /**
+   * The factory to pass to {@code Client.Builder.setHttpEngine}.
+   *
+   * @return HttpEngine.Factory  The factory
+   *
+   * @throws UnsupportedOperationException If the engine is not supported
+   */
+  public static HttpEngine.Factory factory() {
+    throw new UnsupportedOperationException("The JDK HTTP engine requires Java 11 or later");
+  }
+
+  @Override
+  public Response post(String path, Map<String, String> headers, Map<String, String> form,
+                       long timeoutNanos) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public CompletableFuture<Response> postAsync(String path, Map<String, String> headers,
+                                               Map<String, String> form) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() {
+  }
+}
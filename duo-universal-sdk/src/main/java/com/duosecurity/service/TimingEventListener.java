@@ -0,0 +1,119 @@
+package com.duosecurity.service;
+
+import com.duosecurity.metrics.NetworkMetrics;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * Records the network phases of one HTTP call into {@link NetworkMetrics}.  OkHttp creates one
+ * listener per call and delivers its events in order, so the fields need no synchronization.
+ */
+final class TimingEventListener extends EventListener {
+
+  private final NetworkMetrics metrics;
+
+  private String endpoint;
+
+  private long callStart;
+
+  private long dnsStart;
+
+  private long connectStart;
+
+  private long secureConnectStart;
+
+  private long requestStart;
+
+  private boolean connected;
+
+  private TimingEventListener(NetworkMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  static EventListener.Factory factory(NetworkMetrics metrics) {
+    return call -> new TimingEventListener(metrics);
+  }
+
+  @Override
+  public void callStart(Call call) {
+    endpoint = call.request().url().encodedPath();
+    callStart = System.nanoTime();
+  }
+
+  @Override
+  public void dnsStart(Call call, String domainName) {
+    dnsStart = System.nanoTime();
+  }
+
+  @Override
+  public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+    record(NetworkMetrics.Phase.DNS, dnsStart);
+  }
+
+  @Override
+  public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+    connected = true;
+    connectStart = System.nanoTime();
+    secureConnectStart = 0;
+  }
+
+  @Override
+  public void secureConnectStart(Call call) {
+    secureConnectStart = System.nanoTime();
+    metrics.record(endpoint, NetworkMetrics.Phase.CONNECT, secureConnectStart - connectStart);
+  }
+
+  @Override
+  public void secureConnectEnd(Call call, Handshake handshake) {
+    record(NetworkMetrics.Phase.TLS, secureConnectStart);
+  }
+
+  @Override
+  public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                         Protocol protocol) {
+    if (secureConnectStart == 0) {
+      record(NetworkMetrics.Phase.CONNECT, connectStart);
+    }
+  }
+
+  @Override
+  public void connectionAcquired(Call call, Connection connection) {
+    metrics.recordConnection(endpoint, !connected);
+  }
+
+  @Override
+  public void requestHeadersStart(Call call) {
+    requestStart = System.nanoTime();
+  }
+
+  @Override
+  public void responseHeadersEnd(Call call, Response response) {
+    // responseHeadersStart fires when OkHttp starts waiting for the response, not when the
+    // first byte arrives, so the headers having been read is the closest observable point
+    record(NetworkMetrics.Phase.TIME_TO_FIRST_BYTE, requestStart);
+  }
+
+  @Override
+  public void callEnd(Call call) {
+    record(NetworkMetrics.Phase.CALL, callStart);
+  }
+
+  @Override
+  public void callFailed(Call call, IOException ioe) {
+    record(NetworkMetrics.Phase.CALL, callStart);
+    metrics.recordFailure(endpoint);
+  }
+
+  private void record(NetworkMetrics.Phase phase, long start) {
+    metrics.record(endpoint, phase, System.nanoTime() - start);
+  }
+}
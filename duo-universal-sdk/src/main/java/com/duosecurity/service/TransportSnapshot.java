@@ -0,0 +1,67 @@
+package com.duosecurity.service;
+
+/**
+ * The settings a {@link DuoTransport} runs with and the state of its connection pool and
+ * dispatcher, taken with {@link DuoTransport#snapshot()}.  The settings are the effective
+ * ones: with virtual threads the request limits are lifted and only HTTP/1.1 is offered,
+ * and a TLS session cache size or timeout of 0 is replaced with the JVM's default.
+ */
+public final class TransportSnapshot {
+
+  private final String apiHost;
+
+  private final DuoConnectionSettings settings;
+
+  private final int connectionCount;
+
+  private final int idleConnectionCount;
+
+  private final int runningCallCount;
+
+  private final int queuedCallCount;
+
+  TransportSnapshot(String apiHost, DuoConnectionSettings settings, int connectionCount,
+                    int idleConnectionCount, int runningCallCount, int queuedCallCount) {
+    this.apiHost = apiHost;
+    this.settings = settings;
+    this.connectionCount = connectionCount;
+    this.idleConnectionCount = idleConnectionCount;
+    this.runningCallCount = runningCallCount;
+    this.queuedCallCount = queuedCallCount;
+  }
+
+  public String getApiHost() {
+    return apiHost;
+  }
+
+  public DuoConnectionSettings getSettings() {
+    return settings;
+  }
+
+  public int getConnectionCount() {
+    return connectionCount;
+  }
+
+  public int getIdleConnectionCount() {
+    return idleConnectionCount;
+  }
+
+  public int getRunningCallCount() {
+    return runningCallCount;
+  }
+
+  public int getQueuedCallCount() {
+    return queuedCallCount;
+  }
+
+  @Override
+  public String toString() {
+    return "[apiHost=" + apiHost
+        + ", settings=" + settings
+        + ", connections=" + connectionCount
+        + ", idleConnections=" + idleConnectionCount
+        + ", runningCalls=" + runningCallCount
+        + ", queuedCalls=" + queuedCallCount
+        + "]";
+  }
+}
@@ -0,0 +1,27 @@
+package com.duosecurity.service;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the executors that run Duo calls on virtual threads.  Virtual threads need Java 21,
+ * so this version reports them unsupported; the multi-release jar replaces it on Java 21 and
+ * later with one that creates them.
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Whether this JVM and SDK jar can run Duo calls on virtual threads.
+   *
+   * @return boolean  true on Java 21 and later, when the SDK is loaded from its jar
+   */
+  public static boolean isSupported() {
+    return false;
+  }
+
+  static ExecutorService newExecutor(String name) {
+    throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+  }
+}
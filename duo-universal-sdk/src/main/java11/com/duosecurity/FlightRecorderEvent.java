@@ -0,0 +1,156 @@
+package com.duosecurity;
+
+import java.util.concurrent.CompletionException;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event around one SDK operation, so that login latency can be read
+ * next to GC pauses and safepoints in the same recording.  This is the Java 11 version from
+ * the multi-release jar.  The factories check whether the event type is enabled in any
+ * running recording, and return the shared {@link #DISABLED} instance without allocating
+ * when it is not.
+ */
+class FlightRecorderEvent {
+
+  static final FlightRecorderEvent DISABLED = new FlightRecorderEvent();
+
+  private static final EventType HEALTH_CHECK = EventType.getEventType(HealthCheckEvent.class);
+
+  private static final EventType CREATE_AUTH_URL =
+      EventType.getEventType(CreateAuthUrlEvent.class);
+
+  private static final EventType TOKEN_EXCHANGE =
+      EventType.getEventType(TokenExchangeEvent.class);
+
+  private static final EventType JWT_SIGNING = EventType.getEventType(JwtSigningEvent.class);
+
+  private static final EventType ID_TOKEN_VALIDATION =
+      EventType.getEventType(IdTokenValidationEvent.class);
+
+  FlightRecorderEvent() {
+  }
+
+  static FlightRecorderEvent healthCheck() {
+    return HEALTH_CHECK.isEnabled() ? new Recorded(new HealthCheckEvent()) : DISABLED;
+  }
+
+  static FlightRecorderEvent createAuthUrl() {
+    return CREATE_AUTH_URL.isEnabled() ? new Recorded(new CreateAuthUrlEvent()) : DISABLED;
+  }
+
+  static FlightRecorderEvent tokenExchange() {
+    return TOKEN_EXCHANGE.isEnabled() ? new Recorded(new TokenExchangeEvent()) : DISABLED;
+  }
+
+  static FlightRecorderEvent jwtSigning() {
+    return JWT_SIGNING.isEnabled() ? new Recorded(new JwtSigningEvent()) : DISABLED;
+  }
+
+  static FlightRecorderEvent idTokenValidation() {
+    return ID_TOKEN_VALIDATION.isEnabled()
+        ? new Recorded(new IdTokenValidationEvent()) : DISABLED;
+  }
+
+  /**
+   * Adds to the bytes sent or received by the operation.
+   *
+   * @param bytes The number of bytes
+   */
+  void addBytes(long bytes) {
+  }
+
+  /**
+   * Ends the operation and commits the event if it passed the recording's threshold.
+   *
+   * @param endpoint The path of the Duo endpoint the operation is for
+   * @param error    The error the operation failed with, or null if it succeeded
+   */
+  void end(String endpoint, Throwable error) {
+  }
+
+  private static final class Recorded extends FlightRecorderEvent {
+    private final DuoEvent event;
+
+    Recorded(DuoEvent event) {
+      this.event = event;
+      event.begin();
+    }
+
+    @Override
+    void addBytes(long bytes) {
+      event.bytes += bytes;
+    }
+
+    @Override
+    void end(String endpoint, Throwable error) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.endpoint = endpoint;
+        event.outcome = outcome(error);
+        event.commit();
+      }
+    }
+
+    private static String outcome(Throwable error) {
+      if (error instanceof CompletionException && error.getCause() != null) {
+        error = error.getCause();
+      }
+      return error == null ? "success" : error.getClass().getSimpleName();
+    }
+  }
+
+  @Category("Duo")
+  @StackTrace(false)
+  private abstract static class DuoEvent extends Event {
+    @Label("Endpoint")
+    @Description("The path of the Duo endpoint")
+    String endpoint;
+
+    @Label("Outcome")
+    @Description("success, or the simple class name of the error")
+    String outcome;
+
+    @Label("Bytes")
+    @Description("The size of the JWT sent or received")
+    @DataAmount
+    long bytes;
+  }
+
+  @Name("com.duosecurity.HealthCheck")
+  @Label("Duo Health Check")
+  @Description("Client.healthCheck, including retries")
+  private static final class HealthCheckEvent extends DuoEvent {
+  }
+
+  @Name("com.duosecurity.CreateAuthUrl")
+  @Label("Duo Create Auth URL")
+  @Description("Client.createAuthUrl, including signing the request JWT")
+  private static final class CreateAuthUrlEvent extends DuoEvent {
+  }
+
+  @Name("com.duosecurity.TokenExchange")
+  @Label("Duo Token Exchange")
+  @Description("Client.exchangeAuthorizationCodeFor2FAResult, including retries and "
+      + "id_token validation")
+  private static final class TokenExchangeEvent extends DuoEvent {
+  }
+
+  @Name("com.duosecurity.JwtSigning")
+  @Label("Duo JWT Signing")
+  @Description("Signing a client assertion")
+  private static final class JwtSigningEvent extends DuoEvent {
+  }
+
+  @Name("com.duosecurity.IdTokenValidation")
+  @Label("Duo id_token Validation")
+  @Description("Verifying and decoding the id_token returned by Duo")
+  private static final class IdTokenValidationEvent extends DuoEvent {
+  }
+}
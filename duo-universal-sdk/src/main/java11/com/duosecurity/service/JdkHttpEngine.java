@@ -0,0 +1,288 @@
+package com.duosecurity.service;
+
+import static com.duosecurity.Utils.getAndValidateUrl;
+
+import com.duosecurity.exception.DuoException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * An {@link HttpEngine} on the JDK's java.net.http.HttpClient.  This is the Java 11 version
+ * from the multi-release jar.  HTTP/2 is negotiated with ALPN, falling back to HTTP/1.1, and
+ * redirects are not followed.  Pinning is done by the trust manager of the client's
+ * SSLContext, which accepts a chain only if it is trusted and one of its certificates, or the
+ * trust anchor that issued it, has a pinned SPKI hash.  java.net.http has no read or write
+ * timeout, so without a call timeout or deadline the read timeout bounds the whole request
+ * instead.  Of the connection settings, only the HTTP version and the TLS session cache apply,
+ * because the JDK client keeps its own connection pool and has no request limits.
+ */
+public final class JdkHttpEngine implements HttpEngine {
+
+  private static final String FORM = "application/x-www-form-urlencoded";
+
+  private final HttpClient client;
+
+  private final String baseUrl;
+
+  private final long defaultTimeoutNanos;
+
+  private final long callTimeoutNanos;
+
+  private final ExecutorService executor;
+
+  private JdkHttpEngine(HttpEngineConfig config) throws DuoException {
+    DuoTimeouts timeouts = config.getTimeouts();
+    this.baseUrl = getAndValidateUrl(config.getApiHost(), "").toString();
+    this.callTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeouts.getCallTimeoutMillis());
+    this.defaultTimeoutNanos = callTimeoutNanos > 0 ? callTimeoutNanos
+        : TimeUnit.MILLISECONDS.toNanos(timeouts.getReadTimeoutMillis());
+    this.executor = config.usesVirtualThreads() ? VirtualThreads.newExecutor("duo-http") : null;
+    DuoConnectionSettings settings = config.getConnectionSettings();
+    HttpClient.Builder builder = HttpClient.newBuilder()
+        .version(settings.getHttpVersion() == DuoConnectionSettings.HttpVersion.HTTP_1_1
+            ? HttpClient.Version.HTTP_1_1 : HttpClient.Version.HTTP_2)
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .sslContext(sslContext(config));
+    if (timeouts.getConnectTimeoutMillis() > 0) {
+      builder.connectTimeout(Duration.ofMillis(timeouts.getConnectTimeoutMillis()));
+    }
+    if (config.getProxyHost() != null && config.getProxyPort() != null) {
+      builder.proxy(ProxySelector.of(
+          new InetSocketAddress(config.getProxyHost(), config.getProxyPort())));
+    }
+    if (executor != null) {
+      builder.executor(executor);
+    }
+    this.client = builder.build();
+  }
+
+  /**
+   * Whether this JVM and SDK jar have the engine.
+   *
+   * @return boolean  true on Java 11 and later, when the SDK is loaded from its jar
+   */
+  public static boolean isSupported() {
+    return true;
+  }
+
+  /**
+   * The factory to pass to {@code Client.Builder.setHttpEngine}.
+   *
+   * @return HttpEngine.Factory  The factory
+   *
+   * @throws UnsupportedOperationException If the engine is not supported
+   */
+  public static HttpEngine.Factory factory() {
+    return JdkHttpEngine::new;
+  }
+
+  @Override
+  public Response post(String path, Map<String, String> headers, Map<String, String> form,
+                       long timeoutNanos) throws IOException {
+    HttpRequest request = request(path, headers, form, timeoutNanos);
+    try {
+      return response(client.send(request, HttpResponse.BodyHandlers.ofByteArray()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for Duo");
+    }
+  }
+
+  @Override
+  public CompletableFuture<Response> postAsync(String path, Map<String, String> headers,
+                                               Map<String, String> form) {
+    HttpRequest request = request(path, headers, form, 0);
+    return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+        .thenApply(JdkHttpEngine::response);
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private HttpRequest request(String path, Map<String, String> headers,
+                              Map<String, String> form, long timeoutNanos) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+        .header("Content-Type", FORM)
+        .POST(HttpRequest.BodyPublishers.ofString(encode(form)));
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      builder.header(header.getKey(), header.getValue());
+    }
+    long timeout = timeoutNanos > 0 && callTimeoutNanos > 0
+        ? Math.min(timeoutNanos, callTimeoutNanos)
+        : timeoutNanos > 0 ? timeoutNanos : defaultTimeoutNanos;
+    if (timeout > 0) {
+      builder.timeout(Duration.ofNanos(timeout));
+    }
+    return builder.build();
+  }
+
+  private static Response response(HttpResponse<byte[]> response) {
+    return new Response(response.statusCode(), "", response.body());
+  }
+
+  private static String encode(Map<String, String> form) {
+    StringBuilder body = new StringBuilder();
+    for (Map.Entry<String, String> field : form.entrySet()) {
+      if (body.length() > 0) {
+        body.append('&');
+      }
+      body.append(URLEncoder.encode(field.getKey(), StandardCharsets.UTF_8)).append('=')
+          .append(URLEncoder.encode(field.getValue(), StandardCharsets.UTF_8));
+    }
+    return body.toString();
+  }
+
+  private static SSLContext sslContext(HttpEngineConfig config) throws DuoException {
+    try {
+      X509TrustManager trustManager = config.getTrustManager() != null
+          ? config.getTrustManager() : defaultTrustManager();
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, new TrustManager[] {
+          new PinningTrustManager(trustManager, config.getCaCerts())}, null);
+      DuoConnectionSettings settings = config.getConnectionSettings();
+      if (settings.getTlsSessionCacheSize() > 0) {
+        sslContext.getClientSessionContext()
+            .setSessionCacheSize(settings.getTlsSessionCacheSize());
+      }
+      if (settings.getTlsSessionTimeoutSeconds() > 0) {
+        sslContext.getClientSessionContext()
+            .setSessionTimeout((int) settings.getTlsSessionTimeoutSeconds());
+      }
+      return sslContext;
+    } catch (GeneralSecurityException e) {
+      throw new DuoException(e.getMessage(), e);
+    }
+  }
+
+  private static X509TrustManager defaultTrustManager() throws GeneralSecurityException {
+    TrustManagerFactory factory =
+        TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    factory.init((KeyStore) null);
+    for (TrustManager trustManager : factory.getTrustManagers()) {
+      if (trustManager instanceof X509TrustManager) {
+        return (X509TrustManager) trustManager;
+      }
+    }
+    throw new GeneralSecurityException("No default X509TrustManager");
+  }
+
+  /**
+   * Checks the chain with the delegate, then requires a pinned certificate in it.  It is a
+   * plain X509TrustManager, so the JDK still checks the host name and algorithm constraints.
+   */
+  private static final class PinningTrustManager implements X509TrustManager {
+    private final X509TrustManager delegate;
+    private final List<byte[]> sha256Pins = new ArrayList<>();
+    private final List<byte[]> sha1Pins = new ArrayList<>();
+
+    PinningTrustManager(X509TrustManager delegate, String[] pins) {
+      this.delegate = delegate;
+      for (String pin : pins) {
+        if (pin.startsWith("sha256/")) {
+          sha256Pins.add(Base64.getMimeDecoder().decode(pin.substring("sha256/".length())));
+        } else if (pin.startsWith("sha1/")) {
+          sha1Pins.add(Base64.getMimeDecoder().decode(pin.substring("sha1/".length())));
+        } else {
+          throw new IllegalArgumentException("pins must start with 'sha256/' or 'sha1/': "
+              + pin);
+        }
+      }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType)
+        throws CertificateException {
+      delegate.checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType)
+        throws CertificateException {
+      delegate.checkServerTrusted(chain, authType);
+      for (X509Certificate certificate : withTrustAnchor(chain)) {
+        byte[] spki = certificate.getPublicKey().getEncoded();
+        if (matches(sha256Pins, "SHA-256", spki) || matches(sha1Pins, "SHA-1", spki)) {
+          return;
+        }
+      }
+      throw new CertificateException("Certificate pinning failure: no certificate in the chain "
+          + "matches a pinned CA certificate");
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return delegate.getAcceptedIssuers();
+    }
+
+    /**
+     * Servers usually leave the root out of the chain they send, so the trusted root that
+     * issued the last certificate is added to be matched too.
+     */
+    private List<X509Certificate> withTrustAnchor(X509Certificate[] chain) {
+      List<X509Certificate> certificates = new ArrayList<>(Arrays.asList(chain));
+      X509Certificate last = chain[chain.length - 1];
+      for (X509Certificate anchor : delegate.getAcceptedIssuers()) {
+        if (anchor.getSubjectX500Principal().equals(last.getIssuerX500Principal())
+            && !anchor.equals(last)) {
+          try {
+            last.verify(anchor.getPublicKey());
+            certificates.add(anchor);
+            break;
+          } catch (GeneralSecurityException e) {
+            // Same name, different key; keep looking
+          }
+        }
+      }
+      return certificates;
+    }
+
+    private static boolean matches(List<byte[]> pins, String algorithm, byte[] spki)
+        throws CertificateException {
+      if (pins.isEmpty()) {
+        return false;
+      }
+      byte[] hash;
+      try {
+        hash = MessageDigest.getInstance(algorithm).digest(spki);
+      } catch (GeneralSecurityException e) {
+        throw new CertificateException(e);
+      }
+      for (byte[] pin : pins) {
+        if (MessageDigest.isEqual(pin, hash)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package com.duosecurity.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors that run Duo calls on virtual threads.  This is the Java 21 version
+ * from the multi-release jar.
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Whether this JVM and SDK jar can run Duo calls on virtual threads.
+   *
+   * @return boolean  true on Java 21 and later, when the SDK is loaded from its jar
+   */
+  public static boolean isSupported() {
+    return true;
+  }
+
+  /**
+   * An executor that starts a new virtual thread for each task, named name-0, name-1 and so on.
+   */
+  static ExecutorService newExecutor(String name) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+  }
+}
@@ -0,0 +1,208 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.CircuitBreakerOpenException;
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.exception.DuoResponseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final DuoException NETWORK_ERROR = new DuoException("timeout", new IOException("timeout"));
+
+    private final AtomicLong now = new AtomicLong();
+
+    private CircuitBreaker breaker() {
+        return new CircuitBreaker.Builder()
+                .setSlidingWindow(10, 4)
+                .setFailureRateThreshold(50)
+                .setSlowCallRateThreshold(1, TimeUnit.SECONDS, 50)
+                .setOpenDuration(30, TimeUnit.SECONDS)
+                .setHalfOpenCalls(2)
+                .build(now::get);
+    }
+
+    private void call(CircuitBreaker breaker, Throwable error) throws CircuitBreakerOpenException {
+        breaker.acquirePermit().complete(null, error);
+    }
+
+    private void slowCall(CircuitBreaker breaker) throws CircuitBreakerOpenException {
+        CircuitBreaker.Permit permit = breaker.acquirePermit();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        permit.complete("response", null);
+    }
+
+    @Test
+    void stays_closed_below_minimum_calls() throws Exception {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 3; i++) {
+            call(breaker, NETWORK_ERROR);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(-1, breaker.getFailureRate());
+    }
+
+    @Test
+    void opens_on_failure_rate_and_rejects() throws Exception {
+        CircuitBreaker breaker = breaker();
+        call(breaker, null);
+        call(breaker, null);
+        call(breaker, NETWORK_ERROR);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(-1, breaker.getFailureRate());
+
+        call(breaker, new CompletionException(NETWORK_ERROR));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, breaker::acquirePermit);
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    void opens_on_slow_call_rate() throws Exception {
+        CircuitBreaker breaker = breaker();
+        call(breaker, null);
+        call(breaker, null);
+        slowCall(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        slowCall(breaker);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void client_errors_are_not_failures() throws Exception {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 10; i++) {
+            call(breaker, new DuoResponseException("invalid_grant", 400));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+
+        for (int i = 0; i < 5; i++) {
+            call(breaker, new DuoResponseException("unavailable", 503));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void local_errors_and_released_permits_are_not_failures() throws Exception {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 10; i++) {
+            call(breaker, new DuoException("The Client is closed"));
+            breaker.acquirePermit().release();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+
+        // The local errors were recorded as successes and stay in the window
+        for (int i = 0; i < 5; i++) {
+            breaker.acquirePermit().fail();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void old_outcomes_leave_the_window() throws Exception {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            call(breaker, null);
+            call(breaker, null);
+            call(breaker, NETWORK_ERROR);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        for (int i = 0; i < 20; i++) {
+            call(breaker, null);
+        }
+        assertEquals(0, breaker.getFailureRate());
+    }
+
+    @Test
+    void half_open_trials_close_the_breaker() throws Exception {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            call(breaker, NETWORK_ERROR);
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        CircuitBreaker.Permit first = breaker.acquirePermit();
+        CircuitBreaker.Permit second = breaker.acquirePermit();
+        assertThrows(CircuitBreakerOpenException.class, breaker::acquirePermit);
+        first.complete("response", null);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        second.complete("response", null);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(breaker, null);
+    }
+
+    @Test
+    void failed_half_open_trials_reopen_the_breaker() throws Exception {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            call(breaker, NETWORK_ERROR);
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        call(breaker, null);
+        call(breaker, NETWORK_ERROR);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, breaker::acquirePermit);
+    }
+
+    @Test
+    void cancelled_trial_is_given_back() throws Exception {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            call(breaker, NETWORK_ERROR);
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        CircuitBreaker.Permit first = breaker.acquirePermit();
+        breaker.acquirePermit().complete(null, new CancellationException());
+
+        breaker.acquirePermit().complete("response", null);
+        first.complete("response", null);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void calls_started_before_opening_are_not_recorded() throws Exception {
+        CircuitBreaker breaker = breaker();
+        CircuitBreaker.Permit early = breaker.acquirePermit();
+        for (int i = 0; i < 4; i++) {
+            call(breaker, NETWORK_ERROR);
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        call(breaker, null);
+
+        early.complete(null, NETWORK_ERROR);
+        call(breaker, null);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void rejects_invalid_settings() {
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker.Builder().setSlidingWindow(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker.Builder().setFailureRateThreshold(0));
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker.Builder().setFailureRateThreshold(101));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CircuitBreaker.Builder().setSlowCallRateThreshold(0, TimeUnit.SECONDS, 50));
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker.Builder().setOpenDuration(0, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CircuitBreaker.Builder().setSlidingWindow(2, 2).setHalfOpenCalls(3).build());
+    }
+}
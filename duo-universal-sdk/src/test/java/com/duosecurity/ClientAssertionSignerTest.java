@@ -0,0 +1,97 @@
+package com.duosecurity;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientAssertionSignerTest {
+
+    private static final String CLIENT_ID = "DIXXXXXXXXXXXXXXXXXX";
+    private static final String CLIENT_SECRET = "abcdefghijklmnopqrstuvwxyzabcdefghijklmn";
+    private static final String API_HOST = "api-abcdefgh.duosecurity.com";
+
+    private static ClientAssertionSigner signer(String aud) {
+        CryptoContext crypto = new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST);
+        return new ClientAssertionSigner(crypto.getMacPool(), CLIENT_ID, aud);
+    }
+
+    @Test
+    void assertion_matches_generic_jwt() {
+        for (String aud : new String[] {"a", "ab", "abc", "https://" + API_HOST + "/oauth/v1/token"}) {
+            DecodedJWT expected = JWT.decode(Utils.createJwt(CLIENT_ID, CLIENT_SECRET, aud));
+            DecodedJWT actual = JWT.require(Algorithm.HMAC512(CLIENT_SECRET))
+                .withIssuer(CLIENT_ID)
+                .withSubject(CLIENT_ID)
+                .withAudience(aud)
+                .build()
+                .verify(signer(aud).sign());
+
+            assertEquals(expected.getHeaderClaim("alg").asString(), actual.getAlgorithm());
+            assertEquals(expected.getHeaderClaim("typ").asString(), actual.getType());
+            assertEquals(expected.getExpiresAt().getTime(), actual.getExpiresAt().getTime(), 5000);
+            assertEquals(32, actual.getId().length());
+        }
+    }
+
+    @Test
+    void assertion_escapes_static_claims() {
+        String aud = "https://host/\"quoted\"\\path";
+        DecodedJWT jwt = JWT.decode(signer(aud).sign());
+
+        assertEquals(Collections.singletonList(aud), jwt.getAudience());
+    }
+
+    @Test
+    void assertion_uses_given_expiration() {
+        DecodedJWT jwt = JWT.decode(signer("aud").sign(1234567890L));
+
+        assertEquals(1234567890L * 1000, jwt.getExpiresAt().getTime());
+    }
+
+    @Test
+    void assertion_writes_every_digit_of_the_expiration() {
+        ClientAssertionSigner signer = signer("aud");
+        for (long exp : new long[] {1, 9, 10, 99, 100, 9999999999L, 10000000000L}) {
+            assertEquals(exp, JWT.decode(signer.sign(exp)).getClaim("exp").asLong());
+        }
+    }
+
+    @Test
+    void signers_of_different_lengths_share_the_thread_buffers() {
+        ClientAssertionSigner longer = signer("https://" + API_HOST + "/oauth/v1/token");
+        ClientAssertionSigner shorter = signer("a");
+        for (ClientAssertionSigner signer : new ClientAssertionSigner[] {longer, shorter, longer}) {
+            String jwt = signer.sign();
+            JWT.require(Algorithm.HMAC512(CLIENT_SECRET)).build().verify(jwt);
+            assertEquals(2, jwt.chars().filter(c -> c == '.').count());
+        }
+    }
+
+    @Test
+    void assertion_jti_is_unique() {
+        ClientAssertionSigner signer = signer("aud");
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(JWT.decode(signer.sign()).getId());
+        }
+
+        assertEquals(100, ids.size());
+    }
+
+    @Test
+    void context_reuses_signer_per_endpoint() {
+        CryptoContext crypto = new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST);
+        String first = crypto.createClientAssertion("health");
+        String second = crypto.createClientAssertion("token");
+
+        assertEquals("health", JWT.decode(first).getAudience().get(0));
+        assertEquals("token", JWT.decode(second).getAudience().get(0));
+    }
+}
@@ -0,0 +1,82 @@
+package com.duosecurity;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.duosecurity.exception.DuoException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CryptoContextTest {
+
+    private static final String CLIENT_ID = "DIXXXXXXXXXXXXXXXXXX";
+    private static final String CLIENT_SECRET = "abcdefghijklmnopqrstuvwxyzabcdefghijklmn";
+    private static final String API_HOST = "api-abcdefgh.duosecurity.com";
+    private static final String USERNAME = "user";
+
+    private static String idToken(Algorithm algorithm) {
+        return JWT.create()
+            .withIssuer("https://" + API_HOST + "/oauth/v1/token")
+            .withAudience(CLIENT_ID)
+            .withExpiresAt(new Date(System.currentTimeMillis() + 300000))
+            .withIssuedAt(new Date())
+            .withClaim("preferred_username", USERNAME)
+            .sign(algorithm);
+    }
+
+    @Test
+    void pooled_algorithm_matches_hmac512() {
+        CryptoContext crypto = new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST);
+        byte[] header = "header".getBytes();
+        byte[] payload = "payload".getBytes();
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(Algorithm.HMAC512(CLIENT_SECRET).sign(header, payload),
+                crypto.getAlgorithm().sign(header, payload));
+        }
+    }
+
+    @Test
+    void pooled_algorithm_verifies_hmac512_tokens() {
+        CryptoContext crypto = new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST);
+        DecodedJWT jwt = JWT.decode(idToken(Algorithm.HMAC512(CLIENT_SECRET)));
+
+        assertDoesNotThrow(() -> crypto.getAlgorithm().verify(jwt));
+    }
+
+    @Test
+    void pooled_algorithm_rejects_other_secret() {
+        CryptoContext crypto = new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST);
+        DecodedJWT jwt = JWT.decode(idToken(Algorithm.HMAC512(CLIENT_SECRET + "x")));
+
+        assertThrows(SignatureVerificationException.class, () -> crypto.getAlgorithm().verify(jwt));
+    }
+
+    @Test
+    void mac_pool_reuses_released_instances() throws Exception {
+        MacPool pool = new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST).getMacPool();
+        Mac first = pool.acquire();
+        pool.release(first);
+
+        assertSame(first, pool.acquire());
+    }
+
+    @Test
+    void template_verifier_validates_id_token() throws DuoException {
+        CryptoContext crypto = new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST);
+        String idToken = idToken(Algorithm.HMAC512(CLIENT_SECRET));
+
+        DecodedJWT decoded = new DuoIdTokenValidator(crypto.getIdTokenVerifier(), USERNAME, null)
+            .validateAndDecode(idToken);
+        assertEquals(USERNAME, decoded.getClaim("preferred_username").asString());
+
+        assertThrows(DuoException.class,
+            () -> new DuoIdTokenValidator(crypto.getIdTokenVerifier(), "other", null)
+                .validateAndDecode(idToken));
+    }
+}
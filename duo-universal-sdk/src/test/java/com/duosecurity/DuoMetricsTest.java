@@ -0,0 +1,56 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuoMetricsTest {
+
+    @Test
+    void records_latency_and_errors() {
+        DuoMetrics metrics = new DuoMetrics();
+
+        metrics.record(DuoMetrics.Operation.HEALTH_CHECK, metrics.start() - TimeUnit.MILLISECONDS.toNanos(5), null);
+        metrics.record(DuoMetrics.Operation.HEALTH_CHECK, metrics.start(), new DuoException("error"));
+
+        MetricsSnapshot.OperationSnapshot healthCheck = metrics.snapshot().getOperation(DuoMetrics.Operation.HEALTH_CHECK);
+        assertEquals(2, healthCheck.getCount());
+        assertEquals(1, healthCheck.getErrorCount());
+        assertTrue(healthCheck.getLatency().getMax() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(0, metrics.snapshot().getOperation(DuoMetrics.Operation.TOKEN_EXCHANGE).getCount());
+    }
+
+    @Test
+    void disabled_metrics_do_not_read_the_clock() {
+        assertEquals(0, DuoMetrics.NONE.start());
+        DuoMetrics.NONE.record(DuoMetrics.Operation.HEALTH_CHECK, 0, null);
+
+        assertNull(DuoMetrics.NONE.snapshot().getOperation(DuoMetrics.Operation.HEALTH_CHECK));
+    }
+
+    @Test
+    void snapshot_adds_up_shared_retry_policies_and_circuit_breakers() throws Exception {
+        DuoMetrics metrics = new DuoMetrics();
+        RetryPolicy retryPolicy = new RetryPolicy.Builder().setBackoff(1, 1, TimeUnit.MILLISECONDS).build();
+        CircuitBreaker circuitBreaker = new CircuitBreaker.Builder().setSlidingWindow(1, 1).setHalfOpenCalls(1).build();
+        metrics.track(retryPolicy, circuitBreaker);
+        metrics.track(retryPolicy, circuitBreaker);
+        metrics.track(RetryPolicy.NONE, null);
+
+        assertThrows(DuoException.class, () -> retryPolicy.execute(true, null, () -> {
+            throw new DuoException("timeout", new SocketTimeoutException("timeout"));
+        }));
+        circuitBreaker.acquirePermit().complete(null, new DuoException("timeout", new IOException("timeout")));
+        assertThrows(DuoException.class, circuitBreaker::acquirePermit);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getRetryCount());
+        assertEquals(0, snapshot.getRetryBudgetExhaustedCount());
+        assertEquals(1, snapshot.getCircuitBreakerRejectedCount());
+    }
+}
@@ -0,0 +1,120 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.model.CachedHealthStatus;
+import com.duosecurity.model.HealthCheckResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HealthCheckCacheTest {
+
+    private static HealthCheckResponse response(String stat) {
+        HealthCheckResponse response = new HealthCheckResponse();
+        response.setStat(stat);
+        response.setMessage("message " + stat);
+        return response;
+    }
+
+    @Test
+    void unknown_before_first_check() {
+        HealthCheckCache cache = new HealthCheckCache(CompletableFuture::new, 1, 2, TimeUnit.MINUTES);
+
+        CachedHealthStatus status = cache.get();
+
+        assertFalse(status.isChecked());
+        assertFalse(status.isHealthy());
+        assertEquals(Long.MAX_VALUE, status.getAge(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void refresh_serves_result() {
+        HealthCheckCache cache = new HealthCheckCache(
+                () -> CompletableFuture.completedFuture(response("OK")), 1, 2, TimeUnit.MINUTES);
+
+        CachedHealthStatus refreshed = cache.refresh().join();
+
+        assertTrue(refreshed.isHealthy());
+        assertSame(refreshed, cache.get());
+        assertTrue(cache.get().getAge(TimeUnit.SECONDS) < 60);
+    }
+
+    @Test
+    void concurrent_refreshes_share_one_request() {
+        AtomicInteger requests = new AtomicInteger();
+        CompletableFuture<HealthCheckResponse> pending = new CompletableFuture<>();
+        HealthCheckCache cache = new HealthCheckCache(() -> {
+            requests.incrementAndGet();
+            return pending;
+        }, 1, 2, TimeUnit.MINUTES);
+
+        CompletableFuture<CachedHealthStatus> first = cache.refresh();
+        CompletableFuture<CachedHealthStatus> second = cache.refresh();
+        cache.get();
+
+        assertSame(first, second);
+        assertEquals(1, requests.get());
+
+        pending.complete(response("OK"));
+        assertTrue(first.join().isHealthy());
+
+        cache.refresh();
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void failed_check_is_unhealthy() {
+        CompletableFuture<HealthCheckResponse> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new CompletionException(new DuoException("Timeout")));
+        HealthCheckCache cache = new HealthCheckCache(() -> failure, 1, 2, TimeUnit.MINUTES);
+
+        CachedHealthStatus status = cache.refresh().join();
+
+        assertTrue(status.isChecked());
+        assertFalse(status.isHealthy());
+        assertEquals("Timeout", status.getErrorMessage());
+    }
+
+    @Test
+    void stat_not_OK_is_unhealthy() {
+        HealthCheckCache cache = new HealthCheckCache(
+                () -> CompletableFuture.completedFuture(response("FAIL")), 1, 2, TimeUnit.MINUTES);
+
+        CachedHealthStatus status = cache.refresh().join();
+
+        assertFalse(status.isHealthy());
+        assertEquals("message FAIL", status.getErrorMessage());
+    }
+
+    @Test
+    void result_expires_after_time_to_live() throws InterruptedException {
+        HealthCheckCache cache = new HealthCheckCache(
+                () -> CompletableFuture.completedFuture(response("OK")), 1, 1, TimeUnit.MILLISECONDS);
+
+        CachedHealthStatus status = cache.refresh().join();
+        Thread.sleep(5);
+
+        assertTrue(status.isExpired());
+        assertFalse(status.isHealthy());
+    }
+
+    @Test
+    void stale_read_triggers_refresh() throws InterruptedException {
+        AtomicInteger requests = new AtomicInteger();
+        HealthCheckCache cache = new HealthCheckCache(() -> {
+            requests.incrementAndGet();
+            return CompletableFuture.completedFuture(response("OK"));
+        }, 1, 1, TimeUnit.MILLISECONDS);
+        cache.refresh().join();
+        Thread.sleep(5);
+
+        cache.get();
+
+        assertEquals(2, requests.get());
+    }
+}
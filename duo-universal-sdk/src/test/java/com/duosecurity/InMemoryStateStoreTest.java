@@ -0,0 +1,143 @@
+package com.duosecurity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryStateStoreTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private InMemoryStateStore<String> store(int maximumSize) {
+        return new InMemoryStateStore<>(10, TimeUnit.SECONDS, maximumSize, now::get);
+    }
+
+    @Test
+    void consume_returns_value_once() {
+        InMemoryStateStore<String> store = store(100);
+
+        assertTrue(store.put("state", "user"));
+        assertEquals("user", store.consume("state"));
+        assertNull(store.consume("state"));
+        assertNull(store.consume("unknown"));
+        assertNull(store.consume(null));
+    }
+
+    @Test
+    void put_does_not_replace_existing_state() {
+        InMemoryStateStore<String> store = store(100);
+
+        assertTrue(store.put("state", "user"));
+        assertFalse(store.put("state", "attacker"));
+        assertEquals("user", store.consume("state"));
+    }
+
+    @Test
+    void expired_state_is_not_returned() {
+        InMemoryStateStore<String> store = store(100);
+        store.put("state", "user");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+
+        assertNull(store.consume("state"));
+        assertEquals(1, store.getExpirationCount());
+    }
+
+    @Test
+    void remove_expired() {
+        InMemoryStateStore<String> store = store(1000);
+        for (int i = 0; i < 100; i++) {
+            store.put("old" + i, "user");
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        store.put("new", "user");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(6));
+
+        assertEquals(100, store.removeExpired());
+        assertEquals(1, store.size());
+        assertEquals(100, store.getExpirationCount());
+        assertEquals("user", store.consume("new"));
+    }
+
+    @Test
+    void put_removes_expired_states() {
+        InMemoryStateStore<String> store = store(10);
+        store.put("old", "user");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+
+        store.put("new", "user");
+
+        assertEquals(1, store.size());
+        assertEquals(0, store.getEvictionCount());
+    }
+
+    @Test
+    void size_is_bounded_by_evicting_oldest() {
+        InMemoryStateStore<String> store = store(10);
+        for (int i = 0; i < 25; i++) {
+            store.put("state" + i, "user" + i);
+        }
+
+        assertEquals(10, store.size());
+        assertEquals(15, store.getEvictionCount());
+        assertNull(store.consume("state0"));
+        assertEquals("user24", store.consume("state24"));
+    }
+
+    @Test
+    void rejects_invalid_arguments() {
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryStateStore<String>(0, TimeUnit.SECONDS, 10));
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryStateStore<String>(10, TimeUnit.SECONDS, 0));
+        assertThrows(IllegalArgumentException.class, () -> store(10).put(null, "user"));
+        assertThrows(IllegalArgumentException.class, () -> store(10).put("state", null));
+    }
+
+    @Test
+    void concurrent_consume_succeeds_once() throws Exception {
+        InMemoryStateStore<String> store = new InMemoryStateStore<>(1, TimeUnit.MINUTES, 1000000);
+        int states = 10000;
+        for (int i = 0; i < states; i++) {
+            assertTrue(store.put("state" + i, "user" + i));
+        }
+
+        int threads = 16;
+        AtomicInteger consumed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < states; i++) {
+                        String value = store.consume("state" + i);
+                        if (value != null) {
+                            assertEquals("user" + i, value);
+                            consumed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(states, consumed.get());
+        assertEquals(0, store.size());
+    }
+}
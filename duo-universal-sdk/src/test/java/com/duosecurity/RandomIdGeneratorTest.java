@@ -0,0 +1,117 @@
+package com.duosecurity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RandomIdGeneratorTest {
+
+    private static final int THREADS = 64;
+    private static final int IDS_PER_THREAD = 2000;
+
+    private static void assertHex(String id, int length) {
+        assertEquals(length, id.length());
+        assertTrue(id.matches("[0-9a-f]+"), id);
+    }
+
+    private static Set<String> generateConcurrently(Supplier<String> generator) throws Exception {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        ids.add(generator.get());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return ids;
+    }
+
+    @Test
+    void hex_has_requested_length() {
+        for (int length = 1; length <= 65; length++) {
+            assertHex(RandomIdGenerator.hex(length), length);
+        }
+    }
+
+    @Test
+    void hex_uses_every_digit() {
+        StringBuilder all = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            all.append(RandomIdGenerator.hex(36));
+        }
+        for (char c : "0123456789abcdef".toCharArray()) {
+            assertTrue(all.indexOf(String.valueOf(c)) >= 0, String.valueOf(c));
+        }
+    }
+
+    @Test
+    void unique_under_contention() throws Exception {
+        Set<String> ids = generateConcurrently(() -> RandomIdGenerator.hex(36));
+
+        assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+        ids.forEach(id -> assertHex(id, 36));
+    }
+
+    @Test
+    void prefetched_unique_under_contention() throws Exception {
+        PrefetchedIds prefetched = new PrefetchedIds(36, 256);
+        try {
+            Set<String> ids = generateConcurrently(prefetched::next);
+
+            assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+            ids.forEach(id -> assertHex(id, 36));
+        } finally {
+            prefetched.close();
+        }
+    }
+
+    @Test
+    void prefetched_fills_in_background() throws InterruptedException {
+        PrefetchedIds prefetched = new PrefetchedIds(36, 64);
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (prefetched.available() < 64 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(64, prefetched.available());
+
+            assertHex(prefetched.next(), 36);
+            assertTrue(prefetched.available() < 64);
+        } finally {
+            prefetched.close();
+        }
+    }
+
+    @Test
+    void prefetched_generates_when_closed() {
+        PrefetchedIds prefetched = new PrefetchedIds(36, 64);
+        prefetched.close();
+
+        assertEquals(0, prefetched.available());
+        assertHex(prefetched.next(), 36);
+    }
+}
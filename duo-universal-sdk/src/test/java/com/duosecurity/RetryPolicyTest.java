@@ -0,0 +1,235 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.CircuitBreakerOpenException;
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.exception.DuoResponseException;
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private static final DuoException READ_TIMEOUT =
+            new DuoException("timeout", new SocketTimeoutException("timeout"));
+
+    private static final DuoException CONNECT_REFUSED =
+            new DuoException("refused", new ConnectException("Connection refused"));
+
+    private RetryPolicy policy(int maxAttempts) {
+        return new RetryPolicy.Builder()
+                .setMaxAttempts(maxAttempts)
+                .setBackoff(1, 5, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private RetryPolicy.Attempt<String> failing(AtomicInteger calls, DuoException error, int failures) {
+        return () -> {
+            if (calls.incrementAndGet() <= failures) {
+                throw error;
+            }
+            return "ok";
+        };
+    }
+
+    @Test
+    void classifies_errors() {
+        assertTrue(RetryPolicy.isRetryable(READ_TIMEOUT, true));
+        assertFalse(RetryPolicy.isRetryable(READ_TIMEOUT, false));
+        assertTrue(RetryPolicy.isRetryable(CONNECT_REFUSED, false));
+        assertTrue(RetryPolicy.isRetryable(new DuoException("dns", new UnknownHostException("api")), false));
+        assertTrue(RetryPolicy.isRetryable(
+                new DuoException("connect", new SocketTimeoutException("connect timed out")), false));
+        assertTrue(RetryPolicy.isRetryable(new DuoResponseException("unavailable", 503), true));
+        assertTrue(RetryPolicy.isRetryable(new DuoResponseException("slow down", 429), true));
+        assertFalse(RetryPolicy.isRetryable(new DuoResponseException("unavailable", 503), false));
+        assertFalse(RetryPolicy.isRetryable(new DuoResponseException("bad request", 400), true));
+        assertFalse(RetryPolicy.isRetryable(new DuoException("unhealthy"), true));
+        assertFalse(RetryPolicy.isRetryable(new CircuitBreakerOpenException("open"), true));
+        assertFalse(RetryPolicy.isRetryable(
+                new DuoException("pinning", new SSLHandshakeException("pin mismatch")), true));
+        assertTrue(RetryPolicy.isRetryable(new CompletionException(CONNECT_REFUSED), false));
+    }
+
+    @Test
+    void retries_only_transport_errors() {
+        DuoException reset = new DuoException("reset", new SocketException("Connection reset"));
+        DuoException truncated = new DuoException("truncated", new EOFException("\\n not found"));
+        DuoException unparsable = new DuoException("bad body",
+                new JsonParseException(null, "Unexpected character"));
+        assertTrue(RetryPolicy.isRetryable(reset, true));
+        assertTrue(RetryPolicy.isRetryable(truncated, true));
+        assertFalse(RetryPolicy.isRetryable(reset, false));
+        assertFalse(RetryPolicy.isRetryable(unparsable, true));
+        assertFalse(RetryPolicy.isRetryable(new DuoException("io", new IOException("other")), true));
+    }
+
+    @Test
+    void retries_idempotent_calls_until_success() throws DuoException {
+        RetryPolicy policy = policy(3);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("ok", policy.execute(true, null, failing(calls, READ_TIMEOUT, 2)));
+
+        assertEquals(3, calls.get());
+        assertEquals(2, policy.getRetryCount());
+    }
+
+    @Test
+    void does_not_retry_token_exchange_that_may_have_been_received() {
+        RetryPolicy policy = policy(3);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertSame(READ_TIMEOUT,
+                assertThrows(DuoException.class, () -> policy.execute(false, null, failing(calls, READ_TIMEOUT, 1))));
+
+        assertEquals(1, calls.get());
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    void retries_token_exchange_that_never_connected() throws DuoException {
+        RetryPolicy policy = policy(3);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("ok", policy.execute(false, null, failing(calls, CONNECT_REFUSED, 1)));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void stops_at_max_attempts() {
+        RetryPolicy policy = policy(3);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(DuoException.class, () -> policy.execute(true, null, failing(calls, READ_TIMEOUT, 5)));
+
+        assertEquals(3, calls.get());
+        assertEquals(2, policy.getRetryCount());
+    }
+
+    @Test
+    void budget_limits_retries() {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setMaxAttempts(5)
+                .setBackoff(1, 1, TimeUnit.MILLISECONDS)
+                .setRetryBudget(2, 0)
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(DuoException.class, () -> policy.execute(true, null, failing(calls, READ_TIMEOUT, 5)));
+
+        assertEquals(3, calls.get());
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(1, policy.getBudgetExhaustedCount());
+        assertEquals(0, policy.getAvailableRetryTokens());
+    }
+
+    @Test
+    void requests_refill_the_budget() throws DuoException {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setBackoff(1, 1, TimeUnit.MILLISECONDS)
+                .setRetryBudget(1, 0.5)
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals("ok", policy.execute(true, null, failing(calls, READ_TIMEOUT, 1)));
+        assertEquals(0, policy.getAvailableRetryTokens());
+
+        policy.execute(true, null, () -> "ok");
+        policy.execute(true, null, () -> "ok");
+
+        assertEquals(1, policy.getAvailableRetryTokens());
+    }
+
+    @Test
+    void deadline_stops_retries() {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setBackoff(1, 1, TimeUnit.SECONDS)
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(DuoException.class, () -> policy.execute(true, Deadline.after(500, TimeUnit.MILLISECONDS),
+                failing(calls, READ_TIMEOUT, 1)));
+
+        assertEquals(1, calls.get());
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    void no_retries_makes_one_attempt() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(DuoException.class,
+                () -> RetryPolicy.NONE.execute(true, null, failing(calls, READ_TIMEOUT, 1)));
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void retries_async_calls() throws Exception {
+        RetryPolicy policy = policy(3);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> result = policy.executeAsync(false, () -> {
+            CompletableFuture<String> attempt = new CompletableFuture<>();
+            if (calls.incrementAndGet() == 1) {
+                attempt.completeExceptionally(new CompletionException(CONNECT_REFUSED));
+            } else {
+                attempt.complete("ok");
+            }
+            return attempt;
+        });
+
+        assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+        assertEquals(1, policy.getRetryCount());
+    }
+
+    @Test
+    void async_failure_completes_with_the_last_error() {
+        RetryPolicy policy = policy(3);
+
+        CompletableFuture<String> result = policy.executeAsync(false, () -> {
+            CompletableFuture<String> attempt = new CompletableFuture<>();
+            attempt.completeExceptionally(READ_TIMEOUT);
+            return attempt;
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertSame(READ_TIMEOUT, e.getCause());
+    }
+
+    @Test
+    void cancelling_async_call_cancels_the_attempt_in_flight() {
+        RetryPolicy policy = policy(3);
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+
+        CompletableFuture<String> result = policy.executeAsync(true, () -> attempt);
+        result.cancel(true);
+
+        assertTrue(attempt.isCancelled());
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    void rejects_invalid_settings() {
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy.Builder().setMaxAttempts(0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RetryPolicy.Builder().setBackoff(2, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy.Builder().setRetryBudget(0, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy.Builder().setRetryBudget(1, 2));
+    }
+}
@@ -0,0 +1,93 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignedStateCodecTest {
+
+    private static final byte[] KEY = "IZjstQj23454IB2H1qhoQj23Ws2ddZfIOGSxOGSx".getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toMillis(1_700_000_000L));
+
+    private SignedStateCodec codec(byte[] key) {
+        return new SignedStateCodec(key, 15, TimeUnit.MINUTES, now::get);
+    }
+
+    @Test
+    void decode_returns_the_encoded_login() throws DuoException {
+        SignedStateCodec codec = codec(KEY);
+
+        String state = codec.encode("\u00fcsername");
+        SignedStateCodec.SignedState decoded = codec.decode(state);
+
+        assertTrue(state.matches("[A-Za-z0-9_-]+"), state);
+        assertEquals("\u00fcsername", decoded.getUsername());
+        assertEquals(1_700_000_000L, decoded.getIssuedAt().getEpochSecond());
+        assertEquals(1_700_000_900L, decoded.getExpiresAt().getEpochSecond());
+        // A node with the same key accepts it
+        assertEquals("\u00fcsername", codec(KEY.clone()).decode(state).getUsername());
+    }
+
+    @Test
+    void states_are_unique_and_within_the_length_limits() throws DuoException {
+        SignedStateCodec codec = codec(KEY);
+        StringBuilder longest = new StringBuilder();
+        for (int i = 0; i < 707; i++) {
+            longest.append('a');
+        }
+
+        String shortest = codec.encode("a");
+        assertNotEquals(shortest, codec.encode("a"));
+        assertEquals(83, shortest.length());
+        assertEquals(1024, codec.encode(longest.toString()).length());
+        assertThrows(DuoException.class, () -> codec.encode(longest.append('a').toString()));
+        assertThrows(DuoException.class, () -> codec.encode(""));
+        Validator.validateState(shortest);
+    }
+
+    @Test
+    void expired_state_is_rejected() throws DuoException {
+        SignedStateCodec codec = codec(KEY);
+        String state = codec.encode("username");
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(15) - 1000);
+        assertEquals("username", codec.decode(state).getUsername());
+        now.addAndGet(1000);
+
+        DuoException e = assertThrows(DuoException.class, () -> codec.decode(state));
+        assertEquals("Expired state", e.getMessage());
+    }
+
+    @Test
+    void altered_or_foreign_state_is_rejected() throws DuoException {
+        SignedStateCodec codec = codec(KEY);
+        String state = codec.encode("username");
+        byte[] bytes = Base64.getUrlDecoder().decode(state);
+        bytes[bytes.length - 40] ^= 1;
+        String altered = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        byte[] otherKey = KEY.clone();
+        otherKey[0] ^= 1;
+
+        assertThrows(DuoException.class, () -> codec.decode(altered));
+        assertThrows(DuoException.class, () -> codec(otherKey).decode(state));
+        assertThrows(DuoException.class, () -> codec.decode(state.substring(1)));
+        assertThrows(DuoException.class, () -> codec.decode("not+base64url"));
+        assertThrows(DuoException.class, () -> codec.decode("abcdefghijklmnopqrstuvwxyz123456"));
+        assertThrows(DuoException.class, () -> codec.decode(null));
+    }
+
+    @Test
+    void codec_arguments_must_be_valid() {
+        assertThrows(IllegalArgumentException.class, () -> new SignedStateCodec(null, 1, TimeUnit.MINUTES));
+        assertThrows(IllegalArgumentException.class, () -> new SignedStateCodec(new byte[31], 1, TimeUnit.MINUTES));
+        assertThrows(IllegalArgumentException.class, () -> new SignedStateCodec(KEY, 999, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new SignedStateCodec(KEY, 1, null));
+    }
+}
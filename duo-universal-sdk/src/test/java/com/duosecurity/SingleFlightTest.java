@@ -0,0 +1,163 @@
+package com.duosecurity;
+
+import com.duosecurity.exception.DuoException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrent_async_calls_share_one_request() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        SingleFlight<String> flight = new SingleFlight<>(0, TimeUnit.SECONDS);
+
+        CompletableFuture<String> first = flight.executeAsync("code", () -> {
+            calls.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<String> second = flight.executeAsync("code", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        pending.complete("token");
+
+        assertEquals("token", first.get());
+        assertEquals("token", second.get());
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void blocking_duplicate_waits_for_the_first_call() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlight<String> flight = new SingleFlight<>(0, TimeUnit.SECONDS);
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return flight.execute("code", null, () -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    awaitUninterruptibly(release);
+                    return "token";
+                });
+            } catch (DuoException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        started.await();
+        CompletableFuture<String> second = flight.executeAsync("code", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        release.countDown();
+
+        assertEquals("token", first.get(5, TimeUnit.SECONDS));
+        assertEquals("token", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void errors_are_shared_but_not_kept() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        SingleFlight<String> flight = new SingleFlight<>(1, TimeUnit.MINUTES);
+
+        CompletableFuture<String> first = flight.executeAsync("code", () -> pending);
+        CompletableFuture<String> second = flight.executeAsync("code", CompletableFuture::new);
+        DuoException error = new DuoException("invalid_grant");
+        pending.completeExceptionally(error);
+
+        assertSame(error, assertThrows(ExecutionException.class, first::get).getCause());
+        assertSame(error, assertThrows(ExecutionException.class, second::get).getCause());
+        assertEquals(0, flight.size());
+        assertEquals("retried", flight.execute("code", null, () -> "retried"));
+    }
+
+    @Test
+    void results_are_kept_for_the_time_to_live() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        SingleFlight<String> kept = new SingleFlight<>(1, TimeUnit.MINUTES);
+        SingleFlight<String> expired = new SingleFlight<>(1, TimeUnit.NANOSECONDS);
+
+        kept.execute("code", null, () -> "token" + calls.incrementAndGet());
+        kept.execute("code", null, () -> "token" + calls.incrementAndGet());
+        expired.execute("code", null, () -> "token" + calls.incrementAndGet());
+        Thread.sleep(1);
+        expired.execute("code", null, () -> "token" + calls.incrementAndGet());
+
+        assertEquals("token1", kept.execute("code", null, () -> "token" + calls.incrementAndGet()));
+        assertEquals(3, calls.get());
+        assertEquals(1, kept.size());
+    }
+
+    @Test
+    void blocking_duplicate_gives_up_at_its_deadline() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        SingleFlight<String> flight = new SingleFlight<>(0, TimeUnit.SECONDS);
+        flight.executeAsync("code", () -> pending);
+
+        DuoException e = assertThrows(DuoException.class, () ->
+                flight.execute("code", Deadline.after(10, TimeUnit.MILLISECONDS), () -> "other"));
+
+        assertTrue(e.getMessage().contains("deadline"));
+        assertFalse(pending.isDone());
+    }
+
+    @Test
+    void request_is_cancelled_once_every_caller_has_cancelled() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        SingleFlight<String> flight = new SingleFlight<>(0, TimeUnit.SECONDS);
+        CompletableFuture<String> first = flight.executeAsync("code", () -> pending);
+        CompletableFuture<String> second = flight.executeAsync("code", CompletableFuture::new);
+
+        first.cancel(true);
+        assertFalse(pending.isDone());
+        second.cancel(true);
+
+        assertTrue(pending.isCancelled());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void async_cancel_does_not_cancel_the_request_under_a_blocking_caller() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        SingleFlight<String> flight = new SingleFlight<>(0, TimeUnit.SECONDS);
+        CompletableFuture<String> first = flight.executeAsync("code", () -> pending);
+
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return flight.execute("code", null, () -> "other");
+            } catch (DuoException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Deadline joined = Deadline.after(5, TimeUnit.SECONDS);
+        while (flight.waiters("code") < 2 && joined.remainingNanos() > 0) {
+            Thread.yield();
+        }
+        assertEquals(2, flight.waiters("code"));
+        first.cancel(true);
+        assertFalse(pending.isDone());
+        pending.complete("token");
+
+        assertEquals("token", second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.waiters("code"));
+    }
+}
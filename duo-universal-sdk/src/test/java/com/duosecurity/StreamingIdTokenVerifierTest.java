@@ -0,0 +1,237 @@
+package com.duosecurity;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import com.duosecurity.exception.DuoException;
+import com.duosecurity.model.Token;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingIdTokenVerifierTest {
+
+    private static final String CLIENT_ID = "DIXXXXXXXXXXXXXXXXXX";
+    private static final String CLIENT_SECRET = "abcdefghijklmnopqrstuvwxyzabcdefghijklmn";
+    private static final String API_HOST = "api-abcdefgh.duosecurity.com";
+    private static final String ISSUER = "https://" + API_HOST + "/oauth/v1/token";
+    private static final String USERNAME = "user";
+    private static final String HS512_HEADER = "{\"alg\":\"HS512\",\"typ\":\"JWT\"}";
+
+    private static final long NOW = System.currentTimeMillis() / 1000;
+
+    private static final String AUTH_CONTEXT = "\"auth_context\":{\"result\":\"allow\","
+        + "\"timestamp\":1600000000,\"txid\":\"tx\",\"event_type\":\"authentication\","
+        + "\"reason\":\"user_approved\",\"factor\":\"duo_push\","
+        + "\"auth_device\":{\"ip\":\"1.2.3.4\",\"name\":\"phone\","
+        + "\"location\":{\"city\":\"Ann Arbor\",\"state\":\"Michigan\",\"country\":\"US\"}},"
+        + "\"access_device\":{\"ip\":\"5.6.7.8\",\"hostname\":null,\"location\":null},"
+        + "\"application\":{\"key\":\"DIXXXXXXXXXXXXXXXXXX\",\"name\":\"app\"},"
+        + "\"user\":{\"key\":\"DUXXXXXXXXXXXXXXXXXX\",\"name\":\"user\",\"groups\":[]}}";
+
+    private static final String AUTH_RESULT =
+        "\"auth_result\":{\"status_msg\":\"Login Successful\",\"status\":\"allow\",\"result\":\"allow\"}";
+
+    private static String claims(String... extra) {
+        StringBuilder sb = new StringBuilder("{");
+        for (String claim : extra) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(claim);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String base64(String json) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sign(String header, String payload, String secret) {
+        String content = base64(header) + "." + base64(payload);
+        byte[] signature = Algorithm.HMAC512(secret).sign(content.getBytes(StandardCharsets.US_ASCII));
+        return content + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    private static String sign(String payload) {
+        return sign(HS512_HEADER, payload, CLIENT_SECRET);
+    }
+
+    private static String iss() {
+        return "\"iss\":\"" + ISSUER + "\"";
+    }
+
+    private static String aud() {
+        return "\"aud\":\"" + CLIENT_ID + "\"";
+    }
+
+    private static String exp(long secondsFromNow) {
+        return "\"exp\":" + (NOW + secondsFromNow);
+    }
+
+    private static String iat(long secondsFromNow) {
+        return "\"iat\":" + (NOW + secondsFromNow);
+    }
+
+    private static String username(String username) {
+        return "\"preferred_username\":\"" + username + "\"";
+    }
+
+    private static List<String> corpus() {
+        List<String> tokens = new ArrayList<>();
+        // Accepted
+        tokens.add(sign(claims(iss(), aud(), exp(300), iat(0), "\"sub\":\"" + USERNAME + "\"",
+            username(USERNAME), "\"auth_time\":" + NOW, AUTH_CONTEXT, AUTH_RESULT)));
+        tokens.add(sign(claims(username(USERNAME), iss(), aud())));
+        tokens.add(sign(claims(iss(), "\"aud\":[\"other\",\"" + CLIENT_ID + "\"]", exp(-30),
+            username(USERNAME))));
+        tokens.add(sign(claims(iss(), aud(), "\"exp\":" + NOW + ".9", "\"iat\":" + NOW + ".5",
+            username(USERNAME), "\"auth_time\":12.7")));
+        tokens.add(sign(claims(iss(), aud(), username(USERNAME), "\"exp\":null", "\"iat\":null")));
+        tokens.add(sign(claims(iss(), aud(), username(USERNAME), "\"auth_context\":\"none\"",
+            "\"auth_result\":[1]")));
+        tokens.add(sign(claims(iss(), aud(), username(USERNAME),
+            "\"auth_context\":{\"result\":1.5,\"txid\":true,\"reason\":{\"a\":[1,\"b\"]},"
+                + "\"factor\":[null],\"timestamp\":null,\"user\":null}")));
+        tokens.add(sign(claims(iss(), aud(), username("someone else"), username(USERNAME),
+            "\"aud\":\"first\"", aud())));
+        tokens.add(sign(claims(iss(), aud(), username(USERNAME), "\"sub\":5", "\"iss2\":{}",
+            "\"nbf\":" + (NOW - 10))));
+        tokens.add(sign("{\"typ\":\"JWT\",\"alg\":\"HS512\",\"kid\":{\"x\":1}}",
+            claims(iss(), aud(), username(USERNAME)), CLIENT_SECRET));
+
+        // Rejected
+        tokens.add(sign(claims(iss(), aud(), exp(-120), username(USERNAME))));
+        tokens.add(sign(claims(iss(), aud(), iat(120), username(USERNAME))));
+        tokens.add(sign(claims(iss(), aud(), "\"nbf\":" + (NOW + 120), username(USERNAME))));
+        tokens.add(sign(claims(aud(), username(USERNAME))));
+        tokens.add(sign(claims("\"iss\":\"https://other/oauth/v1/token\"", aud(),
+            username(USERNAME))));
+        tokens.add(sign(claims("\"iss\":null", aud(), username(USERNAME))));
+        tokens.add(sign(claims(iss(), username(USERNAME))));
+        tokens.add(sign(claims(iss(), "\"aud\":\"other\"", username(USERNAME))));
+        tokens.add(sign(claims(iss(), "\"aud\":[\"other\"]", username(USERNAME))));
+        tokens.add(sign(claims(iss(), "\"aud\":[{}]", username(USERNAME))));
+        tokens.add(sign(claims(iss(), "\"aud\":5", username(USERNAME))));
+        tokens.add(sign(claims(iss(), "\"aud\":null", username(USERNAME))));
+        tokens.add(sign(claims(iss(), aud())));
+        tokens.add(sign(claims(iss(), aud(), username("other"))));
+        tokens.add(sign(claims(iss(), aud(), "\"preferred_username\":null")));
+        tokens.add(sign(claims(iss(), aud(), "\"preferred_username\":5")));
+        tokens.add(sign(claims(iss(), aud(), username(USERNAME), "\"exp\":\"soon\"")));
+        tokens.add(sign(claims(iss(), aud(), username(USERNAME), "\"iat\":{}")));
+        tokens.add(sign(HS512_HEADER, claims(iss(), aud(), username(USERNAME)), "wrong secret"));
+        tokens.add(sign("{\"alg\":\"HS256\",\"typ\":\"JWT\"}", claims(iss(), aud(),
+            username(USERNAME)), CLIENT_SECRET));
+        tokens.add(sign("{\"typ\":\"JWT\"}", claims(iss(), aud(), username(USERNAME)),
+            CLIENT_SECRET));
+        tokens.add(sign("[]", claims(iss(), aud(), username(USERNAME)), CLIENT_SECRET));
+        tokens.add(sign("[]"));
+        tokens.add(sign("{\"iss\":"));
+        tokens.add(sign("not json"));
+        String valid = sign(claims(iss(), aud(), username(USERNAME)));
+        tokens.add(valid.substring(0, valid.lastIndexOf('.')));
+        tokens.add(valid + ".extra");
+        tokens.add(valid.substring(0, valid.lastIndexOf('.') + 1));
+        tokens.add(valid.replace('.', '!'));
+        tokens.add("a.b*.c");
+        tokens.add("\u00e9." + valid);
+        tokens.add("");
+        return tokens;
+    }
+
+    private static Token reference(String jwt, String username, String nonce) throws DuoException {
+        TokenValidator validator = new DuoIdTokenValidator(CLIENT_SECRET, username, CLIENT_ID,
+            API_HOST, nonce);
+        return Utils.transformDecodedJwtToToken(validator.validateAndDecode(jwt));
+    }
+
+    private static void assertEquivalent(StreamingIdTokenVerifier verifier, String jwt,
+                                         String username, String nonce) {
+        Token expected;
+        try {
+            expected = reference(jwt, username, nonce);
+        } catch (DuoException e) {
+            assertThrows(DuoException.class, () -> verifier.verify(jwt, username, nonce), jwt);
+            return;
+        }
+        try {
+            assertEquals(expected, verifier.verify(jwt, username, nonce), jwt);
+        } catch (DuoException e) {
+            fail("Rejected a token the reference accepts: " + jwt, e);
+        }
+    }
+
+    private static StreamingIdTokenVerifier verifier() {
+        return new CryptoContext(CLIENT_ID, CLIENT_SECRET, API_HOST).getStreamingIdTokenVerifier();
+    }
+
+    @Test
+    void matches_validator_and_transform_on_corpus() {
+        StreamingIdTokenVerifier verifier = verifier();
+        int accepted = 0;
+        for (String jwt : corpus()) {
+            assertEquivalent(verifier, jwt, USERNAME, null);
+            try {
+                verifier.verify(jwt, USERNAME, null);
+                accepted++;
+            } catch (DuoException e) {
+                // counted by the reference comparison
+            }
+        }
+        assertEquals(10, accepted);
+    }
+
+    @Test
+    void decodes_full_token() throws DuoException {
+        String jwt = sign(claims(iss(), aud(), exp(300), iat(0), "\"sub\":\"" + USERNAME + "\"",
+            username(USERNAME), "\"auth_time\":" + NOW, AUTH_CONTEXT, AUTH_RESULT));
+
+        Token token = verifier().verify(jwt, USERNAME, null);
+
+        assertEquals("allow", token.getAuth_result().getStatus());
+        assertEquals("Ann Arbor", token.getAuth_context().getAuth_device().getLocation().getCity());
+        assertNull(token.getAuth_context().getAccess_device().getLocation());
+        assertEquals(1600000000, token.getAuth_context().getTimestamp());
+        assertEquals(token, reference(jwt, USERNAME, null));
+    }
+
+    @Test
+    void checks_nonce_when_given() {
+        StreamingIdTokenVerifier verifier = verifier();
+        String withNonce = sign(claims(iss(), aud(), username(USERNAME), "\"nonce\":\"n\""));
+        String withoutNonce = sign(claims(iss(), aud(), username(USERNAME)));
+
+        assertDoesNotThrow(() -> verifier.verify(withNonce, USERNAME, "n"));
+        assertThrows(DuoException.class, () -> verifier.verify(withNonce, USERNAME, "m"));
+        assertThrows(DuoException.class, () -> verifier.verify(withoutNonce, USERNAME, "n"));
+        assertEquivalent(verifier, withNonce, USERNAME, "n");
+        assertEquivalent(verifier, withNonce, USERNAME, "m");
+        assertEquivalent(verifier, withoutNonce, USERNAME, "n");
+    }
+
+    @Test
+    void null_token_failure() {
+        DuoException e = assertThrows(DuoException.class, () -> verifier().verify(null, USERNAME, null));
+        assertEquals("ID Token verification failed: Null token", e.getMessage());
+    }
+
+    @Test
+    void wrongly_typed_model_fields_fail_with_duo_exception() {
+        StreamingIdTokenVerifier verifier = verifier();
+        String[] contexts = {
+            "\"auth_context\":{\"timestamp\":\"yesterday\"}",
+            "\"auth_context\":{\"timestamp\":12345678901}",
+            "\"auth_context\":{\"user\":\"name\"}",
+            "\"auth_context\":{\"auth_device\":{\"location\":[]}}"
+        };
+        for (String context : contexts) {
+            String jwt = sign(claims(iss(), aud(), username(USERNAME), context));
+            assertThrows(DuoException.class, () -> verifier.verify(jwt, USERNAME, null), context);
+        }
+    }
+}
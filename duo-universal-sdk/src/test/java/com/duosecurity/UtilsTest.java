@@ -87,6 +87,16 @@ class UtilsTest {
         assertEquals(result.getFile(), "/file");
     }
 
+    @Test
+    void getAndValidateUrl_with_port() throws DuoException {
+        URL result = Utils.getAndValidateUrl("localhost:8443", "/file");
+        assertEquals("https://localhost:8443/file", result.toString());
+        assertEquals(8443, result.getPort());
+
+        assertThrows(DuoException.class, () -> Utils.getAndValidateUrl("localhost:port", "/file"));
+        assertThrows(DuoException.class, () -> Utils.getAndValidateUrl("localhost:70000", "/file"));
+    }
+
     @Test
     void generateJWTId() {
         String jwtId = Utils.generateJwtId(32);
@@ -95,4 +105,39 @@ class UtilsTest {
             assertTrue(Character.isLetterOrDigit(c));
         }
     }
+
+    @Test
+    void spkiPins_rejects_invalid_certificate() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Utils.spkiPins(new String[] {"sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA="}));
+    }
+
+    @Test
+    void pins_derives_certificates_and_keeps_hashes() {
+        // Amazon Root CA 1, as a whole certificate
+        String amazonRootCa1 = "sha256/MIIDQTCCAimgAwIBAgITBmyfz5m/jAo54vB4ikPmljZbyjANBgkqhkiG9w0BAQsF\n"
+                + "ADA5MQswCQYDVQQGEwJVUzEPMA0GA1UEChMGQW1hem9uMRkwFwYDVQQDExBBbWF6\n"
+                + "b24gUm9vdCBDQSAxMB4XDTE1MDUyNjAwMDAwMFoXDTM4MDExNzAwMDAwMFowOTEL\n"
+                + "MAkGA1UEBhMCVVMxDzANBgNVBAoTBkFtYXpvbjEZMBcGA1UEAxMQQW1hem9uIFJv\n"
+                + "b3QgQ0EgMTCCASIwDQYJKoZIhvcNAQEBBQADggEPADCCAQoCggEBALJ4gHHKeNXj\n"
+                + "ca9HgFB0fW7Y14h29Jlo91ghYPl0hAEvrAIthtOgQ3pOsqTQNroBvo3bSMgHFzZM\n"
+                + "9O6II8c+6zf1tRn4SWiw3te5djgdYZ6k/oI2peVKVuRF4fn9tBb6dNqcmzU5L/qw\n"
+                + "IFAGbHrQgLKm+a/sRxmPUDgH3KKHOVj4utWp+UhnMJbulHheb4mjUcAwhmahRWa6\n"
+                + "VOujw5H5SNz/0egwLX0tdHA114gk957EWW67c4cX8jJGKLhD+rcdqsq08p8kDi1L\n"
+                + "93FcXmn/6pUCyziKrlA4b9v7LWIbxcceVOF34GfID5yHI9Y/QCB/IIDEgEw+OyQm\n"
+                + "jgSubJrIqg0CAwEAAaNCMEAwDwYDVR0TAQH/BAUwAwEB/zAOBgNVHQ8BAf8EBAMC\n"
+                + "AYYwHQYDVR0OBBYEFIQYzIU07LwMlJQuCFmcx7IQTgoIMA0GCSqGSIb3DQEBCwUA\n"
+                + "A4IBAQCY8jdaQZChGsV2USggNiMOruYou6r4lK5IpDB/G/wkjUu0yKGX9rbxenDI\n"
+                + "U5PMCCjjmCXPI6T53iHTfIUJrU6adTrCC2qJeHZERxhlbI1Bjjt/msv0tadQ1wUs\n"
+                + "N+gDS63pYaACbvXy8MWy7Vu33PqUXHeeE6V/Uq2V8viTO96LXFvKWlJbYK8U90vv\n"
+                + "o/ufQJVtMVT8QtPHRh8jrdkPSHCa2XV4cdFyQzR1bldZwgJcJmApzyMZFo6IQ6XU\n"
+                + "5MsI+yMRQ+hDKXJioaldXgjUkK642M4UwtBV8ob2xJNDd2ZhwLnoQdeXeGADbkpy\n"
+                + "rqXRfboQnoZsG4q5WTP468SQvvG5";
+        String pin = "sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=";
+
+        String[] pins = Utils.pins(new String[] {amazonRootCa1, pin});
+
+        assertArrayEquals(new String[] {"sha256/++MBgDH5WGvL9Bcn5Be30cRcL0f5O+NyoXuWtQdX1aI=", pin}, pins);
+        assertThrows(IllegalArgumentException.class, () -> Utils.pins(new String[] {"sha256/AAAA"}));
+    }
 }
@@ -0,0 +1,62 @@
+package com.duosecurity.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void index_round_trip_stays_within_precision() {
+        for (long value = 0; value < 10000000; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            long highest = LatencyHistogram.highestValueAt(index);
+            assertTrue(highest >= value, "value " + value);
+            assertTrue(highest - value <= value / 64, "value " + value);
+            assertTrue(index == 0 || LatencyHistogram.highestValueAt(index - 1) < value, "value " + value);
+        }
+        assertEquals(Long.MAX_VALUE,
+                LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000000, histogram.getMax());
+        assertEquals(50000500, histogram.getMean(), 1);
+        assertEquals(50000000, histogram.getValueAtPercentile(50), 50000000 / 64);
+        assertEquals(99000000, histogram.getValueAtPercentile(99), 99000000 / 64);
+        assertEquals(99900000, histogram.getValueAtPercentile(99.9), 99900000 / 64);
+        assertEquals(100000000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    void snapshot_keeps_used_buckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        histogram.reset();
+
+        assertEquals(100000, snapshot.getCount());
+        assertEquals(100000000, snapshot.getMax());
+        assertEquals(100000L * 100001 / 2 * 1000, snapshot.getTotal());
+        assertEquals(50000500, snapshot.getMean(), 1);
+        assertEquals(50000000, snapshot.getValueAtPercentile(50), 50000000 / 64);
+        assertEquals(99900000, snapshot.getValueAtPercentile(99.9), 99900000 / 64);
+        assertEquals(100000000, snapshot.getValueAtPercentile(100));
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+    }
+}
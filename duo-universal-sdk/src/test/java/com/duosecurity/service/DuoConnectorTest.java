@@ -1,18 +1,36 @@
 package com.duosecurity.service;
 
 import com.duosecurity.exception.DuoException;
+import com.duosecurity.exception.DuoResponseException;
+import com.duosecurity.metrics.NetworkMetrics;
 import com.duosecurity.model.HealthCheckResponse;
 import com.duosecurity.model.TokenResponse;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 
+import okhttp3.OkHttpClient;
+import okio.Timeout;
+
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class DuoConnectorTest {
@@ -26,13 +44,11 @@ class DuoConnectorTest {
     @Test
     void duoHealthcheck() throws IOException, DuoException {
         DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
-        Retrofit retrofit = Mockito.mock(Retrofit.class);
-        duoConnector.retrofit = retrofit;
         DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
         Call<HealthCheckResponse> callSync = Mockito.mock(Call.class);
         HealthCheckResponse healthCheckResponse = new HealthCheckResponse();
         healthCheckResponse.setMessage("success");
-        when(retrofit.create(DuoService.class)).thenReturn(duoService);
         when(duoService.duoHealthCheck("client_id", "client_assertion")).thenReturn(callSync);
         when(callSync.execute()).thenReturn(Response.success(healthCheckResponse));
 
@@ -41,15 +57,31 @@ class DuoConnectorTest {
     }
 
     @Test
-    void duoHealthcheck_network_failure() throws IOException, DuoException {
+    void service_is_created_once() throws IOException, DuoException {
         DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
+        assertNotNull(duoConnector.service);
         Retrofit retrofit = Mockito.mock(Retrofit.class);
         duoConnector.retrofit = retrofit;
         DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
+        Call<HealthCheckResponse> callSync = Mockito.mock(Call.class);
+        when(duoService.duoHealthCheck("client_id", "client_assertion")).thenReturn(callSync);
+        when(callSync.execute()).thenReturn(Response.success(new HealthCheckResponse()));
+
+        duoConnector.duoHealthcheck("client_id", "client_assertion");
+        duoConnector.duoHealthcheck("client_id", "client_assertion");
+
+        Mockito.verifyNoInteractions(retrofit);
+    }
+
+    @Test
+    void duoHealthcheck_network_failure() throws IOException, DuoException {
+        DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
+        DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
         Call<HealthCheckResponse> callSync = Mockito.mock(Call.class);
         HealthCheckResponse healthCheckResponse = new HealthCheckResponse();
         healthCheckResponse.setMessage("success");
-        when(retrofit.create(DuoService.class)).thenReturn(duoService);
         when(duoService.duoHealthCheck("client_id", "client_assertion")).thenReturn(callSync);
         when(callSync.execute()).thenThrow(new IOException("Timeout"));
 
@@ -65,13 +97,11 @@ class DuoConnectorTest {
     @Test
     void exchangeAuthorizationCodeFor2FAResult() throws IOException, DuoException {
         DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
-        Retrofit retrofit = Mockito.mock(Retrofit.class);
-        duoConnector.retrofit = retrofit;
         DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
         Call<TokenResponse> callSync = Mockito.mock(Call.class);
         TokenResponse tokenResponse = new TokenResponse();
         tokenResponse.setId_token("token");
-        when(retrofit.create(DuoService.class)).thenReturn(duoService);
         when(duoService.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type", "duo_code", "redirect_uri",
                 "client_assertion_type", "client_assertion")).thenReturn(callSync);
         when(callSync.execute()).thenReturn(Response.success(tokenResponse));
@@ -84,13 +114,11 @@ class DuoConnectorTest {
     @Test
     void exchangeAuthorizationCodeFor2FAResult_network_failure() throws IOException, DuoException {
         DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
-        Retrofit retrofit = Mockito.mock(Retrofit.class);
-        duoConnector.retrofit = retrofit;
         DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
         Call<TokenResponse> callSync = Mockito.mock(Call.class);
         TokenResponse tokenResponse = new TokenResponse();
         tokenResponse.setId_token("token");
-        when(retrofit.create(DuoService.class)).thenReturn(duoService);
         when(duoService.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type", "duo_code", "redirect_uri",
                 "client_assertion_type", "client_assertion")).thenReturn(callSync);
         when(callSync.execute()).thenThrow(new IOException("Timeout"));
@@ -105,14 +133,49 @@ class DuoConnectorTest {
         }
     }
 
+    @Test
+    void duoHealthcheck_with_timeout_limits_the_call() throws IOException, DuoException {
+        DuoConnector duoConnector = new DuoConnector(DuoTransport.create(API_HOST, null, null, CA_CERT), null,
+                new DuoTimeouts(10, 10, 10, 2, TimeUnit.SECONDS), null);
+        DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
+        Call<HealthCheckResponse> callSync = Mockito.mock(Call.class);
+        Timeout timeout = new Timeout();
+        when(duoService.duoHealthCheck("client_id", "client_assertion")).thenReturn(callSync);
+        when(callSync.timeout()).thenReturn(timeout);
+        when(callSync.execute()).thenReturn(Response.success(new HealthCheckResponse()));
+
+        duoConnector.duoHealthcheck("client_id", "client_assertion", 500, TimeUnit.MILLISECONDS);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), timeout.timeoutNanos());
+
+        // The call timeout still applies when it is shorter
+        duoConnector.duoHealthcheck("client_id", "client_assertion", 1, TimeUnit.MINUTES);
+        assertEquals(TimeUnit.SECONDS.toNanos(2), timeout.timeoutNanos());
+
+        assertThrows(DuoException.class,
+                () -> duoConnector.duoHealthcheck("client_id", "client_assertion", 0, TimeUnit.MILLISECONDS));
+        verify(callSync, Mockito.times(2)).execute();
+    }
+
+    @Test
+    void timeouts_are_applied_to_the_http_client() throws DuoException {
+        DuoConnector duoConnector = new DuoConnector(DuoTransport.create(API_HOST, null, null, CA_CERT), null,
+                new DuoTimeouts(1, 2, 3, 4, TimeUnit.SECONDS), null);
+        OkHttpClient httpClient = (OkHttpClient) duoConnector.retrofit.callFactory();
+
+        assertEquals(1000, httpClient.connectTimeoutMillis());
+        assertEquals(2000, httpClient.readTimeoutMillis());
+        assertEquals(3000, httpClient.writeTimeoutMillis());
+        assertEquals(4000, httpClient.callTimeoutMillis());
+        assertThrows(IllegalArgumentException.class, () -> new DuoTimeouts(-1, 0, 0, 0, TimeUnit.SECONDS));
+    }
+
     @Test
     void exchangeAuthorizationCodeFor2FAResult_error_code() throws IOException, DuoException {
         DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
-        Retrofit retrofit = Mockito.mock(Retrofit.class);
-        duoConnector.retrofit = retrofit;
         DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
         Call<TokenResponse> callSync = Mockito.mock(Call.class);
-        when(retrofit.create(DuoService.class)).thenReturn(duoService);
         when(duoService.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type", "duo_code", "redirect_uri",
                 "client_assertion_type", "client_assertion")).thenReturn(callSync);
 
@@ -126,17 +189,16 @@ class DuoConnectorTest {
             Assertions.fail();
         } catch (DuoException e) {
             assertEquals("msg=Response.error(), msg_detail=", e.getMessage());
+            assertEquals(400, ((DuoResponseException) e).getStatusCode());
         }
     }
 
     @Test
     void exchangeAuthorizationCodeFor2FAResult_null_body() throws IOException, DuoException {
         DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
-        Retrofit retrofit = Mockito.mock(Retrofit.class);
-        duoConnector.retrofit = retrofit;
         DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
         Call<TokenResponse> callSync = Mockito.mock(Call.class);
-        when(retrofit.create(DuoService.class)).thenReturn(duoService);
         when(duoService.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type", "duo_code", "redirect_uri",
                 "client_assertion_type", "client_assertion")).thenReturn(callSync);
 
@@ -153,4 +215,172 @@ class DuoConnectorTest {
             assertEquals("Response.success()", e.getMessage());
         }
     }
+
+    @Test
+    void duoHealthcheckAsync() throws Exception {
+        DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
+        DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
+        Call<HealthCheckResponse> call = Mockito.mock(Call.class);
+        HealthCheckResponse healthCheckResponse = new HealthCheckResponse();
+        healthCheckResponse.setMessage("success");
+        when(duoService.duoHealthCheck("client_id", "client_assertion")).thenReturn(call);
+        doAnswer(invocation -> {
+            Callback<HealthCheckResponse> callback = invocation.getArgument(0);
+            callback.onResponse(call, Response.success(healthCheckResponse));
+            return null;
+        }).when(call).enqueue(any());
+
+        HealthCheckResponse result = duoConnector.duoHealthcheckAsync("client_id", "client_assertion").get();
+        assertEquals("success", result.getMessage());
+    }
+
+    @Test
+    void exchangeAuthorizationCodeFor2FAResultAsync_network_failure() throws DuoException {
+        DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
+        DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
+        Call<TokenResponse> call = Mockito.mock(Call.class);
+        when(duoService.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type", "duo_code", "redirect_uri",
+                "client_assertion_type", "client_assertion")).thenReturn(call);
+        doAnswer(invocation -> {
+            Callback<TokenResponse> callback = invocation.getArgument(0);
+            callback.onFailure(call, new IOException("Timeout"));
+            return null;
+        }).when(call).enqueue(any());
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> duoConnector.exchangeAuthorizationCodeFor2FAResultAsync("user-agent", "grant_type", "duo_code",
+                        "redirect_uri", "client_assertion_type", "client_assertion").get());
+        assertTrue(e.getCause() instanceof DuoException);
+        assertEquals("Timeout", e.getCause().getMessage());
+    }
+
+    @Test
+    void exchangeAuthorizationCodeFor2FAResultAsync_cancel() throws DuoException {
+        DuoConnector duoConnector = new DuoConnector(API_HOST, CA_CERT);
+        DuoService duoService = Mockito.mock(DuoService.class);
+        duoConnector.service = duoService;
+        Call<TokenResponse> call = Mockito.mock(Call.class);
+        when(duoService.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type", "duo_code", "redirect_uri",
+                "client_assertion_type", "client_assertion")).thenReturn(call);
+
+        CompletableFuture<TokenResponse> future = duoConnector.exchangeAuthorizationCodeFor2FAResultAsync(
+                "user-agent", "grant_type", "duo_code", "redirect_uri", "client_assertion_type", "client_assertion");
+        future.cancel(true);
+
+        verify(call).cancel();
+    }
+
+    @Test
+    void engine_duoHealthcheck() throws IOException, DuoException {
+        HttpEngine engine = Mockito.mock(HttpEngine.class);
+        when(engine.post(eq("/oauth/v1/health_check"), any(), any(), eq(0L)))
+                .thenReturn(engineResponse(200, "{\"stat\": \"OK\"}"));
+        DuoConnector duoConnector = new DuoConnector(engine, null, DuoTimeouts.DEFAULT, null);
+
+        HealthCheckResponse result = duoConnector.duoHealthcheck("client_id", "client_assertion");
+
+        assertEquals("OK", result.getStat());
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("client_id", "client_id");
+        form.put("client_assertion", "client_assertion");
+        verify(engine).post("/oauth/v1/health_check", Collections.emptyMap(), form, 0L);
+        assertNull(duoConnector.retrofit);
+        duoConnector.close();
+        duoConnector.close();
+        verify(engine).close();
+    }
+
+    @Test
+    void engine_duoHealthcheck_with_timeout_limits_the_call() throws IOException, DuoException {
+        HttpEngine engine = Mockito.mock(HttpEngine.class);
+        when(engine.post(any(), any(), any(), anyLong())).thenReturn(engineResponse(200, "{\"stat\": \"OK\"}"));
+        DuoConnector duoConnector = new DuoConnector(engine, null,
+                new DuoTimeouts(10, 10, 10, 1, TimeUnit.SECONDS), null);
+
+        duoConnector.duoHealthcheck("client_id", "client_assertion", 5, TimeUnit.SECONDS);
+
+        verify(engine).post(any(), any(), any(), eq(TimeUnit.SECONDS.toNanos(1)));
+        assertThrows(DuoException.class,
+                () -> duoConnector.duoHealthcheck("client_id", "client_assertion", 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void engine_exchangeAuthorizationCodeFor2FAResult() throws IOException, DuoException {
+        HttpEngine engine = Mockito.mock(HttpEngine.class);
+        when(engine.post(eq("/oauth/v1/token"), eq(Collections.singletonMap("user-agent", "user-agent")), any(),
+                eq(0L))).thenReturn(engineResponse(200, "{\"id_token\": \"id_token\", \"expires_in\": 300}"));
+        DuoConnector duoConnector = new DuoConnector(engine, null, DuoTimeouts.DEFAULT, null);
+
+        TokenResponse result = duoConnector.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type",
+                "duo_code", "redirect_uri", "client_assertion_type", "client_assertion");
+
+        assertEquals("id_token", result.getId_token());
+        assertEquals(Integer.valueOf(300), result.getExpires_in());
+    }
+
+    @Test
+    void engine_exchangeAuthorizationCodeFor2FAResult_error_code() throws IOException, DuoException {
+        HttpEngine engine = Mockito.mock(HttpEngine.class);
+        when(engine.post(any(), any(), any(), anyLong())).thenReturn(engineResponse(400, "{\"error\": \"invalid_grant\"}"));
+        DuoConnector duoConnector = new DuoConnector(engine, null, DuoTimeouts.DEFAULT, null);
+
+        DuoResponseException e = assertThrows(DuoResponseException.class,
+                () -> duoConnector.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type", "duo_code",
+                        "redirect_uri", "client_assertion_type", "client_assertion"));
+        assertEquals("msg=, msg_detail={\"error\": \"invalid_grant\"}", e.getMessage());
+        assertEquals(400, e.getStatusCode());
+    }
+
+    @Test
+    void engine_exchangeAuthorizationCodeFor2FAResult_network_failure() throws IOException {
+        HttpEngine engine = Mockito.mock(HttpEngine.class);
+        when(engine.post(any(), any(), any(), anyLong())).thenThrow(new IOException("Timeout"));
+        NetworkMetrics networkMetrics = new NetworkMetrics();
+        DuoConnector duoConnector = new DuoConnector(engine, null, DuoTimeouts.DEFAULT, networkMetrics);
+
+        DuoException e = assertThrows(DuoException.class,
+                () -> duoConnector.exchangeAuthorizationCodeFor2FAResult("user-agent", "grant_type", "duo_code",
+                        "redirect_uri", "client_assertion_type", "client_assertion"));
+        assertEquals("Timeout", e.getMessage());
+        assertEquals(1, networkMetrics.snapshot().get("/oauth/v1/token").getFailureCount());
+    }
+
+    @Test
+    void engine_exchangeAuthorizationCodeFor2FAResultAsync() throws Exception {
+        HttpEngine engine = Mockito.mock(HttpEngine.class);
+        CompletableFuture<HttpEngine.Response> response = new CompletableFuture<>();
+        when(engine.postAsync(eq("/oauth/v1/token"), any(), any())).thenReturn(response);
+        DuoConnector duoConnector = new DuoConnector(engine, null, DuoTimeouts.DEFAULT, null);
+
+        CompletableFuture<TokenResponse> result = duoConnector.exchangeAuthorizationCodeFor2FAResultAsync(
+                "user-agent", "grant_type", "duo_code", "redirect_uri", "client_assertion_type", "client_assertion");
+        assertFalse(result.isDone());
+        response.complete(engineResponse(200, "{\"id_token\": \"id_token\"}"));
+
+        assertEquals("id_token", result.get().getId_token());
+    }
+
+    @Test
+    void engine_duoHealthcheckAsync_failure_and_cancel() throws Exception {
+        HttpEngine engine = Mockito.mock(HttpEngine.class);
+        CompletableFuture<HttpEngine.Response> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("Timeout"));
+        CompletableFuture<HttpEngine.Response> pending = new CompletableFuture<>();
+        when(engine.postAsync(any(), any(), any())).thenReturn(failed, pending);
+        DuoConnector duoConnector = new DuoConnector(engine, null, DuoTimeouts.DEFAULT, null);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> duoConnector.duoHealthcheckAsync("client_id", "client_assertion").get());
+        assertTrue(e.getCause() instanceof DuoException);
+        assertEquals("Timeout", e.getCause().getMessage());
+
+        duoConnector.duoHealthcheckAsync("client_id", "client_assertion").cancel(true);
+        assertTrue(pending.isCancelled());
+    }
+
+    private static HttpEngine.Response engineResponse(int code, String body) {
+        return new HttpEngine.Response(code, "", body.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,229 @@
+package com.duosecurity.service;
+
+import com.duosecurity.exception.DuoException;
+import okhttp3.Protocol;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuoTransportTest {
+
+    private static final String API_HOST = "transport-api-host.com";
+    private static final String[] CA_CERT = {"sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA="};
+
+    @Test
+    void acquire_same_configuration_shares_transport() throws DuoException {
+        DuoTransport first = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        DuoTransport second = DuoTransport.acquire(API_HOST, null, null, CA_CERT.clone());
+
+        assertSame(first, second);
+        assertSame(first.getHttpClient().connectionPool(), second.getHttpClient().connectionPool());
+        assertEquals(2, first.getReferenceCount());
+
+        first.release();
+        second.release();
+    }
+
+    @Test
+    void acquire_different_configuration_does_not_share() throws DuoException {
+        DuoTransport direct = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        DuoTransport proxied = DuoTransport.acquire(API_HOST, "proxy-host.com", 8080, CA_CERT);
+        DuoTransport otherHost = DuoTransport.acquire("other-" + API_HOST, null, null, CA_CERT);
+
+        assertNotSame(direct, proxied);
+        assertNotSame(direct, otherHost);
+
+        direct.release();
+        proxied.release();
+        otherHost.release();
+    }
+
+    @Test
+    void release_last_reference_shuts_down() throws DuoException {
+        DuoTransport first = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        DuoTransport second = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+
+        first.release();
+        assertFalse(first.isShutdown());
+        assertFalse(first.getHttpClient().dispatcher().executorService().isShutdown());
+
+        second.release();
+        assertTrue(first.isShutdown());
+        assertTrue(first.getHttpClient().dispatcher().executorService().isShutdown());
+
+        DuoTransport fresh = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        assertNotSame(first, fresh);
+        assertEquals(1, fresh.getReferenceCount());
+        fresh.release();
+    }
+
+    @Test
+    void extra_release_does_not_affect_a_new_transport() throws DuoException {
+        DuoTransport first = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        first.release();
+        DuoTransport fresh = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+
+        first.release();
+
+        assertEquals(0, first.getReferenceCount());
+        assertTrue(first.isShutdown());
+        assertEquals(1, fresh.getReferenceCount());
+        assertSame(fresh, DuoTransport.acquire(API_HOST, null, null, CA_CERT));
+        fresh.release();
+        fresh.release();
+        assertTrue(fresh.isShutdown());
+        fresh.release();
+        assertEquals(0, fresh.getReferenceCount());
+    }
+
+    @Test
+    void concurrent_acquire_and_release_never_hand_out_a_shut_down_transport() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                workers.add(executor.submit(() -> {
+                    for (int j = 0; j < 2000; j++) {
+                        DuoTransport transport = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+                        assertFalse(transport.isShutdown());
+                        transport.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        DuoTransport fresh = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        assertEquals(1, fresh.getReferenceCount());
+        fresh.release();
+    }
+
+    @Test
+    void connector_close_releases_transport_once() throws DuoException {
+        DuoTransport transport = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        DuoConnector connector = new DuoConnector(DuoTransport.acquire(API_HOST, null, null, CA_CERT));
+        assertEquals(2, transport.getReferenceCount());
+
+        connector.close();
+        connector.close();
+        assertEquals(1, transport.getReferenceCount());
+
+        transport.release();
+        assertTrue(transport.isShutdown());
+    }
+
+    @Test
+    void acquire_with_trust_manager() throws Exception {
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init((KeyStore) null);
+        X509TrustManager trustManager = (X509TrustManager) factory.getTrustManagers()[0];
+
+        DuoTransport platform = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        DuoConnectionSettings settings = new DuoConnectionSettings.Builder().setTrustManager(trustManager).build();
+        DuoTransport custom = DuoTransport.acquire(API_HOST, null, null, CA_CERT, settings);
+        DuoTransport sameCustom = DuoTransport.acquire(API_HOST, null, null, CA_CERT,
+                new DuoConnectionSettings.Builder().setTrustManager(trustManager).build());
+
+        assertNotSame(platform, custom);
+        assertSame(custom, sameCustom);
+        assertNotSame(platform.getHttpClient().sslSocketFactory(), custom.getHttpClient().sslSocketFactory());
+
+        platform.release();
+        custom.release();
+        sameCustom.release();
+    }
+
+    @Test
+    void virtual_threads_use_their_own_transport() throws DuoException {
+        if (!VirtualThreads.isSupported()) {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> new DuoConnectionSettings.Builder().setUseVirtualThreads(true));
+            return;
+        }
+        DuoTransport platform = DuoTransport.acquire(API_HOST, null, null, CA_CERT);
+        DuoTransport virtual = DuoTransport.acquire(API_HOST, null, null, CA_CERT,
+                new DuoConnectionSettings.Builder().setUseVirtualThreads(true).build());
+
+        assertNotSame(platform, virtual);
+        assertFalse(platform.usesVirtualThreads());
+        assertTrue(virtual.usesVirtualThreads());
+        assertEquals(Integer.MAX_VALUE, virtual.getHttpClient().dispatcher().getMaxRequestsPerHost());
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), virtual.getHttpClient().protocols());
+        assertEquals(Integer.MAX_VALUE, virtual.getEffectiveSettings().getMaxRequestsPerHost());
+        assertEquals(DuoConnectionSettings.HttpVersion.HTTP_1_1, virtual.getEffectiveSettings().getHttpVersion());
+
+        platform.release();
+        virtual.release();
+        assertTrue(virtual.getHttpClient().dispatcher().executorService().isShutdown());
+    }
+
+    @Test
+    void connection_settings_are_applied_and_reported() throws DuoException {
+        DuoConnectionSettings settings = tunedSettings();
+        DuoTransport defaults = DuoTransport.acquire(API_HOST, null, null, CA_CERT, DuoConnectionSettings.DEFAULT);
+        DuoTransport tuned = DuoTransport.acquire(API_HOST, null, null, CA_CERT, settings);
+        DuoTransport sameTuned = DuoTransport.acquire(API_HOST, null, null, CA_CERT, tunedSettings());
+
+        assertNotSame(defaults, tuned);
+        assertSame(tuned, sameTuned);
+        assertEquals(5, defaults.getHttpClient().dispatcher().getMaxRequestsPerHost());
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), defaults.getHttpClient().protocols());
+        assertEquals(32, tuned.getHttpClient().dispatcher().getMaxRequestsPerHost());
+        assertEquals(128, tuned.getHttpClient().dispatcher().getMaxRequests());
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), tuned.getHttpClient().protocols());
+
+        TransportSnapshot snapshot = tuned.snapshot();
+        assertEquals(API_HOST, snapshot.getApiHost());
+        assertEquals(settings, snapshot.getSettings());
+        assertEquals(0, snapshot.getConnectionCount());
+        assertEquals(0, snapshot.getQueuedCallCount());
+        assertEquals(DuoConnectionSettings.DEFAULT.getMaxIdleConnections(),
+                defaults.getEffectiveSettings().getMaxIdleConnections());
+        assertTrue(defaults.getEffectiveSettings().getTlsSessionTimeoutSeconds() > 0);
+
+        defaults.release();
+        tuned.release();
+        sameTuned.release();
+    }
+
+    private static DuoConnectionSettings tunedSettings() {
+        return new DuoConnectionSettings.Builder()
+                .setConnectionPool(20, 1, TimeUnit.MINUTES)
+                .setMaxRequests(128, 32)
+                .setHttpVersion(DuoConnectionSettings.HttpVersion.HTTP_1_1)
+                .setTlsSessionCache(100, 1, TimeUnit.HOURS)
+                .build();
+    }
+
+    @Test
+    void connection_settings_must_be_valid() {
+        DuoConnectionSettings.Builder builder = new DuoConnectionSettings.Builder();
+        assertThrows(IllegalArgumentException.class, () -> builder.setConnectionPool(-1, 1, TimeUnit.MINUTES));
+        assertThrows(IllegalArgumentException.class, () -> builder.setConnectionPool(5, 0, TimeUnit.MINUTES));
+        assertThrows(IllegalArgumentException.class, () -> builder.setMaxRequests(64, 0));
+        assertThrows(IllegalArgumentException.class, () -> builder.setHttpVersion(null));
+        assertThrows(IllegalArgumentException.class, () -> builder.setTlsSessionCache(-1, 0, TimeUnit.SECONDS));
+        assertEquals(DuoConnectionSettings.DEFAULT, builder.build());
+    }
+
+    @Test
+    void acquire_invalid_host() {
+        assertThrows(DuoException.class, () -> DuoTransport.acquire("", null, null, CA_CERT));
+    }
+}